@@ -0,0 +1,29 @@
+package com.napier.sem.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler, so every result includes the allocation
+ * rate alongside throughput. Accepts the usual JMH command line options, for example
+ * a benchmark name pattern or -p rows=1000.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        try {
+            new Runner(options).run();
+        } catch (RunnerException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.napier.sem.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Discards report console output during a benchmark so terminal speed is not measured.
+ */
+final class Console {
+
+    private static PrintStream original;
+
+    private Console() {
+    }
+
+    /**
+     * Sends System.out to a stream that discards everything.
+     */
+    static synchronized void silence() {
+        if (original == null) {
+            original = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+    }
+
+    /**
+     * Restores the System.out replaced by {@link #silence()}.
+     */
+    static synchronized void restore() {
+        if (original != null) {
+            System.setOut(original);
+            original = null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.napier.sem.bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-memory H2 database, in MySQL compatibility mode, holding a synthetic
+ * world with the same tables and columns as the world database.
+ */
+final class EmbeddedWorld {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final String[] CONTINENTS =
+            {"Asia", "Europe", "North America", "Africa", "Oceania", "Antarctica", "South America"};
+    private static final String[] LANGUAGES = {"Chinese", "English", "Hindi", "Spanish", "Arabic", "French"};
+
+    private EmbeddedWorld() {
+    }
+
+    /**
+     * Creates and fills a new database.
+     *
+     * @param countries        the number of countries
+     * @param citiesPerCountry the number of cities in each country
+     * @return A connection to the new database.
+     * @throws SQLException if the database cannot be created
+     */
+    static Connection create(int countries, int citiesPerCountry) throws SQLException {
+        Connection con = DriverManager.getConnection("jdbc:h2:mem:world" + DATABASES.incrementAndGet()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("""
+                    CREATE TABLE country (
+                        Code CHAR(3) PRIMARY KEY, Name CHAR(52) NOT NULL, Continent VARCHAR(13) NOT NULL,
+                        Region CHAR(26) NOT NULL, Population INT NOT NULL, Capital INT)
+                    """);
+            stmt.execute("""
+                    CREATE TABLE city (
+                        ID INT PRIMARY KEY, Name CHAR(35) NOT NULL, CountryCode CHAR(3) NOT NULL,
+                        District CHAR(20) NOT NULL, Population INT NOT NULL)
+                    """);
+            stmt.execute("CREATE INDEX city_country ON city (CountryCode)");
+            stmt.execute("""
+                    CREATE TABLE countrylanguage (
+                        CountryCode CHAR(3) NOT NULL, Language CHAR(30) NOT NULL,
+                        IsOfficial CHAR(1) NOT NULL, Percentage DECIMAL(4,1) NOT NULL,
+                        PRIMARY KEY (CountryCode, Language))
+                    """);
+        }
+
+        con.setAutoCommit(false);
+        try (PreparedStatement country = con.prepareStatement("INSERT INTO country VALUES (?, ?, ?, ?, ?, ?)");
+             PreparedStatement city = con.prepareStatement("INSERT INTO city VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement language = con.prepareStatement("INSERT INTO countrylanguage VALUES (?, ?, ?, ?)")) {
+            int id = 0;
+            for (int c = 0; c < countries; c++) {
+                String code = SyntheticRows.code(c);
+                country.setString(1, code);
+                country.setString(2, "Country " + c);
+                country.setString(3, CONTINENTS[c % CONTINENTS.length]);
+                country.setString(4, "Region " + (c % 25));
+                country.setInt(5, 1_000_000 + c * 9_973);
+                country.setInt(6, id + 1);
+                country.addBatch();
+
+                for (int i = 0; i < citiesPerCountry; i++) {
+                    id++;
+                    city.setInt(1, id);
+                    city.setString(2, "City " + id);
+                    city.setString(3, code);
+                    city.setString(4, "District " + (id % 500));
+                    city.setInt(5, 5_000 + (id * 7_919) % 900_000);
+                    city.addBatch();
+                }
+
+                language.setString(1, code);
+                language.setString(2, LANGUAGES[c % LANGUAGES.length]);
+                language.setString(3, "T");
+                language.setDouble(4, 60.0 + c % 40);
+                language.addBatch();
+            }
+            country.executeBatch();
+            city.executeBatch();
+            language.executeBatch();
+            con.commit();
+        } finally {
+            con.setAutoCommit(true);
+        }
+        return con;
+    }
+}
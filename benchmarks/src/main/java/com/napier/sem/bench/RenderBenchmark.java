@@ -0,0 +1,72 @@
+package com.napier.sem.bench;
+
+import com.napier.sem.City;
+import com.napier.sem.CityReport;
+import com.napier.sem.Country;
+import com.napier.sem.CountryReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures printing report rows to the console and writing them as Markdown.
+ * Console output is discarded; Markdown files are written to ./reports/.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private CityReport cityReport;
+    private CountryReport countryReport;
+    private ArrayList<City> cities;
+    private ArrayList<Country> countries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cityReport = new CityReport(null);
+        countryReport = new CountryReport(null);
+        cities = SyntheticRows.cities(rows);
+        countries = SyntheticRows.countries(rows);
+        Console.silence();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Console.restore();
+    }
+
+    @Benchmark
+    public void printCities() {
+        cityReport.printCities(cities);
+    }
+
+    @Benchmark
+    public void outputCities() {
+        cityReport.outputCapitalCities(cities, "BenchmarkCities.md");
+    }
+
+    @Benchmark
+    public void outputCountries() {
+        countryReport.outputCountries(countries, "BenchmarkCountries.md");
+    }
+}
@@ -0,0 +1,60 @@
+package com.napier.sem.bench;
+
+import com.napier.sem.City;
+import com.napier.sem.CityReport;
+import com.napier.sem.Country;
+import com.napier.sem.CountryReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures mapping result set rows to City and Country objects, as the report
+ * query helpers do, over a synthetic result set with no driver cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    private CityReport cityReport;
+    private CountryReport countryReport;
+
+    @Setup
+    public void setUp() {
+        cityReport = new CityReport(SyntheticRows.connection(rows));
+        countryReport = new CountryReport(SyntheticRows.connection(rows));
+    }
+
+    @Benchmark
+    public ArrayList<City> mapCities() {
+        return cityReport.printAllCities();
+    }
+
+    @Benchmark
+    public ArrayList<City> mapCitiesWithParameters() {
+        return cityReport.getTopNCitiesByContinent("Asia", rows);
+    }
+
+    @Benchmark
+    public ArrayList<Country> mapCountries() {
+        return countryReport.getCountriesByPopulation();
+    }
+}
@@ -0,0 +1,65 @@
+package com.napier.sem.bench;
+
+import com.napier.sem.App;
+import com.napier.sem.CapitalCityReport;
+import com.napier.sem.CityReport;
+import com.napier.sem.CountryReport;
+import com.napier.sem.LanguageReport;
+import com.napier.sem.UrbanReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a complete run of every report, from query to Markdown file, against an
+ * embedded database of 239 countries, with and without shared scans.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class RunReportsBenchmark {
+
+    @Param({"20", "200"})
+    public int citiesPerCountry;
+
+    @Param({"false", "true"})
+    public boolean sharedScans;
+
+    private App app;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        app = new App();
+        app.con = EmbeddedWorld.create(239, citiesPerCountry);
+        app.sharedScans = sharedScans;
+        Console.silence();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Console.restore();
+        app.disconnect();
+    }
+
+    @Benchmark
+    public void runReports() {
+        app.runReports(new CityReport(app.con), new CapitalCityReport(app.con), new CountryReport(app.con),
+                new LanguageReport(app.con), new UrbanReport(true));
+    }
+}
@@ -0,0 +1,84 @@
+package com.napier.sem.bench;
+
+import com.napier.sem.City;
+import com.napier.sem.CityReport;
+import com.napier.sem.Country;
+import com.napier.sem.CountryReport;
+import com.napier.sem.Scope;
+import com.napier.sem.StatementCache;
+import com.napier.sem.UrbanReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures small parameterised report queries run again and again on one connection, with
+ * prepared statements kept in the statement cache and with each one prepared afresh.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementCacheBenchmark {
+
+    @Param({"0", "32"})
+    public int capacity;
+
+    private Connection con;
+    private CityReport cityReport;
+    private CountryReport countryReport;
+    private UrbanReport urbanReport;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        StatementCache.setCapacity(capacity);
+        con = EmbeddedWorld.create(239, 20);
+        cityReport = new CityReport(con);
+        countryReport = new CountryReport(con);
+        urbanReport = new UrbanReport();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        StatementCache.close(con);
+        con.close();
+        StatementCache.setCapacity(StatementCache.DEFAULT_CAPACITY);
+    }
+
+    @Benchmark
+    public ArrayList<City> topCitiesByContinent() {
+        return cityReport.getTopNCitiesByContinent("Asia", 10);
+    }
+
+    @Benchmark
+    public ArrayList<Country> topCountriesByRegion() {
+        return countryReport.topNCountriesByRegion("Region 7", 5);
+    }
+
+    @Benchmark
+    public City cityAtRank() {
+        return cityReport.cityAtRank(Scope.COUNTRY, "Country 42", 3);
+    }
+
+    @Benchmark
+    public double populationOfRegion() {
+        urbanReport.getPopulationOfRegion(con, "Region 7");
+        return urbanReport.population;
+    }
+}
@@ -0,0 +1,200 @@
+package com.napier.sem.bench;
+
+import com.napier.sem.City;
+import com.napier.sem.Country;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Synthetic report rows and a JDBC connection that serves them without a database.
+ * <p>
+ * The connection's statements all return a result set of the given number of rows
+ * that answers every column used by the report classes, so row mapping can be
+ * measured without driver or network cost. As in a driver, findColumn looks a label
+ * up in a case-insensitive map and a getter called with a label does that lookup
+ * before reading by index, so label and index access are costed as they are in MySQL.
+ * </p>
+ */
+final class SyntheticRows {
+
+    private static final String[] NAMES = new String[1000];
+    private static final String[] CONTINENTS =
+            {"Asia", "Europe", "North America", "Africa", "Oceania", "Antarctica", "South America"};
+
+    // Every column label the report queries select, at the 1-based index findColumn gives it
+    private static final String[] COLUMNS = {"ID", "CityName", "CapitalCity", "Country", "District",
+            "Population", "Code", "Name", "Continent", "Region", "Capital", "GroupKey", "Language",
+            "NumberOfSpeakers", "WorldPercentage", "UrbanPopulation", "CityRank"};
+    private static final Map<String, Integer> COLUMN_INDEX = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            NAMES[i] = "Place " + i;
+        }
+        for (int i = 0; i < COLUMNS.length; i++) {
+            COLUMN_INDEX.put(COLUMNS[i], i + 1);
+        }
+    }
+
+    private SyntheticRows() {
+    }
+
+    /**
+     * @param rows the number of rows each query returns
+     * @return A connection whose queries return synthetic rows.
+     */
+    static Connection connection(int rows) {
+        return proxy(Connection.class, (method, args) -> {
+            String name = method.getName();
+            if (name.equals("prepareStatement") || name.equals("createStatement")) {
+                return statement(rows);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return A list of n cities in descending population order.
+     */
+    static ArrayList<City> cities(int n) {
+        ArrayList<City> cities = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            City city = new City();
+            city.ID = i + 1;
+            city.Name = NAMES[i % NAMES.length];
+            city.Country = NAMES[(i * 7) % NAMES.length];
+            city.District = NAMES[(i * 13) % NAMES.length];
+            city.Population = population(i);
+            cities.add(city);
+        }
+        return cities;
+    }
+
+    /**
+     * @return A list of n countries in descending population order.
+     */
+    static ArrayList<Country> countries(int n) {
+        ArrayList<Country> countries = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Country country = new Country();
+            country.Code = code(i);
+            country.Name = NAMES[i % NAMES.length];
+            country.Continent = CONTINENTS[i % CONTINENTS.length];
+            country.Region = NAMES[(i * 3) % 25];
+            country.Population = population(i);
+            country.Capital = Integer.toString(i + 1);
+            countries.add(country);
+        }
+        return countries;
+    }
+
+    static int population(int row) {
+        return Integer.MAX_VALUE - row * 17;
+    }
+
+    static String code(int row) {
+        char[] code = {(char) ('A' + row / 676 % 26), (char) ('A' + row / 26 % 26), (char) ('A' + row % 26)};
+        return new String(code);
+    }
+
+    private static Statement statement(int rows) {
+        return proxy(PreparedStatement.class, (method, args) ->
+                method.getName().equals("executeQuery") ? resultSet(rows) : null);
+    }
+
+    private static ResultSet resultSet(int rows) {
+        int[] row = {-1};
+        return proxy(ResultSet.class, (method, args) -> {
+            int i = row[0];
+            String name = method.getName();
+            if (name.equals("next")) {
+                return ++row[0] < rows;
+            }
+            if (name.equals("findColumn")) {
+                return column((String) args[0]);
+            }
+            if (args == null || args.length != 1 || !name.startsWith("get")) {
+                return null;
+            }
+            // A label is looked up first, as a driver does, then read by index
+            int column = args[0] instanceof String ? column((String) args[0]) : (Integer) args[0];
+            String label = COLUMNS[column - 1];
+            switch (name) {
+                case "getString":
+                    return string(label, i);
+                case "getInt":
+                    return label.equals("ID") ? i + 1 : population(i);
+                case "getLong":
+                    return (long) population(i);
+                case "getDouble":
+                    return population(i) / 3.0;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static int column(String label) throws SQLException {
+        Integer column = COLUMN_INDEX.get(label);
+        if (column == null) {
+            throw new SQLException("Column '" + label + "' not found.");
+        }
+        return column;
+    }
+
+    private static String string(String label, int row) {
+        switch (label) {
+            case "Code":
+            case "CountryCode":
+                return code(row);
+            case "Continent":
+                return CONTINENTS[row % CONTINENTS.length];
+            case "Capital":
+                return Integer.toString(row + 1);
+            default:
+                return NAMES[(row * label.length()) % NAMES.length];
+        }
+    }
+
+    /**
+     * Handles one call on a proxied JDBC interface.
+     */
+    private interface Handler {
+        Object invoke(java.lang.reflect.Method method, Object[] args) throws SQLException;
+    }
+
+    /**
+     * Creates a proxy that answers unhandled calls with the zero value of their return type.
+     */
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        Object proxy = Proxy.newProxyInstance(SyntheticRows.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> {
+                    Object result = handler.invoke(method, args);
+                    if (result != null || !method.getReturnType().isPrimitive()) {
+                        return result;
+                    }
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType == boolean.class) {
+                        return false;
+                    } else if (returnType == void.class) {
+                        return null;
+                    } else if (returnType == long.class) {
+                        return 0L;
+                    } else if (returnType == double.class) {
+                        return 0.0;
+                    } else if (returnType == float.class) {
+                        return 0f;
+                    }
+                    return 0;
+                });
+        return type.cast(proxy);
+    }
+}
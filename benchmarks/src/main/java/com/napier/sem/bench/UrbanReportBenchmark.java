@@ -0,0 +1,83 @@
+package com.napier.sem.bench;
+
+import com.napier.sem.UrbanReport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the urbanisation reports against an embedded database of 239 countries
+ * and 4,780 cities, comparing the per-name queries with the grouped batch queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class UrbanReportBenchmark {
+
+    private static final String[] CONTINENTS =
+            {"Asia", "Europe", "North America", "Africa", "Oceania", "Antarctica", "South America"};
+
+    private Connection con;
+    private UrbanReport report;
+    private List<String> regions;
+    private List<String> countries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        con = EmbeddedWorld.create(239, 20);
+        report = new UrbanReport();
+        regions = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            regions.add("Region " + i);
+        }
+        countries = new ArrayList<>();
+        for (int i = 0; i < 239; i++) {
+            countries.add("Country " + i);
+        }
+        Console.silence();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        Console.restore();
+        con.close();
+    }
+
+    @Benchmark
+    public void continentReport() {
+        report.generateContinentReport(con, CONTINENTS, "BenchmarkContinentUrbanReport.md");
+    }
+
+    @Benchmark
+    public void regionReport() {
+        report.generateRegionReport(con, regions, "BenchmarkRegionalUrbanReport.md");
+    }
+
+    @Benchmark
+    public void countryReport() {
+        report.generateCountryReport(con, countries, "BenchmarkCountryUrbanReport.md");
+    }
+
+    @Benchmark
+    public void batchReports() {
+        report.generateBatchReports(con);
+    }
+}
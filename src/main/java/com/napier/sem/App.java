@@ -1,7 +1,10 @@
 package com.napier.sem;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The App class manages the connection between the application
@@ -16,6 +19,65 @@ public class App
 
     public Connection con = null;
 
+    /**
+     * Pool of connections used when reports run in parallel; null when using a single connection.
+     */
+    public ConnectionPool pool = null;
+
+    /**
+     * Runs the report graph; sequential by default so every report runs in its declared order.
+     */
+    public ReportScheduler scheduler = ReportScheduler.sequential();
+
+    /**
+     * Derives subset and top-N reports from one shared scan per report family instead of
+     * running a query for each report; off by default so each report runs its own query.
+     */
+    public boolean sharedScans = false;
+
+    /**
+     * Cache of query results shared by every report; null to always query the database.
+     */
+    public QueryCache cache = null;
+
+    /**
+     * Rows fetched per round trip when the unbounded city reports are streamed;
+     * 0 loads each report into a list before printing it.
+     */
+    public int fetchSize = 0;
+
+    /**
+     * Latency, rows, bytes written and errors of every report stage in a run.
+     */
+    public MetricsRegistry metrics = new MetricsRegistry();
+
+    /**
+     * Population bands of the snapshot; null when reports are answered from live SQL.
+     */
+    public PopulationRangeReport rangeReport = null;
+
+    /**
+     * Limit used for reports that list every matching row.
+     */
+    private static final int ALL = Integer.MAX_VALUE;
+
+    /**
+     * Report groups run in parallel mode, each on a connection of its own: cities,
+     * capital cities, countries, languages and urbanisation.
+     */
+    private static final int REPORT_GROUPS = 5;
+
+    /**
+     * Builds the JDBC url of the world database. Statements are prepared on the server, so
+     * the statements StatementCache keeps open are parsed once per connection rather than
+     * on every run. Server-side cursors are only asked for when the city reports are streamed.
+     */
+    private String databaseUrl(String location) {
+        String url = "jdbc:mysql://" + location
+                + "/world?allowPublicKeyRetrieval=true&useSSL=false&useServerPrepStmts=true";
+        return fetchSize > 0 ? url + "&useCursorFetch=true" : url;
+    }
+
     /**
      * Establishes a connection to the MySQL database.
      * Retries up to 10 times, waiting 30 seconds between attempts.
@@ -36,9 +98,7 @@ public class App
                 // Wait a bit for db to start
                 Thread.sleep(delay);
                 // Connect to database
-                con = DriverManager.getConnection("jdbc:mysql://" + location
-                                + "/world?allowPublicKeyRetrieval=true&useSSL=false",
-                        "root", "example");
+                con = DriverManager.getConnection(databaseUrl(location), "root", "example");
                 System.out.println("Successfully connected");
                 break;
             } catch (SQLException sqle) {
@@ -58,7 +118,50 @@ public class App
     }
 
     /**
-     * Closes the connection to the MySQL database if it is active.
+     * Creates a pool of connections to the MySQL database and opens con beside it.
+     * Retries up to 10 times like connect, waiting delay milliseconds between attempts.
+     * con is held for the whole run, so it stays outside the pool where it would take
+     * a permit from the report groups and be reported as a leak after a minute.
+     *
+     * @param location host and port of the database
+     * @param delay    milliseconds to wait before each attempt
+     * @param size     the maximum number of pooled connections
+     */
+    public void connectPool(String location, int delay, int size) {
+        try {
+            // Load Database driver
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            System.out.println("Could not load SQL driver");
+            System.exit(-1);
+        }
+
+        // Connections held for over a minute are reported as leaks
+        pool = new ConnectionPool(databaseUrl(location), "root", "example", size, 60000);
+        int retries = 10;
+        for (int i = 0; i < retries; ++i) {
+            System.out.println("Connecting to database...");
+            try {
+                Thread.sleep(delay);
+                con = DriverManager.getConnection(databaseUrl(location), "root", "example");
+                System.out.println("Successfully connected with a pool of " + size + " connections");
+                break;
+            } catch (SQLException sqle) {
+                System.out.println("Failed to connect to database attempt " + Integer.toString(i));
+                System.out.println(sqle.getMessage());
+            } catch (InterruptedException ie) {
+                System.out.println("Thread interrupted? Should not happen.");
+            }
+        }
+        if (con == null) {
+            System.out.println("Could not establish database connection after retries.");
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Closes the connection to the MySQL database if it is active,
+     * and the connection pool if one was created.
      */
     public void disconnect()
     {
@@ -66,6 +169,7 @@ public class App
         {
             try
             {
+                StatementCache.close(con);
                 con.close();
             }
             catch (Exception e)
@@ -73,6 +177,90 @@ public class App
                 System.out.println("Error closing connection to database");
             }
         }
+        if (pool != null)
+        {
+            pool.close();
+        }
+    }
+
+    /**
+     * Loads the city, country and language tables into memory.
+     *
+     * @return The loaded snapshot, or null if it could not be loaded and reports should use live SQL.
+     */
+    public WorldSnapshot loadSnapshot() {
+        try {
+            WorldSnapshot snapshot = WorldSnapshot.load(con);
+            System.out.println("Loaded snapshot of " + snapshot.cityCount() + " cities and "
+                    + snapshot.countryCount() + " countries");
+            return snapshot;
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Failed to load snapshot, falling back to live queries");
+            return null;
+        }
+    }
+
+    /**
+     * Loads the city, country and language tables from a mysqldump file instead of the database.
+     *
+     * @param file the dump to read, such as db/world.sql
+     * @return The loaded snapshot, or null if the file could not be read.
+     */
+    public WorldSnapshot loadDump(String file) {
+        try {
+            WorldSnapshot snapshot = SqlDumpReader.read(java.nio.file.Path.of(file));
+            System.out.println("Loaded snapshot of " + snapshot.cityCount() + " cities and "
+                    + snapshot.countryCount() + " countries from " + file);
+            return snapshot;
+        } catch (java.io.IOException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Failed to load " + file);
+            return null;
+        }
+    }
+
+    /**
+     * Loads the tables from a snapshot file, first exporting the database to it if asked
+     * to check the file and it is missing or out of date.
+     *
+     * @param file       the snapshot file
+     * @param checkStale true to compare the file with the database on con
+     * @return The loaded snapshot, or null if it could not be loaded.
+     */
+    public WorldSnapshot loadSnapshotFile(java.nio.file.Path file, boolean checkStale) {
+        try {
+            if (checkStale && (!java.nio.file.Files.exists(file) || SnapshotFile.isStale(file, con))) {
+                System.out.println("Snapshot file " + file + " is out of date, exporting the database");
+                return SnapshotFile.export(con, file);
+            }
+            long start = System.nanoTime();
+            WorldSnapshot snapshot = SnapshotFile.read(file);
+            System.out.println("Loaded snapshot of " + snapshot.cityCount() + " cities and "
+                    + snapshot.countryCount() + " countries from " + file + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+            return snapshot;
+        } catch (java.io.IOException | SQLException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Failed to load snapshot file " + file);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the tables of the database to a snapshot file that later runs can start from.
+     *
+     * @param file the snapshot file to write
+     */
+    public void exportSnapshot(java.nio.file.Path file) {
+        try {
+            WorldSnapshot snapshot = SnapshotFile.export(con, file);
+            System.out.println("Exported snapshot of " + snapshot.cityCount() + " cities and "
+                    + snapshot.countryCount() + " countries to " + file);
+        } catch (java.io.IOException | SQLException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Failed to export snapshot to " + file);
+        }
     }
 
     /**
@@ -81,136 +269,205 @@ public class App
     public void runReports(CityReport cityReport,
                            CapitalCityReport capitalReport,
                            CountryReport PrintCountry, LanguageReport languageReport, UrbanReport urbanReport ){
+        ReportGraph graph = reportGraph(cityReport, capitalReport, PrintCountry, languageReport, urbanReport, con);
+        scheduler.setMetrics(metrics);
+        scheduler.run(graph);
+        if (Boolean.getBoolean("reports.timings")) {
+            ReportScheduler.printTimings(graph);
+        }
+    }
+
+    /**
+     * Runs the reports concurrently with each group of reports on its own pooled connection,
+     * so wall-clock time is roughly that of the slowest group. Console output keeps its
+     * declared order; only fetches and file writes overlap.
+     *
+     * @param snapshot in-memory copy of the database to answer from, or null for live SQL
+     */
+    public void runReportsParallel(WorldSnapshot snapshot) {
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            // Without a pool, as when reading a dump, every report runs from the snapshot alone
+            for (int i = 0; i < REPORT_GROUPS; i++) {
+                borrowed.add(pool == null ? null : pool.getConnection());
+            }
+            CityReport cityReport = new CityReport(borrowed.get(0), snapshot);
+            CapitalCityReport capitalReport = new CapitalCityReport(borrowed.get(1), snapshot);
+            CountryReport countryReport = new CountryReport(borrowed.get(2), snapshot);
+            LanguageReport languageReport = new LanguageReport(borrowed.get(3), snapshot);
+            cityReport.setCache(cache);
+            capitalReport.setCache(cache);
+            countryReport.setCache(cache);
+            languageReport.setCache(cache);
+            cityReport.setMetrics(metrics);
+            capitalReport.setMetrics(metrics);
+            countryReport.setMetrics(metrics);
+            languageReport.setMetrics(metrics);
+            UrbanReport urbanReport = new UrbanReport(true);
+            urbanReport.setMetrics(metrics);
+            if (snapshot != null) {
+                GeographyTree geography = new GeographyTree(snapshot);
+                urbanReport.setGeography(geography);
+                cityReport.setGeography(geography);
+            }
+            ReportGraph graph = reportGraph(cityReport, capitalReport, countryReport, languageReport,
+                    urbanReport, borrowed.get(4));
+            ReportScheduler parallelScheduler = ReportScheduler.forkJoin(pool == null ? REPORT_GROUPS : pool.getMaxSize());
+            parallelScheduler.setMetrics(metrics);
+            parallelScheduler.run(graph);
+            if (Boolean.getBoolean("reports.timings")) {
+                ReportScheduler.printTimings(graph);
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Could not borrow connections for reports");
+        } finally {
+            for (Connection pooled : borrowed) {
+                if (pooled == null) {
+                    continue;
+                }
+                try {
+                    StatementCache.close(pooled);
+                    pooled.close();
+                } catch (SQLException e) {
+                    System.out.println("Error returning connection to pool");
+                }
+            }
+        }
+    }
+
+    /**
+     * Declares every report as fetch, render and write stages.
+     *
+     * @param urbanCon the connection used by the urbanisation reports
+     * @return The graph of all report stages.
+     */
+    public ReportGraph reportGraph(CityReport cityReport, CapitalCityReport capitalReport,
+                                   CountryReport PrintCountry, LanguageReport languageReport,
+                                   UrbanReport urbanReport, Connection urbanCon) {
+        ReportGraph graph = new ReportGraph();
+        SharedScanPlanner planner = new SharedScanPlanner(cityReport, capitalReport, PrintCountry, sharedScans);
+        addCityReports(graph, cityReport, planner);
+        addCapitalCityReports(graph, capitalReport, planner);
+        addCountryReports(graph, PrintCountry, planner);
+        addUrbanReports(graph, urbanReport, urbanCon);
+        addLanguageReports(graph, languageReport);
+        if (rangeReport != null) {
+            addPopulationRangeReports(graph, rangeReport);
+        }
+        return graph;
+    }
+
+    /**
+     * Adds the city reports to the graph.
+     */
+    public void addCityReports(ReportGraph graph, CityReport cityReport, SharedScanPlanner planner) {
+        if (fetchSize > 0) {
+            addStreamedCityReport(graph, "All Cities In The World", cityReport, Scope.WORLD, null, "AllCities.md");
+            addStreamedCityReport(graph, "All Cities in Continent", cityReport, Scope.CONTINENT, "Asia", "AllCitiesInContinent.md");
+            addStreamedCityReport(graph, "All Cities in a Region", cityReport, Scope.REGION, "South America", "AllCitiesInRegion.md");
+            addStreamedCityReport(graph, "All Cities in a District", cityReport, Scope.DISTRICT, "Oran", "AllCitiesInDistrict.md");
+        } else {
+            graph.report("All Cities In The World", planner.cities(Scope.WORLD, null, ALL),
+                    cityReport::printCities, cities -> cityReport.outputCapitalCities(cities, "AllCities.md"));
+            graph.report("All Cities in Continent", planner.cities(Scope.CONTINENT, "Asia", ALL),
+                    cityReport::printCities, cities -> cityReport.outputCapitalCities(cities, "AllCitiesInContinent.md"));
+            graph.report("All Cities in a Region", planner.cities(Scope.REGION, "South America", ALL),
+                    cityReport::printCities, cities -> cityReport.outputCapitalCities(cities, "AllCitiesInRegion.md"));
+            graph.report("All Cities in a District", planner.cities(Scope.DISTRICT, "Oran", ALL),
+                    cityReport::printCities, cities -> cityReport.outputCapitalCities(cities, "AllCitiesInDistrict.md"));
+        }
+        graph.report("Top 10 Most Populated Cities in the World", planner.cities(Scope.WORLD, null, 10),
+                cityReport::printCities, cities -> cityReport.outputCapitalCities(cities, "TopCitiesInWorld.md"));
+        graph.report("Top 5 Most Populated Cities in a Continent", planner.cities(Scope.CONTINENT, "Asia", 2),
+                cityReport::printCities, cities -> cityReport.outputCapitalCities(cities, "TopCityPopulationInContinent.md"));
+        graph.report("Top 5 Most Populated Cities in a Region", planner.cities(Scope.REGION, "North America", 4),
+                cityReport::printCities, cities -> cityReport.outputCapitalCities(cities, "TopCityPopulationInRegion.md"));
+        graph.report("Top 5 Most Populated Cities in a District", planner.cities(Scope.DISTRICT, "California", 5),
+                cityReport::printCities, cities -> cityReport.outputCapitalCities(cities, "TopCityPopulationInDistrict.md"));
+    }
+
+    /**
+     * Adds a city report that streams its rows to the console and a Markdown file
+     * as a single render stage, so the rows are never held in memory.
+     */
+    private void addStreamedCityReport(ReportGraph graph, String title, CityReport cityReport,
+                                       Scope scope, String key, String filename) {
+        ReportGraph.Stage<CityReport> report = graph.fetch(title, () -> cityReport);
+        graph.render(title, report, r -> {
+            System.out.println("\n=== " + title + " ===");
+            r.streamCities(scope, key, fetchSize, filename);
+        });
+    }
+
+    /**
+     * Adds the capital city reports to the graph.
+     */
+    public void addCapitalCityReports(ReportGraph graph, CapitalCityReport capitalReport,
+                                      SharedScanPlanner planner) {
+        graph.report("All Capital Cities", planner.capitalCities(Scope.WORLD, null, ALL),
+                capitalReport::printCapitalCities, cities -> capitalReport.outputCapitalCities(cities, "AllCapitalCities.md"));
+        graph.report("Capital Cities in Continent", planner.capitalCities(Scope.CONTINENT, "Asia", ALL),
+                capitalReport::printCapitalCities, cities -> capitalReport.outputCapitalCities(cities, "CapitalCitiesInContinent.md"));
+        graph.report("Capital Cities in a Region", planner.capitalCities(Scope.REGION, "North America", ALL),
+                capitalReport::printCapitalCities, cities -> capitalReport.outputCapitalCities(cities, "CapitalCitiesInRegion.md"));
+        graph.report("Top N All Capital Cities", planner.capitalCities(Scope.WORLD, null, 3),
+                capitalReport::printCapitalCities, cities -> capitalReport.outputCapitalCities(cities, "TopNCapitalCities.md"));
+        graph.report("Top N Capital Cities in Continent", planner.capitalCities(Scope.CONTINENT, "Asia", 4),
+                capitalReport::printCapitalCities, cities -> capitalReport.outputCapitalCities(cities, "TopNCapitalCitiesInContinent.md"));
+        graph.report("Top N Capital Cities in a Region", planner.capitalCities(Scope.REGION, "North America", 2),
+                capitalReport::printCapitalCities, cities -> capitalReport.outputCapitalCities(cities, "TopNCapitalCitiesInRegion.md"));
+    }
+
+    /**
+     * Adds the country reports to the graph.
+     */
+    public void addCountryReports(ReportGraph graph, CountryReport PrintCountry, SharedScanPlanner planner) {
+        graph.report("All Countries in The World", planner.countries(Scope.WORLD, null, ALL),
+                PrintCountry::printCountries, countries -> PrintCountry.outputCountries(countries, "AllCountries.md"));
+        graph.report("All Countries in a Continent", planner.countries(Scope.CONTINENT, "Europe", ALL),
+                PrintCountry::printCountries, countries -> PrintCountry.outputCountries(countries, "CountriesInContinent.md"));
+        graph.report("All Countries in a Region", planner.countries(Scope.REGION, "North America", ALL),
+                PrintCountry::printCountries, countries -> PrintCountry.outputCountries(countries, "CountriesInRegion.md"));
+        graph.report("Top N Countries in a Region", planner.countries(Scope.REGION, "Caribbean", 10),
+                PrintCountry::printCountries, countries -> PrintCountry.outputCountries(countries, "TopNCountriesInRegion.md"));
+        graph.report("Top N Countries in The World", planner.countries(Scope.WORLD, null, 10),
+                PrintCountry::printCountries, countries -> PrintCountry.outputCountries(countries, "TopNCountriesInWorld.md"));
+        graph.report("Top N Countries in The Continent", planner.countries(Scope.CONTINENT, "North America", 10),
+                PrintCountry::printCountries, countries -> PrintCountry.outputCountries(countries, "TopNCountriesInContinent.md"));
+    }
 
+    /**
+     * Adds the urbanisation reports to the graph. They query and write their own files,
+     * so they run as a single render stage to keep their console messages in order.
+     */
+    public void addUrbanReports(ReportGraph graph, UrbanReport urbanReport, Connection urbanCon) {
+        ReportGraph.Stage<Connection> connection = graph.fetch("Urban Reports", () -> urbanCon);
+        graph.render("Urban Reports", connection, c -> {
+            System.out.println("\n=== Language Report ===");
+            urbanReport.generateReportLists(c);
+        });
+    }
+
+    /**
+     * Adds the language report to the graph.
+     */
+    public void addLanguageReports(ReportGraph graph, LanguageReport languageReport) {
+        graph.report("Language Report", languageReport::retrieveLanguageSpeakers,
+                languageReport::printLanguageReport, languages -> languageReport.outputLanguages(languages, "LanguageReport.md"));
+    }
 
-        // --- 1. All Cities ---
-        System.out.println("\n=== All Cities In The World ===");
-        ArrayList<City> allCities = cityReport.printAllCities();
-        cityReport.printCities(allCities);
-        cityReport.outputCapitalCities(allCities,"AllCities.md");
-
-        // --- 2. Cities in a Continent ---
-        System.out.println("\n=== All Cities in Continent ===");
-        ArrayList<City> cityInContinent = cityReport.printCitiesByContinent("Asia");
-        cityReport.printCities(cityInContinent);
-        cityReport.outputCapitalCities(cityInContinent,"AllCitiesInContinent.md");
-
-        // --- 3. Cities in a Region ---
-        System.out.println("\n=== Capital Cities in a Region ===");
-        ArrayList<City> cityInRegion = cityReport.printCitiesByRegion("South America");
-        cityReport.printCities(cityInRegion);
-        cityReport.outputCapitalCities(cityInRegion,"AllCitiesInRegion.md");
-
-        // --- 3. Cities in a District---
-        System.out.println("\n=== Capital Cities in a District ===");
-        ArrayList<City> cityInDistrict = cityReport.printCitiesByDistrict("Oran");
-        cityReport.printCities(cityInDistrict);
-        cityReport.outputCapitalCities(cityInDistrict,"AllCitiesInDistrict.md");
-
-        // --- Top N Most Populated Cities Globally ---
-        System.out.println("\n=== Top 10 Most Populated Cities in the World ===");
-        ArrayList<City> topWorldCities = cityReport.getTopNCitiesInWorld(10);
-        cityReport.printCities(topWorldCities);
-        cityReport.outputCapitalCities(topWorldCities,"TopCitiesInWorld.md");
-
-        // --- Top N Most Populated Cities in a Continent ---
-        System.out.println("\n=== Top 5 Most Populated Cities in a Continent ===");
-        ArrayList<City> CityPopulationContinent = cityReport.getTopNCitiesByContinent("Asia", 2);
-        cityReport.printCities(CityPopulationContinent);
-        cityReport.outputCapitalCities(CityPopulationContinent,"TopCityPopulationInContinent.md");
-
-        // --- Top N Most Populated Cities in a Region ---
-        System.out.println("\n=== Top 5 Most Populated Cities in a Region===");
-        ArrayList<City> CityPopulationRegion = cityReport.getTopNCitiesByRegion("North America", 4);
-        cityReport.printCities(CityPopulationRegion);
-        cityReport.outputCapitalCities(CityPopulationRegion,"TopCityPopulationInRegion.md");
-
-        // --- Top N Most Populated Cities in a District ---
-        System.out.println("\n=== Top 5 Most Populated Cities in a District ===");
-        ArrayList<City> CityPopulationDistrict = cityReport.getTopNCitiesByDistrict("California", 5);
-        cityReport.printCities(CityPopulationDistrict);
-        cityReport.outputCapitalCities(CityPopulationDistrict,"TopCityPopulationInDistrict.md");
-
-        // --- 1. All Capital Cities ---
-        System.out.println("\n=== All Capital Cities ===");
-        ArrayList<City> allCapitals = capitalReport.getAllCapitalCities();
-        capitalReport.printCapitalCities(allCapitals);
-        capitalReport.outputCapitalCities(allCapitals, "AllCapitalCities.md");
-
-        // --- 2. Capital Cities in a Continent ---
-        System.out.println("\n=== Capital Cities in Continent ===");
-        ArrayList<City> capitalInContinent = capitalReport.getCapitalCitiesByContinent("Asia");
-        capitalReport.printCapitalCities(capitalInContinent);
-        capitalReport.outputCapitalCities(capitalInContinent, "CapitalCitiesInContinent.md");
-
-        // --- 3. Capital Cities in a Region ---
-        System.out.println("\n=== Capital Cities in a Region ===");
-        ArrayList<City> capitalInRegion = capitalReport.getCapitalCitiesByRegion("North America");
-        capitalReport.printCapitalCities(capitalInRegion);
-        capitalReport.outputCapitalCities(capitalInRegion, "CapitalCitiesInRegion.md");
-
-        // --- 1. Top N Capital Cities ---
-        System.out.println("\n=== Top N All Capital Cities ===");
-        ArrayList<City> nCapitals = capitalReport.getTopNCapitalCities(3);
-        capitalReport.printCapitalCities(nCapitals);
-        capitalReport.outputCapitalCities(nCapitals, "TopNCapitalCities.md");
-
-        // --- 2. Top N Capital Cities in a Continent ---
-        System.out.println("\n=== Top N Capital Cities in Continent ===");
-        ArrayList<City> nCapitalsContinent = capitalReport.getTopNCapitalCitiesByContinent("Asia",4);
-        capitalReport.printCapitalCities(nCapitalsContinent);
-        capitalReport.outputCapitalCities(nCapitalsContinent, "TopNCapitalCitiesInContinent.md");
-
-        // --- 3. Capital Cities in a Region ---
-        System.out.println("\n=== Top N Capital Cities in a Region ===");
-        ArrayList<City> nCapitalsRegion = capitalReport.getTopNCapitalCitiesByRegion("North America",2);
-        capitalReport.printCapitalCities(nCapitalsRegion);
-        capitalReport.outputCapitalCities(nCapitalsRegion, "TopNCapitalCitiesInRegion.md");
-
-        // Print the countries in descending order of population
-        System.out.println("\n=== All Countries in The World ===");
-        ArrayList<Country> countries = PrintCountry.getCountriesByPopulation();
-        PrintCountry.printCountries(countries);
-        PrintCountry.outputCountries(countries, "AllCountries.md");
-
-        // Print the countries in specific region
-        System.out.println("\n=== All Countries in a Continent ===");
-        ArrayList<Country> countriesInContinent = PrintCountry.getCountriesByContinent("Europe");
-        PrintCountry.printCountries(countriesInContinent);
-        PrintCountry.outputCountries(countriesInContinent, "CountriesInContinent.md");
-
-        // Print the countries in specific continent
-        System.out.println("\n=== All Countries in a Region ===");
-        ArrayList<Country> countriesInRegion = PrintCountry.getCountriesByRegion("North America");
-        PrintCountry.printCountries(countriesInRegion);
-        PrintCountry.outputCountries(countriesInRegion, "CountriesInRegion.md");
-
-        //print top N countries in a region
-        System.out.println("\n=== Top N Countries in a Region ===");
-        ArrayList<Country> topNCountryInRegion = PrintCountry.topNCountriesByRegion("Caribbean", 10);
-        PrintCountry.printCountries(topNCountryInRegion);
-        PrintCountry.outputCountries(topNCountryInRegion, "TopNCountriesInRegion.md");
-
-        //print top N countries in the world
-        System.out.println("\n=== Top N Countries in The World ===");
-        ArrayList<Country> topNCountryInWorld = PrintCountry.topNCountriesInTheWorld( 10);
-        PrintCountry.printCountries(topNCountryInWorld);
-        PrintCountry.outputCountries(topNCountryInWorld, "TopNCountriesInWorld.md");
-
-        System.out.println("\n=== Top N Countries in The Continent ===");
-        ArrayList<Country> topNCountryInContinent= PrintCountry.topNCountriesByContinent("North America",10);
-        PrintCountry.printCountries(topNCountryInContinent);
-        PrintCountry.outputCountries(topNCountryInContinent, "TopNCountriesInContinent.md");
-
-        //Generate urban reports
-        System.out.println("\n=== Language Report ===");
-        urbanReport.generateReportLists(con);
-
-        //Output the language report
-        System.out.println("\n=== Language Report ===");
-        ArrayList<CountryLanguage> languages = languageReport.retrieveLanguageSpeakers();
-        languageReport.printLanguageReport(languages);
-        languageReport.outputLanguages(languages, "LanguageReport.md");
+    /**
+     * Adds the population band reports to the graph.
+     */
+    public void addPopulationRangeReports(ReportGraph graph, PopulationRangeReport rangeReport) {
+        graph.report("City Population Deciles", () -> rangeReport.getCityDeciles(Scope.WORLD, null),
+                rangeReport::printBands, bands -> rangeReport.outputBands(bands, "CityPopulationDeciles.md"));
+        graph.report("Cities in Asia by Population Band",
+                () -> rangeReport.getCityBands(Scope.CONTINENT, "Asia", 0, 1000000, 5000000),
+                rangeReport::printBands, bands -> rangeReport.outputBands(bands, "CityPopulationBandsInContinent.md"));
+        graph.report("Country Population Deciles", () -> rangeReport.getCountryDeciles(Scope.WORLD, null),
+                rangeReport::printBands, bands -> rangeReport.outputBands(bands, "CountryPopulationDeciles.md"));
     }
 
     /**
@@ -224,23 +481,135 @@ public class App
         // Create new Application
         App a = new App();
 
-        if(args.length < 1){
-            a.connect("localhost:3308", 0);
-        }else{
-            a.connect("db:3306", 3000);
+        // -Dreports.fetchSize=N streams the unbounded city reports N rows at a time;
+        // read before connecting, as it decides the connection url
+        a.fetchSize = Integer.getInteger("reports.fetchSize", 0);
+
+        // -Dreports.parallel=true runs the report groups concurrently on a connection pool
+        boolean parallel = Boolean.getBoolean("reports.parallel");
+        String location = args.length < 1 ? "localhost:3308" : "db:3306";
+        int delay = args.length < 1 ? 0 : 3000;
+        // -Dreports.export=true saves the database to ./snapshot/world.bin, or the file
+        // named by -Dreports.snapshotFile, for -Dreports.source=file to start from
+        java.nio.file.Path snapshotFile = java.nio.file.Path.of(
+                System.getProperty("reports.snapshotFile", SnapshotFile.DEFAULT.toString()));
+        if (Boolean.getBoolean("reports.export")) {
+            a.connect(location, delay);
+            a.exportSnapshot(snapshotFile);
+            a.disconnect();
+            return;
+        }
+
+        // -Dreports.source=dump answers every report from db/world.sql without a database,
+        // or from the file named by -Dreports.dump
+        String source = System.getProperty("reports.source", "sql");
+        // -Dreports.checkStale=true re-exports the snapshot file first if the database has changed
+        boolean checkStale = "file".equals(source) && Boolean.getBoolean("reports.checkStale");
+        boolean offline = ("dump".equals(source) || "file".equals(source)) && !checkStale;
+        if (!offline) {
+            if (parallel) {
+                a.connectPool(location, delay, REPORT_GROUPS);
+            } else {
+                a.connect(location, delay);
+            }
+        }
+
+        // -Dreports.source=snapshot answers every report from an in-memory copy of the database
+        WorldSnapshot snapshot = null;
+        if ("dump".equals(source)) {
+            snapshot = a.loadDump(System.getProperty("reports.dump", "db/world.sql"));
+            if (snapshot == null) {
+                return;
+            }
+        } else if ("file".equals(source)) {
+            // -Dreports.source=file answers every report from the snapshot file
+            snapshot = a.loadSnapshotFile(snapshotFile, checkStale);
+            if (snapshot == null) {
+                a.disconnect();
+                return;
+            }
+        } else if ("snapshot".equals(source)) {
+            snapshot = a.loadSnapshot();
+        }
+
+        // -Dreports.consoleRows=N prints at most N rows of each table, and 0 only counts them;
+        // report files always hold every row
+        ConsoleTable.setRowLimit(Math.max(0, Integer.getInteger("reports.consoleRows", ConsoleTable.UNLIMITED)));
+
+        // -Dreports.statementCache=N keeps up to N prepared statements open on each connection,
+        // and 0 prepares every query afresh
+        StatementCache.setCapacity(Math.max(0, Integer.getInteger("reports.statementCache", StatementCache.DEFAULT_CAPACITY)));
+
+        // -Dreports.sharedScans=false runs a separate query for every report
+        a.sharedScans = snapshot == null && a.fetchSize == 0
+                && Boolean.parseBoolean(System.getProperty("reports.sharedScans", "true"));
+
+        // Results are cached for ten minutes, up to 256 queries or 32 MB
+        if (snapshot == null) {
+            a.cache = new QueryCache(10 * 60 * 1000, 256, 32L * 1024 * 1024);
         }
 
         // Create report instances
-        CityReport cityReport = new CityReport(a.con);
-        CapitalCityReport capitalReport = new CapitalCityReport(a.con);
-        CountryReport PrintCountry = new CountryReport(a.con);
-        LanguageReport languageReport = new LanguageReport(a.con);
-        UrbanReport urbanReport = new UrbanReport();
+        CityReport cityReport = new CityReport(a.con, snapshot);
+        CapitalCityReport capitalReport = new CapitalCityReport(a.con, snapshot);
+        CountryReport PrintCountry = new CountryReport(a.con, snapshot);
+        LanguageReport languageReport = new LanguageReport(a.con, snapshot);
+        UrbanReport urbanReport = new UrbanReport(true);
+        cityReport.setCache(a.cache);
+        capitalReport.setCache(a.cache);
+        PrintCountry.setCache(a.cache);
+        languageReport.setCache(a.cache);
+        cityReport.setMetrics(a.metrics);
+        capitalReport.setMetrics(a.metrics);
+        PrintCountry.setMetrics(a.metrics);
+        languageReport.setMetrics(a.metrics);
+        urbanReport.setMetrics(a.metrics);
+        if (snapshot != null) {
+            // Urbanisation figures are looked up in a tree of precomputed totals, and the
+            // city listings of an area walk the same tree
+            GeographyTree geography = new GeographyTree(snapshot);
+            urbanReport.setGeography(geography);
+            cityReport.setGeography(geography);
+            a.rangeReport = new PopulationRangeReport(snapshot);
+            a.rangeReport.setMetrics(a.metrics);
+        }
+
+        // -Dreports.serve=true answers the reports over HTTP on the loopback interface until
+        // the process is stopped, on the port named by -Dreports.port; the metrics are read
+        // from GET /metrics rather than written to -Dreports.metrics
+        if (Boolean.getBoolean("reports.serve")) {
+            ReportServer server = new ReportServer(cityReport, capitalReport, PrintCountry, languageReport,
+                    urbanReport, a.con);
+            server.setMetrics(a.metrics);
+            try {
+                InetSocketAddress address = server.start(Integer.getInteger("reports.port", ReportServer.DEFAULT_PORT));
+                System.out.println("Serving reports at http://" + address.getHostString() + ":" + address.getPort() + "/");
+                Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+                server.await();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                System.out.println("Failed to start report server");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            a.disconnect();
+            return;
+        }
 
         //run the reports
-        a.runReports(cityReport,capitalReport,PrintCountry, languageReport, urbanReport);
+        if (parallel) {
+            a.runReportsParallel(snapshot);
+        } else {
+            a.runReports(cityReport,capitalReport,PrintCountry, languageReport, urbanReport);
+        }
 
 
+        // -Dreports.metrics=file writes the latency, rows and bytes of every report as JSON
+        String metricsFile = System.getProperty("reports.metrics");
+        if (metricsFile != null) {
+            a.metrics.writeJson(metricsFile);
+        }
+
         // Disconnect from database
         a.disconnect();
     }
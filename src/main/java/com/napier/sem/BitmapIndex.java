@@ -0,0 +1,125 @@
+package com.napier.sem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitmap indexes over the city rows of a snapshot, so compound filters such as
+ * "capital cities in Europe whose country has Spanish as an official language"
+ * are AND and OR operations over 64-bit words rather than joins.
+ * <p>
+ * There is a RowBitmap for every continent, region, country and district name, one
+ * for capital cities and one for each official language. Names are matched ignoring
+ * case, a district is every district of that name, as the district reports filter,
+ * and cities of an unknown country are in no bitmap.
+ * </p>
+ */
+public class BitmapIndex {
+
+    private final CityTable cities;
+
+    // city rows of each partition, indexed by Scope ordinal then partition
+    private final RowBitmap[][] partitions;
+
+    private final RowBitmap capitals;
+
+    // city rows whose country has each official language
+    private final Map<String, RowBitmap> officialLanguages = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * Builds the indexes from the tables of a snapshot.
+     *
+     * @param snapshot the snapshot whose cities are indexed
+     */
+    public BitmapIndex(WorldSnapshot snapshot) {
+        cities = snapshot.cityTable();
+        int rows = cities.size();
+
+        // Laid out in row order, each partition is a run of ascending rows
+        int[] ascending = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            ascending[row] = row;
+        }
+        ScopeLayout[] layouts = ScopeLayout.ofCities(cities, ascending);
+        partitions = new RowBitmap[layouts.length][];
+        for (int level = 0; level < layouts.length; level++) {
+            ScopeLayout layout = layouts[level];
+            RowBitmap[] bitmaps = new RowBitmap[layout.start.length - 1];
+            for (int p = 0; p < bitmaps.length; p++) {
+                bitmaps[p] = RowBitmap.ofSorted(layout.order, layout.start[p], layout.start[p + 1]);
+            }
+            partitions[level] = bitmaps;
+        }
+
+        capitals = cities.capitals;
+
+        Map<String, boolean[]> officialCountries = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < snapshot.language.length; i++) {
+            if (snapshot.official[i] && snapshot.languageCountry[i] >= 0) {
+                officialCountries.computeIfAbsent(snapshot.language[i],
+                        k -> new boolean[snapshot.countryTable().size()])[snapshot.languageCountry[i]] = true;
+            }
+        }
+        int[] matched = new int[rows];
+        for (Map.Entry<String, boolean[]> entry : officialCountries.entrySet()) {
+            boolean[] countries = entry.getValue();
+            int n = 0;
+            for (int row = 0; row < rows; row++) {
+                int country = cities.country[row];
+                if (country >= 0 && countries[country]) {
+                    matched[n++] = row;
+                }
+            }
+            officialLanguages.put(entry.getKey(), RowBitmap.ofSorted(matched, 0, n));
+        }
+    }
+
+    /**
+     * @param scope the geographic level of the area
+     * @param key   the continent, region, country or district name; ignored for WORLD
+     * @return The cities of the area.
+     */
+    public RowBitmap cities(Scope scope, String key) {
+        int partition = ScopeLayout.partition(cities, scope, key);
+        return partition < 0 ? RowBitmap.EMPTY : partitions[scope.ordinal()][partition];
+    }
+
+    /**
+     * @return The cities that are the capital of their country.
+     */
+    public RowBitmap capitals() {
+        return capitals;
+    }
+
+    /**
+     * @param language the language name
+     * @return The cities whose country has the language as an official language.
+     */
+    public RowBitmap officialLanguage(String language) {
+        return officialLanguages.getOrDefault(language, RowBitmap.EMPTY);
+    }
+
+    /**
+     * Creates the City objects of some rows, ordered by population descending as the reports order them.
+     *
+     * @param rows  the city rows
+     * @param limit the maximum number of cities to return
+     * @return A list of cities with their ID and capital flag set.
+     */
+    public ArrayList<City> select(RowBitmap rows, int limit) {
+        int[] selected = rows.rows();
+        long[] keys = new long[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            keys[i] = ((long) (Integer.MAX_VALUE - cities.population[selected[i]]) << 32) | selected[i];
+        }
+        Arrays.sort(keys);
+        int n = Math.min(Math.max(limit, 0), keys.length);
+        ArrayList<City> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(cities.city((int) keys[i]));
+        }
+        return list;
+    }
+}
@@ -1,10 +1,11 @@
 package com.napier.sem;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The CapitalCityReport class is responsible for retrieving and displaying
@@ -13,6 +14,26 @@ import java.sql.PreparedStatement;
 public class CapitalCityReport {
     private Connection con;
 
+    /**
+     * In-memory copy of the world database; when set, queries are answered from it instead of SQL.
+     */
+    private WorldSnapshot snapshot;
+
+    /**
+     * Cache of query results; when set, repeated queries are answered from it.
+     */
+    private QueryCache cache;
+
+    /**
+     * Records the size of each report file written; null to record nothing.
+     */
+    private MetricsRegistry metrics;
+
+    /**
+     * Bitmap indexes over the snapshot's cities, built the first time a compound filter is asked for.
+     */
+    private BitmapIndex bitmaps;
+
     /**
      * Constructor to inject database connection.
      *
@@ -22,12 +43,44 @@ public class CapitalCityReport {
         this.con = con;
     }
 
+    /**
+     * Constructor to inject a database connection and an in-memory snapshot.
+     *
+     * @param con      the active database connection
+     * @param snapshot the snapshot to answer queries from, or null to use live SQL
+     */
+    public CapitalCityReport(Connection con, WorldSnapshot snapshot) {
+        this.con = con;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Sets the cache that query results are kept in, or null to always query the database.
+     *
+     * @param cache the shared query cache
+     */
+    public void setCache(QueryCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the registry that report file sizes are recorded in.
+     *
+     * @param metrics the metrics registry, or null to record nothing
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Retrieves all capital cities in the world, ordered by population descending.
      *
      * @return A list of all capital cities.
      */
     public ArrayList<City> getAllCapitalCities() {
+        if (snapshot != null) {
+            return snapshot.capitalCities(Scope.WORLD, null, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
@@ -37,7 +90,51 @@ public class CapitalCityReport {
                 JOIN city ON country.Capital = city.ID
                 ORDER BY city.Population DESC
                 """;
-        return executeCapitalCityQuery(sql);
+        return executeCapitalCityQuery(Query.of(sql));
+    }
+
+    /**
+     * Retrieves a page of the capital cities of the world or of a continent, region or country,
+     * ordered by population descending and then by city ID.
+     * <p>
+     * A page seeks past the last capital of the page before it on (Population, ID), as
+     * CityReport.citiesPage does, so every page costs about the same as the first.
+     * </p>
+     *
+     * @param scope    the geographic level to filter by; not DISTRICT
+     * @param key      the continent, region or country name; ignored for WORLD
+     * @param cursor   the Next cursor of the previous page, or null for the first page
+     * @param pageSize the maximum number of capital cities on the page
+     * @return The page, with the ID of each capital set, or null if the query failed.
+     * @throws IllegalArgumentException if the scope is DISTRICT, pageSize is less than 1 or
+     *                                  the cursor is not from a capital city page
+     */
+    public Page<City> capitalCitiesPage(Scope scope, String key, String cursor, int pageSize) {
+        if (snapshot != null) {
+            return snapshot.pages().capitalCities(scope, key, cursor, pageSize);
+        }
+        String column = PageCursor.countryColumn(scope);
+        PageCursor.checkPageSize(pageSize);
+        PageCursor after = PageCursor.decode(PageCursor.CAPITALS, cursor);
+        String sql = """
+                SELECT city.ID AS ID, city.Name AS CapitalCity, country.Name AS Country, city.Population AS Population
+                FROM country
+                JOIN city ON country.Capital = city.ID
+                %s
+                ORDER BY city.Population DESC, city.ID
+                LIMIT ?
+                """.formatted(PageCursor.where(column == null ? null : "country." + column + " = ?",
+                after == null ? null : "(city.Population < ? OR (city.Population = ? AND city.ID > ?))"));
+        Query query = Query.of(sql);
+        if (column != null) {
+            query.string(key);
+        }
+        if (after != null) {
+            query.integer(after.population).integer(after.population).integer(after.id());
+        }
+        query.integer(PageCursor.fetchSize(pageSize));
+        return PageCursor.cityPage(PageCursor.CAPITALS, query.list(con, cache, RowMappers.CAPITAL_CITY_WITH_ID,
+                "Failed to execute capital city query."), pageSize);
     }
 
     /**
@@ -47,6 +144,9 @@ public class CapitalCityReport {
      * @return A list of capital cities in that continent.
      */
     public ArrayList<City> getCapitalCitiesByContinent(String continent) {
+        if (snapshot != null) {
+            return snapshot.capitalCities(Scope.CONTINENT, continent, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
@@ -57,7 +157,7 @@ public class CapitalCityReport {
                 WHERE country.Continent = ?
                 ORDER BY city.Population DESC
                 """;
-        return executeCapitalCityQuery(sql, continent);
+        return executeCapitalCityQuery(Query.of(sql).string(continent));
     }
 
     /**
@@ -67,6 +167,9 @@ public class CapitalCityReport {
      * @return A list of capital cities in that region.
      */
     public ArrayList<City> getCapitalCitiesByRegion(String region) {
+        if (snapshot != null) {
+            return snapshot.capitalCities(Scope.REGION, region, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
@@ -77,7 +180,42 @@ public class CapitalCityReport {
                 WHERE country.Region = ?
                 ORDER BY city.Population DESC
                 """;
-        return executeCapitalCityQuery(sql, region);
+        return executeCapitalCityQuery(Query.of(sql).string(region));
+    }
+
+    /**
+     * Retrieves the capital cities in a continent whose country has a language as an official language.
+     *
+     * @param continent The name of the continent.
+     * @param language  The name of the language.
+     * @return A list of capital cities ordered by population descending.
+     */
+    public ArrayList<City> getCapitalCitiesByContinentAndOfficialLanguage(String continent, String language) {
+        if (snapshot != null) {
+            BitmapIndex index = bitmaps();
+            return index.select(index.capitals()
+                    .and(index.cities(Scope.CONTINENT, continent))
+                    .and(index.officialLanguage(language)), Integer.MAX_VALUE);
+        }
+        if (con == null) {
+            return new ArrayList<>(); // Return empty list, not null
+        }
+        String sql = """
+                SELECT city.Name AS CapitalCity, country.Name AS Country, city.Population AS Population
+                FROM country
+                JOIN city ON country.Capital = city.ID
+                JOIN countrylanguage ON countrylanguage.CountryCode = country.Code
+                WHERE country.Continent = ? AND countrylanguage.Language = ? AND countrylanguage.IsOfficial = 'T'
+                ORDER BY city.Population DESC
+                """;
+        return executeCapitalCityQuery(Query.of(sql).string(continent).string(language));
+    }
+
+    private synchronized BitmapIndex bitmaps() {
+        if (bitmaps == null) {
+            bitmaps = new BitmapIndex(snapshot);
+        }
+        return bitmaps;
     }
 
 
@@ -89,6 +227,9 @@ public class CapitalCityReport {
      */
     public ArrayList<City> getTopNCapitalCities(int n) {
         if (n <= 0) return new ArrayList<>();
+        if (snapshot != null) {
+            return snapshot.capitalCities(Scope.WORLD, null, n);
+        }
         String sql = """
         SELECT city.Name AS CapitalCity, country.Name AS Country, city.Population AS Population
         FROM country
@@ -96,7 +237,7 @@ public class CapitalCityReport {
         ORDER BY city.Population DESC
         LIMIT ?
         """;
-        return executeCapitalCityQuery(sql, n); // Need another overload accepting only LIMIT
+        return executeCapitalCityQuery(Query.of(sql).integer(n));
     }
 
     /**
@@ -107,6 +248,9 @@ public class CapitalCityReport {
      * @return A list of capital cities
      */
     public ArrayList<City> getTopNCapitalCitiesByContinent(String continent, int n) {
+        if (snapshot != null) {
+            return snapshot.capitalCities(Scope.CONTINENT, continent, n);
+        }
         String sql = """
             SELECT city.Name AS CapitalCity, country.Name AS Country, city.Population AS Population
             FROM country
@@ -115,7 +259,7 @@ public class CapitalCityReport {
             ORDER BY city.Population DESC
             LIMIT ?
             """;
-        return executeCapitalCityQuery(sql, continent, n);
+        return executeCapitalCityQuery(Query.of(sql).string(continent).integer(n));
     }
 
 
@@ -128,6 +272,9 @@ public class CapitalCityReport {
      * @return A list of capital cities
      */
     public ArrayList<City> getTopNCapitalCitiesByRegion(String region, int n) {
+        if (snapshot != null) {
+            return snapshot.capitalCities(Scope.REGION, region, n);
+        }
         String sql = """
             SELECT city.Name AS CapitalCity, country.Name AS Country, city.Population AS Population
             FROM country
@@ -136,106 +283,52 @@ public class CapitalCityReport {
             ORDER BY city.Population DESC
             LIMIT ?
             """;
-        return executeCapitalCityQuery(sql, region, n);
+        return executeCapitalCityQuery(Query.of(sql).string(region).integer(n));
     }
 
 
     /**
-     * Executes SQL queries and maps results to City objects.
+     * Retrieves the top N populated capital cities of several continents in a single query.
      *
-     * @param sql    The SQL query to execute.
-     * @param params Optional query parameters.
-     * @return A list of City objects.
+     * @param continents The continents to include, or null for every continent
+     * @param n The number of cities to return for each continent
+     * @return The capital cities of each continent keyed by continent name, or null on failure.
      */
-    private ArrayList<City> executeCapitalCityQuery(String sql, String... params) {
-        ArrayList<City> cities = new ArrayList<>();
-
-        if (con == null) return cities;
-
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-            // Bind parameters if provided
-            for (int i = 0; i < params.length; i++) {
-                pstmt.setString(i + 1, params[i]);
-            }
-
-            ResultSet rset = pstmt.executeQuery();
-
-            while (rset.next()) {
-                City city = new City();
-                city.Name = rset.getString("CapitalCity");
-                city.Country = rset.getString("Country");
-                city.Population = rset.getInt("Population");
-                cities.add(city);
-            }
-
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Failed to execute capital city query.");
-            return null;
-        }
-
-        return cities;
+    public Map<String, List<City>> getTopNCapitalCitiesPerContinent(Collection<String> continents, int n) {
+        return getTopNCapitalCitiesPerGroup(Scope.CONTINENT, "country.Continent", continents, n);
     }
 
     /**
-     * Executes SQL queries and maps results to City objects.
+     * Retrieves the top N populated capital cities of several regions in a single query.
      *
-     * @param sql    The SQL query to execute.
-     * @param params Optional query parameters.
-     * @return A list of City objects.
+     * @param regions The regions to include, or null for every region
+     * @param n The number of cities to return for each region
+     * @return The capital cities of each region keyed by region name, or null on failure.
      */
-    private ArrayList<City> executeCapitalCityQuery(String sql, String params, int limit) {
-        ArrayList<City> cities = new ArrayList<>();
-
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-
-            pstmt.setString(1, params);  // e.g., continent or region
-            pstmt.setInt(2, limit);     // the LIMIT parameter
-
-            ResultSet rset = pstmt.executeQuery();
-
-            while (rset.next()) {
-                City city = new City();
-                city.Name = rset.getString("CapitalCity");
-                city.Country = rset.getString("Country");
-                city.Population = rset.getInt("Population");
-                cities.add(city);
-            }
-
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Failed to execute capital city query.");
-            return null;
-        }
-
-        return cities;
+    public Map<String, List<City>> getTopNCapitalCitiesPerRegion(Collection<String> regions, int n) {
+        return getTopNCapitalCitiesPerGroup(Scope.REGION, "country.Region", regions, n);
     }
 
-    private ArrayList<City> executeCapitalCityQuery(String sql, int limit) {
-        ArrayList<City> cities = new ArrayList<>();
-
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-            pstmt.setInt(1, limit);  // Bind the LIMIT parameter
-
-            ResultSet rset = pstmt.executeQuery();
-
-            while (rset.next()) {
-                City city = new City();
-                city.Name = rset.getString("CapitalCity");
-                city.Country = rset.getString("Country");
-                city.Population = rset.getInt("Population");
-                cities.add(city);
-            }
-
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Failed to execute capital city query.");
-            return null;
+    private Map<String, List<City>> getTopNCapitalCitiesPerGroup(Scope scope, String column, Collection<String> keys, int n) {
+        if (snapshot != null) {
+            return snapshot.capitalCitiesPerGroup(scope, keys, n);
         }
-
-        return cities;
+        String sql = TopNPerGroup.sql(
+                "city.Name AS CapitalCity, country.Name AS Country, city.Population AS Population",
+                "FROM country JOIN city ON country.Capital = city.ID",
+                column, "city.Population DESC, city.ID", keys == null ? 0 : keys.size());
+        return TopNPerGroup.run(con, sql, keys, n, RowMappers.CAPITAL_CITY);
     }
 
+    /**
+     * Runs a capital city query through the cache, if one is set.
+     *
+     * @param query The SQL query and its parameters.
+     * @return A list of City objects, or null if the query failed.
+     */
+    private ArrayList<City> executeCapitalCityQuery(Query query) {
+        return query.list(con, cache, RowMappers.CAPITAL_CITY, "Failed to execute capital city query.");
+    }
 
     /**
      * Prints a formatted list of capital cities.
@@ -249,18 +342,23 @@ public class CapitalCityReport {
         }
 
         // Table header
-        System.out.printf("%-30s %-25s %15s%n",
-                "Capital City", "Country", "Population");
-        System.out.println("-----------------------------------------------------------------------");
-
-        // Print rows
+        ConsoleTable table = ConsoleTable.open();
+        StringBuilder text = table.text();
+        TextFormat.left(text, "Capital City", 30).append(' ');
+        TextFormat.left(text, "Country", 25).append(' ');
+        TextFormat.right(text, "Population", 15).append(System.lineSeparator());
+        text.append("-----------------------------------------------------------------------").append(System.lineSeparator());
+
+        // Render rows, then print the table in one go
         for (City city : cities) {
-            if (city == null)
+            if (city == null || table.skipRow())
                 continue;
 
-            System.out.printf("%-30s %-25s %,15d%n",
-                    city.Name, city.Country, city.Population);
+            TextFormat.left(text, city.Name, 30).append(' ');
+            TextFormat.left(text, city.Country, 25).append(' ');
+            TextFormat.grouped(text, city.Population, 15).append(System.lineSeparator());
         }
+        table.print();
     }
 
     /**
@@ -275,29 +373,24 @@ public class CapitalCityReport {
             return;
         }
 
-        StringBuilder sb = new StringBuilder();
-        // Markdown table header
-        sb.append("| Capital City | Country | Population |\r\n");
-        sb.append("| --- | --- | --- |\r\n");
-
-        // Loop through all capital cities
-        for (City capital : capitals) {
-            if (capital == null) continue;
-            sb.append("| ")
-                    .append(capital.Name).append(" | ")
-                    .append(capital.Country).append(" | ")
-                    .append(capital.Population).append(" |\r\n");
-        }
-
-        try {
-            // Create reports folder if it does not exist
-            new java.io.File("./reports/").mkdirs();
-
-            // Write Markdown to file
-            java.io.BufferedWriter writer = new java.io.BufferedWriter(
-                    new java.io.FileWriter("./reports/" + filename));
-            writer.write(sb.toString());
-            writer.close();
+        // Write Markdown straight to the file, creating the reports folder if it does not exist
+        try (ReportSink sink = ReportSink.open(filename)) {
+            // Markdown table header
+            sink.append("| Capital City | Country | Population |\r\n");
+            sink.append("| --- | --- | --- |\r\n");
+
+            // Loop through all capital cities
+            for (City capital : capitals) {
+                if (capital == null) continue;
+                sink.append("| ")
+                        .append(capital.Name).append(" | ")
+                        .append(capital.Country).append(" | ")
+                        .append(capital.Population).append(" |\r\n");
+            }
+            sink.commit();
+            if (metrics != null) {
+                metrics.recordFileWritten(filename);
+            }
             System.out.println("Capital cities report written to ./reports/" + filename);
         } catch (java.io.IOException e) {
             e.printStackTrace();
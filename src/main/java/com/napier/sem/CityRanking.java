@@ -0,0 +1,107 @@
+package com.napier.sem;
+
+import java.util.Arrays;
+
+/**
+ * Answers where a city ranks by population within its continent, region, country,
+ * district or the world, and which city holds a given rank.
+ * <p>
+ * For each level, cities are laid out partition by partition, each partition ordered
+ * by population descending as the reports order them. A city's rank is its position
+ * in that layout minus the start of its partition, so both questions are array
+ * lookups after an O(log n) search for the city ID. Names are matched ignoring case,
+ * and a district is every district of that name, as the district reports filter.
+ * </p>
+ */
+public class CityRanking {
+
+    private final CityTable cities;
+
+    // city IDs in ascending order and the row of each
+    private final long[] rowsById;
+
+    // cities laid out for each level, indexed by Scope ordinal
+    final ScopeLayout[] layouts;
+
+    /**
+     * Builds the ranking from the tables of a snapshot.
+     *
+     * @param snapshot the snapshot whose cities are ranked
+     */
+    public CityRanking(WorldSnapshot snapshot) {
+        cities = snapshot.cityTable();
+        int rows = cities.size();
+
+        rowsById = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            rowsById[row] = ((long) cities.id[row] << 32) | row;
+        }
+        Arrays.sort(rowsById);
+
+        layouts = ScopeLayout.ofCities(cities, snapshot.citiesByPopulation);
+    }
+
+    /**
+     * Finds the rank of a city by population within one of its own areas.
+     *
+     * @param cityId the ID of the city in the database
+     * @param scope  the area to rank within: the world or the city's continent, region, country or district
+     * @return The rank, 1 for the most populated, or -1 if the city is not known.
+     */
+    public int rankOf(int cityId, Scope scope) {
+        int row = row(cityId);
+        if (row < 0) {
+            return -1;
+        }
+        ScopeLayout layout = layouts[scope.ordinal()];
+        int partition = layout.partitionOf[row];
+        return partition < 0 ? -1 : layout.position[row] - layout.start[partition] + 1;
+    }
+
+    /**
+     * Finds the city holding a rank by population within an area.
+     *
+     * @param scope the level of the area
+     * @param key   the continent, region, country or district name; ignored for WORLD
+     * @param k     the rank, 1 for the most populated
+     * @return The city with its ID set, or null if the area has fewer than k cities.
+     */
+    public City cityAtRank(Scope scope, String key, int k) {
+        ScopeLayout layout = layouts[scope.ordinal()];
+        int partition = ScopeLayout.partition(cities, scope, key);
+        if (partition < 0 || k < 1 || k > layout.size(partition)) {
+            return null;
+        }
+        return cities.city(layout.order[layout.start[partition] + k - 1]);
+    }
+
+    /**
+     * @param scope the level of the area
+     * @param key   the continent, region, country or district name; ignored for WORLD
+     * @return The number of cities in the area.
+     */
+    public int size(Scope scope, String key) {
+        int partition = ScopeLayout.partition(cities, scope, key);
+        return partition < 0 ? 0 : layouts[scope.ordinal()].size(partition);
+    }
+
+    /**
+     * @return The row of a city ID, or -1 if it is not known.
+     */
+    private int row(int cityId) {
+        int low = 0;
+        int high = rowsById.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = (int) (rowsById[mid] >> 32);
+            if (id < cityId) {
+                low = mid + 1;
+            } else if (id > cityId) {
+                high = mid - 1;
+            } else {
+                return (int) rowsById[mid];
+            }
+        }
+        return -1;
+    }
+}
@@ -4,6 +4,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The CityReport class is responsible for retrieving and displaying
@@ -12,6 +15,31 @@ import java.util.ArrayList;
 public class CityReport {
     private Connection con;
 
+    /**
+     * In-memory copy of the world database; when set, queries are answered from it instead of SQL.
+     */
+    private WorldSnapshot snapshot;
+
+    /**
+     * Cache of query results; when set, repeated queries are answered from it.
+     */
+    private QueryCache cache;
+
+    /**
+     * Records the size of each report file written; null to record nothing.
+     */
+    private MetricsRegistry metrics;
+
+    /**
+     * Population ranks of the snapshot's cities, built on first use.
+     */
+    private CityRanking ranking;
+
+    /**
+     * Tree of the snapshot that area listings walk; null to filter the whole snapshot.
+     */
+    private GeographyTree geography;
+
     /**
      * Constructor to inject database connection.
      *
@@ -21,22 +49,75 @@ public class CityReport {
         this.con = con;
     }
 
+    /**
+     * Constructor to inject a database connection and an in-memory snapshot.
+     *
+     * @param con      the active database connection
+     * @param snapshot the snapshot to answer queries from, or null to use live SQL
+     */
+    public CityReport(Connection con, WorldSnapshot snapshot) {
+        this.con = con;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Sets the cache that query results are kept in, or null to always query the database.
+     *
+     * @param cache the shared query cache
+     */
+    public void setCache(QueryCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the geography tree that the city listings of a continent, region, country or
+     * district walk, visiting only the cities of that area.
+     *
+     * @param geography the tree of the snapshot, or null to filter the whole snapshot
+     */
+    public void setGeography(GeographyTree geography) {
+        this.geography = geography;
+    }
+
+    /**
+     * Sets the registry that report file sizes are recorded in.
+     *
+     * @param metrics the metrics registry, or null to record nothing
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Lists cities from the snapshot, walking the geography tree for an area when one is set.
+     * The world is listed from the snapshot's own population order, which is already complete.
+     */
+    private ArrayList<City> snapshotCities(Scope scope, String key, int limit) {
+        if (geography != null && scope != Scope.WORLD) {
+            return geography.cities(scope, key, limit);
+        }
+        return snapshot.cities(scope, key, limit);
+    }
+
     /**
      * Retrieves all cities in the world, ordered by population descending.
      *
      * @return A list of all cities.
      */
     public ArrayList<City> printAllCities() {
+        if (snapshot != null) {
+            return snapshot.cities(Scope.WORLD, null, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
         String sql = """
-                SELECT city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
                 FROM city
                 JOIN country ON city.CountryCode = country.Code
                 ORDER BY city.Population DESC
                 """;
-        return executeCityQuery(sql);
+        return executeCityQuery(Query.of(sql));
     }
 
     /**
@@ -45,17 +126,20 @@ public class CityReport {
      * @return A list of all cities in a continent.
      */
     public ArrayList<City> printCitiesByContinent(String continent) {
+        if (snapshot != null) {
+            return snapshotCities(Scope.CONTINENT, continent, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
         String sql = """
-                SELECT city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
                 FROM city
                 JOIN country ON city.CountryCode = country.Code
                 WHERE country.Continent = ?
                 ORDER BY city.Population DESC
                 """;
-        return executeCityQuery(sql, continent);
+        return executeCityQuery(Query.of(sql).string(continent));
     }
 
     /**
@@ -64,17 +148,20 @@ public class CityReport {
      * @return A list of all cities in a region.
      */
     public ArrayList<City> printCitiesByRegion(String region) {
+        if (snapshot != null) {
+            return snapshotCities(Scope.REGION, region, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
         String sql = """
-                SELECT city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
                 FROM city
                 JOIN country ON city.CountryCode = country.Code
                 WHERE country.Region = ?
                 ORDER BY city.Population DESC
                 """;
-        return executeCityQuery(sql, region);
+        return executeCityQuery(Query.of(sql).string(region));
     }
 
     /**
@@ -83,17 +170,65 @@ public class CityReport {
      * @return A list of all cities in a district.
      */
     public ArrayList<City> printCitiesByDistrict(String district) {
+        if (snapshot != null) {
+            return snapshotCities(Scope.DISTRICT, district, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
         String sql = """
-                SELECT city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
                 FROM city
                 JOIN country ON city.CountryCode = country.Code
                 WHERE city.District = ?
                 ORDER BY city.Population DESC
                 """;
-        return executeCityQuery(sql, district);
+        return executeCityQuery(Query.of(sql).string(district));
+    }
+
+    /**
+     * Retrieves a page of the cities of the world or of a continent, region, country or district,
+     * ordered by population descending and then by ID.
+     * <p>
+     * A page seeks past the last city of the page before it on (Population, ID) instead of
+     * skipping rows with OFFSET, so every page costs about the same as the first. The
+     * (Population DESC, ID) index on city matches the mixed-direction order, so MySQL 8
+     * reads a page straight from the index without sorting. Cursors
+     * carry no row numbers, so one handed out by a snapshot page works against the database
+     * and back.
+     * </p>
+     *
+     * @param scope    the geographic level to filter by
+     * @param key      the continent, region, country or district name; ignored for WORLD
+     * @param cursor   the Next cursor of the previous page, or null for the first page
+     * @param pageSize the maximum number of cities on the page
+     * @return The page, or null if the query failed.
+     * @throws IllegalArgumentException if pageSize is less than 1 or the cursor is not from a city page
+     */
+    public Page<City> citiesPage(Scope scope, String key, String cursor, int pageSize) {
+        if (snapshot != null) {
+            return snapshot.pages().cities(scope, key, cursor, pageSize);
+        }
+        PageCursor.checkPageSize(pageSize);
+        PageCursor after = PageCursor.decode(PageCursor.CITIES, cursor);
+        String sql = """
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                FROM city
+                JOIN country ON city.CountryCode = country.Code
+                %s
+                ORDER BY city.Population DESC, city.ID
+                LIMIT ?
+                """.formatted(PageCursor.where(scope == Scope.WORLD ? null : column(scope) + " = ?",
+                after == null ? null : "(city.Population < ? OR (city.Population = ? AND city.ID > ?))"));
+        Query query = Query.of(sql);
+        if (scope != Scope.WORLD) {
+            query.string(key);
+        }
+        if (after != null) {
+            query.integer(after.population).integer(after.population).integer(after.id());
+        }
+        query.integer(PageCursor.fetchSize(pageSize));
+        return PageCursor.cityPage(PageCursor.CITIES, executeCityQuery(query), pageSize);
     }
 
     /**
@@ -102,14 +237,17 @@ public class CityReport {
      * @return A list of all Top N cities.
      */
     public ArrayList<City> getTopNCitiesInWorld(int n) {
+        if (snapshot != null) {
+            return snapshot.cities(Scope.WORLD, null, n);
+        }
         String sql = """
-                SELECT city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
                 FROM city
                 JOIN country ON city.CountryCode = country.Code
                 ORDER BY city.Population DESC
                 LIMIT ?
                 """;
-        return executeCityQuery(sql, n);
+        return executeCityQuery(Query.of(sql).integer(n));
     }
 
     /**
@@ -118,15 +256,18 @@ public class CityReport {
      * @return A list of all Top N cities in a contient.
      */
     public ArrayList<City> getTopNCitiesByContinent(String continent, int n) {
+        if (snapshot != null) {
+            return snapshotCities(Scope.CONTINENT, continent, n);
+        }
         String sql = """
-                SELECT city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
                 FROM city
                 JOIN country ON city.CountryCode = country.Code
                 WHERE country.Continent = ?
                 ORDER BY city.Population DESC
                 LIMIT ?
                 """;
-        return executeCityQuery(sql, continent, n);
+        return executeCityQuery(Query.of(sql).string(continent).integer(n));
     }
 
     /**
@@ -135,137 +276,273 @@ public class CityReport {
      * @return A list of all Top N cities in a region.
      */
     public ArrayList<City> getTopNCitiesByRegion(String region, int n) {
+        if (snapshot != null) {
+            return snapshotCities(Scope.REGION, region, n);
+        }
         String sql = """
-                SELECT city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
                 FROM city
                 JOIN country ON city.CountryCode = country.Code
                 WHERE country.Region = ?
                 ORDER BY city.Population DESC
                 LIMIT ?
                 """;
-        return executeCityQuery(sql,region, n);
+        return executeCityQuery(Query.of(sql).string(region).integer(n));
     }
 
     public ArrayList<City> getTopNCitiesByDistrict(String district, int n) {
+        if (snapshot != null) {
+            return snapshotCities(Scope.DISTRICT, district, n);
+        }
         String sql = """
-                SELECT city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
                 FROM city
                 JOIN country ON city.CountryCode = country.Code
                 WHERE city.District = ?
                 ORDER BY city.Population DESC
                 LIMIT ?
                 """;
-        return executeCityQuery(sql, district, n);
+        return executeCityQuery(Query.of(sql).string(district).integer(n));
     }
 
     /**
-     * Executes SQL queries and maps results to City objects.
-     *
-     * @param sql    The SQL query to execute.
-     * @param params Optional query parameters.
-     * @return A list of City objects.
+     * Retrieves the top N cities of several continents in a single query.
+     * @param continents The continents to include, or null for every continent
+     * @param n The limit of cities in each continent
+     * @return The top N cities of each continent keyed by continent name, or null on failure.
      */
-    private ArrayList<City> executeCityQuery(String sql, String... params) {
-        ArrayList<City> cities = new ArrayList<>();
+    public Map<String, List<City>> getTopNCitiesPerContinent(Collection<String> continents, int n) {
+        return getTopNCitiesPerGroup(Scope.CONTINENT, "country.Continent", continents, n);
+    }
 
-        if (con == null) return cities;
+    /**
+     * Retrieves the top N cities of several regions in a single query.
+     * @param regions The regions to include, or null for every region
+     * @param n The limit of cities in each region
+     * @return The top N cities of each region keyed by region name, or null on failure.
+     */
+    public Map<String, List<City>> getTopNCitiesPerRegion(Collection<String> regions, int n) {
+        return getTopNCitiesPerGroup(Scope.REGION, "country.Region", regions, n);
+    }
 
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-            // Bind parameters if provided
-            for (int i = 0; i < params.length; i++) {
-                pstmt.setString(i + 1, params[i]);
-            }
+    /**
+     * Retrieves the top N cities of several districts in a single query.
+     * @param districts The districts to include, or null for every district
+     * @param n The limit of cities in each district
+     * @return The top N cities of each district keyed by district name, or null on failure.
+     */
+    public Map<String, List<City>> getTopNCitiesPerDistrict(Collection<String> districts, int n) {
+        return getTopNCitiesPerGroup(Scope.DISTRICT, "city.District", districts, n);
+    }
 
-            ResultSet rset = pstmt.executeQuery();
+    private Map<String, List<City>> getTopNCitiesPerGroup(Scope scope, String column, Collection<String> keys, int n) {
+        if (snapshot != null) {
+            return snapshot.citiesPerGroup(scope, keys, n);
+        }
+        String sql = TopNPerGroup.sql(
+                "city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population",
+                "FROM city JOIN country ON city.CountryCode = country.Code",
+                column, "city.Population DESC, city.ID", keys == null ? 0 : keys.size());
+        return TopNPerGroup.run(con, sql, keys, n, RowMappers.CITY);
+    }
 
-            while (rset.next()) {
-                City city = new City();
-                city.Name = rset.getString("CityName");
-                city.Country = rset.getString("Country");
-                city.District = rset.getString("District");
-                city.Population = rset.getInt("Population");
-                cities.add(city);
+    /**
+     * Finds where a city ranks by population within the world or its own continent,
+     * region, country or district, counting the most populated as 1.
+     *
+     * @param cityId the ID of the city
+     * @param scope  the area to rank within
+     * @return The rank, or -1 if the city is not known or the query failed.
+     */
+    public int rankOf(int cityId, Scope scope) {
+        if (snapshot != null) {
+            return ranking().rankOf(cityId, scope);
+        }
+        String sql = """
+                SELECT CityRank FROM (
+                    SELECT city.ID AS ID,
+                           ROW_NUMBER() OVER (PARTITION BY %s ORDER BY city.Population DESC, city.ID) AS CityRank
+                    FROM city
+                    JOIN country ON city.CountryCode = country.Code
+                ) ranked
+                WHERE ID = ?
+                """.formatted(scope == Scope.WORLD ? "1" : column(scope));
+        try (PreparedStatement pstmt = StatementCache.prepare(con, sql)) {
+            pstmt.setInt(1, cityId);
+            try (ResultSet rset = pstmt.executeQuery()) {
+                return rset.next() ? rset.getInt("CityRank") : -1;
             }
-
         } catch (Exception e) {
             System.out.println(e.getMessage());
-            System.out.println("Failed to execute capital city query.");
-            return null;
+            System.out.println("Failed to execute city rank query.");
+            return -1;
         }
-
-        return cities;
     }
 
     /**
-     * Executes SQL queries and maps results to City objects.
+     * Finds the city holding a rank by population within an area.
      *
-     * @param sql    The SQL query to execute.
-     * @param params Optional query parameters.
-     * @param limit  The limit of objects to be printed
-     * @return A list of City objects.
+     * @param scope the geographic level of the area
+     * @param key   the continent, region, country or district name; ignored for WORLD
+     * @param k     the rank, 1 for the most populated
+     * @return The city, or null if the area has fewer than k cities or the query failed.
      */
-    private ArrayList<City> executeCityQuery(String sql, String params, int limit) {
-        ArrayList<City> cities = new ArrayList<>();
-
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-            pstmt.setString(1, params);  // e.g., continent or region
-            pstmt.setInt(2, limit);     // the LIMIT parameter
-
-            ResultSet rset = pstmt.executeQuery();
-
-            while (rset.next()) {
-                City city = new City();
-                city.Name = rset.getString("CityName");
-                city.Country = rset.getString("Country");
-                city.District = rset.getString("District");
-                city.Population = rset.getInt("Population");
-                cities.add(city);
-            }
-
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Failed to execute capital city query.");
+    public City cityAtRank(Scope scope, String key, int k) {
+        if (snapshot != null) {
+            return ranking().cityAtRank(scope, key, k);
+        }
+        if (k < 1) {
             return null;
         }
+        String sql = """
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                FROM city
+                JOIN country ON city.CountryCode = country.Code
+                %s
+                ORDER BY city.Population DESC, city.ID
+                LIMIT 1 OFFSET ?
+                """.formatted(scope == Scope.WORLD ? "" : "WHERE " + column(scope) + " = ?");
+        Query query = Query.of(sql);
+        if (scope != Scope.WORLD) {
+            query.string(key);
+        }
+        return query.integer(k - 1).first(con, RowMappers.CITY, "Failed to execute city rank query.");
+    }
 
-        return cities;
+    private synchronized CityRanking ranking() {
+        if (ranking == null) {
+            ranking = new CityRanking(snapshot);
+        }
+        return ranking;
     }
 
     /**
-     * Executes SQL queries and maps results to City objects.
-     *
-     * @param sql    The SQL query to execute.
-     * @param limit Optional query parameters.
-     * @return A list of City objects.
+     * @return The column a scope filters cities on.
      */
-    private ArrayList<City> executeCityQuery(String sql, int limit) {
-        ArrayList<City> cities = new ArrayList<>();
-
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-            pstmt.setInt(1, limit);  // Bind the LIMIT parameter
+    private static String column(Scope scope) {
+        switch (scope) {
+            case CONTINENT:
+                return "country.Continent";
+            case REGION:
+                return "country.Region";
+            case COUNTRY:
+                return "country.Name";
+            case DISTRICT:
+                return "city.District";
+            default:
+                throw new IllegalArgumentException("Cannot filter cities by " + scope);
+        }
+    }
 
+    /**
+     * Streams every city of a continent, region, country or district, ordered by population
+     * descending, to the console and to a Markdown file without holding the rows in memory.
+     * <p>
+     * Rows are fetched fetchSize at a time with a server-side cursor, which needs
+     * useCursorFetch=true on the connection url. The console and file output are the same
+     * as printCities followed by outputCapitalCities.
+     * </p>
+     *
+     * @param scope     the geographic level to filter by
+     * @param key       the continent, region, country or district name; ignored for WORLD
+     * @param fetchSize the number of rows fetched from the database at a time
+     * @param filename  the name of the Markdown file to create
+     * @return The number of cities streamed, or -1 if the query failed.
+     */
+    public long streamCities(Scope scope, String key, int fetchSize, String filename) {
+        if (snapshot != null) {
+            ArrayList<City> cities = snapshotCities(scope, key, Integer.MAX_VALUE);
+            printCities(cities);
+            outputCapitalCities(cities, filename);
+            return cities.size();
+        }
+        String where = scope == Scope.WORLD ? "" : "WHERE " + column(scope) + " = ?";
+        String sql = """
+                SELECT city.ID AS ID, city.Name AS CityName, country.Name AS Country, city.District AS District, city.Population AS Population
+                FROM city
+                JOIN country ON city.CountryCode = country.Code
+                %s
+                ORDER BY city.Population DESC
+                """.formatted(where);
+
+        long rows = 0;
+        ConsoleTable table = null;
+        ReportSink writer = null;
+        try (PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(fetchSize);
+            if (scope != Scope.WORLD) {
+                pstmt.setString(1, key);
+            }
             ResultSet rset = pstmt.executeQuery();
+            RowMapper.Row<City> row = RowMappers.CITY.columns(rset);
 
+            table = openTable();
             while (rset.next()) {
-                City city = new City();
-                city.Name = rset.getString("CityName");
-                city.Country = rset.getString("Country");
-                city.District = rset.getString("District");
-                city.Population = rset.getInt("Population");
-                cities.add(city);
+                City city = row.map(rset);
+
+                if (!table.skipRow()) {
+                    formatRow(table.text(), city.Name, city.Country, city.District, city.Population);
+                }
+                if (writer == null) {
+                    writer = openMarkdown(filename);
+                }
+                writer.append("| ").append(city.Name).append(" | ").append(city.Country).append(" | ")
+                        .append(city.Population).append(" |\r\n");
+                rows++;
             }
-
+            table.print();
         } catch (Exception e) {
+            // Rows already rendered are printed ahead of the error, as they arrived before it
+            if (table != null) {
+                table.print();
+            }
             System.out.println(e.getMessage());
             System.out.println("Failed to execute capital city query.");
-            return null;
+            if (table == null) {
+                printCities(null);
+            }
+            rows = -1;
         }
 
-        return cities;
+        if (writer == null) {
+            System.out.println("No capital cities to output.");
+            return rows;
+        }
+        // A failed query leaves any earlier report in place rather than a partial one
+        try (ReportSink sink = writer) {
+            if (rows >= 0) {
+                sink.commit();
+                if (metrics != null) {
+                    metrics.recordFileWritten(filename);
+                }
+                System.out.println("Capital cities report written to ./reports/" + filename);
+            }
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+            System.out.println("Failed to write capital cities report.");
+        }
+        return rows;
     }
 
+    /**
+     * Starts a Markdown file for a city report and writes its table header.
+     */
+    private ReportSink openMarkdown(String filename) throws java.io.IOException {
+        ReportSink sink = ReportSink.open(filename);
+        sink.append("| City | Country | Population |\r\n");
+        sink.append("| --- | --- | --- |\r\n");
+        return sink;
+    }
 
-
+    /**
+     * Runs a city query through the cache, if one is set.
+     *
+     * @param query The SQL query and its parameters.
+     * @return A list of City objects, or null if the query failed.
+     */
+    private ArrayList<City> executeCityQuery(Query query) {
+        return query.list(con, cache, RowMappers.CITY, "Failed to execute capital city query.");
+    }
 
     /**
      * Prints a formatted list of capital cities.
@@ -278,20 +555,40 @@ public class CityReport {
             return;
         }
 
-        // Table header
-        System.out.printf("%-30s %-25s %-20s %15s%n",
-                "Capital City", "Country", "District", "Population");
-        System.out.println("------------------------------------------------------------------------------------------");
-
-        // Print rows
+        // Render the table and print it in one go
+        ConsoleTable table = openTable();
         for (City city : cities) {
-            if (city == null)
+            if (city == null || table.skipRow())
                 continue;
 
-            System.out.printf("%-30s %-25s %-20s %,15d%n",
-                    city.Name, city.Country, city.District, city.Population);
+            formatRow(table.text(), city.Name, city.Country, city.District, city.Population);
         }
+        table.print();
+    }
+
+    /**
+     * Starts a printed city table and renders its header.
+     */
+    private static ConsoleTable openTable() {
+        ConsoleTable table = ConsoleTable.open();
+        StringBuilder text = table.text();
+        TextFormat.left(text, "Capital City", 30).append(' ');
+        TextFormat.left(text, "Country", 25).append(' ');
+        TextFormat.left(text, "District", 20).append(' ');
+        TextFormat.right(text, "Population", 15).append(System.lineSeparator());
+        text.append("------------------------------------------------------------------------------------------")
+                .append(System.lineSeparator());
+        return table;
+    }
 
+    /**
+     * Formats a line of the printed city table, as "%-30s %-25s %-20s %,15d%n" would.
+     */
+    private static StringBuilder formatRow(StringBuilder row, String name, String country, String district, int population) {
+        TextFormat.left(row, name, 30).append(' ');
+        TextFormat.left(row, country, 25).append(' ');
+        TextFormat.left(row, district, 20).append(' ');
+        return TextFormat.grouped(row, population, 15).append(System.lineSeparator());
     }
     /**
      * Outputs a list of capital cities to a Markdown file.
@@ -305,29 +602,24 @@ public class CityReport {
             return;
         }
 
-        StringBuilder sb = new StringBuilder();
-        // Markdown table header
-        sb.append("| City | Country | Population |\r\n");
-        sb.append("| --- | --- | --- |\r\n");
-
-        // Loop through all capital cities
-        for (City capital : capitals) {
-            if (capital == null) continue;
-            sb.append("| ")
-                    .append(capital.Name).append(" | ")
-                    .append(capital.Country).append(" | ")
-                    .append(capital.Population).append(" |\r\n");
-        }
-
-        try {
-            // Create reports folder if it does not exist
-            new java.io.File("./reports/").mkdirs();
-
-            // Write Markdown to file
-            java.io.BufferedWriter writer = new java.io.BufferedWriter(
-                    new java.io.FileWriter("./reports/" + filename));
-            writer.write(sb.toString());
-            writer.close();
+        // Write Markdown straight to the file, creating the reports folder if it does not exist
+        try (ReportSink sink = ReportSink.open(filename)) {
+            // Markdown table header
+            sink.append("| City | Country | Population |\r\n");
+            sink.append("| --- | --- | --- |\r\n");
+
+            // Loop through all capital cities
+            for (City capital : capitals) {
+                if (capital == null) continue;
+                sink.append("| ")
+                        .append(capital.Name).append(" | ")
+                        .append(capital.Country).append(" | ")
+                        .append(capital.Population).append(" |\r\n");
+            }
+            sink.commit();
+            if (metrics != null) {
+                metrics.recordFileWritten(filename);
+            }
             System.out.println("Capital cities report written to ./reports/" + filename);
         } catch (java.io.IOException e) {
             e.printStackTrace();
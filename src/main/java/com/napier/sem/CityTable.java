@@ -0,0 +1,181 @@
+package com.napier.sem;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The city table stored as columns.
+ * <p>
+ * Each city is an ID, a name code, a country row, a district code and a population,
+ * twenty bytes in five int arrays. Names and districts are kept in StringPools and
+ * countries are rows of a CountryTable, so a scan over population touches one
+ * contiguous array. City objects are only created when a row is asked for.
+ * </p>
+ */
+public class CityTable {
+
+    final CountryTable countries;
+    final StringPool names;
+    final StringPool districts;
+
+    // columns, indexed by city row
+    int[] id;
+    int[] name;
+    int[] country;
+    int[] district;
+    int[] population;
+
+    // rows that are the capital of their country, set when the snapshot is built
+    RowBitmap capitals = RowBitmap.EMPTY;
+
+    private int size;
+
+    /**
+     * @param countries the table the country column refers to
+     */
+    CityTable(CountryTable countries) {
+        this(countries, new StringPool(), new StringPool(),
+                new int[4096], new int[4096], new int[4096], new int[4096], new int[4096]);
+        size = 0;
+    }
+
+    /**
+     * Wraps columns that are already filled in, as read from a snapshot file; the table is read-only.
+     */
+    CityTable(CountryTable countries, StringPool names, StringPool districts,
+              int[] id, int[] name, int[] country, int[] district, int[] population) {
+        this.countries = countries;
+        this.names = names;
+        this.districts = districts;
+        this.id = id;
+        this.name = name;
+        this.country = country;
+        this.district = district;
+        this.population = population;
+        size = id.length;
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param country the row of the city's country, or -1 if it is not known
+     * @return The row number.
+     */
+    int add(int id, String name, int country, String district, int population) {
+        if (size == this.id.length) {
+            int grown = size * 2;
+            this.id = Arrays.copyOf(this.id, grown);
+            this.name = Arrays.copyOf(this.name, grown);
+            this.country = Arrays.copyOf(this.country, grown);
+            this.district = Arrays.copyOf(this.district, grown);
+            this.population = Arrays.copyOf(this.population, grown);
+        }
+        this.id[size] = id;
+        this.name[size] = names.add(name);
+        this.country[size] = country;
+        this.district[size] = districts.add(district);
+        this.population[size] = population;
+        return size++;
+    }
+
+    /**
+     * Shrinks the columns to the rows added and makes the table read-only.
+     */
+    void trim() {
+        id = Arrays.copyOf(id, size);
+        name = Arrays.copyOf(name, size);
+        country = Arrays.copyOf(country, size);
+        district = Arrays.copyOf(district, size);
+        population = Arrays.copyOf(population, size);
+        names.trim();
+        districts.trim();
+    }
+
+    /**
+     * @return The number of cities.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The ID of a row in the database.
+     */
+    public int id(int row) {
+        return id[row];
+    }
+
+    /**
+     * @return The city name of a row.
+     */
+    public String name(int row) {
+        return names.get(name[row]);
+    }
+
+    /**
+     * @return The country row of a row, or -1 if its country is not known.
+     */
+    public int country(int row) {
+        return country[row];
+    }
+
+    /**
+     * @return The district of a row.
+     */
+    public String district(int row) {
+        return districts.get(district[row]);
+    }
+
+    /**
+     * @return The population of a row.
+     */
+    public int population(int row) {
+        return population[row];
+    }
+
+    /**
+     * Creates a City object for a row, as CityReport maps it.
+     *
+     * @param row the city row, which must have a known country
+     * @return A new City.
+     */
+    public City city(int row) {
+        City city = new City();
+        city.ID = id[row];
+        city.Name = name(row);
+        city.Country = countries.name(country[row]);
+        city.District = district(row);
+        city.Population = population[row];
+        city.isCapital = capitals.contains(row);
+        return city;
+    }
+
+    /**
+     * Views some rows as a list whose City objects are created each time they are read.
+     *
+     * @param rows the city rows, in list order
+     * @return A read-only list backed by the table.
+     */
+    public List<City> view(int[] rows) {
+        return new AbstractList<City>() {
+            @Override
+            public City get(int index) {
+                return city(rows[index]);
+            }
+
+            @Override
+            public int size() {
+                return rows.length;
+            }
+        };
+    }
+
+    /**
+     * @return The approximate number of bytes held by the columns and string pools.
+     */
+    public long byteSize() {
+        return 5L * 4 * id.length + names.byteSize() + districts.byteSize()
+                + 4L * (names.size() + districts.size());
+    }
+}
@@ -0,0 +1,352 @@
+package com.napier.sem;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A small bounded pool of database connections.
+ * <p>
+ * Connections are validated before they are handed out and returned to the pool
+ * when the borrower calls close(). A connection held for longer than the leak
+ * threshold is reported together with the stack trace of the code that borrowed it.
+ * </p>
+ */
+public class ConnectionPool implements DataSource {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long leakThresholdMillis;
+
+    /**
+     * Seconds to wait for a connection to answer a validation check.
+     */
+    private static final int VALIDATION_TIMEOUT = 2;
+
+    /**
+     * Milliseconds to wait for a free connection before giving up.
+     */
+    private long borrowTimeoutMillis = 30000;
+
+    private final Semaphore permits;
+    private final ArrayDeque<Connection> idle = new ArrayDeque<>();
+    private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService leakDetector;
+    private volatile boolean closed;
+    private PrintWriter logWriter;
+
+    /**
+     * Records who borrowed a connection and when.
+     */
+    private static class Lease {
+        final Connection physical;
+        final long borrowedAt = System.currentTimeMillis();
+        final Throwable borrower = new Throwable("Connection borrowed here");
+        boolean returned;
+        boolean reported;
+
+        Lease(Connection physical) {
+            this.physical = physical;
+        }
+    }
+
+    /**
+     * @param url                 the JDBC url of the database
+     * @param user                the database user
+     * @param password            the database password
+     * @param maxSize             the maximum number of open connections
+     * @param leakThresholdMillis how long a connection may be held before it is reported, or 0 to disable
+     */
+    public ConnectionPool(String url, String user, String password, int maxSize, long leakThresholdMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        if (leakThresholdMillis > 0) {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "connection-leak-detector");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(1, leakThresholdMillis / 2);
+            leakDetector.scheduleAtFixedRate(this::reportLeaks, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            leakDetector = null;
+        }
+    }
+
+    /**
+     * @param millis how long getConnection waits for a free connection
+     */
+    public void setBorrowTimeout(long millis) {
+        this.borrowTimeoutMillis = millis;
+    }
+
+    /**
+     * @return The maximum number of open connections.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The number of connections currently borrowed.
+     */
+    public int getActiveCount() {
+        return leases.size();
+    }
+
+    /**
+     * @return The number of open connections waiting in the pool.
+     */
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Borrows a connection, opening a new one if the pool has spare capacity.
+     * Closing the returned connection gives it back to the pool.
+     *
+     * @return A validated connection.
+     * @throws SQLException if the pool is closed, exhausted or the database cannot be reached
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a connection after " + borrowTimeoutMillis + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            Connection physical = takeValidIdle();
+            if (physical == null) {
+                physical = openConnection();
+            }
+            Lease lease = new Lease(physical);
+            Connection handle = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, new Handle(lease));
+            leases.put(handle, lease);
+            return handle;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a new physical connection. Overridden in tests to avoid a real database.
+     *
+     * @return A new connection to the database.
+     * @throws SQLException if the database cannot be reached
+     */
+    protected Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    /**
+     * Takes idle connections until one passes validation, closing any that fail.
+     */
+    private Connection takeValidIdle() {
+        while (true) {
+            Connection physical;
+            synchronized (this) {
+                physical = idle.pollFirst();
+            }
+            if (physical == null) {
+                return null;
+            }
+            try {
+                if (physical.isValid(VALIDATION_TIMEOUT)) {
+                    return physical;
+                }
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+            closeQuietly(physical);
+        }
+    }
+
+    /**
+     * Gives a borrowed connection back to the pool.
+     */
+    private void release(Connection handle, Lease lease) {
+        synchronized (lease) {
+            if (lease.returned) {
+                return;
+            }
+            lease.returned = true;
+        }
+        leases.remove(handle);
+        boolean reusable;
+        try {
+            // Undo anything the borrower changed so the next borrower starts clean
+            if (!lease.physical.getAutoCommit()) {
+                lease.physical.rollback();
+                lease.physical.setAutoCommit(true);
+            }
+            reusable = !closed && !lease.physical.isClosed();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        if (reusable) {
+            synchronized (this) {
+                idle.addFirst(lease.physical);
+            }
+        } else {
+            closeQuietly(lease.physical);
+        }
+        permits.release();
+    }
+
+    /**
+     * Prints a warning for every connection held longer than the leak threshold.
+     */
+    private void reportLeaks() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : leases.values()) {
+            long held = now - lease.borrowedAt;
+            if (held > leakThresholdMillis && !lease.reported) {
+                lease.reported = true;
+                System.out.println("Possible connection leak: connection held for " + held + "ms");
+                lease.borrower.printStackTrace(System.out);
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection and stops handing out new ones.
+     * Borrowed connections are closed as they are returned.
+     */
+    public void close() {
+        closed = true;
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+        synchronized (this) {
+            for (Connection physical : idle) {
+                closeQuietly(physical);
+            }
+            idle.clear();
+        }
+    }
+
+    private static void closeQuietly(Connection con) {
+        try {
+            con.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing pooled connection");
+        }
+    }
+
+    /**
+     * The connection handed to a borrower. close() returns the physical connection
+     * to the pool, after which the handle can no longer be used.
+     */
+    private class Handle implements InvocationHandler {
+        private final Lease lease;
+
+        Handle(Lease lease) {
+            this.lease = lease;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release((Connection) proxy, lease);
+                    return null;
+                case "isClosed":
+                    return lease.returned || lease.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + lease.physical;
+                default:
+                    break;
+            }
+            if (lease.returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(lease.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the pool's credentials");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
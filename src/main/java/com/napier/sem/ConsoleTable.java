@@ -0,0 +1,151 @@
+package com.napier.sem;
+
+import java.io.PrintStream;
+
+/**
+ * Renders a table for the console into a buffer and writes it to System.out in a few bulk
+ * writes, rather than one synchronized, autoflushed printf for every row.
+ * <p>
+ * A table is written while holding the lock of System.out, so tables printed by reports
+ * running at the same time never interleave with each other or with other console output.
+ * A table too large to hold is written in pieces as it is rendered, always on a row
+ * boundary. The row limit caps the rows of every table, ending a cut-short table with a
+ * line saying how many rows were left out; 0 prints only that line under the header.
+ * Each thread reuses one buffer across the tables it renders. A table is not thread-safe.
+ * </p>
+ */
+public final class ConsoleTable {
+
+    /**
+     * The row limit that prints every row.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    // Rendered text is written out early once the buffer holds this many characters
+    private static final int FLUSH_CHARS = 1 << 20;
+
+    // Characters handed to the PrintStream at a time
+    private static final int WRITE_CHARS = 16 * 1024;
+
+    // Each thread's buffer while no table of that thread is using it
+    private static final ThreadLocal<StringBuilder> BUFFERS = new ThreadLocal<>();
+
+    private static volatile int rowLimit = UNLIMITED;
+
+    private StringBuilder buffer;
+    private final int limit;
+    private long rows;
+
+    private ConsoleTable(int limit) {
+        this.limit = limit;
+        buffer = BUFFERS.get();
+        if (buffer == null) {
+            buffer = new StringBuilder(WRITE_CHARS);
+        } else {
+            BUFFERS.remove();
+        }
+        buffer.setLength(0);
+    }
+
+    /**
+     * Starts a table using the current row limit.
+     *
+     * @return A table to render the header and rows into.
+     */
+    public static ConsoleTable open() {
+        return new ConsoleTable(rowLimit);
+    }
+
+    /**
+     * Sets how many rows of each table are printed from now on.
+     *
+     * @param limit the most rows to print, 0 for only a count of the rows, or UNLIMITED
+     */
+    public static void setRowLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Row limit cannot be negative: " + limit);
+        }
+        rowLimit = limit;
+    }
+
+    /**
+     * @return The most rows of each table that are printed.
+     */
+    public static int getRowLimit() {
+        return rowLimit;
+    }
+
+    /**
+     * Returns the buffer to append header lines to, with their line separators.
+     *
+     * @return The buffer of this table.
+     */
+    public StringBuilder text() {
+        return buffer;
+    }
+
+    /**
+     * Counts a row and says whether it is beyond the row limit; a row that is not
+     * skipped is then appended to text(), with its line separator.
+     *
+     * @return True if the row should not be rendered.
+     */
+    public boolean skipRow() {
+        if (rows++ >= limit) {
+            return true;
+        }
+        if (buffer.length() >= FLUSH_CHARS) {
+            write(System.out, buffer);
+            buffer.setLength(0);
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of rows counted so far, including skipped ones.
+     */
+    public long rows() {
+        return rows;
+    }
+
+    /**
+     * Writes the table to System.out and releases its buffer. Calling print again does nothing.
+     */
+    public void print() {
+        if (buffer == null) {
+            return;
+        }
+        if (rows > limit) {
+            long skipped = rows - limit;
+            buffer.append("... ");
+            TextFormat.grouped(buffer, skipped, 0);
+            if (skipped == rows) {
+                buffer.append(" rows not shown");
+            } else {
+                buffer.append(" more rows not shown (");
+                TextFormat.grouped(buffer, rows, 0).append(" in total)");
+            }
+            buffer.append(System.lineSeparator());
+        }
+        write(System.out, buffer);
+        if (buffer.capacity() <= FLUSH_CHARS * 2) {
+            BUFFERS.set(buffer);
+        }
+        buffer = null;
+    }
+
+    private static void write(PrintStream console, StringBuilder text) {
+        synchronized (console) {
+            int start = 0;
+            while (start < text.length()) {
+                int end = Math.min(text.length(), start + WRITE_CHARS);
+                // Keep a surrogate pair in one piece
+                if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--;
+                }
+                console.append(text, start, end);
+                start = end;
+            }
+        }
+    }
+}
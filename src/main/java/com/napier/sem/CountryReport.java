@@ -1,9 +1,10 @@
 package com.napier.sem;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.util.ArrayList;
-import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Class responsible for retrieving and printing lists of Country objects.
@@ -15,6 +16,21 @@ public class CountryReport {
      */
     private Connection con;
 
+    /**
+     * In-memory copy of the world database; when set, queries are answered from it instead of SQL.
+     */
+    private WorldSnapshot snapshot;
+
+    /**
+     * Cache of query results; when set, repeated queries are answered from it.
+     */
+    private QueryCache cache;
+
+    /**
+     * Records the size of each report file written; null to record nothing.
+     */
+    private MetricsRegistry metrics;
+
     /**
      * @param con The active database connection object.
      */
@@ -22,11 +38,41 @@ public class CountryReport {
         this.con = con;
     }
 
+    /**
+     * @param con      The active database connection object.
+     * @param snapshot The snapshot to answer queries from, or null to use live SQL.
+     */
+    public CountryReport(Connection con, WorldSnapshot snapshot) {
+        this.con = con;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Sets the cache that query results are kept in, or null to always query the database.
+     *
+     * @param cache the shared query cache
+     */
+    public void setCache(QueryCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the registry that report file sizes are recorded in.
+     *
+     * @param metrics the metrics registry, or null to record nothing
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Retrieves all countries from the database, ordered by population.
      * @return An ArrayList of Country objects, or null on failure.
      */
     public ArrayList<Country> getCountriesByPopulation() {
+        if (snapshot != null) {
+            return snapshot.countries(Scope.WORLD, null, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
@@ -35,7 +81,49 @@ public class CountryReport {
                 FROM country 
                 ORDER BY Population DESC
                 """;
-        return executeCountryQuery(sql);
+        return executeCountryQuery(Query.of(sql));
+    }
+
+    /**
+     * Retrieves a page of the countries of the world or of a continent, region or country,
+     * ordered by population descending and then by code.
+     * <p>
+     * A page seeks past the last country of the page before it on (Population, Code), as
+     * CityReport.citiesPage does, so every page costs about the same as the first.
+     * </p>
+     *
+     * @param scope    the geographic level to filter by; not DISTRICT
+     * @param key      the continent, region or country name; ignored for WORLD
+     * @param cursor   the Next cursor of the previous page, or null for the first page
+     * @param pageSize the maximum number of countries on the page
+     * @return The page, or null if the query failed.
+     * @throws IllegalArgumentException if the scope is DISTRICT, pageSize is less than 1 or
+     *                                  the cursor is not from a country page
+     */
+    public Page<Country> countriesPage(Scope scope, String key, String cursor, int pageSize) {
+        if (snapshot != null) {
+            return snapshot.pages().countries(scope, key, cursor, pageSize);
+        }
+        String column = PageCursor.countryColumn(scope);
+        PageCursor.checkPageSize(pageSize);
+        PageCursor after = PageCursor.decode(PageCursor.COUNTRIES, cursor);
+        String sql = """
+                SELECT Code, Name, Continent, Region, Population, Capital
+                FROM country
+                %s
+                ORDER BY Population DESC, Code
+                LIMIT ?
+                """.formatted(PageCursor.where(column == null ? null : column + " = ?",
+                after == null ? null : "(Population < ? OR (Population = ? AND Code > ?))"));
+        Query query = Query.of(sql);
+        if (column != null) {
+            query.string(key);
+        }
+        if (after != null) {
+            query.integer(after.population).integer(after.population).string(after.key);
+        }
+        query.integer(PageCursor.fetchSize(pageSize));
+        return PageCursor.countryPage(executeCountryQuery(query), pageSize);
     }
 
     /**
@@ -44,6 +132,9 @@ public class CountryReport {
      * @return An ArrayList of Country objects, or null on failure.
      */
     public ArrayList<Country> getCountriesByContinent(String continent) {
+        if (snapshot != null) {
+            return snapshot.countries(Scope.CONTINENT, continent, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
@@ -53,7 +144,7 @@ public class CountryReport {
                 WHERE Continent = ? 
                 ORDER BY Population DESC
                 """;
-        return executeCountryQuery(sql, continent);
+        return executeCountryQuery(Query.of(sql).string(continent));
     }
 
     /**
@@ -62,6 +153,9 @@ public class CountryReport {
      * @return An ArrayList of Country objects, or null on failure.
      */
     public ArrayList<Country> getCountriesByRegion(String region) {
+        if (snapshot != null) {
+            return snapshot.countries(Scope.REGION, region, Integer.MAX_VALUE);
+        }
         if (con == null) {
             return new ArrayList<>(); // Return empty list, not null
         }
@@ -71,7 +165,7 @@ public class CountryReport {
                 WHERE Region = ? 
                 ORDER BY Population DESC
                 """;
-        return executeCountryQuery(sql, region);
+        return executeCountryQuery(Query.of(sql).string(region));
     }
 
     /**
@@ -82,42 +176,10 @@ public class CountryReport {
      * @return An ArrayList of Country objects, or null on failure.
      */
     public ArrayList<Country> topNCountries(String sql,String place, int limit) {
-
-        // SQL query now uses placeholders for *both* region and limit
-        ArrayList<Country> countries = new ArrayList<>();
-
-        // Use a try-with-resources block to auto-close the PreparedStatement
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-
-            // 1. Bind the *first* '?' (Region) as a String
-            pstmt.setString(1, place);
-
-            // 2. Bind the *second* '?' (LIMIT) as an Int
-            pstmt.setInt(2, limit);
-
-            // Execute the query
-            ResultSet rset = pstmt.executeQuery();
-
-            // Loop through the results and build the Country objects
-            while (rset.next()) {
-                Country country = new Country();
-                country.Code = rset.getString("Code");
-                country.Name = rset.getString("Name");
-                country.Continent = rset.getString("Continent");
-                country.Population = rset.getInt("Population");
-                country.Capital = rset.getString("Capital");
-                country.Region = rset.getString("Region");
-                countries.add(country);
-            }
-
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Failed to get countries for place: " + place);
-            return null; // Return null or an empty list
-        }
-
-        return countries;
+        return Query.of(sql).string(place).integer(limit)
+                .list(con, cache, RowMappers.COUNTRY, "Failed to get countries for place: " + place);
     }
+
     /**
      * Gets the top N most populated countries for a specific region.
      *
@@ -125,6 +187,9 @@ public class CountryReport {
      * @param limit  The number of countries to return.
      */
     public ArrayList<Country> topNCountriesByRegion(String region, int limit) {
+        if (snapshot != null) {
+            return snapshot.countries(Scope.REGION, region, limit);
+        }
         String sql = """
             SELECT Code, Name, Continent, Region, Population, Capital 
             FROM country 
@@ -141,6 +206,9 @@ public class CountryReport {
      * @param limit  The number of countries to return.
      */
     public ArrayList<Country> topNCountriesByContinent(String continent, int limit) {
+        if (snapshot != null) {
+            return snapshot.countries(Scope.CONTINENT, continent, limit);
+        }
         String sql = """
             SELECT Code, Name, Continent, Region, Population, Capital 
             FROM country 
@@ -155,81 +223,55 @@ public class CountryReport {
      * @param limit  The number of countries to return.
      */
     public ArrayList<Country> topNCountriesInTheWorld(int limit) {
+        if (snapshot != null) {
+            return snapshot.countries(Scope.WORLD, null, limit);
+        }
         String sql = """
             SELECT Code, Name, Continent, Region, Population, Capital 
             FROM country 
             ORDER BY Population DESC LIMIT ?
             """;
-        // SQL query now uses placeholders for *both* region and limit
-        ArrayList<Country> countries = new ArrayList<>();
-
-        // Use a try-with-resources block to auto-close the PreparedStatement
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-            //  Bind the '?' (LIMIT) as an Int
-            pstmt.setInt(1, limit);
+        return Query.of(sql).integer(limit).list(con, cache, RowMappers.COUNTRY, "Failed to get countries for place ");
+    }
 
-            // Execute the query
-            ResultSet rset = pstmt.executeQuery();
+    /**
+     * Gets the top N most populated countries of several continents in a single query.
+     *
+     * @param continents The continents to include, or null for every continent.
+     * @param limit The number of countries to return for each continent.
+     * @return The countries of each continent keyed by continent name, or null on failure.
+     */
+    public Map<String, List<Country>> topNCountriesPerContinent(Collection<String> continents, int limit) {
+        return topNCountriesPerGroup(Scope.CONTINENT, "Continent", continents, limit);
+    }
 
-            // Loop through the results and build the Country objects
-            while (rset.next()) {
-                Country country = new Country();
-                country.Code = rset.getString("Code");
-                country.Name = rset.getString("Name");
-                country.Continent = rset.getString("Continent");
-                country.Population = rset.getInt("Population");
-                country.Capital = rset.getString("Capital");
-                country.Region = rset.getString("Region");
-                countries.add(country);
-            }
+    /**
+     * Gets the top N most populated countries of several regions in a single query.
+     *
+     * @param regions The regions to include, or null for every region.
+     * @param limit The number of countries to return for each region.
+     * @return The countries of each region keyed by region name, or null on failure.
+     */
+    public Map<String, List<Country>> topNCountriesPerRegion(Collection<String> regions, int limit) {
+        return topNCountriesPerGroup(Scope.REGION, "Region", regions, limit);
+    }
 
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Failed to get countries for place ");
-            return null; // Return null or an empty list
+    private Map<String, List<Country>> topNCountriesPerGroup(Scope scope, String column, Collection<String> keys, int limit) {
+        if (snapshot != null) {
+            return snapshot.countriesPerGroup(scope, keys, limit);
         }
-
-        return countries;
+        String sql = TopNPerGroup.sql("Code, Name, Continent, Region, Population, Capital", "FROM country",
+                column, "Population DESC, Code", keys == null ? 0 : keys.size());
+        return TopNPerGroup.run(con, sql, keys, limit, RowMappers.COUNTRY);
     }
 
-
-
     /**
-     * Private helper method to execute SQL queries and map results to Country objects.
-     * @param sql The SQL query to execute.
-     * @param params Optional query parameters for the PreparedStatement.
+     * Private helper method to run a country query through the cache, if one is set.
+     * @param query The SQL query and its parameters.
      * @return A list of Country objects, or null if an error occurs.
      */
-    private ArrayList<Country> executeCountryQuery(String sql, String... params) {
-        ArrayList<Country> countries = new ArrayList<>();
-
-        if (con == null) return countries;
-
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-            // Bind parameters if they are provided
-            for (int i = 0; i < params.length; i++) {
-                pstmt.setString(i + 1, params[i]);
-            }
-
-            ResultSet rset = pstmt.executeQuery();
-
-            while (rset.next()) {
-                Country country = new Country();
-                country.Code = rset.getString("Code");
-                country.Name = rset.getString("Name");
-                country.Continent = rset.getString("Continent");
-                country.Population = rset.getInt("Population");
-                country.Capital = rset.getString("Capital");
-                country.Region = rset.getString("Region");
-                countries.add(country);
-            }
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Failed to execute country query.");
-            return null;
-        }
-
-        return countries;
+    private ArrayList<Country> executeCountryQuery(Query query) {
+        return query.list(con, cache, RowMappers.COUNTRY, "Failed to execute country query.");
     }
 
     /**
@@ -249,22 +291,31 @@ public class CountryReport {
             return;
         }
 
-        System.out.printf("%-30s %-20s %-15s %-20s %-30s %15s\n",
-                "Name", "Continent", "Region", "Capital", "Code", "Population");
-        System.out.println("--------------------------------------------------------------------------------------------------------------");
+        ConsoleTable table = ConsoleTable.open();
+        StringBuilder text = table.text();
+        formatRow(text, "Name", "Continent", "Region", "Capital", "Code");
+        TextFormat.right(text, "Population", 15).append('\n');
+        text.append("--------------------------------------------------------------------------------------------------------------")
+                .append(System.lineSeparator());
 
         for (Country country : countries) {
-            if (country == null) continue;
+            if (country == null || table.skipRow()) continue;
 
-            System.out.printf("%-30s %-20s %-15s %-20s %-30s %,15d\n",
-                    country.Name,
-                    country.Continent,
-                    country.Region,
-                    country.Capital,
-                    country.Code,
-                    country.Population
-            );
+            formatRow(text, country.Name, country.Continent, country.Region, country.Capital, country.Code);
+            TextFormat.grouped(text, country.Population, 15).append('\n');
         }
+        table.print();
+    }
+
+    /**
+     * Formats the text columns of a line of the printed country table, as "%-30s %-20s %-15s %-20s %-30s " would.
+     */
+    private static void formatRow(StringBuilder row, String name, String continent, String region, String capital, String code) {
+        TextFormat.left(row, name, 30).append(' ');
+        TextFormat.left(row, continent, 20).append(' ');
+        TextFormat.left(row, region, 15).append(' ');
+        TextFormat.left(row, capital, 20).append(' ');
+        TextFormat.left(row, code, 30).append(' ');
     }
 
     /**
@@ -278,34 +329,27 @@ public class CountryReport {
             return;
         }
 
-        StringBuilder sb = new StringBuilder();
-        // Markdown table header
-        sb.append("| Code | Name | Continent | Region | Population | Capital |\r\n");
-        sb.append("| --- | --- | --- | --- | --- | --- |\r\n");
-
-        // Loop through all countries
-        for (Country country : countries) {
-            if (country == null) continue;
-            // Using String.format for better population formatting (optional, but good practice)
-            String formattedPopulation = String.format("%,d", country.Population);
-            sb.append("| ")
-                    .append(country.Code).append(" | ")
-                    .append(country.Name).append(" | ")
-                    .append(country.Continent).append(" | ")
-                    .append(country.Region).append(" | ")
-                    .append(formattedPopulation).append(" | ")
-                    .append(country.Capital).append(" |\r\n");
-        }
-
-        try {
-            // Create reports folder if it does not exist
-            new java.io.File("./reports/").mkdirs();
-
-            // Write Markdown to file
-            java.io.BufferedWriter writer = new java.io.BufferedWriter(
-                    new java.io.FileWriter("./reports/" + filename));
-            writer.write(sb.toString());
-            writer.close();
+        // Write Markdown straight to the file, creating the reports folder if it does not exist
+        try (ReportSink sink = ReportSink.open(filename)) {
+            // Markdown table header
+            sink.append("| Code | Name | Continent | Region | Population | Capital |\r\n");
+            sink.append("| --- | --- | --- | --- | --- | --- |\r\n");
+
+            // Loop through all countries
+            for (Country country : countries) {
+                if (country == null) continue;
+                sink.append("| ")
+                        .append(country.Code).append(" | ")
+                        .append(country.Name).append(" | ")
+                        .append(country.Continent).append(" | ")
+                        .append(country.Region).append(" | ")
+                        .appendGrouped(country.Population).append(" | ")
+                        .append(country.Capital).append(" |\r\n");
+            }
+            sink.commit();
+            if (metrics != null) {
+                metrics.recordFileWritten(filename);
+            }
             System.out.println("Country report written to ./reports/" + filename);
         } catch (java.io.IOException e) {
             e.printStackTrace();
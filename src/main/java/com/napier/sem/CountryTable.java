@@ -0,0 +1,194 @@
+package com.napier.sem;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The country table stored as columns.
+ * <p>
+ * Population and capital are int columns, and the code, name, continent and region
+ * are codes into a StringPool each, so the few distinct continents and regions are
+ * stored once. Country objects are only created when a row is asked for.
+ * </p>
+ */
+public class CountryTable {
+
+    final StringPool codes;
+    final StringPool names;
+    final StringPool continents;
+    final StringPool regions;
+
+    // columns, indexed by country row
+    int[] code;
+    int[] name;
+    int[] continent;
+    int[] region;
+    int[] population;
+    int[] capital;
+
+    private int size;
+
+    /**
+     * Creates an empty table.
+     */
+    CountryTable() {
+        this(new StringPool(), new StringPool(), new StringPool(), new StringPool(),
+                new int[256], new int[256], new int[256], new int[256], new int[256], new int[256]);
+        size = 0;
+    }
+
+    /**
+     * Wraps columns that are already filled in, as read from a snapshot file; the table is read-only.
+     */
+    CountryTable(StringPool codes, StringPool names, StringPool continents, StringPool regions,
+                 int[] code, int[] name, int[] continent, int[] region, int[] population, int[] capital) {
+        this.codes = codes;
+        this.names = names;
+        this.continents = continents;
+        this.regions = regions;
+        this.code = code;
+        this.name = name;
+        this.continent = continent;
+        this.region = region;
+        this.population = population;
+        this.capital = capital;
+        size = code.length;
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param capital the ID of the capital city, or 0 if the country has none
+     * @return The row number.
+     */
+    int add(String code, String name, String continent, String region, int population, int capital) {
+        if (size == this.code.length) {
+            int grown = size * 2;
+            this.code = Arrays.copyOf(this.code, grown);
+            this.name = Arrays.copyOf(this.name, grown);
+            this.continent = Arrays.copyOf(this.continent, grown);
+            this.region = Arrays.copyOf(this.region, grown);
+            this.population = Arrays.copyOf(this.population, grown);
+            this.capital = Arrays.copyOf(this.capital, grown);
+        }
+        this.code[size] = codes.add(code);
+        this.name[size] = names.add(name);
+        this.continent[size] = continents.add(continent);
+        this.region[size] = regions.add(region);
+        this.population[size] = population;
+        this.capital[size] = capital;
+        return size++;
+    }
+
+    /**
+     * Shrinks the columns to the rows added and makes the table read-only.
+     */
+    void trim() {
+        code = Arrays.copyOf(code, size);
+        name = Arrays.copyOf(name, size);
+        continent = Arrays.copyOf(continent, size);
+        region = Arrays.copyOf(region, size);
+        population = Arrays.copyOf(population, size);
+        capital = Arrays.copyOf(capital, size);
+        codes.trim();
+        names.trim();
+        continents.trim();
+        regions.trim();
+    }
+
+    /**
+     * @return The number of countries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The country code of a row.
+     */
+    public String code(int row) {
+        return codes.get(code[row]);
+    }
+
+    /**
+     * @return The country name of a row.
+     */
+    public String name(int row) {
+        return names.get(name[row]);
+    }
+
+    /**
+     * @return The continent of a row.
+     */
+    public String continent(int row) {
+        return continents.get(continent[row]);
+    }
+
+    /**
+     * @return The region of a row.
+     */
+    public String region(int row) {
+        return regions.get(region[row]);
+    }
+
+    /**
+     * @return The population of a row.
+     */
+    public int population(int row) {
+        return population[row];
+    }
+
+    /**
+     * @return The ID of the country's capital city, or 0 if it has none.
+     */
+    public int capital(int row) {
+        return capital[row];
+    }
+
+    /**
+     * Creates a Country object for a row, as CountryReport maps it.
+     *
+     * @param row the country row
+     * @return A new Country.
+     */
+    public Country country(int row) {
+        Country country = new Country();
+        country.Code = code(row);
+        country.Name = name(row);
+        country.Continent = continent(row);
+        country.Region = region(row);
+        country.Population = population[row];
+        country.Capital = capital[row] == 0 ? null : Integer.toString(capital[row]);
+        return country;
+    }
+
+    /**
+     * Views some rows as a list whose Country objects are created each time they are read.
+     *
+     * @param rows the country rows, in list order
+     * @return A read-only list backed by the table.
+     */
+    public List<Country> view(int[] rows) {
+        return new AbstractList<Country>() {
+            @Override
+            public Country get(int index) {
+                return country(rows[index]);
+            }
+
+            @Override
+            public int size() {
+                return rows.length;
+            }
+        };
+    }
+
+    /**
+     * @return The approximate number of bytes held by the columns and string pools.
+     */
+    public long byteSize() {
+        return 6L * 4 * code.length + codes.byteSize() + names.byteSize()
+                + continents.byteSize() + regions.byteSize()
+                + 4L * (codes.size() + names.size() + continents.size() + regions.size());
+    }
+}
@@ -0,0 +1,401 @@
+package com.napier.sem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The world as a continent, region, country, district and city tree.
+ * <p>
+ * Each node keeps the population, urban population, city count and capital of
+ * everything below it, so an urbanisation figure is a node lookup instead of a
+ * grouped query. Children are ordered by name and the cities of a district by
+ * population descending. Population changes are applied to the node and its
+ * ancestors, so the totals stay correct without rebuilding the tree.
+ * </p>
+ */
+public class GeographyTree {
+
+    private final CityTable cities;
+    private final CountryTable countries;
+    private final Node world;
+
+    // population of each city row, updated by updateCityPopulation
+    private final int[] cityPopulation;
+
+    // the country node of each country row, and the district node of each city row
+    private final Node[] countryNodes;
+    private final Node[] districtNodes;
+
+    // nodes of each level keyed by name ignoring case; a district name can be shared by several countries
+    private final Map<Scope, Map<String, List<Node>>> byName = new TreeMap<>();
+
+    /**
+     * Builds the tree from the tables of a snapshot.
+     *
+     * @param snapshot the snapshot whose cities and countries are arranged in the tree
+     */
+    public GeographyTree(WorldSnapshot snapshot) {
+        cities = snapshot.cityTable();
+        countries = snapshot.countryTable();
+        cityPopulation = Arrays.copyOf(cities.population, cities.size());
+        countryNodes = new Node[countries.size()];
+        districtNodes = new Node[cities.size()];
+        world = new Node(Scope.WORLD, "World", null);
+        for (Scope level : Scope.values()) {
+            byName.put(level, new TreeMap<>(String.CASE_INSENSITIVE_ORDER));
+        }
+
+        for (int row = 0; row < countries.size(); row++) {
+            Node continent = child(world, Scope.CONTINENT, countries.continent(row));
+            Node region = child(continent, Scope.REGION, countries.region(row));
+            Node country = child(region, Scope.COUNTRY, countries.name(row));
+            country.country = row;
+            countryNodes[row] = country;
+        }
+
+        // Cities of an unknown country are left out, as the report queries join on country
+        for (int row = 0; row < cities.size(); row++) {
+            int country = cities.country[row];
+            if (country >= 0) {
+                districtNodes[row] = child(countryNodes[country], Scope.DISTRICT, cities.district(row));
+                districtNodes[row].cityCount++;
+            }
+        }
+        for (int row = 0; row < cities.size(); row++) {
+            Node district = districtNodes[row];
+            if (district != null) {
+                if (district.cities.length == 0) {
+                    district.cities = new int[district.cityCount];
+                    district.cityCount = 0;
+                }
+                district.cities[district.cityCount++] = row;
+            }
+        }
+
+        Map<Integer, Integer> rowById = new HashMap<>();
+        for (int row = 0; row < cities.size(); row++) {
+            rowById.put(cities.id[row], row);
+        }
+        for (int row = 0; row < countries.size(); row++) {
+            Integer capital = rowById.get(countries.capital[row]);
+            if (capital != null && districtNodes[capital] != null) {
+                countryNodes[row].capital = capital;
+            }
+        }
+
+        total(world);
+    }
+
+    /**
+     * @return The root of the tree, whose children are the continents.
+     */
+    public Node world() {
+        return world;
+    }
+
+    /**
+     * Finds the nodes of a level with a name, ignoring case as the world database does.
+     *
+     * @param level the level of the nodes
+     * @param name  the continent, region, country or district name
+     * @return The matching nodes, usually one; several districts of different countries can share a name.
+     */
+    public List<Node> nodes(Scope level, String name) {
+        if (level == Scope.WORLD) {
+            return List.of(world);
+        }
+        if (name == null) {
+            return List.of();
+        }
+        return byName.get(level).getOrDefault(name, List.of());
+    }
+
+    /**
+     * Looks up the total and urban population of a continent, region or country.
+     *
+     * @param level the level of the name
+     * @param name  the name to look up; ignored for WORLD
+     * @return The summary, with zero populations if nothing has the name.
+     */
+    public PopulationSummary summary(Scope level, String name) {
+        PopulationSummary summary = new PopulationSummary();
+        summary.Name = level == Scope.WORLD ? world.name : name;
+        for (Node node : nodes(level, name)) {
+            summary.Population += node.population;
+            summary.UrbanPopulation += node.urbanPopulation;
+        }
+        summary.Percentage = summary.Population == 0 ? 0 : summary.UrbanPopulation * 100.0 / summary.Population;
+        return summary;
+    }
+
+    /**
+     * Summarises every continent, region or country, ordered by name as the grouped queries are.
+     *
+     * @param level the level to summarise
+     * @return One summary per distinct name.
+     */
+    public ArrayList<PopulationSummary> summaries(Scope level) {
+        ArrayList<PopulationSummary> summaries = new ArrayList<>();
+        for (Map.Entry<String, List<Node>> entry : byName.get(level).entrySet()) {
+            summaries.add(summary(level, entry.getKey()));
+        }
+        return summaries;
+    }
+
+    /**
+     * Lists the cities below a node by population descending, ties by row as the
+     * snapshot orders them, merging the already sorted cities of each district.
+     *
+     * @param node the node to list
+     * @return The cities below the node, with their current populations.
+     */
+    public ArrayList<City> cities(Node node) {
+        return cities(List.of(node), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Lists the most populated cities of the world or of a continent, region, country or
+     * district by walking only the part of the tree below it.
+     *
+     * @param level the level of the name
+     * @param name  the continent, region, country or district name; ignored for WORLD
+     * @param limit the maximum number of cities
+     * @return The cities by population descending, as WorldSnapshot.cities orders them.
+     */
+    public ArrayList<City> cities(Scope level, String name, int limit) {
+        return cities(nodes(level, name), limit);
+    }
+
+    private synchronized ArrayList<City> cities(List<Node> nodes, int limit) {
+        List<int[]> runs = new ArrayList<>();
+        for (Node node : nodes) {
+            addDistrictRuns(node, runs);
+        }
+        int[] rows = PopulationIndex.merge(runs.toArray(new int[0][]), cityPopulation, null, limit);
+        ArrayList<City> list = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            City city = cities.city(row);
+            city.Population = cityPopulation[row];
+            list.add(city);
+        }
+        return list;
+    }
+
+    private void addDistrictRuns(Node node, List<int[]> runs) {
+        if (node.level == Scope.DISTRICT) {
+            if (node.cities.length > 0) {
+                runs.add(node.cities);
+            }
+            return;
+        }
+        for (Node child : node.children) {
+            addDistrictRuns(child, runs);
+        }
+    }
+
+    /**
+     * Finds a city by name, ignoring case as the world database does.
+     *
+     * @param name the name of the city
+     * @return The first city row with the name, or -1 if there is none.
+     */
+    public int cityRow(String name) {
+        for (int row = 0; row < cities.size(); row++) {
+            if (cities.name(row).equalsIgnoreCase(name)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The population of a city row, including updates.
+     */
+    public int cityPopulation(int row) {
+        return cityPopulation[row];
+    }
+
+    /**
+     * Changes the population of a city, updating the urban population of its district
+     * and every node above it and keeping the district's cities in population order.
+     *
+     * @param row        the city row in the snapshot
+     * @param population the new population
+     */
+    public synchronized void updateCityPopulation(int row, int population) {
+        Node district = districtNodes[row];
+        long delta = (long) population - cityPopulation[row];
+        cityPopulation[row] = population;
+        if (district == null) {
+            return;
+        }
+        district.population += delta;
+        for (Node node = district; node != null; node = node.parent) {
+            node.urbanPopulation += delta;
+        }
+        sortCities(district);
+    }
+
+    /**
+     * Changes the population of a country, updating the total population of every node above it.
+     *
+     * @param row        the country row in the snapshot
+     * @param population the new population
+     */
+    public synchronized void updateCountryPopulation(int row, long population) {
+        Node country = countryNodes[row];
+        long delta = population - country.population;
+        for (Node node = country; node != null; node = node.parent) {
+            node.population += delta;
+        }
+    }
+
+    private Node child(Node parent, Scope level, String name) {
+        List<Node> named = byName.get(level).computeIfAbsent(name, k -> new ArrayList<>());
+        for (Node node : named) {
+            if (node.parent == parent) {
+                return node;
+            }
+        }
+        Node child = new Node(level, name, parent);
+        parent.children.add(child);
+        named.add(child);
+        return child;
+    }
+
+    /**
+     * Fills in the totals of a node from its children, countries and cities.
+     */
+    private void total(Node node) {
+        if (node.level == Scope.DISTRICT) {
+            sortCities(node);
+            for (int row : node.cities) {
+                node.urbanPopulation += cityPopulation[row];
+            }
+            node.population = node.urbanPopulation;
+            return;
+        }
+        long urban = 0;
+        long population = 0;
+        int count = 0;
+        node.children.sort((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(a.name, b.name));
+        for (Node child : node.children) {
+            total(child);
+            urban += child.urbanPopulation;
+            population += child.population;
+            count += child.cityCount;
+        }
+        node.urbanPopulation = urban;
+        node.cityCount = count;
+        // Districts hold only city dwellers, so country totals come from the country table
+        node.population = node.level == Scope.COUNTRY ? countries.population[node.country] : population;
+    }
+
+    /**
+     * Orders a district's cities by population descending, breaking ties by row as the snapshot does.
+     */
+    private void sortCities(Node district) {
+        Integer[] rows = new Integer[district.cities.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = district.cities[i];
+        }
+        Arrays.sort(rows, (a, b) -> cityPopulation[a] != cityPopulation[b]
+                ? Integer.compare(cityPopulation[b], cityPopulation[a]) : Integer.compare(a, b));
+        for (int i = 0; i < rows.length; i++) {
+            district.cities[i] = rows[i];
+        }
+    }
+
+    /**
+     * A continent, region, country or district, or the world at the root.
+     */
+    public static final class Node {
+        private final Scope level;
+        private final String name;
+        private final Node parent;
+        private final List<Node> children = new ArrayList<>();
+
+        // city rows of a district, ordered by population descending
+        private int[] cities = new int[0];
+
+        private volatile long population;
+        private volatile long urbanPopulation;
+        private int cityCount;
+        private int capital = -1;
+        private int country = -1;
+
+        private Node(Scope level, String name, Node parent) {
+            this.level = level;
+            this.name = name;
+            this.parent = parent;
+        }
+
+        /**
+         * @return The level of the node.
+         */
+        public Scope level() {
+            return level;
+        }
+
+        /**
+         * @return The name of the continent, region, country or district.
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return The node above, or null for the world.
+         */
+        public Node parent() {
+            return parent;
+        }
+
+        /**
+         * @return The nodes below, ordered by name.
+         */
+        public List<Node> children() {
+            return Collections.unmodifiableList(children);
+        }
+
+        /**
+         * @return The total population; for a district, the population of its cities.
+         */
+        public long population() {
+            return population;
+        }
+
+        /**
+         * @return The population living in the cities below the node.
+         */
+        public long urbanPopulation() {
+            return urbanPopulation;
+        }
+
+        /**
+         * @return The number of cities below the node.
+         */
+        public int cityCount() {
+            return cityCount;
+        }
+
+        /**
+         * @return The city row of a country's capital, or -1 if the node is not a country or has none.
+         */
+        public int capital() {
+            return capital;
+        }
+
+        /**
+         * @return The country row of a country node, or -1 for other levels.
+         */
+        public int country() {
+            return country;
+        }
+    }
+}
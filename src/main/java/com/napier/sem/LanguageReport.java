@@ -1,8 +1,6 @@
 package com.napier.sem;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.PreparedStatement;
 import java.util.ArrayList;
 
 /**
@@ -19,6 +17,26 @@ public class LanguageReport {
 
     private Connection con;
 
+    /**
+     * In-memory copy of the world database; when set, queries are answered from it instead of SQL.
+     */
+    private WorldSnapshot snapshot;
+
+    /**
+     * Cache of query results; when set, repeated queries are answered from it.
+     */
+    private QueryCache cache;
+
+    /**
+     * Records the size of each report file written; null to record nothing.
+     */
+    private MetricsRegistry metrics;
+
+    /**
+     * The languages covered by the report.
+     */
+    private static final String[] LANGUAGES = {"Chinese", "English", "Hindi", "Spanish", "Arabic"};
+
 
     /**
      * Constructor to inject database connection.
@@ -29,6 +47,35 @@ public class LanguageReport {
         this.con = con;
     }
 
+    /**
+     * Constructor to inject a database connection and an in-memory snapshot.
+     *
+     * @param con      the active database connection
+     * @param snapshot the snapshot to answer queries from, or null to use live SQL
+     */
+    public LanguageReport(Connection con, WorldSnapshot snapshot) {
+        this.con = con;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Sets the cache that query results are kept in, or null to always query the database.
+     *
+     * @param cache the shared query cache
+     */
+    public void setCache(QueryCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the registry that report file sizes are recorded in.
+     *
+     * @param metrics the metrics registry, or null to record nothing
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Retrieves a report of the selected languages with their
      * estimated number of speakers and percentage of the world population.
@@ -36,6 +83,9 @@ public class LanguageReport {
      * @return ArrayList of CountryLanguage objects
      */
     public ArrayList<CountryLanguage> retrieveLanguageSpeakers() {
+        if (snapshot != null) {
+            return snapshot.languageSpeakers(LANGUAGES);
+        }
         if (con == null) {
             return new ArrayList<>();
         }
@@ -58,36 +108,13 @@ public class LanguageReport {
     }
 
     /**
-     * Executes the SQL query and maps results to CountryLanguage objects.
+     * Runs the language query through the cache, if one is set.
      *
      * @param sql SQL query string
-     * @return ArrayList of CountryLanguage objects
+     * @return ArrayList of CountryLanguage objects, or null if the query failed
      */
     private ArrayList<CountryLanguage> executeLanguageQuery(String sql) {
-        ArrayList<CountryLanguage> languages = new ArrayList<>();
-
-        if (con == null) {
-            return languages;
-        }
-
-        try (PreparedStatement pstmt = con.prepareStatement(sql)) {
-            ResultSet rset = pstmt.executeQuery();
-
-            while (rset.next()) {
-                CountryLanguage lang = new CountryLanguage();
-                lang.Language = rset.getString("Language");
-                lang.NumberOfSpeakers = rset.getLong("NumberOfSpeakers");
-                lang.WorldPercentage = rset.getDouble("WorldPercentage");
-                languages.add(lang);
-            }
-
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Failed to execute language query.");
-            return null;
-        }
-
-        return languages;
+        return Query.of(sql).list(con, cache, RowMappers.LANGUAGE, "Failed to execute language query.");
     }
 
     /**
@@ -101,15 +128,21 @@ public class LanguageReport {
             return;
         }
 
-        System.out.printf("%-15s %20s %20s%n", "Language", "Number of Speakers", "World %");
-        System.out.println("---------------------------------------------------------------");
+        ConsoleTable table = ConsoleTable.open();
+        StringBuilder text = table.text();
+        TextFormat.left(text, "Language", 15).append(' ');
+        TextFormat.right(text, "Number of Speakers", 20).append(' ');
+        TextFormat.right(text, "World %", 20).append(System.lineSeparator());
+        text.append("---------------------------------------------------------------").append(System.lineSeparator());
 
         for (CountryLanguage lang : languages) {
-            if (lang == null) continue;
+            if (lang == null || table.skipRow()) continue;
 
-            System.out.printf("%-15s %,20d %19.2f%%%n",
-                    lang.Language, lang.NumberOfSpeakers, lang.WorldPercentage);
+            TextFormat.left(text, lang.Language, 15).append(' ');
+            TextFormat.grouped(text, lang.NumberOfSpeakers, 20).append(' ');
+            TextFormat.fixed(text, lang.WorldPercentage, 2, 19).append('%').append(System.lineSeparator());
         }
+        table.print();
     }
 
     /**
@@ -124,29 +157,24 @@ public class LanguageReport {
             return;
         }
 
-        StringBuilder sb = new StringBuilder();
-        // Markdown table header
-        sb.append("| Language | Number of Speakers | World Percentage |\r\n");
-        sb.append("| --- | --- | --- |\r\n");
-
-        // Loop through all capital cities
-        for (CountryLanguage language : languages) {
-            if (language == null) continue;
-            sb.append("| ")
-                    .append(language.Language).append(" | ")
-                    .append(language.NumberOfSpeakers).append(" | ")
-                    .append(language.WorldPercentage).append(" |\r\n");
-        }
-
-        try {
-            // Create reports folder if it does not exist
-            new java.io.File("./reports/").mkdirs();
-
-            // Write Markdown to file
-            java.io.BufferedWriter writer = new java.io.BufferedWriter(
-                    new java.io.FileWriter("./reports/" + filename));
-            writer.write(sb.toString());
-            writer.close();
+        // Write Markdown straight to the file, creating the reports folder if it does not exist
+        try (ReportSink sink = ReportSink.open(filename)) {
+            // Markdown table header
+            sink.append("| Language | Number of Speakers | World Percentage |\r\n");
+            sink.append("| --- | --- | --- |\r\n");
+
+            // Loop through all capital cities
+            for (CountryLanguage language : languages) {
+                if (language == null) continue;
+                sink.append("| ")
+                        .append(language.Language).append(" | ")
+                        .append(language.NumberOfSpeakers).append(" | ")
+                        .append(language.WorldPercentage).append(" |\r\n");
+            }
+            sink.commit();
+            if (metrics != null) {
+                metrics.recordFileWritten(filename);
+            }
             System.out.println("Capital cities report written to ./reports/" + filename);
         } catch (java.io.IOException e) {
             e.printStackTrace();
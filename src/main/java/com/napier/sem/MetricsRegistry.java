@@ -0,0 +1,245 @@
+package com.napier.sem;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects latency, row count, bytes written and error count for each report
+ * query, render and file write of a run.
+ * <p>
+ * Metrics are named "kind:name", for example "fetch:All Cities In The World" or
+ * "file:AllCities.md". Recording is lock-free so reports running in parallel can
+ * share a registry, and {@link #toJson()} may be called while a run is in progress.
+ * </p>
+ */
+public class MetricsRegistry {
+
+    private final Map<String, Metric> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Records one timed operation.
+     *
+     * @param name   the metric name
+     * @param nanos  how long the operation took
+     * @param rows   the number of rows it returned
+     * @param failed true if the operation failed
+     */
+    public void record(String name, long nanos, long rows, boolean failed) {
+        Metric metric = metric(name);
+        metric.latency.record(nanos);
+        metric.rows.add(rows);
+        if (failed) {
+            metric.errors.increment();
+        }
+    }
+
+    /**
+     * Records bytes written to a file.
+     *
+     * @param name  the metric name
+     * @param bytes the number of bytes written
+     */
+    public void recordBytes(String name, long bytes) {
+        metric(name).bytes.add(bytes);
+    }
+
+    /**
+     * Records the size of a report file under "file:" followed by its name.
+     *
+     * @param filename the name of a file in ./reports/
+     */
+    public void recordFileWritten(String filename) {
+        recordBytes("file:" + filename, new java.io.File("./reports/" + filename).length());
+    }
+
+    /**
+     * @param name the metric name
+     * @return The number of operations recorded, or 0 if there are none.
+     */
+    public long getCount(String name) {
+        Metric metric = metrics.get(name);
+        return metric == null ? 0 : metric.latency.count();
+    }
+
+    /**
+     * @param name the metric name
+     * @return The number of failed operations recorded.
+     */
+    public long getErrors(String name) {
+        Metric metric = metrics.get(name);
+        return metric == null ? 0 : metric.errors.sum();
+    }
+
+    /**
+     * @param name the metric name
+     * @return The total number of rows recorded.
+     */
+    public long getRows(String name) {
+        Metric metric = metrics.get(name);
+        return metric == null ? 0 : metric.rows.sum();
+    }
+
+    /**
+     * @param name the metric name
+     * @return The total number of bytes written.
+     */
+    public long getBytes(String name) {
+        Metric metric = metrics.get(name);
+        return metric == null ? 0 : metric.bytes.sum();
+    }
+
+    /**
+     * @param name     the metric name
+     * @param quantile a fraction between 0 and 1, such as 0.95
+     * @return The latency at the quantile in nanoseconds, accurate to within 12.5%, or 0 if nothing was recorded.
+     */
+    public long getLatencyNanos(String name, double quantile) {
+        Metric metric = metrics.get(name);
+        return metric == null ? 0 : metric.latency.quantile(quantile);
+    }
+
+    /**
+     * @return Every metric as a JSON document, with latencies in milliseconds.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"metrics\":[");
+        boolean first = true;
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            Metric metric = entry.getValue();
+            Histogram latency = metric.latency;
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("\n{\"name\":");
+            appendString(sb, entry.getKey());
+            sb.append(",\"count\":").append(latency.count())
+                    .append(",\"errors\":").append(metric.errors.sum())
+                    .append(",\"rows\":").append(metric.rows.sum())
+                    .append(",\"bytes\":").append(metric.bytes.sum())
+                    .append(",\"latencyMs\":{\"p50\":").append(millis(latency.quantile(0.50)))
+                    .append(",\"p95\":").append(millis(latency.quantile(0.95)))
+                    .append(",\"p99\":").append(millis(latency.quantile(0.99)))
+                    .append(",\"max\":").append(millis(latency.max()))
+                    .append("}}");
+        }
+        return sb.append("\n]}\n").toString();
+    }
+
+    /**
+     * Writes the metrics as JSON.
+     *
+     * @param path the file to write
+     */
+    public void writeJson(String path) {
+        try (java.io.BufferedWriter writer = new java.io.BufferedWriter(new java.io.FileWriter(path))) {
+            writer.write(toJson());
+            System.out.println("Metrics written to " + path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Failed to write metrics.");
+        }
+    }
+
+    private Metric metric(String name) {
+        return metrics.computeIfAbsent(name, n -> new Metric());
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * The counters of one metric.
+     */
+    private static class Metric {
+        final Histogram latency = new Histogram();
+        final LongAdder rows = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * A log-linear histogram of non-negative values. Values below 16 have a bucket
+     * each; above that every power of two is split into eight buckets.
+     */
+    static class Histogram {
+        private static final int BUCKETS = 16 + 59 * 8;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            long v = Math.max(0, value);
+            counts.incrementAndGet(bucket(v));
+            total.increment();
+            max.accumulateAndGet(v, Math::max);
+        }
+
+        long count() {
+            return total.sum();
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        /**
+         * @return The upper bound of the bucket holding the value at the quantile.
+         */
+        long quantile(double quantile) {
+            long n = count();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max());
+                }
+            }
+            return max();
+        }
+
+        static int bucket(long v) {
+            if (v < 16) {
+                return (int) v;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(v);
+            int sub = (int) (v >>> (exponent - 3)) & 7;
+            return 16 + (exponent - 4) * 8 + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < 16) {
+                return bucket;
+            }
+            int exponent = (bucket - 16) / 8 + 4;
+            int sub = (bucket - 16) % 8;
+            long lower = (long) (8 + sub) << (exponent - 3);
+            return lower + (1L << (exponent - 3)) - 1;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.napier.sem;
+
+import java.util.ArrayList;
+
+/**
+ * Represents one page of a report listing
+ *
+ * @param <T> the type of row, a City or Country
+ */
+public class Page<T> {
+    /**
+     * Rows of the page, in the order of the listing
+     */
+    public ArrayList<T> Items;
+    /**
+     * Cursor to pass back for the page after this one, or null if this is the last page
+     */
+    public String Next;
+}
@@ -0,0 +1,184 @@
+package com.napier.sem;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * The position of a page in a listing ordered by population descending, as an opaque token.
+ * <p>
+ * A cursor holds the population and tie-breaking key of the last row of a page, the city ID
+ * for cities and capital cities and the country code for countries, so the next page starts
+ * right after that row with a keyset seek rather than by skipping rows. A token names the
+ * listing it came from and is refused by any other. Nothing in a token depends on where the
+ * rows came from, so a cursor handed out from SQL is valid against a snapshot and back.
+ * </p>
+ */
+final class PageCursor {
+
+    /**
+     * Listing of cities, keyed by city ID
+     */
+    static final char CITIES = 'c';
+    /**
+     * Listing of capital cities, keyed by city ID
+     */
+    static final char CAPITALS = 'k';
+    /**
+     * Listing of countries, keyed by country code
+     */
+    static final char COUNTRIES = 'n';
+
+    final int population;
+    final String key;
+
+    private PageCursor(int population, String key) {
+        this.population = population;
+        this.key = key;
+    }
+
+    /**
+     * Reads a cursor.
+     *
+     * @param listing the listing the token must come from
+     * @param token   the token, or null for the first page
+     * @return The cursor, or null for the first page.
+     * @throws IllegalArgumentException if the token is not a cursor of the listing
+     */
+    static PageCursor decode(char listing, String token) {
+        if (token == null) {
+            return null;
+        }
+        try {
+            String text = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int colon = text.indexOf(':');
+            if (text.isEmpty() || text.charAt(0) != listing || colon < 0) {
+                throw new IllegalArgumentException("Page cursor is not from this listing");
+            }
+            PageCursor cursor = new PageCursor(Integer.parseInt(text.substring(1, colon)), text.substring(colon + 1));
+            if (listing != COUNTRIES) {
+                cursor.id();
+            }
+            return cursor;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page cursor: " + token, e);
+        }
+    }
+
+    /**
+     * @param pageSize the number of rows asked for on a page
+     * @throws IllegalArgumentException if it is not at least 1
+     */
+    static void checkPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+    }
+
+    /**
+     * @param scope the level a capital city or country listing is filtered by
+     * @throws IllegalArgumentException if it is DISTRICT, which countries do not have
+     */
+    static void checkCountryScope(Scope scope) {
+        if (scope == Scope.DISTRICT) {
+            throw new IllegalArgumentException("Cannot filter countries by " + scope);
+        }
+    }
+
+    /**
+     * @param scope the level a capital city or country listing is filtered by
+     * @return The country column the level filters on, or null for WORLD.
+     * @throws IllegalArgumentException if it is DISTRICT, which countries do not have
+     */
+    static String countryColumn(Scope scope) {
+        switch (scope) {
+            case WORLD:
+                return null;
+            case CONTINENT:
+                return "Continent";
+            case REGION:
+                return "Region";
+            case COUNTRY:
+                return "Name";
+            default:
+                throw new IllegalArgumentException("Cannot filter countries by " + scope);
+        }
+    }
+
+    /**
+     * @param area the condition on the area of a page query, or null for the world
+     * @param seek the condition past the previous page, or null for the first page
+     * @return The WHERE clause of the query, or nothing if there are no conditions.
+     */
+    static String where(String area, String seek) {
+        if (area == null && seek == null) {
+            return "";
+        }
+        return "WHERE " + (area == null ? seek : seek == null ? area : area + " AND " + seek);
+    }
+
+    /**
+     * @return The city ID of the key.
+     */
+    int id() {
+        return Integer.parseInt(key);
+    }
+
+    /**
+     * Writes a cursor.
+     *
+     * @param listing    the listing of the row
+     * @param population the population of the last row of a page
+     * @param key        the city ID or country code of the row
+     * @return The token.
+     */
+    static String encode(char listing, int population, String key) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((listing + Integer.toString(population) + ':' + key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Makes a page of cities or capital cities fetched one past the page size.
+     *
+     * @param listing  CITIES or CAPITALS
+     * @param rows     up to pageSize + 1 cities with their IDs, or null if the query failed
+     * @param pageSize the number of rows on a page
+     * @return The page, or null if the query failed.
+     */
+    static Page<City> cityPage(char listing, ArrayList<City> rows, int pageSize) {
+        return page(rows, pageSize, city -> encode(listing, city.Population, Integer.toString(city.ID)));
+    }
+
+    /**
+     * Makes a page of countries fetched one past the page size.
+     *
+     * @param rows     up to pageSize + 1 countries, or null if the query failed
+     * @param pageSize the number of rows on a page
+     * @return The page, or null if the query failed.
+     */
+    static Page<Country> countryPage(ArrayList<Country> rows, int pageSize) {
+        return page(rows, pageSize, country -> encode(COUNTRIES, country.Population, country.Code));
+    }
+
+    /**
+     * @return The number of rows to fetch for a page, one more than fits so whether
+     * another page follows is known without a further query.
+     */
+    static int fetchSize(int pageSize) {
+        return (int) Math.min(Integer.MAX_VALUE, pageSize + 1L);
+    }
+
+    private static <T> Page<T> page(ArrayList<T> rows, int pageSize, Function<T, String> cursorOf) {
+        if (rows == null) {
+            return null;
+        }
+        Page<T> page = new Page<>();
+        if (rows.size() > pageSize) {
+            rows = new ArrayList<>(rows.subList(0, pageSize));
+            page.Next = cursorOf.apply(rows.get(pageSize - 1));
+        }
+        page.Items = rows;
+        return page;
+    }
+}
@@ -0,0 +1,194 @@
+package com.napier.sem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Answers pages of the city, capital city and country listings of a snapshot in the
+ * order of the SQL pages: population descending, then city ID or country code ascending.
+ * <p>
+ * Each listing is laid out partition by partition in that order, so a page is a binary
+ * search for the first row after the cursor within its partition followed by a copy of
+ * at most a page of rows. The last page costs the same as the first.
+ * </p>
+ */
+public class PageIndex {
+
+    private final CityTable cities;
+    private final CountryTable countries;
+    private final int[] capitalRow;
+
+    // rows laid out for each level in page order, indexed by Scope ordinal
+    private final ScopeLayout[] cityLayouts;
+    private final ScopeLayout[] capitalLayouts;
+    private final ScopeLayout[] countryLayouts;
+
+    /**
+     * Lays out the listings of a snapshot.
+     *
+     * @param snapshot the snapshot whose rows are paged
+     */
+    public PageIndex(WorldSnapshot snapshot) {
+        cities = snapshot.cityTable();
+        countries = snapshot.countryTable();
+        capitalRow = snapshot.capitalRow;
+
+        cityLayouts = ScopeLayout.ofCities(cities, sort(cities.size(), row -> true,
+                Comparator.<Integer>comparingInt(row -> -cities.population[row]).thenComparingInt(row -> cities.id[row])));
+        capitalLayouts = ScopeLayout.ofCapitals(countries, capitalRow, sort(countries.size(), row -> capitalRow[row] >= 0,
+                Comparator.<Integer>comparingInt(row -> -cities.population[capitalRow[row]])
+                        .thenComparingInt(row -> cities.id[capitalRow[row]])));
+        countryLayouts = ScopeLayout.ofCountries(countries, sort(countries.size(), row -> true,
+                Comparator.<Integer>comparingInt(row -> -countries.population[row]).thenComparing(countries::code)));
+    }
+
+    /**
+     * Reads a page of cities, as CityReport.citiesPage does.
+     *
+     * @param scope    the geographic level to filter by
+     * @param key      the continent, region, country or district name; ignored for WORLD
+     * @param cursor   the Next cursor of the previous page, or null for the first page
+     * @param pageSize the maximum number of cities on the page
+     * @return The page.
+     */
+    public Page<City> cities(Scope scope, String key, String cursor, int pageSize) {
+        PageCursor.checkPageSize(pageSize);
+        PageCursor after = PageCursor.decode(PageCursor.CITIES, cursor);
+        IntPredicate follows = after == null ? row -> true : follows(after.population, after.id(),
+                row -> cities.population[row], row -> cities.id[row]);
+
+        ArrayList<City> rows = new ArrayList<>();
+        ScopeLayout layout = cityLayouts[scope.ordinal()];
+        int partition = ScopeLayout.partition(cities, scope, key);
+        if (partition >= 0) {
+            int end = layout.start[partition + 1];
+            for (int i = seek(layout, partition, follows); i < end && rows.size() <= pageSize; i++) {
+                rows.add(cities.city(layout.order[i]));
+            }
+        }
+        return PageCursor.cityPage(PageCursor.CITIES, rows, pageSize);
+    }
+
+    /**
+     * Reads a page of capital cities, as CapitalCityReport.capitalCitiesPage does.
+     *
+     * @param scope    the geographic level to filter by; not DISTRICT
+     * @param key      the continent, region or country name; ignored for WORLD
+     * @param cursor   the Next cursor of the previous page, or null for the first page
+     * @param pageSize the maximum number of capital cities on the page
+     * @return The page.
+     */
+    public Page<City> capitalCities(Scope scope, String key, String cursor, int pageSize) {
+        PageCursor.checkPageSize(pageSize);
+        PageCursor.checkCountryScope(scope);
+        PageCursor after = PageCursor.decode(PageCursor.CAPITALS, cursor);
+        IntPredicate follows = after == null ? row -> true : follows(after.population, after.id(),
+                row -> cities.population[capitalRow[row]], row -> cities.id[capitalRow[row]]);
+
+        ArrayList<City> rows = new ArrayList<>();
+        ScopeLayout layout = capitalLayouts[scope.ordinal()];
+        int partition = ScopeLayout.partition(cities, scope, key);
+        if (partition >= 0) {
+            int end = layout.start[partition + 1];
+            for (int i = seek(layout, partition, follows); i < end && rows.size() <= pageSize; i++) {
+                rows.add(capital(layout.order[i]));
+            }
+        }
+        return PageCursor.cityPage(PageCursor.CAPITALS, rows, pageSize);
+    }
+
+    /**
+     * Reads a page of countries, as CountryReport.countriesPage does.
+     *
+     * @param scope    the geographic level to filter by; not DISTRICT
+     * @param key      the continent, region or country name; ignored for WORLD
+     * @param cursor   the Next cursor of the previous page, or null for the first page
+     * @param pageSize the maximum number of countries on the page
+     * @return The page.
+     */
+    public Page<Country> countries(Scope scope, String key, String cursor, int pageSize) {
+        PageCursor.checkPageSize(pageSize);
+        PageCursor.checkCountryScope(scope);
+        PageCursor after = PageCursor.decode(PageCursor.COUNTRIES, cursor);
+        IntPredicate follows = after == null ? row -> true : row -> {
+            int population = countries.population[row];
+            return population < after.population
+                    || population == after.population && countries.code(row).compareTo(after.key) > 0;
+        };
+
+        ArrayList<Country> rows = new ArrayList<>();
+        ScopeLayout layout = countryLayouts[scope.ordinal()];
+        int partition = ScopeLayout.partition(cities, scope, key);
+        if (partition >= 0) {
+            int end = layout.start[partition + 1];
+            for (int i = seek(layout, partition, follows); i < end && rows.size() <= pageSize; i++) {
+                rows.add(countries.country(layout.order[i]));
+            }
+        }
+        return PageCursor.countryPage(rows, pageSize);
+    }
+
+    private City capital(int country) {
+        int row = capitalRow[country];
+        City city = new City();
+        city.ID = cities.id[row];
+        city.Name = cities.name(row);
+        city.Country = countries.name(country);
+        city.Population = cities.population[row];
+        city.isCapital = true;
+        return city;
+    }
+
+    /**
+     * @return A test of whether a row comes after the row with the given population and ID.
+     */
+    private static IntPredicate follows(int population, int id,
+                                        IntUnaryOperator populationOf, IntUnaryOperator idOf) {
+        return row -> {
+            int rowPopulation = populationOf.applyAsInt(row);
+            return rowPopulation < population || rowPopulation == population && idOf.applyAsInt(row) > id;
+        };
+    }
+
+    /**
+     * Finds the first row of a partition that comes after the cursor. Rows are in page
+     * order, so once one row follows the cursor every later row does too.
+     *
+     * @return The index in the layout order of that row, or the end of the partition.
+     */
+    private static int seek(ScopeLayout layout, int partition, IntPredicate follows) {
+        int low = layout.start[partition];
+        int high = layout.start[partition + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (follows.test(layout.order[mid])) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The rows that pass a filter, in the given order.
+     */
+    private static int[] sort(int rows, IntPredicate include, Comparator<Integer> order) {
+        Integer[] sorted = new Integer[rows];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            if (include.test(row)) {
+                sorted[n++] = row;
+            }
+        }
+        Arrays.sort(sorted, 0, n, order);
+        int[] ordered = new int[n];
+        for (int i = 0; i < n; i++) {
+            ordered[i] = sorted[i];
+        }
+        return ordered;
+    }
+}
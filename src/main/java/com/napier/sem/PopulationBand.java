@@ -0,0 +1,23 @@
+package com.napier.sem;
+
+/**
+ * Represents the cities or countries whose population lies within a band
+ */
+public class PopulationBand {
+    /**
+     * Lowest population in the band, inclusive
+     */
+    public int Low;
+    /**
+     * Highest population in the band, inclusive
+     */
+    public int High;
+    /**
+     * Number of cities or countries in the band
+     */
+    public int Count;
+    /**
+     * Total population of the cities or countries in the band
+     */
+    public long Population;
+}
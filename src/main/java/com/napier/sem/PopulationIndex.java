@@ -0,0 +1,267 @@
+package com.napier.sem;
+
+import java.util.Arrays;
+
+/**
+ * Rows of the city and country tables kept sorted by population within each partition.
+ * <p>
+ * Cities are sorted within each country and within each district name, and countries
+ * and capitals within each region. A top N for a continent, region or the world is a
+ * bounded k-way merge of the sorted runs of the partitions it covers, taking
+ * O(n log k) for n rows from k runs, with no sort at query time. Ties are broken by
+ * row number, so results are in the same order as a full sort by population.
+ * </p>
+ */
+public class PopulationIndex {
+
+    private final int[] cityPopulation;
+    private final int[] countryPopulation;
+    // population of each country's capital, by country row
+    private final int[] capitalPopulation;
+
+    // city rows of each country and of each district code, and country rows of each region code
+    private final int[][] citiesByCountry;
+    private final int[][] citiesByDistrict;
+    private final int[][] countriesByRegion;
+    private final int[][] capitalsByRegion;
+    private final int[] countryRegion;
+
+    /**
+     * @param cities     the city table
+     * @param countries  the country table
+     * @param capitalRow the city row of each country's capital, or -1 if it has none
+     */
+    PopulationIndex(CityTable cities, CountryTable countries, int[] capitalRow) {
+        cityPopulation = cities.population;
+        countryPopulation = countries.population;
+        countryRegion = countries.region;
+        capitalPopulation = new int[countries.size()];
+        for (int c = 0; c < capitalRow.length; c++) {
+            capitalPopulation[c] = capitalRow[c] < 0 ? 0 : cities.population[capitalRow[c]];
+        }
+
+        // Cities of an unknown country are left out, as the report queries join on country
+        int[] cityDistrict = new int[cities.size()];
+        for (int row = 0; row < cities.size(); row++) {
+            cityDistrict[row] = cities.country[row] < 0 ? -1 : cities.district[row];
+        }
+        citiesByCountry = partition(cities.country, countries.size(), cityPopulation, null);
+        citiesByDistrict = partition(cityDistrict, cities.districts.size(), cityPopulation, null);
+
+        boolean[] hasCapital = new boolean[countries.size()];
+        for (int c = 0; c < hasCapital.length; c++) {
+            hasCapital[c] = capitalRow[c] >= 0;
+        }
+        countriesByRegion = partition(countries.region, countries.regions.size(), countryPopulation, null);
+        capitalsByRegion = partition(countries.region, countries.regions.size(), capitalPopulation, hasCapital);
+    }
+
+    /**
+     * Finds the most populated cities of some countries.
+     *
+     * @param countries a table by country row of the countries to include, or null for every country
+     * @param n         the maximum number of cities
+     * @return City rows ordered by population descending.
+     */
+    public int[] cities(boolean[] countries, int n) {
+        return merge(select(citiesByCountry, countries), cityPopulation, null, n);
+    }
+
+    /**
+     * Finds the most populated cities of some districts.
+     *
+     * @param districts a table by district code of the districts to include
+     * @param n         the maximum number of cities
+     * @return City rows ordered by population descending.
+     */
+    public int[] citiesInDistricts(boolean[] districts, int n) {
+        return merge(select(citiesByDistrict, districts), cityPopulation, null, n);
+    }
+
+    /**
+     * Finds the countries with the most populated capital cities.
+     *
+     * @param countries a table by country row of the countries to include, or null for every country
+     * @param n         the maximum number of capitals
+     * @return Country rows ordered by capital population descending.
+     */
+    public int[] capitals(boolean[] countries, int n) {
+        return merge(select(capitalsByRegion, regions(countries)), capitalPopulation, countries, n);
+    }
+
+    /**
+     * Finds the most populated countries.
+     *
+     * @param countries a table by country row of the countries to include, or null for every country
+     * @param n         the maximum number of countries
+     * @return Country rows ordered by population descending.
+     */
+    public int[] countries(boolean[] countries, int n) {
+        return merge(select(countriesByRegion, regions(countries)), countryPopulation, countries, n);
+    }
+
+    /**
+     * Merges runs of rows each sorted by population descending, ties by row, into the first n rows.
+     *
+     * @param runs       the sorted runs
+     * @param population the population of each row
+     * @param keep       a table by row of the rows to include, or null for every row
+     * @param n          the maximum number of rows
+     * @return The merged rows, in the same order as the runs.
+     */
+    public static int[] merge(int[][] runs, int[] population, boolean[] keep, int n) {
+        int total = 0;
+        for (int[] run : runs) {
+            total += run.length;
+        }
+        int[] merged = new int[Math.min(n, total)];
+        int[] heap = new int[runs.length];
+        int[] next = new int[runs.length];
+        int size = 0;
+        for (int r = 0; r < runs.length; r++) {
+            if (advance(runs[r], next, r, keep)) {
+                heap[size] = r;
+                siftUp(heap, size++, runs, next, population);
+            }
+        }
+
+        int count = 0;
+        while (size > 0 && count < merged.length) {
+            int r = heap[0];
+            merged[count++] = runs[r][next[r]++];
+            if (advance(runs[r], next, r, keep)) {
+                siftDown(heap, size, runs, next, population);
+            } else if (--size > 0) {
+                heap[0] = heap[size];
+                siftDown(heap, size, runs, next, population);
+            }
+        }
+        return count == merged.length ? merged : Arrays.copyOf(merged, count);
+    }
+
+    /**
+     * Skips rows that are not kept.
+     *
+     * @return True if the run has a row left.
+     */
+    private static boolean advance(int[] run, int[] next, int r, boolean[] keep) {
+        while (keep != null && next[r] < run.length && !keep[run[next[r]]]) {
+            next[r]++;
+        }
+        return next[r] < run.length;
+    }
+
+    private static void siftUp(int[] heap, int i, int[][] runs, int[] next, int[] population) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!before(heap[i], heap[parent], runs, next, population)) {
+                return;
+            }
+            int swap = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = swap;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, int[][] runs, int[] next, int[] population) {
+        int i = 0;
+        while (true) {
+            int first = i;
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                if (before(heap[child], heap[first], runs, next, population)) {
+                    first = child;
+                }
+            }
+            if (first == i) {
+                return;
+            }
+            int swap = heap[i];
+            heap[i] = heap[first];
+            heap[first] = swap;
+            i = first;
+        }
+    }
+
+    /**
+     * @return True if the head of run a comes before the head of run b.
+     */
+    private static boolean before(int a, int b, int[][] runs, int[] next, int[] population) {
+        int rowA = runs[a][next[a]];
+        int rowB = runs[b][next[b]];
+        return population[rowA] != population[rowB] ? population[rowA] > population[rowB] : rowA < rowB;
+    }
+
+    /**
+     * @return The runs whose partitions are selected, or every run if the selection is null.
+     */
+    private static int[][] select(int[][] runs, boolean[] selected) {
+        if (selected == null) {
+            return runs;
+        }
+        int count = 0;
+        for (int p = 0; p < runs.length; p++) {
+            if (selected[p] && runs[p].length > 0) {
+                count++;
+            }
+        }
+        int[][] chosen = new int[count][];
+        for (int p = 0, i = 0; p < runs.length; p++) {
+            if (selected[p] && runs[p].length > 0) {
+                chosen[i++] = runs[p];
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * @return A table by region code of the regions with an included country, or null for every region.
+     */
+    private boolean[] regions(boolean[] countries) {
+        if (countries == null) {
+            return null;
+        }
+        boolean[] regions = new boolean[countriesByRegion.length];
+        for (int c = 0; c < countries.length; c++) {
+            regions[countryRegion[c]] |= countries[c];
+        }
+        return regions;
+    }
+
+    /**
+     * Groups rows by partition, each group sorted by population descending and then by row.
+     *
+     * @param partition  the partition of each row, or -1 to leave the row out
+     * @param partitions the number of partitions
+     * @param population the population of each row
+     * @param include    a table by row of the rows to index, or null for every row
+     */
+    private static int[][] partition(int[] partition, int partitions, int[] population, boolean[] include) {
+        int[] sizes = new int[partitions];
+        for (int row = 0; row < partition.length; row++) {
+            if (partition[row] >= 0 && (include == null || include[row])) {
+                sizes[partition[row]]++;
+            }
+        }
+        long[][] keys = new long[partitions][];
+        for (int p = 0; p < partitions; p++) {
+            keys[p] = new long[sizes[p]];
+            sizes[p] = 0;
+        }
+        for (int row = 0; row < partition.length; row++) {
+            int p = partition[row];
+            if (p >= 0 && (include == null || include[row])) {
+                keys[p][sizes[p]++] = ((long) (Integer.MAX_VALUE - population[row]) << 32) | row;
+            }
+        }
+        int[][] runs = new int[partitions][];
+        for (int p = 0; p < partitions; p++) {
+            Arrays.sort(keys[p]);
+            runs[p] = new int[keys[p].length];
+            for (int i = 0; i < runs[p].length; i++) {
+                runs[p][i] = (int) keys[p][i];
+            }
+        }
+        return runs;
+    }
+}
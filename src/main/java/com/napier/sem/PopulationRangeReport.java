@@ -0,0 +1,155 @@
+package com.napier.sem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The PopulationRangeReport class is responsible for retrieving and displaying
+ * population bands and histograms of cities and countries from a snapshot.
+ */
+public class PopulationRangeReport {
+
+    /**
+     * Population bands of the snapshot's cities and countries.
+     */
+    private final PopulationRanges ranges;
+
+    /**
+     * Records the size of each report file written; null to record nothing.
+     */
+    private MetricsRegistry metrics;
+
+    /**
+     * @param snapshot the snapshot to answer queries from
+     */
+    public PopulationRangeReport(WorldSnapshot snapshot) {
+        this.ranges = new PopulationRanges(snapshot);
+    }
+
+    /**
+     * Sets the registry that report file sizes are recorded in.
+     *
+     * @param metrics the metrics registry, or null to record nothing
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The band and histogram queries the report answers from.
+     */
+    public PopulationRanges getRanges() {
+        return ranges;
+    }
+
+    /**
+     * Retrieves the number and population of cities in each band between some limits,
+     * for example 0, 1000000 and 5000000 for bands below one million and from one to five million.
+     *
+     * @param scope  the geographic level to filter by
+     * @param key    the continent, region, country or district name; ignored for WORLD
+     * @param limits the lowest population of each band in ascending order; the last band has no upper limit
+     * @return A list of bands.
+     */
+    public ArrayList<PopulationBand> getCityBands(Scope scope, String key, int... limits) {
+        ArrayList<PopulationBand> bands = new ArrayList<>();
+        for (int i = 0; i < limits.length; i++) {
+            int high = i + 1 < limits.length ? limits[i + 1] - 1 : Integer.MAX_VALUE;
+            bands.add(ranges.cityBand(scope, key, limits[i], high));
+        }
+        return bands;
+    }
+
+    /**
+     * Retrieves the population deciles of the cities in an area.
+     *
+     * @param scope the geographic level to filter by
+     * @param key   the continent, region, country or district name; ignored for WORLD
+     * @return Ten bands of equal numbers of cities, least populated first.
+     */
+    public ArrayList<PopulationBand> getCityDeciles(Scope scope, String key) {
+        return ranges.cityHistogram(scope, key, 10, true);
+    }
+
+    /**
+     * Retrieves the population deciles of the countries in an area.
+     *
+     * @param scope the geographic level to filter by; countries have no district
+     * @param key   the continent, region or country name; ignored for WORLD
+     * @return Ten bands of equal numbers of countries, least populated first.
+     */
+    public ArrayList<PopulationBand> getCountryDeciles(Scope scope, String key) {
+        return ranges.countryHistogram(scope, key, 10, true);
+    }
+
+    /**
+     * Prints a formatted list of population bands.
+     *
+     * @param bands The list of bands to print.
+     */
+    public void printBands(List<PopulationBand> bands) {
+        if (bands == null) {
+            System.out.println("No population bands to display.");
+            return;
+        }
+
+        // Table header
+        ConsoleTable table = ConsoleTable.open();
+        StringBuilder text = table.text();
+        TextFormat.right(text, "Low", 15).append(' ');
+        TextFormat.right(text, "High", 15).append(' ');
+        TextFormat.right(text, "Count", 10).append(' ');
+        TextFormat.right(text, "Population", 20).append(System.lineSeparator());
+        text.append("-------------------------------------------------------------").append(System.lineSeparator());
+
+        // Render rows, then print the table in one go
+        for (PopulationBand band : bands) {
+            if (band == null || table.skipRow())
+                continue;
+
+            TextFormat.grouped(text, band.Low, 15).append(' ');
+            TextFormat.grouped(text, band.High, 15).append(' ');
+            TextFormat.grouped(text, band.Count, 10).append(' ');
+            TextFormat.grouped(text, band.Population, 20).append(System.lineSeparator());
+        }
+        table.print();
+    }
+
+    /**
+     * Outputs a list of population bands to a Markdown file.
+     *
+     * @param bands    List of bands to output
+     * @param filename The name of the Markdown file to create
+     */
+    public void outputBands(List<PopulationBand> bands, String filename) {
+        if (bands == null || bands.isEmpty()) {
+            System.out.println("No population bands to output.");
+            return;
+        }
+
+        // Write Markdown straight to the file, creating the reports folder if it does not exist
+        try (ReportSink sink = ReportSink.open(filename)) {
+            // Markdown table header
+            sink.append("| Low | High | Count | Population |\r\n");
+            sink.append("| --- | --- | --- | --- |\r\n");
+
+            // Loop through all bands
+            for (PopulationBand band : bands) {
+                if (band == null) continue;
+                sink.append("| ")
+                        .append(band.Low).append(" | ")
+                        .append(band.High).append(" | ")
+                        .append(band.Count).append(" | ")
+                        .append(band.Population).append(" |\r\n");
+            }
+            sink.commit();
+            if (metrics != null) {
+                metrics.recordFileWritten(filename);
+            }
+            System.out.println("Population bands report written to ./reports/" + filename);
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+            System.out.println("Failed to write population bands report.");
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.napier.sem;
+
+import java.util.ArrayList;
+
+/**
+ * Answers population band and histogram queries over the cities and countries of a snapshot,
+ * such as how many cities of Asia have between one and five million people.
+ * <p>
+ * For each level, rows are laid out partition by partition in population order with
+ * a running total alongside, so the count and total population of any band is two
+ * binary searches and a subtraction. Names are matched ignoring case, and a district
+ * is every district of that name, as the district reports filter.
+ * </p>
+ */
+public class PopulationRanges {
+
+    private final CityTable cities;
+    private final CountryTable countries;
+    private final Column cityColumn;
+    private final Column countryColumn;
+
+    /**
+     * Builds the ranges from the tables of a snapshot.
+     *
+     * @param snapshot the snapshot whose cities and countries are queried
+     */
+    public PopulationRanges(WorldSnapshot snapshot) {
+        cities = snapshot.cityTable();
+        countries = snapshot.countryTable();
+        cityColumn = new Column(ScopeLayout.ofCities(cities, snapshot.citiesByPopulation), cities.population);
+        countryColumn = new Column(ScopeLayout.ofCountries(countries, snapshot.countriesByPopulation),
+                countries.population);
+    }
+
+    /**
+     * Counts the cities of an area with a population in a band.
+     *
+     * @param scope the geographic level of the area
+     * @param key   the continent, region, country or district name; ignored for WORLD
+     * @param low   the lowest population, inclusive
+     * @param high  the highest population, inclusive
+     * @return The number and total population of the cities in the band.
+     */
+    public PopulationBand cityBand(Scope scope, String key, int low, int high) {
+        return cityColumn.band(scope, partition(scope, key), low, high);
+    }
+
+    /**
+     * Lists the cities of an area with a population in a band, ordered by population descending.
+     *
+     * @param scope the geographic level of the area
+     * @param key   the continent, region, country or district name; ignored for WORLD
+     * @param low   the lowest population, inclusive
+     * @param high  the highest population, inclusive
+     * @return The matching cities.
+     */
+    public ArrayList<City> cities(Scope scope, String key, int low, int high) {
+        ArrayList<City> list = new ArrayList<>();
+        int[] range = cityColumn.range(scope, partition(scope, key), low, high);
+        for (int i = range[0]; i < range[1]; i++) {
+            list.add(cities.city(cityColumn.layouts[scope.ordinal()].order[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Counts the countries of an area with a population in a band.
+     *
+     * @param scope the geographic level of the area; countries have no district
+     * @param key   the continent, region or country name; ignored for WORLD
+     * @param low   the lowest population, inclusive
+     * @param high  the highest population, inclusive
+     * @return The number and total population of the countries in the band.
+     */
+    public PopulationBand countryBand(Scope scope, String key, int low, int high) {
+        return countryColumn.band(scope, countryPartition(scope, key), low, high);
+    }
+
+    /**
+     * Lists the countries of an area with a population in a band, ordered by population descending.
+     *
+     * @param scope the geographic level of the area; countries have no district
+     * @param key   the continent, region or country name; ignored for WORLD
+     * @param low   the lowest population, inclusive
+     * @param high  the highest population, inclusive
+     * @return The matching countries.
+     */
+    public ArrayList<Country> countries(Scope scope, String key, int low, int high) {
+        ArrayList<Country> list = new ArrayList<>();
+        int[] range = countryColumn.range(scope, countryPartition(scope, key), low, high);
+        for (int i = range[0]; i < range[1]; i++) {
+            list.add(countries.country(countryColumn.layouts[scope.ordinal()].order[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Divides the cities of an area into population bands.
+     *
+     * @param scope      the geographic level of the area
+     * @param key        the continent, region, country or district name; ignored for WORLD
+     * @param buckets    the number of bands
+     * @param equalDepth true for bands holding equal numbers of cities, such as deciles;
+     *                   false for bands of equal width between the smallest and largest population
+     * @return The bands ordered from least to most populated; empty bands of an equal depth histogram are left out.
+     */
+    public ArrayList<PopulationBand> cityHistogram(Scope scope, String key, int buckets, boolean equalDepth) {
+        return cityColumn.histogram(scope, partition(scope, key), buckets, equalDepth);
+    }
+
+    /**
+     * Divides the countries of an area into population bands.
+     *
+     * @param scope      the geographic level of the area; countries have no district
+     * @param key        the continent, region or country name; ignored for WORLD
+     * @param buckets    the number of bands
+     * @param equalDepth true for bands holding equal numbers of countries; false for bands of equal width
+     * @return The bands ordered from least to most populated; empty bands of an equal depth histogram are left out.
+     */
+    public ArrayList<PopulationBand> countryHistogram(Scope scope, String key, int buckets, boolean equalDepth) {
+        return countryColumn.histogram(scope, countryPartition(scope, key), buckets, equalDepth);
+    }
+
+    private int partition(Scope scope, String key) {
+        return ScopeLayout.partition(cities, scope, key);
+    }
+
+    private int countryPartition(Scope scope, String key) {
+        return scope == Scope.DISTRICT ? -1 : ScopeLayout.partition(cities, scope, key);
+    }
+
+    /**
+     * The population column of a table, laid out for every level with running totals.
+     */
+    private static final class Column {
+        private final ScopeLayout[] layouts;
+        private final int[] population;
+        // running total of population over each layout's order, indexed by Scope ordinal
+        private final long[][] totals;
+
+        Column(ScopeLayout[] layouts, int[] population) {
+            this.layouts = layouts;
+            this.population = population;
+            totals = new long[layouts.length][];
+            for (int level = 0; level < layouts.length; level++) {
+                int[] order = layouts[level].order;
+                long[] total = new long[order.length + 1];
+                for (int i = 0; i < order.length; i++) {
+                    total[i + 1] = total[i] + population[order[i]];
+                }
+                totals[level] = total;
+            }
+        }
+
+        PopulationBand band(Scope scope, int partition, int low, int high) {
+            int[] range = range(scope, partition, low, high);
+            return band(scope, range[0], range[1], low, high);
+        }
+
+        private PopulationBand band(Scope scope, int from, int to, int low, int high) {
+            long[] total = totals[scope.ordinal()];
+            PopulationBand band = new PopulationBand();
+            band.Low = low;
+            band.High = high;
+            band.Count = to - from;
+            band.Population = total[to] - total[from];
+            return band;
+        }
+
+        /**
+         * @return The start and end in the layout's order of the partition's rows in a band.
+         */
+        int[] range(Scope scope, int partition, int low, int high) {
+            if (partition < 0 || low > high) {
+                return new int[]{0, 0};
+            }
+            ScopeLayout layout = layouts[scope.ordinal()];
+            int from = layout.start[partition];
+            int to = layout.start[partition + 1];
+            // Rows are ordered by population descending
+            return new int[]{firstAtMost(layout.order, from, to, high), firstAtMost(layout.order, from, to, low - 1L)};
+        }
+
+        /**
+         * @return The first index in [from, to) whose population is at most a limit, or to if there is none.
+         */
+        private int firstAtMost(int[] order, int from, int to, long limit) {
+            while (from < to) {
+                int mid = (from + to) >>> 1;
+                if (population[order[mid]] <= limit) {
+                    to = mid;
+                } else {
+                    from = mid + 1;
+                }
+            }
+            return from;
+        }
+
+        ArrayList<PopulationBand> histogram(Scope scope, int partition, int buckets, boolean equalDepth) {
+            ArrayList<PopulationBand> bands = new ArrayList<>();
+            if (partition < 0 || buckets < 1) {
+                return bands;
+            }
+            ScopeLayout layout = layouts[scope.ordinal()];
+            int from = layout.start[partition];
+            int to = layout.start[partition + 1];
+            int rows = to - from;
+            if (rows == 0) {
+                return bands;
+            }
+            int min = population[layout.order[to - 1]];
+            int max = population[layout.order[from]];
+
+            if (equalDepth) {
+                // Band i holds the rows ranked i * rows / buckets up to the next band, least populated first
+                for (int i = 0; i < buckets; i++) {
+                    int first = (int) ((long) i * rows / buckets);
+                    int last = (int) ((long) (i + 1) * rows / buckets);
+                    if (first < last) {
+                        bands.add(band(scope, to - last, to - first,
+                                population[layout.order[to - 1 - first]], population[layout.order[to - last]]));
+                    }
+                }
+                return bands;
+            }
+
+            long width = Math.max(1, ((long) max - min + buckets) / buckets);
+            for (long low = min; low <= max; low += width) {
+                int high = (int) Math.min(low + width - 1, max);
+                bands.add(band(scope, partition, (int) low, high));
+            }
+            return bands;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.napier.sem;
+
+/**
+ * Represents the total and urban population of a continent, region or country
+ */
+public class PopulationSummary {
+    /**
+     * Name of the continent, region or country
+     */
+    public String Name;
+    /**
+     * Total population
+     */
+    public double Population;
+    /**
+     * Population living in cities
+     */
+    public double UrbanPopulation;
+    /**
+     * Urban population as a percentage of the total population
+     */
+    public double Percentage;
+}
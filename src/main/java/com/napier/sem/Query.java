@@ -0,0 +1,146 @@
+package com.napier.sem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A report query and its parameters, run through the query cache when one is set.
+ * <p>
+ * Each parameter is bound with the setter of its type, so a string, which may be null, is
+ * bound with setString and a whole number with setInt. Rows are mapped by a RowMapper,
+ * which looks up its columns once per statement. A query that fails prints why, followed by
+ * its failure message, and returns null, as the reports always have.
+ * </p>
+ */
+final class Query {
+
+    private final String sql;
+    private Object[] values = new Object[2];
+    private int[] types = new int[2];
+    private int count;
+
+    private Query(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * Starts a query.
+     *
+     * @param sql the SQL, with a ? for each parameter
+     * @return A query with no parameters bound yet.
+     */
+    static Query of(String sql) {
+        return new Query(sql);
+    }
+
+    /**
+     * Adds a string parameter.
+     *
+     * @param value the value of the next ?, or null
+     * @return This query.
+     */
+    Query string(String value) {
+        return add(value, Types.VARCHAR);
+    }
+
+    /**
+     * Adds an integer parameter.
+     *
+     * @param value the value of the next ?
+     * @return This query.
+     */
+    Query integer(int value) {
+        return add(value, Types.INTEGER);
+    }
+
+    /**
+     * Binds the parameters to a statement prepared from this query's SQL.
+     *
+     * @param pstmt the statement
+     * @throws SQLException if a parameter cannot be set
+     */
+    void bind(PreparedStatement pstmt) throws SQLException {
+        for (int i = 0; i < count; i++) {
+            if (types[i] == Types.INTEGER) {
+                pstmt.setInt(i + 1, (Integer) values[i]);
+            } else {
+                pstmt.setString(i + 1, (String) values[i]);
+            }
+        }
+    }
+
+    /**
+     * Runs the query, or answers it from the cache.
+     *
+     * @param con     the active database connection, or null for no rows
+     * @param cache   the cache to answer from and fill, or null to always run the query
+     * @param mapper  maps each row to a report object
+     * @param failure the message printed if the query fails
+     * @return The mapped rows, or null if the query failed.
+     */
+    <T> ArrayList<T> list(Connection con, QueryCache cache, RowMapper<T> mapper, String failure) {
+        if (cache == null) {
+            return run(con, mapper, failure);
+        }
+        return cache.lookup(() -> run(con, mapper, failure), sql, Arrays.copyOf(values, count));
+    }
+
+    /**
+     * Runs the query and maps its first row, without the cache.
+     *
+     * @param con     the active database connection
+     * @param mapper  maps the row to a report object
+     * @param failure the message printed if the query fails
+     * @return The first row, or null if there are no rows or the query failed.
+     */
+    <T> T first(Connection con, RowMapper<T> mapper, String failure) {
+        try (PreparedStatement pstmt = StatementCache.prepare(con, sql)) {
+            bind(pstmt);
+            try (ResultSet rset = pstmt.executeQuery()) {
+                return rset.next() ? mapper.columns(rset).map(rset) : null;
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            System.out.println(failure);
+            return null;
+        }
+    }
+
+    private <T> ArrayList<T> run(Connection con, RowMapper<T> mapper, String failure) {
+        ArrayList<T> rows = new ArrayList<>();
+        if (con == null) {
+            return rows;
+        }
+
+        try (PreparedStatement pstmt = StatementCache.prepare(con, sql)) {
+            bind(pstmt);
+            try (ResultSet rset = pstmt.executeQuery()) {
+                RowMapper.Row<T> row = mapper.columns(rset);
+                while (rset.next()) {
+                    rows.add(row.map(rset));
+                }
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            System.out.println(failure);
+            return null;
+        }
+
+        return rows;
+    }
+
+    private Query add(Object value, int type) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, count * 2);
+            types = Arrays.copyOf(types, count * 2);
+        }
+        values[count] = value;
+        types[count++] = type;
+        return this;
+    }
+}
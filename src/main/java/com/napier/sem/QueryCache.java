@@ -0,0 +1,282 @@
+package com.napier.sem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A cache of report query results keyed by SQL text and bound parameters.
+ * <p>
+ * Entries expire ttlMillis after they were stored. When there are more than
+ * maxEntries entries, or their estimated size exceeds maxBytes, the least
+ * recently used entries are evicted. The report rows have public fields, so the
+ * cache keeps its own copies of the rows it stores and gives every caller,
+ * including the one whose query filled it, a list of fresh copies; a caller
+ * changing its rows never changes what later callers see. Failed queries, which
+ * return null, are not cached. Two callers missing the same key at once may
+ * both run the query.
+ * </p>
+ */
+public class QueryCache {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param ttlMillis  how long a result may be served after it was fetched
+     * @param maxEntries the maximum number of cached results
+     * @param maxBytes   the maximum estimated size of all cached results
+     */
+    public QueryCache(long ttlMillis, int maxEntries, long maxBytes) {
+        if (ttlMillis <= 0 || maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached result of a query, running it on a miss.
+     *
+     * @param query  runs the query, returning null on failure
+     * @param sql    the SQL text of the query
+     * @param params the values bound to the query
+     * @return A copy of the result, or null if the query failed.
+     */
+    public <T> ArrayList<T> lookup(Supplier<ArrayList<T>> query, String sql, Object... params) {
+        Key key = new Key(sql, params);
+        List<T> cached = get(key);
+        if (cached != null) {
+            return copyRows(cached);
+        }
+        ArrayList<T> rows = query.get();
+        if (rows != null) {
+            put(key, Collections.unmodifiableList(copyRows(rows)));
+        }
+        return rows;
+    }
+
+    /**
+     * Removes the cached result of one query.
+     *
+     * @param sql    the SQL text of the query
+     * @param params the values bound to the query
+     */
+    public synchronized void invalidate(String sql, Object... params) {
+        Entry entry = entries.remove(new Key(sql, params));
+        if (entry != null) {
+            bytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * Removes every cached result, for example after the world data has been changed.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return The number of lookups answered from the cache.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * @return The number of lookups that ran their query.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return The number of results evicted to stay within the entry and byte budgets.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of cached results.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The estimated size of all cached results in bytes.
+     */
+    public synchronized long getEstimatedBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The current time in nanoseconds; overridden in tests.
+     */
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized <T> List<T> get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && now() - entry.storedAt >= ttlNanos) {
+            entries.remove(key);
+            bytes -= entry.bytes;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return (List<T>) entry.rows;
+    }
+
+    private synchronized void put(Key key, List<?> rows) {
+        long size = estimateBytes(key, rows);
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(rows, size, now()));
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += size;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.bytes;
+            evictions++;
+        }
+    }
+
+    private static <T> ArrayList<T> copyRows(List<T> rows) {
+        ArrayList<T> copy = new ArrayList<>(rows.size());
+        for (T row : rows) {
+            copy.add(copyRow(row));
+        }
+        return copy;
+    }
+
+    /**
+     * Copies a City, Country or CountryLanguage; other rows are shared as they are.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T copyRow(T row) {
+        if (row instanceof City) {
+            City city = (City) row;
+            City copy = new City();
+            copy.Name = city.Name;
+            copy.Country = city.Country;
+            copy.District = city.District;
+            copy.Population = city.Population;
+            copy.isCapital = city.isCapital;
+            copy.ID = city.ID;
+            return (T) copy;
+        } else if (row instanceof Country) {
+            Country country = (Country) row;
+            Country copy = new Country();
+            copy.Code = country.Code;
+            copy.Name = country.Name;
+            copy.Continent = country.Continent;
+            copy.Region = country.Region;
+            copy.Population = country.Population;
+            copy.Capital = country.Capital;
+            return (T) copy;
+        } else if (row instanceof CountryLanguage) {
+            CountryLanguage language = (CountryLanguage) row;
+            CountryLanguage copy = new CountryLanguage();
+            copy.Language = language.Language;
+            copy.NumberOfSpeakers = language.NumberOfSpeakers;
+            copy.WorldPercentage = language.WorldPercentage;
+            return (T) copy;
+        }
+        return row;
+    }
+
+    /**
+     * Roughly estimates the heap used by a result: object headers, fields and string characters.
+     */
+    private static long estimateBytes(Key key, List<?> rows) {
+        long size = 64 + 2L * key.sql.length() + 16L * rows.size();
+        for (Object row : rows) {
+            if (row instanceof City) {
+                City city = (City) row;
+                size += 40 + stringBytes(city.Name) + stringBytes(city.Country) + stringBytes(city.District);
+            } else if (row instanceof Country) {
+                Country country = (Country) row;
+                size += 40 + stringBytes(country.Code) + stringBytes(country.Name) + stringBytes(country.Continent)
+                        + stringBytes(country.Region) + stringBytes(country.Capital);
+            } else if (row instanceof CountryLanguage) {
+                size += 40 + stringBytes(((CountryLanguage) row).Language);
+            } else {
+                size += 64;
+            }
+        }
+        return size;
+    }
+
+    private static long stringBytes(String s) {
+        return s == null ? 0 : 40 + s.length();
+    }
+
+    /**
+     * The SQL text and bound parameters of a query.
+     */
+    private static final class Key {
+        private final String sql;
+        private final Object[] params;
+
+        Key(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params == null ? new Object[0] : params.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return sql.equals(other.sql) && Arrays.equals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + Arrays.hashCode(params);
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+        private final List<?> rows;
+        private final long bytes;
+        private final long storedAt;
+
+        Entry(List<?> rows, long bytes, long storedAt) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.napier.sem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A declarative description of a report run as a graph of stages.
+ * <p>
+ * Each report is a fetch stage followed by a render stage that prints it to the
+ * console and a write stage that saves it as Markdown. Render stages also wait
+ * for the previous render stage, whatever its outcome, so console output keeps its
+ * declared order while fetches and file writes are free to overlap. The graph is executed by a
+ * {@link ReportScheduler}.
+ * </p>
+ */
+public class ReportGraph {
+
+    /**
+     * The kind of work a stage does.
+     */
+    public enum Kind {
+        /**
+         * Retrieves report data
+         */
+        FETCH,
+        /**
+         * Prints report data to the console
+         */
+        RENDER,
+        /**
+         * Writes report data to a file
+         */
+        WRITE
+    }
+
+    /**
+     * The state of a stage during and after a run.
+     */
+    public enum Status {
+        PENDING,
+        RUNNING,
+        DONE,
+        /**
+         * The stage threw an exception
+         */
+        FAILED,
+        /**
+         * A stage this one depends on did not complete
+         */
+        SKIPPED,
+        /**
+         * The run was cancelled before the stage started
+         */
+        CANCELLED
+    }
+
+    /**
+     * A single unit of work in the graph.
+     *
+     * @param <T> the type of value the stage produces
+     */
+    public static class Stage<T> {
+        final int id;
+        final String name;
+        final Kind kind;
+        // stages whose results this stage needs; it is skipped unless they are all done
+        final List<Stage<?>> dependencies;
+        // stages that only have to finish first, in any state
+        final List<Stage<?>> predecessors;
+        final List<Stage<?>> dependents = new ArrayList<>();
+        private final Supplier<T> action;
+
+        private volatile T result;
+        private volatile Status status = Status.PENDING;
+        private volatile long durationNanos;
+
+        Stage(int id, String name, Kind kind, List<Stage<?>> dependencies, List<Stage<?>> predecessors,
+              Supplier<T> action) {
+            this.id = id;
+            this.name = name;
+            this.kind = kind;
+            this.dependencies = dependencies;
+            this.predecessors = predecessors;
+            this.action = action;
+        }
+
+        void execute() {
+            status = Status.RUNNING;
+            long start = System.nanoTime();
+            try {
+                result = action.get();
+                status = Status.DONE;
+            } finally {
+                durationNanos = System.nanoTime() - start;
+            }
+        }
+
+        void finish(Status status) {
+            this.status = status;
+        }
+
+        /**
+         * @return The stage name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The kind of work the stage does.
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return The state of the stage.
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return How long the stage took to run, in nanoseconds.
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return The value produced by the stage, or null if it has not completed.
+         */
+        public T getResult() {
+            return result;
+        }
+    }
+
+    private final List<Stage<?>> stages = new ArrayList<>();
+    private Stage<?> lastRender;
+
+    /**
+     * Adds a stage that retrieves report data.
+     *
+     * @param name  the report name
+     * @param fetch retrieves the data
+     * @return The new stage, for use as input to render and write stages.
+     */
+    public <T> Stage<T> fetch(String name, Supplier<T> fetch) {
+        return add(name, Kind.FETCH, Collections.emptyList(), Collections.emptyList(), fetch);
+    }
+
+    /**
+     * Adds a stage that prints the result of another stage. Render stages
+     * run one at a time in the order they were added; one that fails or is
+     * skipped does not hold back the renders after it.
+     *
+     * @param name   the report name
+     * @param input  the stage whose result is printed
+     * @param render prints the result
+     * @return The new stage.
+     */
+    public <T> Stage<Void> render(String name, Stage<T> input, Consumer<T> render) {
+        List<Stage<?>> predecessors = lastRender == null ? Collections.emptyList() : List.of(lastRender);
+        Stage<Void> stage = add(name, Kind.RENDER, List.of(input), predecessors, () -> {
+            render.accept(input.getResult());
+            return null;
+        });
+        lastRender = stage;
+        return stage;
+    }
+
+    /**
+     * Adds a stage that writes the result of another stage to a file.
+     *
+     * @param name  the report name
+     * @param input the stage whose result is written
+     * @param write writes the result
+     * @return The new stage.
+     */
+    public <T> Stage<Void> write(String name, Stage<T> input, Consumer<T> write) {
+        return add(name, Kind.WRITE, List.of(input), Collections.emptyList(), () -> {
+            write.accept(input.getResult());
+            return null;
+        });
+    }
+
+    /**
+     * Adds a fetch, render and write stage for a list report.
+     *
+     * @param title  the heading printed above the report
+     * @param fetch  retrieves the rows
+     * @param print  prints the rows to the console
+     * @param output writes the rows to a Markdown file
+     * @return The fetch stage.
+     */
+    public <T> Stage<T> report(String title, Supplier<T> fetch, Consumer<T> print, Consumer<T> output) {
+        Stage<T> rows = fetch(title, fetch);
+        render(title, rows, result -> {
+            System.out.println("\n=== " + title + " ===");
+            print.accept(result);
+        });
+        write(title, rows, output);
+        return rows;
+    }
+
+    /**
+     * @return Every stage in the order it was added.
+     */
+    public List<Stage<?>> stages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    private <T> Stage<T> add(String name, Kind kind, List<Stage<?>> dependencies, List<Stage<?>> predecessors,
+                             Supplier<T> action) {
+        Stage<T> stage = new Stage<>(stages.size(), name, kind, dependencies, predecessors, action);
+        for (Stage<?> dependency : dependencies) {
+            dependency.dependents.add(stage);
+        }
+        for (Stage<?> predecessor : predecessors) {
+            predecessor.dependents.add(stage);
+        }
+        stages.add(stage);
+        return stage;
+    }
+}
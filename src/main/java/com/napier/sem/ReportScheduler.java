@@ -0,0 +1,244 @@
+package com.napier.sem;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs the stages of a {@link ReportGraph} once their dependencies have completed.
+ * <p>
+ * At most maxConcurrency stages run at the same time; when several are ready the
+ * one declared first goes first, so a scheduler with a concurrency of one runs the
+ * graph in declaration order. A stage whose dependency failed is skipped, and
+ * cancelling a run skips every stage that has not yet started. A stage that throws
+ * an Error is marked failed and still completes the run before the Error propagates.
+ * </p>
+ */
+public class ReportScheduler {
+
+    private final Executor executor;
+    private final int maxConcurrency;
+    private volatile boolean cancelled;
+    private volatile MetricsRegistry metrics;
+
+    /**
+     * @param executor       runs the stages; any executor may be used, such as a virtual thread executor
+     * @param maxConcurrency the maximum number of stages running at once
+     */
+    public ReportScheduler(Executor executor, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1");
+        }
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return A scheduler that runs every stage on the calling thread in declaration order.
+     */
+    public static ReportScheduler sequential() {
+        return new ReportScheduler(Runnable::run, 1);
+    }
+
+    /**
+     * @param maxConcurrency the maximum number of stages running at once
+     * @return A scheduler that runs stages on the common fork/join pool.
+     */
+    public static ReportScheduler forkJoin(int maxConcurrency) {
+        return new ReportScheduler(ForkJoinPool.commonPool(), maxConcurrency);
+    }
+
+    /**
+     * Records the duration, rows and failures of every stage that runs, named "kind:stage".
+     * A fetch returning null counts as a failure, as report queries return null on error.
+     *
+     * @param metrics the registry to record into, or null to stop recording
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Stops starting new stages. Stages already running are allowed to finish.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Runs every stage of the graph and waits for the run to finish.
+     *
+     * @param graph the stages to run
+     * @return True if every stage completed successfully.
+     */
+    public boolean run(ReportGraph graph) {
+        cancelled = false;
+        Run run = new Run(graph.stages());
+        run.start();
+        for (ReportGraph.Stage<?> stage : graph.stages()) {
+            if (stage.getStatus() != ReportGraph.Status.DONE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Prints how long each stage of a completed graph took.
+     *
+     * @param graph a graph that has been run
+     */
+    public static void printTimings(ReportGraph graph) {
+        StringBuilder row = new StringBuilder(96);
+        TextFormat.left(row, "Stage", 45).append(' ');
+        TextFormat.left(row, "Kind", 7).append(' ');
+        TextFormat.left(row, "Status", 10).append(' ');
+        System.out.println(TextFormat.right(row, "Time (ms)", 12));
+        System.out.println("------------------------------------------------------------------------------");
+        for (ReportGraph.Stage<?> stage : graph.stages()) {
+            row.setLength(0);
+            TextFormat.left(row, stage.getName(), 45).append(' ');
+            TextFormat.left(row, String.valueOf(stage.getKind()), 7).append(' ');
+            TextFormat.left(row, String.valueOf(stage.getStatus()), 10).append(' ');
+            System.out.print(TextFormat.fixed(row, stage.getDurationNanos() / 1_000_000.0, 2, 12).append(System.lineSeparator()));
+        }
+    }
+
+    /**
+     * The bookkeeping for a single run of a graph.
+     */
+    private class Run {
+        private final int total;
+        private final int[] pending;
+        private final PriorityQueue<ReportGraph.Stage<?>> ready =
+                new PriorityQueue<>(Comparator.comparingInt((ReportGraph.Stage<?> s) -> s.id));
+        private final CountDownLatch finished = new CountDownLatch(1);
+        // Set while a thread is in dispatch, so an executor running stages inline drains them in its loop
+        private final ThreadLocal<Boolean> dispatching = ThreadLocal.withInitial(() -> false);
+        private int running;
+        private int completed;
+
+        Run(List<ReportGraph.Stage<?>> stages) {
+            total = stages.size();
+            pending = new int[total];
+            for (ReportGraph.Stage<?> stage : stages) {
+                pending[stage.id] = stage.dependencies.size() + stage.predecessors.size();
+                if (pending[stage.id] == 0) {
+                    ready.add(stage);
+                }
+            }
+        }
+
+        void start() {
+            if (total == 0) {
+                return;
+            }
+            dispatch();
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                System.out.println("Interrupted while waiting for reports");
+            }
+        }
+
+        /**
+         * Hands ready stages to the executor while there is spare concurrency. A stage
+         * completing inside executor.execute, as with the sequential scheduler, leaves the
+         * stages it readied to this loop rather than dispatching them one call deeper.
+         */
+        private void dispatch() {
+            if (dispatching.get()) {
+                return;
+            }
+            dispatching.set(true);
+            try {
+                while (true) {
+                    ReportGraph.Stage<?> next;
+                    synchronized (this) {
+                        if (ready.isEmpty() || running >= maxConcurrency) {
+                            return;
+                        }
+                        next = ready.poll();
+                        running++;
+                    }
+                    executor.execute(() -> execute(next));
+                }
+            } finally {
+                dispatching.remove();
+            }
+        }
+
+        private void execute(ReportGraph.Stage<?> stage) {
+            try {
+                if (cancelled) {
+                    stage.finish(ReportGraph.Status.CANCELLED);
+                } else if (!dependenciesDone(stage)) {
+                    stage.finish(ReportGraph.Status.SKIPPED);
+                } else {
+                    try {
+                        stage.execute();
+                    } catch (RuntimeException e) {
+                        System.out.println(e.getMessage());
+                        System.out.println("Report stage failed: " + stage.getName());
+                        stage.finish(ReportGraph.Status.FAILED);
+                    }
+                    record(stage);
+                }
+            } finally {
+                // An Error leaves the stage running; it still has to release its dependents
+                // and count towards the run, or start() would wait forever
+                if (stage.getStatus() == ReportGraph.Status.RUNNING) {
+                    stage.finish(ReportGraph.Status.FAILED);
+                }
+                complete(stage);
+            }
+        }
+
+        private void complete(ReportGraph.Stage<?> stage) {
+            boolean last;
+            synchronized (this) {
+                running--;
+                completed++;
+                for (ReportGraph.Stage<?> dependent : stage.dependents) {
+                    if (--pending[dependent.id] == 0) {
+                        ready.add(dependent);
+                    }
+                }
+                last = completed == total;
+            }
+            if (last) {
+                finished.countDown();
+            } else {
+                dispatch();
+            }
+        }
+
+        private void record(ReportGraph.Stage<?> stage) {
+            MetricsRegistry registry = metrics;
+            if (registry == null) {
+                return;
+            }
+            Object result = stage.getResult();
+            boolean failed = stage.getStatus() == ReportGraph.Status.FAILED
+                    || (stage.getKind() == ReportGraph.Kind.FETCH && result == null);
+            long rows = result instanceof Collection ? ((Collection<?>) result).size() : 0;
+            registry.record(stage.getKind().name().toLowerCase() + ":" + stage.getName(),
+                    stage.getDurationNanos(), rows, failed);
+        }
+
+        private boolean dependenciesDone(ReportGraph.Stage<?> stage) {
+            for (ReportGraph.Stage<?> dependency : stage.dependencies) {
+                if (dependency.getStatus() != ReportGraph.Status.DONE) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
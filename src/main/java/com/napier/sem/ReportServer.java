@@ -0,0 +1,854 @@
+package com.napier.sem;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Answers report queries over HTTP on the loopback interface, so a consumer can read one
+ * report from a warm JVM instead of waiting for every report file to be rewritten.
+ * <p>
+ * Every query of the city, capital city, country, language and urbanisation reports is an
+ * endpoint that takes its arguments as query parameters, and GET / lists them. Answers are
+ * Markdown, CSV or JSON, chosen by the format parameter or else the Accept header. Each
+ * response carries an ETag, a hash of its body, and the Last-Modified time that body was
+ * first served; a GET whose If-None-Match or If-Modified-Since still holds gets 304 Not
+ * Modified with no body. Rendered responses are kept in a ResponseCache for a minute, so
+ * repeated requests run no query at all. GET /metrics returns the metrics registry as JSON,
+ * read afresh on every request, so a running server can be scraped.
+ * </p>
+ */
+public class ReportServer {
+
+    /**
+     * The port served on when none is given.
+     */
+    public static final int DEFAULT_PORT = 8080;
+
+    /**
+     * Number of requests answered at once; queries still run one at a time.
+     */
+    private static final int THREADS = 4;
+
+    /**
+     * Rows on a page when the size parameter is left out.
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * The path the metrics are served at.
+     */
+    private static final String METRICS_PATH = "/metrics";
+
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH).withZone(ZoneOffset.UTC);
+
+    private final CityReport cityReport;
+    private final CapitalCityReport capitalReport;
+    private final CountryReport countryReport;
+    private final LanguageReport languageReport;
+    private final UrbanReport urbanReport;
+    private final Connection con;
+
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+    // Responses are served for a minute, up to 512 responses or 64 MB
+    private final ResponseCache responses = new ResponseCache(60 * 1000, 512, 64L * 1024 * 1024);
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    // The reports share one connection and keep per-call state in fields, so queries run
+    // one at a time; answers from the response cache are sent without taking it
+    private final Object queries = new Object();
+    private volatile MetricsRegistry metrics;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * The formats an answer can be rendered in.
+     */
+    private enum Format {
+        MARKDOWN("text/markdown; charset=utf-8"),
+        CSV("text/csv; charset=utf-8"),
+        JSON("application/json; charset=utf-8");
+
+        final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * Runs the query of an endpoint.
+     */
+    private interface Answer {
+        /**
+         * @param params the query parameters of the request
+         * @return The answer, or null if the query failed.
+         * @throws IllegalArgumentException if a parameter is missing or invalid
+         */
+        ReportTable answer(Params params);
+    }
+
+    /**
+     * A report query served at a path.
+     */
+    private static final class Endpoint {
+        final String parameters;
+        final String description;
+        final Answer answer;
+
+        Endpoint(String parameters, String description, Answer answer) {
+            this.parameters = parameters;
+            this.description = description;
+            this.answer = answer;
+        }
+    }
+
+    /**
+     * Thrown by an endpoint when the city or rank asked for does not exist.
+     */
+    private static final class NotFound extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NotFound(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * @param cityReport     answers the city endpoints
+     * @param capitalReport  answers the capital city endpoints
+     * @param countryReport  answers the country endpoints
+     * @param languageReport answers the language endpoint
+     * @param urbanReport    answers the urbanisation endpoints
+     * @param con            the connection the urbanisation queries run on, or null with a geography tree
+     */
+    public ReportServer(CityReport cityReport, CapitalCityReport capitalReport, CountryReport countryReport,
+                        LanguageReport languageReport, UrbanReport urbanReport, Connection con) {
+        this.cityReport = cityReport;
+        this.capitalReport = capitalReport;
+        this.countryReport = countryReport;
+        this.languageReport = languageReport;
+        this.urbanReport = urbanReport;
+        this.con = con;
+        registerCityEndpoints();
+        registerCapitalEndpoints();
+        registerCountryEndpoints();
+        registerLanguageAndUrbanEndpoints();
+    }
+
+    /**
+     * Sets the registry that the latency of every request is recorded in, and that
+     * GET /metrics returns.
+     *
+     * @param metrics the metrics registry, or null to record nothing
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts serving on 127.0.0.1, or the loopback address of the host.
+     *
+     * @param port the port, or 0 for any free port
+     * @return The address served on.
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized InetSocketAddress start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Report server is already running");
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "report-server-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.start();
+        return server.getAddress();
+    }
+
+    /**
+     * Stops serving, letting requests in progress finish for up to a second.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdown();
+            server = null;
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * Waits until the server is stopped.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void await() throws InterruptedException {
+        stopped.await();
+    }
+
+    private void registerCityEndpoints() {
+        register("/cities", "scope=world|continent|region|country|district, key, n",
+                "Cities by population descending, or the top n", p -> {
+                    Scope scope = p.scope(Scope.WORLD, Scope.values());
+                    String key = p.key(scope);
+                    Integer n = p.positive("n");
+                    switch (scope) {
+                        case WORLD:
+                            return cities(n == null ? cityReport.printAllCities() : cityReport.getTopNCitiesInWorld(n));
+                        case CONTINENT:
+                            return cities(n == null ? cityReport.printCitiesByContinent(key)
+                                    : cityReport.getTopNCitiesByContinent(key, n));
+                        case REGION:
+                            return cities(n == null ? cityReport.printCitiesByRegion(key)
+                                    : cityReport.getTopNCitiesByRegion(key, n));
+                        case DISTRICT:
+                            return cities(n == null ? cityReport.printCitiesByDistrict(key)
+                                    : cityReport.getTopNCitiesByDistrict(key, n));
+                        default:
+                            // Cities of a country are only listed a page at a time, so list them as one page
+                            Page<City> page = cityReport.citiesPage(scope, key, null, n == null ? Integer.MAX_VALUE : n);
+                            return page == null ? null : cities(page.Items);
+                    }
+                });
+        register("/cities/page", "scope=world|continent|region|country|district, key, cursor, size",
+                "A page of cities by population descending; the Link header names the next page", p -> {
+                    Scope scope = p.scope(Scope.WORLD, Scope.values());
+                    Page<City> page = cityReport.citiesPage(scope, p.key(scope), p.get("cursor"), p.pageSize());
+                    return page == null ? null : next(cities(page.Items), page.Next);
+                });
+        register("/cities/top", "scope=continent|region|district, keys, n",
+                "The top n cities of each continent, region or district, or of those in keys", p -> {
+                    Scope scope = p.scope(null, Scope.CONTINENT, Scope.REGION, Scope.DISTRICT);
+                    List<String> keys = p.list("keys");
+                    int n = p.requiredPositive("n");
+                    switch (scope) {
+                        case CONTINENT:
+                            return groups(cityReport.getTopNCitiesPerContinent(keys, n), ReportServer::cityCells, CITY_COLUMNS);
+                        case REGION:
+                            return groups(cityReport.getTopNCitiesPerRegion(keys, n), ReportServer::cityCells, CITY_COLUMNS);
+                        default:
+                            return groups(cityReport.getTopNCitiesPerDistrict(keys, n), ReportServer::cityCells, CITY_COLUMNS);
+                    }
+                });
+        register("/cities/rank", "id, scope=world|continent|region|country|district",
+                "Where a city ranks by population within the world or its own area", p -> {
+                    int id = p.requiredInt("id");
+                    Scope scope = p.scope(Scope.WORLD, Scope.values());
+                    int rank = cityReport.rankOf(id, scope);
+                    if (rank < 0) {
+                        throw new NotFound("No city with ID " + id);
+                    }
+                    return new ReportTable("ID", "Scope", "Rank").add(id, scope.name().toLowerCase(Locale.ROOT), rank);
+                });
+        register("/cities/at-rank", "scope=world|continent|region|country|district, key, k",
+                "The city holding rank k by population within an area", p -> {
+                    Scope scope = p.scope(Scope.WORLD, Scope.values());
+                    String key = p.key(scope);
+                    int k = p.requiredPositive("k");
+                    City city = cityReport.cityAtRank(scope, key, k);
+                    if (city == null) {
+                        throw new NotFound("No city at rank " + k);
+                    }
+                    return cities(List.of(city));
+                });
+    }
+
+    private void registerCapitalEndpoints() {
+        register("/capitals", "scope=world|continent|region|country, key, n, language",
+                "Capital cities by population descending, or the top n; with language, the capitals"
+                        + " of a continent's countries where it is official", p -> {
+                    Scope scope = p.scope(Scope.WORLD, Scope.WORLD, Scope.CONTINENT, Scope.REGION, Scope.COUNTRY);
+                    String key = p.key(scope);
+                    Integer n = p.positive("n");
+                    String language = p.get("language");
+                    if (language != null) {
+                        if (scope != Scope.CONTINENT || n != null) {
+                            throw new IllegalArgumentException("language needs scope=continent and no n");
+                        }
+                        return capitals(capitalReport.getCapitalCitiesByContinentAndOfficialLanguage(key, language));
+                    }
+                    switch (scope) {
+                        case WORLD:
+                            return capitals(n == null ? capitalReport.getAllCapitalCities() : capitalReport.getTopNCapitalCities(n));
+                        case CONTINENT:
+                            return capitals(n == null ? capitalReport.getCapitalCitiesByContinent(key)
+                                    : capitalReport.getTopNCapitalCitiesByContinent(key, n));
+                        case REGION:
+                            return capitals(n == null ? capitalReport.getCapitalCitiesByRegion(key)
+                                    : capitalReport.getTopNCapitalCitiesByRegion(key, n));
+                        default:
+                            Page<City> page = capitalReport.capitalCitiesPage(scope, key, null, n == null ? Integer.MAX_VALUE : n);
+                            return page == null ? null : capitals(page.Items);
+                    }
+                });
+        register("/capitals/page", "scope=world|continent|region|country, key, cursor, size",
+                "A page of capital cities by population descending; the Link header names the next page", p -> {
+                    Scope scope = p.scope(Scope.WORLD, Scope.WORLD, Scope.CONTINENT, Scope.REGION, Scope.COUNTRY);
+                    Page<City> page = capitalReport.capitalCitiesPage(scope, p.key(scope), p.get("cursor"), p.pageSize());
+                    return page == null ? null : next(capitals(page.Items), page.Next);
+                });
+        register("/capitals/top", "scope=continent|region, keys, n",
+                "The top n capital cities of each continent or region, or of those in keys", p -> {
+                    Scope scope = p.scope(null, Scope.CONTINENT, Scope.REGION);
+                    List<String> keys = p.list("keys");
+                    int n = p.requiredPositive("n");
+                    return groups(scope == Scope.CONTINENT ? capitalReport.getTopNCapitalCitiesPerContinent(keys, n)
+                            : capitalReport.getTopNCapitalCitiesPerRegion(keys, n), ReportServer::capitalCells, CAPITAL_COLUMNS);
+                });
+    }
+
+    private void registerCountryEndpoints() {
+        register("/countries", "scope=world|continent|region|country, key, n",
+                "Countries by population descending, or the top n", p -> {
+                    Scope scope = p.scope(Scope.WORLD, Scope.WORLD, Scope.CONTINENT, Scope.REGION, Scope.COUNTRY);
+                    String key = p.key(scope);
+                    Integer n = p.positive("n");
+                    switch (scope) {
+                        case WORLD:
+                            return countries(n == null ? countryReport.getCountriesByPopulation()
+                                    : countryReport.topNCountriesInTheWorld(n));
+                        case CONTINENT:
+                            return countries(n == null ? countryReport.getCountriesByContinent(key)
+                                    : countryReport.topNCountriesByContinent(key, n));
+                        case REGION:
+                            return countries(n == null ? countryReport.getCountriesByRegion(key)
+                                    : countryReport.topNCountriesByRegion(key, n));
+                        default:
+                            Page<Country> page = countryReport.countriesPage(scope, key, null, n == null ? Integer.MAX_VALUE : n);
+                            return page == null ? null : countries(page.Items);
+                    }
+                });
+        register("/countries/page", "scope=world|continent|region|country, key, cursor, size",
+                "A page of countries by population descending; the Link header names the next page", p -> {
+                    Scope scope = p.scope(Scope.WORLD, Scope.WORLD, Scope.CONTINENT, Scope.REGION, Scope.COUNTRY);
+                    Page<Country> page = countryReport.countriesPage(scope, p.key(scope), p.get("cursor"), p.pageSize());
+                    return page == null ? null : next(countries(page.Items), page.Next);
+                });
+        register("/countries/top", "scope=continent|region, keys, n",
+                "The top n countries of each continent or region, or of those in keys", p -> {
+                    Scope scope = p.scope(null, Scope.CONTINENT, Scope.REGION);
+                    List<String> keys = p.list("keys");
+                    int n = p.requiredPositive("n");
+                    return groups(scope == Scope.CONTINENT ? countryReport.topNCountriesPerContinent(keys, n)
+                            : countryReport.topNCountriesPerRegion(keys, n), ReportServer::countryCells, COUNTRY_COLUMNS);
+                });
+    }
+
+    private void registerLanguageAndUrbanEndpoints() {
+        register("/languages", "",
+                "Speakers of Chinese, English, Hindi, Spanish and Arabic, and their share of the world", p -> {
+                    ArrayList<CountryLanguage> languages = languageReport.retrieveLanguageSpeakers();
+                    if (languages == null) {
+                        return null;
+                    }
+                    ReportTable table = new ReportTable("Language", "Speakers", "WorldPercentage");
+                    for (CountryLanguage language : languages) {
+                        table.add(language.Language, language.NumberOfSpeakers, language.WorldPercentage);
+                    }
+                    return table;
+                });
+        register("/urban", "scope=continent|region|country",
+                "Total and urban population of every continent, region or country", p -> {
+                    Scope scope = p.scope(null, Scope.CONTINENT, Scope.REGION, Scope.COUNTRY);
+                    ArrayList<PopulationSummary> summaries = scope == Scope.CONTINENT ? urbanReport.getContinentSummaries(con)
+                            : scope == Scope.REGION ? urbanReport.getRegionSummaries(con) : urbanReport.getCountrySummaries(con);
+                    if (summaries == null) {
+                        return null;
+                    }
+                    ReportTable table = new ReportTable(URBAN_COLUMNS);
+                    for (PopulationSummary summary : summaries) {
+                        table.add(summary.Name, Math.round(summary.Population), Math.round(summary.UrbanPopulation),
+                                summary.Percentage);
+                    }
+                    return table;
+                });
+        register("/urban/population", "scope=world|continent|region|country, key",
+                "Total and urban population of the world or of one continent, region or country", p -> {
+                    Scope scope = p.scope(Scope.WORLD, Scope.WORLD, Scope.CONTINENT, Scope.REGION, Scope.COUNTRY);
+                    String key = p.key(scope);
+                    switch (scope) {
+                        case WORLD:
+                            urbanReport.getPopulationOfWorld(con);
+                            urbanReport.getUrbanPopulation(con);
+                            break;
+                        case CONTINENT:
+                            urbanReport.getPopulationOfContinent(con, key);
+                            urbanReport.getUrbanPopulationOfContinent(con, key);
+                            break;
+                        case REGION:
+                            urbanReport.getPopulationOfRegion(con, key);
+                            urbanReport.getUrbanPopulationOfRegion(con, key);
+                            break;
+                        default:
+                            urbanReport.getPopulationOfCountry(con, key);
+                            urbanReport.getUrbanPopulationOfCountry(con, key);
+                            break;
+                    }
+                    double population = urbanReport.population;
+                    double urbanPopulation = urbanReport.urbanPopulation;
+                    return new ReportTable(URBAN_COLUMNS).add(scope == Scope.WORLD ? "World" : key,
+                            Math.round(population), Math.round(urbanPopulation),
+                            population > 0 ? urbanPopulation / population * 100 : 0.0);
+                });
+        register("/urban/city", "name", "Population of a city", p -> {
+            String name = p.required("name");
+            urbanReport.population = 0;
+            urbanReport.getPopulationOfCity(con, name);
+            double population = urbanReport.population;
+            return new ReportTable("Name", "Population").add(name, Math.round(population));
+        });
+    }
+
+    private static final String[] CITY_COLUMNS = {"Name", "Country", "District", "Population"};
+    private static final String[] CAPITAL_COLUMNS = {"Name", "Country", "Population"};
+    private static final String[] COUNTRY_COLUMNS = {"Code", "Name", "Continent", "Region", "Population", "Capital"};
+    private static final String[] URBAN_COLUMNS = {"Name", "Population", "UrbanPopulation", "UrbanPercentage"};
+
+    private void register(String path, String parameters, String description, Answer answer) {
+        endpoints.put(path, new Endpoint(parameters, description, answer));
+    }
+
+    private static Object[] cityCells(City city) {
+        return new Object[]{city.Name, city.Country, city.District, city.Population};
+    }
+
+    private static Object[] capitalCells(City city) {
+        return new Object[]{city.Name, city.Country, city.Population};
+    }
+
+    private static Object[] countryCells(Country country) {
+        return new Object[]{country.Code, country.Name, country.Continent, country.Region, country.Population,
+                country.Capital};
+    }
+
+    private static ReportTable cities(List<City> cities) {
+        return rows(cities, ReportServer::cityCells, CITY_COLUMNS);
+    }
+
+    private static ReportTable capitals(List<City> capitals) {
+        return rows(capitals, ReportServer::capitalCells, CAPITAL_COLUMNS);
+    }
+
+    private static ReportTable countries(List<Country> countries) {
+        return rows(countries, ReportServer::countryCells, COUNTRY_COLUMNS);
+    }
+
+    private static <T> ReportTable rows(List<T> rows, java.util.function.Function<T, Object[]> cells, String[] columns) {
+        if (rows == null) {
+            return null;
+        }
+        ReportTable table = new ReportTable(columns);
+        for (T row : rows) {
+            if (row != null) {
+                table.add(cells.apply(row));
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Flattens the rows of each group into one table with the group name in the first column.
+     */
+    private static <T> ReportTable groups(Map<String, List<T>> groups, java.util.function.Function<T, Object[]> cells,
+                                          String[] columns) {
+        if (groups == null) {
+            return null;
+        }
+        String[] grouped = new String[columns.length + 1];
+        grouped[0] = "Group";
+        System.arraycopy(columns, 0, grouped, 1, columns.length);
+        ReportTable table = new ReportTable(grouped);
+        for (Map.Entry<String, List<T>> group : groups.entrySet()) {
+            for (T row : group.getValue()) {
+                Object[] rowCells = cells.apply(row);
+                Object[] groupCells = new Object[rowCells.length + 1];
+                groupCells[0] = group.getKey();
+                System.arraycopy(rowCells, 0, groupCells, 1, rowCells.length);
+                table.add(groupCells);
+            }
+        }
+        return table;
+    }
+
+    private static ReportTable next(ReportTable table, String cursor) {
+        table.next = cursor;
+        return table;
+    }
+
+    /**
+     * Answers a request from the response cache, running the endpoint's query on a miss.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String path = exchange.getRequestURI().getPath();
+        Endpoint endpoint = "/".equals(path) ? null : endpoints.get(path);
+        long rows = 0;
+        boolean failed = false;
+        try (exchange) {
+            // Errors are answered inside the resource block, before the exchange is closed
+            try {
+                String method = exchange.getRequestMethod();
+                if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                    exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                    sendError(exchange, 405, "Only GET and HEAD are supported");
+                    return;
+                }
+                if (METRICS_PATH.equals(path)) {
+                    sendMetrics(exchange, "HEAD".equals(method));
+                    return;
+                }
+                if (endpoint == null && !"/".equals(path)) {
+                    sendError(exchange, 404, "No report at " + path + "; GET / lists them");
+                    return;
+                }
+
+                Params params = Params.parse(exchange.getRequestURI().getRawQuery());
+                Format format = format(params.get("format"), exchange.getRequestHeaders().getFirst("Accept"));
+                String key = path + '?' + params.canonical() + '#' + format;
+                ResponseCache.Response response = responses.get(key);
+                if (response == null) {
+                    ReportTable table;
+                    synchronized (queries) {
+                        table = endpoint == null ? index() : endpoint.answer.answer(params);
+                    }
+                    if (table == null) {
+                        failed = true;
+                        sendError(exchange, 500, "The report query failed");
+                        return;
+                    }
+                    rows = table.size();
+                    response = responses.put(key, render(table, format, path, params));
+                }
+                send(exchange, response, "HEAD".equals(method));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (NotFound e) {
+                sendError(exchange, 404, e.getMessage());
+            } catch (RuntimeException e) {
+                failed = true;
+                e.printStackTrace();
+                sendError(exchange, 500, "The report query failed");
+            }
+        } finally {
+            if (metrics != null) {
+                // Unknown paths share one name so that a scan of paths cannot grow the registry
+                String name = endpoint != null || "/".equals(path) || METRICS_PATH.equals(path) ? path : "unknown";
+                metrics.record("http:" + name, System.nanoTime() - start, rows, failed);
+            }
+        }
+    }
+
+    /**
+     * @return The endpoints, for GET /.
+     */
+    private ReportTable index() {
+        ReportTable table = new ReportTable("Endpoint", "Parameters", "Description");
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            table.add(entry.getKey(), entry.getValue().parameters, entry.getValue().description);
+        }
+        table.add(METRICS_PATH, "", "Latency, rows and errors of requests, queries and renders, as JSON");
+        return table;
+    }
+
+    private static Format format(String name, String accept) {
+        if (name != null) {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "md":
+                case "markdown":
+                    return Format.MARKDOWN;
+                case "csv":
+                    return Format.CSV;
+                case "json":
+                    return Format.JSON;
+                default:
+                    throw new IllegalArgumentException("format must be md, csv or json");
+            }
+        }
+        if (accept != null) {
+            if (accept.contains("application/json")) {
+                return Format.JSON;
+            }
+            if (accept.contains("text/csv")) {
+                return Format.CSV;
+            }
+        }
+        return Format.MARKDOWN;
+    }
+
+    private static ResponseCache.Response render(ReportTable table, Format format, String path, Params params) {
+        String text = format == Format.JSON ? table.json() : format == Format.CSV ? table.csv() : table.markdown();
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        String next = table.next == null ? null : path + '?' + params.with("cursor", table.next).query();
+        // HTTP dates have whole seconds, so Last-Modified is truncated to compare with If-Modified-Since
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        return new ResponseCache.Response(body, format.contentType, etag(body), now, next, System.nanoTime());
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder sb = new StringBuilder("\"");
+            for (int i = 0; i < 16; i++) {
+                sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+            }
+            return sb.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void send(HttpExchange exchange, ResponseCache.Response response, boolean head) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", response.contentType);
+        headers.set("ETag", response.etag);
+        headers.set("Last-Modified", HTTP_DATE.format(Instant.ofEpochMilli(response.lastModified)));
+        // Clients may keep a response but must check it is current before using it
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Vary", "Accept");
+        if (response.next != null) {
+            headers.set("Link", "<" + response.next + ">; rel=\"next\"");
+        }
+
+        if (notModified(exchange.getRequestHeaders(), response)) {
+            exchange.sendResponseHeaders(304, -1);
+        } else if (head) {
+            exchange.sendResponseHeaders(200, -1);
+        } else {
+            exchange.sendResponseHeaders(200, response.body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response.body);
+            }
+        }
+    }
+
+    /**
+     * Checks a conditional request. If-None-Match takes precedence over If-Modified-Since,
+     * as RFC 9110 has it, and an unreadable date is ignored.
+     */
+    private static boolean notModified(Headers request, ResponseCache.Response response) {
+        String ifNoneMatch = request.getFirst("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(response.etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = request.getFirst("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli();
+                return response.lastModified <= since;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends the current metrics. They change with every request, so they are neither cached
+     * nor given an ETag.
+     */
+    private void sendMetrics(HttpExchange exchange, boolean head) throws IOException {
+        MetricsRegistry registry = metrics;
+        byte[] body = (registry == null ? new MetricsRegistry() : registry).toJson().getBytes(StandardCharsets.UTF_8);
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", Format.JSON.contentType);
+        headers.set("Cache-Control", "no-store");
+        if (head) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * The query parameters of a request, in name order.
+     */
+    private static final class Params {
+        private final TreeMap<String, String> values;
+
+        private Params(TreeMap<String, String> values) {
+            this.values = values;
+        }
+
+        /**
+         * Reads a raw query string; the first of repeated parameters wins.
+         */
+        static Params parse(String query) {
+            TreeMap<String, String> values = new TreeMap<>();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    if (pair.isEmpty()) {
+                        continue;
+                    }
+                    int equals = pair.indexOf('=');
+                    String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+                    String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+                    values.putIfAbsent(name, value);
+                }
+            }
+            return new Params(values);
+        }
+
+        String get(String name) {
+            return values.get(name);
+        }
+
+        String required(String name) {
+            String value = values.get(name);
+            if (value == null || value.isEmpty()) {
+                throw new IllegalArgumentException("Missing parameter " + name);
+            }
+            return value;
+        }
+
+        /**
+         * @param fallback the scope when the parameter is left out, or null if it is required
+         * @param allowed  the scopes the endpoint answers
+         */
+        Scope scope(Scope fallback, Scope... allowed) {
+            String value = values.get("scope");
+            if (value == null && fallback != null) {
+                return fallback;
+            }
+            String names = String.join("|", Arrays.stream(allowed).map(s -> s.name().toLowerCase(Locale.ROOT)).toList());
+            if (value == null) {
+                throw new IllegalArgumentException("Missing parameter scope=" + names);
+            }
+            for (Scope scope : allowed) {
+                if (scope.name().equalsIgnoreCase(value)) {
+                    return scope;
+                }
+            }
+            throw new IllegalArgumentException("scope must be one of " + names);
+        }
+
+        /**
+         * @return The key parameter, required for every scope but WORLD.
+         */
+        String key(Scope scope) {
+            return scope == Scope.WORLD ? null : required("key");
+        }
+
+        Integer positive(String name) {
+            return values.containsKey(name) ? requiredPositive(name) : null;
+        }
+
+        int requiredPositive(String name) {
+            int value = requiredInt(name);
+            if (value < 1) {
+                throw new IllegalArgumentException(name + " must be at least 1");
+            }
+            return value;
+        }
+
+        int requiredInt(String name) {
+            String value = required(name);
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " must be a whole number");
+            }
+        }
+
+        int pageSize() {
+            Integer size = positive("size");
+            return size == null ? DEFAULT_PAGE_SIZE : size;
+        }
+
+        /**
+         * @return The comma separated names of a parameter, or null if it is left out.
+         */
+        List<String> list(String name) {
+            String value = values.get(name);
+            return value == null ? null : Arrays.stream(value.split(",")).map(String::trim).toList();
+        }
+
+        Params with(String name, String value) {
+            TreeMap<String, String> copy = new TreeMap<>(values);
+            copy.put(name, value);
+            return new Params(copy);
+        }
+
+        /**
+         * @return The parameters other than format, for the cache key.
+         */
+        String canonical() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                if (!"format".equals(entry.getKey())) {
+                    sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\0');
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return The parameters as a query string.
+         */
+        String query() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                if (sb.length() > 0) {
+                    sb.append('&');
+                }
+                sb.append(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8)).append('=')
+                        .append(URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8));
+            }
+            return sb.toString();
+        }
+    }
+}
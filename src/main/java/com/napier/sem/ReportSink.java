@@ -0,0 +1,275 @@
+package com.napier.sem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a report file as UTF-8, encoding text and numbers straight into a direct
+ * buffer that is written to a FileChannel whenever it fills.
+ * <p>
+ * The file is written under a temporary name next to it and renamed into place by
+ * commit(), so a reader never sees a half-written report; closing a sink that was
+ * not committed deletes what it wrote. Each thread reuses one buffer across the
+ * reports it writes. A sink is not thread-safe.
+ * </p>
+ */
+public final class ReportSink implements Closeable {
+
+    /**
+     * The folder report files are written to.
+     */
+    public static final Path REPORTS = Path.of("./reports/");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Each thread's buffer while no sink of that thread is using it
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<>();
+
+    // Makes temporary names unique when several threads write the same report; the
+    // process ID keeps them apart from the names of other runs
+    private static final AtomicLong TEMP_NAMES = new AtomicLong();
+    private static final long PID = ProcessHandle.current().pid();
+
+    private final Path file;
+    private final Path temp;
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private final byte[] digits = new byte[20];
+    private final StringBuilder cell = new StringBuilder(32);
+    private long written;
+    private boolean committed;
+
+    private ReportSink(Path file) throws IOException {
+        this.file = file;
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        temp = dir.resolve("." + file.getFileName() + "." + PID + "." + TEMP_NAMES.incrementAndGet() + ".tmp");
+        // No live writer shares this name, so a file already there was left by a killed run
+        channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        buffer = BUFFERS.get();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        } else {
+            BUFFERS.remove();
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Starts writing a report to a file in ./reports/, creating the folder if needed.
+     *
+     * @param filename the name of the file
+     * @return A sink that replaces the file when committed.
+     * @throws IOException if the file cannot be created
+     */
+    public static ReportSink open(String filename) throws IOException {
+        return open(REPORTS.resolve(filename));
+    }
+
+    /**
+     * Starts writing a report to a file, creating its folder if needed.
+     *
+     * @param file the file to write
+     * @return A sink that replaces the file when committed.
+     * @throws IOException if the file cannot be created
+     */
+    public static ReportSink open(Path file) throws IOException {
+        return new ReportSink(file);
+    }
+
+    /**
+     * Appends text, or "null" for a null string, as StringBuilder does.
+     *
+     * @param s the text to append
+     * @return This sink.
+     * @throws IOException if the buffer cannot be written out
+     */
+    public ReportSink append(CharSequence s) throws IOException {
+        if (s == null) {
+            s = "null";
+        }
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.put((byte) c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                putCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+            } else {
+                putCodePoint(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends a character; an unpaired surrogate is written as '?'.
+     *
+     * @param c the character to append
+     * @return This sink.
+     * @throws IOException if the buffer cannot be written out
+     */
+    public ReportSink append(char c) throws IOException {
+        putCodePoint(c);
+        return this;
+    }
+
+    /**
+     * Appends the decimal digits of a number, as StringBuilder does.
+     *
+     * @param value the number to append
+     * @return This sink.
+     * @throws IOException if the buffer cannot be written out
+     */
+    public ReportSink append(long value) throws IOException {
+        if (buffer.remaining() < digits.length) {
+            flush();
+        }
+        if (value == Long.MIN_VALUE) {
+            return append("-9223372036854775808");
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int n = digits.length;
+        do {
+            digits[--n] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, n, digits.length - n);
+        return this;
+    }
+
+    /**
+     * Appends a number as Double.toString writes it, as StringBuilder does.
+     *
+     * @param value the number to append
+     * @return This sink.
+     * @throws IOException if the buffer cannot be written out
+     */
+    public ReportSink append(double value) throws IOException {
+        return append(Double.toString(value));
+    }
+
+    /**
+     * Appends a whole number with its thousands grouped, as "%,d" writes it.
+     *
+     * @param value the number to append
+     * @return This sink.
+     * @throws IOException if the buffer cannot be written out
+     */
+    public ReportSink appendGrouped(long value) throws IOException {
+        cell.setLength(0);
+        return append(TextFormat.grouped(cell, value, 0));
+    }
+
+    /**
+     * Appends a number rounded to a grouped whole number, as DecimalFormat("#,###") writes it.
+     *
+     * @param value the number to append
+     * @return This sink.
+     * @throws IOException if the buffer cannot be written out
+     */
+    public ReportSink appendWholeNumber(double value) throws IOException {
+        cell.setLength(0);
+        return append(TextFormat.wholeNumber(cell, value));
+    }
+
+    /**
+     * Appends a number rounded to at most two decimal places, as DecimalFormat("#.##") writes it.
+     *
+     * @param value the number to append
+     * @return This sink.
+     * @throws IOException if the buffer cannot be written out
+     */
+    public ReportSink appendPercentage(double value) throws IOException {
+        cell.setLength(0);
+        return append(TextFormat.percentage(cell, value));
+    }
+
+    /**
+     * @return The number of bytes appended so far.
+     */
+    public long size() {
+        return written + buffer.position();
+    }
+
+    /**
+     * Writes out everything appended and moves the file into place, replacing any earlier report.
+     *
+     * @return The size of the file in bytes.
+     * @throws IOException if the file cannot be written or moved
+     */
+    public long commit() throws IOException {
+        flush();
+        channel.close();
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+        return written;
+    }
+
+    /**
+     * Releases the buffer and, unless the sink was committed, deletes what it wrote.
+     *
+     * @throws IOException if the temporary file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        BUFFERS.set(buffer);
+        buffer = null;
+        if (!committed) {
+            channel.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void putCodePoint(int c) throws IOException {
+        if (buffer.remaining() < 4) {
+            flush();
+        }
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | c >> 6));
+            buffer.put((byte) (0x80 | c & 0x3F));
+        } else if (Character.isSurrogate((char) c) && c <= Character.MAX_VALUE) {
+            buffer.put((byte) '?');
+        } else if (c < 0x10000) {
+            buffer.put((byte) (0xE0 | c >> 12));
+            buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | c & 0x3F));
+        } else {
+            buffer.put((byte) (0xF0 | c >> 18));
+            buffer.put((byte) (0x80 | c >> 12 & 0x3F));
+            buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | c & 0x3F));
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,179 @@
+package com.napier.sem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rows of a report answer, rendered as Markdown, CSV or JSON by the report server.
+ * <p>
+ * Cells are strings, whole numbers or decimals. Whole numbers are written without grouping
+ * and decimals to at most two places, so every format can be read back by a program. A null
+ * cell is empty in Markdown and CSV and null in JSON.
+ * </p>
+ */
+final class ReportTable {
+
+    private final String[] columns;
+    private final List<Object[]> rows = new ArrayList<>();
+
+    /**
+     * Cursor of the page after this one, for page answers; null otherwise.
+     */
+    String next;
+
+    /**
+     * @param columns the names of the columns
+     */
+    ReportTable(String... columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param cells a String, Integer, Long or Double for each column
+     * @return This table.
+     */
+    ReportTable add(Object... cells) {
+        if (cells.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " cells but got " + cells.length);
+        }
+        rows.add(cells);
+        return this;
+    }
+
+    /**
+     * @return The number of rows.
+     */
+    int size() {
+        return rows.size();
+    }
+
+    /**
+     * Renders the table as a Markdown table, as the report files are written.
+     */
+    String markdown() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('|');
+        for (String column : columns) {
+            sb.append(' ').append(column).append(" |");
+        }
+        sb.append("\r\n|");
+        for (int i = 0; i < columns.length; i++) {
+            sb.append(" --- |");
+        }
+        sb.append("\r\n");
+        for (Object[] row : rows) {
+            sb.append('|');
+            for (Object cell : row) {
+                sb.append(' ');
+                if (cell instanceof String) {
+                    // A pipe would end the cell early
+                    sb.append(((String) cell).replace("|", "\\|"));
+                } else {
+                    appendNumber(sb, cell);
+                }
+                sb.append(" |");
+            }
+            sb.append("\r\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders the table as CSV with a header line, quoting cells as RFC 4180 does.
+     */
+    String csv() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendCsv(sb, columns[i]);
+        }
+        sb.append("\r\n");
+        for (Object[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                if (row[i] instanceof String) {
+                    appendCsv(sb, (String) row[i]);
+                } else {
+                    appendNumber(sb, row[i]);
+                }
+            }
+            sb.append("\r\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders the table as a JSON array with an object for each row.
+     */
+    String json() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int r = 0; r < rows.size(); r++) {
+            Object[] row = rows.get(r);
+            sb.append(r == 0 ? "\n{" : ",\n{");
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendJson(sb, columns[i]);
+                sb.append(':');
+                if (row[i] == null) {
+                    sb.append("null");
+                } else if (row[i] instanceof String) {
+                    appendJson(sb, (String) row[i]);
+                } else if (row[i] instanceof Double && !Double.isFinite((Double) row[i])) {
+                    sb.append("null");
+                } else {
+                    appendNumber(sb, row[i]);
+                }
+            }
+            sb.append('}');
+        }
+        return sb.append("\n]\n").toString();
+    }
+
+    private static void appendNumber(StringBuilder sb, Object cell) {
+        if (cell instanceof Double) {
+            double value = (Double) cell;
+            if (Double.isFinite(value)) {
+                sb.append(BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_EVEN)
+                        .stripTrailingZeros().toPlainString());
+            }
+        } else if (cell != null) {
+            sb.append(cell);
+        }
+    }
+
+    private static void appendCsv(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void appendJson(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
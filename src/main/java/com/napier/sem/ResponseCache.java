@@ -0,0 +1,108 @@
+package com.napier.sem;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The rendered responses of the report server, keyed by endpoint, parameters and format.
+ * <p>
+ * Entries are served for ttlMillis after they were rendered. Beyond maxEntries entries or
+ * maxBytes of bodies, the least recently used entries are evicted. An expired entry stays
+ * until it is replaced or evicted, so a response rendered again with the same body keeps
+ * the ETag and Last-Modified time it was first served with, and clients that revalidate
+ * still get 304 Not Modified.
+ * </p>
+ */
+final class ResponseCache {
+
+    /**
+     * A rendered response.
+     */
+    static final class Response {
+        final byte[] body;
+        final String contentType;
+        final String etag;
+        // milliseconds since the epoch, whole seconds as HTTP dates are
+        final long lastModified;
+        // the path and query of the next page, or null
+        final String next;
+        final long storedAt;
+
+        Response(byte[] body, String contentType, String etag, long lastModified, String next, long storedAt) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.next = next;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Response> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param ttlMillis  how long a response may be served after it was rendered
+     * @param maxEntries the maximum number of cached responses
+     * @param maxBytes   the maximum size of all cached bodies
+     */
+    ResponseCache(long ttlMillis, int maxEntries, long maxBytes) {
+        if (ttlMillis <= 0 || maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param key the endpoint, parameters and format
+     * @return The response, or null if there is none or it has expired.
+     */
+    synchronized Response get(String key) {
+        Response response = entries.get(key);
+        return response == null || System.nanoTime() - response.storedAt >= ttlNanos ? null : response;
+    }
+
+    /**
+     * Stores a response, keeping the Last-Modified time of the response it replaces if the
+     * body has not changed.
+     *
+     * @param key      the endpoint, parameters and format
+     * @param response the freshly rendered response
+     * @return The response to send.
+     */
+    synchronized Response put(String key, Response response) {
+        Response previous = entries.get(key);
+        if (previous != null && previous.etag.equals(response.etag)) {
+            response = new Response(response.body, response.contentType, response.etag,
+                    previous.lastModified, response.next, response.storedAt);
+        }
+        if (response.body.length > maxBytes) {
+            return response;
+        }
+        previous = entries.put(key, response);
+        if (previous != null) {
+            bytes -= previous.body.length;
+        }
+        bytes += response.body.length;
+
+        Iterator<Response> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            bytes -= eldest.next().body.length;
+            eldest.remove();
+        }
+        return response;
+    }
+
+    /**
+     * @return The number of cached responses.
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,213 @@
+package com.napier.sem;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of table rows stored as 64-bit words.
+ * <p>
+ * Only words holding at least one row are kept, each with its index, so a set of
+ * a few rows scattered over a large table stays small. AND, OR and AND NOT walk the
+ * two word lists side by side and combine 64 rows per operation.
+ * </p>
+ */
+public final class RowBitmap {
+
+    /**
+     * The set of no rows.
+     */
+    public static final RowBitmap EMPTY = new RowBitmap(new int[0], new long[0], 0);
+
+    // index of each word kept, ascending, and its bits; bit b of word k is row 64 * k + b
+    private final int[] keys;
+    private final long[] words;
+    private final int cardinality;
+
+    private RowBitmap(int[] keys, long[] words, int cardinality) {
+        this.keys = keys;
+        this.words = words;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Creates a set of rows.
+     *
+     * @param rows the rows, in any order and possibly repeated
+     * @return The set.
+     */
+    public static RowBitmap of(int... rows) {
+        int[] sorted = rows.clone();
+        Arrays.sort(sorted);
+        return ofSorted(sorted, 0, sorted.length);
+    }
+
+    /**
+     * Creates a set from a range of rows in ascending order.
+     */
+    static RowBitmap ofSorted(int[] rows, int from, int to) {
+        if (from < to && rows[from] < 0) {
+            throw new IllegalArgumentException("Negative row " + rows[from]);
+        }
+        int[] keys = new int[to - from];
+        long[] words = new long[to - from];
+        int n = -1;
+        for (int i = from; i < to; i++) {
+            int key = rows[i] >>> 6;
+            if (n < 0 || keys[n] != key) {
+                keys[++n] = key;
+            }
+            words[n] |= 1L << rows[i];
+        }
+        return trimmed(keys, words, n + 1);
+    }
+
+    /**
+     * @return True if the set holds a row.
+     */
+    public boolean contains(int row) {
+        if (row < 0) {
+            return false;
+        }
+        int i = Arrays.binarySearch(keys, row >>> 6);
+        return i >= 0 && (words[i] & (1L << row)) != 0;
+    }
+
+    /**
+     * @return The number of rows in the set.
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @return True if the set holds no rows.
+     */
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * @return The number of 64-bit words stored.
+     */
+    public int wordCount() {
+        return words.length;
+    }
+
+    /**
+     * @return The rows in both sets.
+     */
+    public RowBitmap and(RowBitmap other) {
+        int n = Math.min(keys.length, other.keys.length);
+        int[] k = new int[n];
+        long[] w = new long[n];
+        int size = 0;
+        for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                long word = words[i++] & other.words[j++];
+                if (word != 0) {
+                    k[size] = keys[i - 1];
+                    w[size++] = word;
+                }
+            }
+        }
+        return trimmed(k, w, size);
+    }
+
+    /**
+     * @return The rows in either set.
+     */
+    public RowBitmap or(RowBitmap other) {
+        int[] k = new int[keys.length + other.keys.length];
+        long[] w = new long[k.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                k[size] = keys[i];
+                w[size++] = words[i++];
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                k[size] = other.keys[j];
+                w[size++] = other.words[j++];
+            } else {
+                k[size] = keys[i];
+                w[size++] = words[i++] | other.words[j++];
+            }
+        }
+        return trimmed(k, w, size);
+    }
+
+    /**
+     * @return The rows in this set but not the other.
+     */
+    public RowBitmap andNot(RowBitmap other) {
+        int[] k = new int[keys.length];
+        long[] w = new long[keys.length];
+        int size = 0;
+        for (int i = 0, j = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            long word = j < other.keys.length && other.keys[j] == keys[i]
+                    ? words[i] & ~other.words[j]
+                    : words[i];
+            if (word != 0) {
+                k[size] = keys[i];
+                w[size++] = word;
+            }
+        }
+        return trimmed(k, w, size);
+    }
+
+    /**
+     * @return The rows in the set in ascending order.
+     */
+    public int[] rows() {
+        int[] rows = new int[cardinality];
+        int n = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                rows[n++] = (keys[i] << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RowBitmap)) {
+            return false;
+        }
+        RowBitmap other = (RowBitmap) o;
+        return Arrays.equals(keys, other.keys) && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(keys) + Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(rows());
+    }
+
+    private static RowBitmap trimmed(int[] keys, long[] words, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += Long.bitCount(words[i]);
+        }
+        return new RowBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(words, size), cardinality);
+    }
+}
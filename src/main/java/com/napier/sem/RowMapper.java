@@ -0,0 +1,34 @@
+package com.napier.sem;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the rows of a result set to report objects.
+ * <p>
+ * A mapper looks up the indexes of the columns it reads once per statement, in columns(),
+ * and the Row it returns reads every row by index rather than by label.
+ * </p>
+ *
+ * @param <T> the type of report object
+ */
+interface RowMapper<T> {
+
+    /**
+     * Maps the current row of a result set whose columns have been looked up.
+     *
+     * @param <T> the type of report object
+     */
+    interface Row<T> {
+        T map(ResultSet rset) throws SQLException;
+    }
+
+    /**
+     * Looks up the columns this mapper reads.
+     *
+     * @param rset the result set of a statement, before or after its first row is read
+     * @return The mapper of each row of the result set.
+     * @throws SQLException if a column is missing
+     */
+    Row<T> columns(ResultSet rset) throws SQLException;
+}
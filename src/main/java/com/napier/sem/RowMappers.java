@@ -0,0 +1,98 @@
+package com.napier.sem;
+
+/**
+ * The row mappers of the report queries, one for each shape of row they select.
+ */
+final class RowMappers {
+
+    /**
+     * Maps rows of ID, CityName, Country, District and Population to cities.
+     */
+    static final RowMapper<City> CITY = rset -> {
+        int id = rset.findColumn("ID");
+        int name = rset.findColumn("CityName");
+        int country = rset.findColumn("Country");
+        int district = rset.findColumn("District");
+        int population = rset.findColumn("Population");
+        return row -> {
+            City city = new City();
+            city.ID = row.getInt(id);
+            city.Name = row.getString(name);
+            city.Country = row.getString(country);
+            city.District = row.getString(district);
+            city.Population = row.getInt(population);
+            return city;
+        };
+    };
+
+    /**
+     * Maps rows of CapitalCity, Country and Population to capital cities.
+     */
+    static final RowMapper<City> CAPITAL_CITY = rset -> {
+        int name = rset.findColumn("CapitalCity");
+        int country = rset.findColumn("Country");
+        int population = rset.findColumn("Population");
+        return row -> {
+            City city = new City();
+            city.Name = row.getString(name);
+            city.Country = row.getString(country);
+            city.Population = row.getInt(population);
+            city.isCapital = true;
+            return city;
+        };
+    };
+
+    /**
+     * Maps rows of ID, CapitalCity, Country and Population to capital cities with their IDs.
+     */
+    static final RowMapper<City> CAPITAL_CITY_WITH_ID = rset -> {
+        int id = rset.findColumn("ID");
+        RowMapper.Row<City> capital = CAPITAL_CITY.columns(rset);
+        return row -> {
+            City city = capital.map(row);
+            city.ID = row.getInt(id);
+            return city;
+        };
+    };
+
+    /**
+     * Maps rows of Code, Name, Continent, Region, Population and Capital to countries.
+     */
+    static final RowMapper<Country> COUNTRY = rset -> {
+        int code = rset.findColumn("Code");
+        int name = rset.findColumn("Name");
+        int continent = rset.findColumn("Continent");
+        int region = rset.findColumn("Region");
+        int population = rset.findColumn("Population");
+        int capital = rset.findColumn("Capital");
+        return row -> {
+            Country country = new Country();
+            country.Code = row.getString(code);
+            country.Name = row.getString(name);
+            country.Continent = row.getString(continent);
+            country.Region = row.getString(region);
+            country.Population = row.getInt(population);
+            country.Capital = row.getString(capital);
+            return country;
+        };
+    };
+
+    /**
+     * Maps rows of Language, NumberOfSpeakers and WorldPercentage to language figures.
+     */
+    static final RowMapper<CountryLanguage> LANGUAGE = rset -> {
+        int language = rset.findColumn("Language");
+        int speakers = rset.findColumn("NumberOfSpeakers");
+        int percentage = rset.findColumn("WorldPercentage");
+        return row -> {
+            CountryLanguage lang = new CountryLanguage();
+            lang.Language = row.getString(language);
+            lang.NumberOfSpeakers = row.getLong(speakers);
+            lang.WorldPercentage = row.getDouble(percentage);
+            return lang;
+        };
+    };
+
+    private RowMappers() {
+    }
+}
@@ -0,0 +1,27 @@
+package com.napier.sem;
+
+/**
+ * The geographic levels a report can be filtered by
+ */
+public enum Scope {
+    /**
+     * Every row, no filter
+     */
+    WORLD,
+    /**
+     * Rows whose country is in a continent
+     */
+    CONTINENT,
+    /**
+     * Rows whose country is in a region
+     */
+    REGION,
+    /**
+     * Rows belonging to a country, matched by country name
+     */
+    COUNTRY,
+    /**
+     * Cities in a district
+     */
+    DISTRICT
+}
@@ -0,0 +1,190 @@
+package com.napier.sem;
+
+import java.util.Arrays;
+
+/**
+ * Rows of a table laid out partition by partition for one geographic level,
+ * keeping a given order within each partition.
+ * <p>
+ * Partitions are continents, regions, countries or district names, each
+ * identified by the lowest string pool code equal to its name ignoring case,
+ * so names that differ only in case share a partition as they do in the database.
+ * </p>
+ */
+final class ScopeLayout {
+
+    // partition of each row, or -1 if the row is left out
+    final int[] partitionOf;
+    // index of each row in order
+    final int[] position;
+    // rows, partition by partition
+    final int[] order;
+    // start of each partition in order, followed by the number of rows laid out
+    final int[] start;
+
+    private ScopeLayout(int[] partitions, int count, int[] ordered) {
+        int[] starts = new int[count + 1];
+        for (int partition : partitions) {
+            if (partition >= 0) {
+                starts[partition + 1]++;
+            }
+        }
+        for (int p = 0; p < count; p++) {
+            starts[p + 1] += starts[p];
+        }
+        int[] next = Arrays.copyOf(starts, count);
+        int[] laidOut = new int[starts[count]];
+        int[] positions = new int[partitions.length];
+        for (int row : ordered) {
+            int p = partitions[row];
+            if (p >= 0) {
+                positions[row] = next[p];
+                laidOut[next[p]++] = row;
+            }
+        }
+        partitionOf = partitions;
+        position = positions;
+        order = laidOut;
+        start = starts;
+    }
+
+    /**
+     * @return The number of rows in a partition.
+     */
+    int size(int partition) {
+        return start[partition + 1] - start[partition];
+    }
+
+    /**
+     * Lays out city rows for every level, indexed by Scope ordinal.
+     * Cities of an unknown country are left out, as the report queries join on country.
+     *
+     * @param cities  the city table
+     * @param ordered every city row, in the order to keep within each partition
+     */
+    static ScopeLayout[] ofCities(CityTable cities, int[] ordered) {
+        CountryTable countries = cities.countries;
+        int[] districts = cities.districts.firstIgnoreCase();
+        ScopeLayout[] layouts = new ScopeLayout[Scope.values().length];
+        for (Scope scope : Scope.values()) {
+            int[] countryPartitions = countryPartitions(countries, scope);
+            int[] partitions = new int[cities.size()];
+            for (int row = 0; row < partitions.length; row++) {
+                int country = cities.country[row];
+                if (country < 0) {
+                    partitions[row] = -1;
+                } else if (scope == Scope.DISTRICT) {
+                    partitions[row] = districts[cities.district[row]];
+                } else {
+                    partitions[row] = countryPartitions[country];
+                }
+            }
+            int count = scope == Scope.DISTRICT ? cities.districts.size() : partitionCount(countries, scope);
+            layouts[scope.ordinal()] = new ScopeLayout(partitions, count, ordered);
+        }
+        return layouts;
+    }
+
+    /**
+     * Lays out country rows for every level, indexed by Scope ordinal.
+     * Countries have no district, so the DISTRICT layout is empty.
+     *
+     * @param countries the country table
+     * @param ordered   every country row, in the order to keep within each partition
+     */
+    static ScopeLayout[] ofCountries(CountryTable countries, int[] ordered) {
+        ScopeLayout[] layouts = new ScopeLayout[Scope.values().length];
+        for (Scope scope : Scope.values()) {
+            layouts[scope.ordinal()] = new ScopeLayout(countryPartitions(countries, scope),
+                    partitionCount(countries, scope), ordered);
+        }
+        return layouts;
+    }
+
+    /**
+     * Lays out the country rows of capital cities for every level, indexed by Scope ordinal.
+     * Countries without a capital are left out, as the capital queries join on city.
+     *
+     * @param countries  the country table
+     * @param capitalRow the city row of each country's capital, or -1 if it has none
+     * @param ordered    every country row with a capital, in the order to keep within each partition
+     */
+    static ScopeLayout[] ofCapitals(CountryTable countries, int[] capitalRow, int[] ordered) {
+        ScopeLayout[] layouts = new ScopeLayout[Scope.values().length];
+        for (Scope scope : Scope.values()) {
+            int[] partitions = countryPartitions(countries, scope);
+            for (int row = 0; row < partitions.length; row++) {
+                if (capitalRow[row] < 0) {
+                    partitions[row] = -1;
+                }
+            }
+            layouts[scope.ordinal()] = new ScopeLayout(partitions, partitionCount(countries, scope), ordered);
+        }
+        return layouts;
+    }
+
+    /**
+     * Finds the partition named by a key.
+     *
+     * @param cities the city table, whose country table names the other levels
+     * @param scope  the level of the key
+     * @param key    the continent, region, country or district name; ignored for WORLD
+     * @return The partition, or -1 if nothing has the name.
+     */
+    static int partition(CityTable cities, Scope scope, String key) {
+        switch (scope) {
+            case WORLD:
+                return 0;
+            case CONTINENT:
+                return cities.countries.continents.firstIgnoreCase(key);
+            case REGION:
+                return cities.countries.regions.firstIgnoreCase(key);
+            case COUNTRY:
+                return cities.countries.names.firstIgnoreCase(key);
+            default:
+                return cities.districts.firstIgnoreCase(key);
+        }
+    }
+
+    private static int[] countryPartitions(CountryTable countries, Scope scope) {
+        int[] partitions = new int[countries.size()];
+        int[] column;
+        int[] first;
+        switch (scope) {
+            case WORLD:
+                return partitions;
+            case CONTINENT:
+                column = countries.continent;
+                first = countries.continents.firstIgnoreCase();
+                break;
+            case REGION:
+                column = countries.region;
+                first = countries.regions.firstIgnoreCase();
+                break;
+            case COUNTRY:
+                column = countries.name;
+                first = countries.names.firstIgnoreCase();
+                break;
+            default:
+                Arrays.fill(partitions, -1);
+                return partitions;
+        }
+        for (int row = 0; row < partitions.length; row++) {
+            partitions[row] = first[column[row]];
+        }
+        return partitions;
+    }
+
+    private static int partitionCount(CountryTable countries, Scope scope) {
+        switch (scope) {
+            case CONTINENT:
+                return countries.continents.size();
+            case REGION:
+                return countries.regions.size();
+            case COUNTRY:
+                return countries.names.size();
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.napier.sem;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Plans the city, capital city and country queries of a report run so that
+ * reports which are filters or prefixes of the same ordered scan share it.
+ * <p>
+ * Every report asks the planner for a supplier of its rows while the report
+ * graph is being built. When the run starts, each family of reports (cities,
+ * capital cities, countries) that either includes the full world listing or has
+ * more than one report runs its base query once; every report in the family is
+ * then derived in memory by filtering the base rows on continent, region,
+ * country or district and keeping the first n. Families with a single report
+ * still run their own query. Continent and region of a city are looked up
+ * through the full country listing, which is fetched once if needed.
+ * </p>
+ * <p>
+ * Derived reports keep the population order of the base scan; cities with equal
+ * populations may appear in a different order than a separate query would return.
+ * </p>
+ */
+public class SharedScanPlanner {
+
+    /**
+     * The families of reports that share a base scan.
+     */
+    private enum Family { CITY, CAPITAL, COUNTRY }
+
+    private final CityReport cityReport;
+    private final CapitalCityReport capitalReport;
+    private final CountryReport countryReport;
+    private final boolean enabled;
+
+    private final Map<Family, Integer> requests = new EnumMap<>(Family.class);
+    private final Map<Family, Boolean> worldListing = new EnumMap<>(Family.class);
+    private int derived;
+
+    private final BaseScan<City> allCities;
+    private final BaseScan<City> allCapitals;
+    private final BaseScan<Country> allCountries;
+    private Map<String, Country> countriesByName;
+
+    /**
+     * @param cityReport    runs city queries
+     * @param capitalReport runs capital city queries
+     * @param countryReport runs country queries
+     * @param enabled       false to run every report's own query
+     */
+    public SharedScanPlanner(CityReport cityReport, CapitalCityReport capitalReport,
+                             CountryReport countryReport, boolean enabled) {
+        this.cityReport = cityReport;
+        this.capitalReport = capitalReport;
+        this.countryReport = countryReport;
+        this.enabled = enabled;
+        allCities = new BaseScan<>(cityReport::printAllCities);
+        allCapitals = new BaseScan<>(capitalReport::getAllCapitalCities);
+        allCountries = new BaseScan<>(countryReport::getCountriesByPopulation);
+    }
+
+    /**
+     * Registers a city report.
+     *
+     * @param scope the geographic level to filter by
+     * @param key   the continent, region, country or district name; ignored for WORLD
+     * @param limit the maximum number of cities, or Integer.MAX_VALUE for all
+     * @return Supplies the report rows when the run starts.
+     */
+    public Supplier<ArrayList<City>> cities(Scope scope, String key, int limit) {
+        register(Family.CITY, scope, limit);
+        return () -> {
+            if (derive(Family.CITY) || directCities(scope, limit) == null) {
+                return derived(allCities.rows(), city -> cityMatches(city, scope, key), limit);
+            }
+            return directCities(scope, limit).apply(key, limit);
+        };
+    }
+
+    /**
+     * Registers a capital city report.
+     *
+     * @param scope the geographic level to filter by
+     * @param key   the continent, region or country name; ignored for WORLD
+     * @param limit the maximum number of capital cities, or Integer.MAX_VALUE for all
+     * @return Supplies the report rows when the run starts.
+     */
+    public Supplier<ArrayList<City>> capitalCities(Scope scope, String key, int limit) {
+        register(Family.CAPITAL, scope, limit);
+        return () -> {
+            if (derive(Family.CAPITAL) || directCapitals(scope, limit) == null) {
+                return derived(allCapitals.rows(), city -> countryMatches(country(city), scope, key), limit);
+            }
+            return directCapitals(scope, limit).apply(key, limit);
+        };
+    }
+
+    /**
+     * Registers a country report.
+     *
+     * @param scope the geographic level to filter by
+     * @param key   the continent or region name; ignored for WORLD
+     * @param limit the maximum number of countries, or Integer.MAX_VALUE for all
+     * @return Supplies the report rows when the run starts.
+     */
+    public Supplier<ArrayList<Country>> countries(Scope scope, String key, int limit) {
+        register(Family.COUNTRY, scope, limit);
+        return () -> {
+            if (derive(Family.COUNTRY) || directCountries(scope, limit) == null) {
+                return derived(allCountries.rows(), country -> countryMatches(country, scope, key), limit);
+            }
+            return directCountries(scope, limit).apply(key, limit);
+        };
+    }
+
+    /**
+     * @return The number of reports answered from a shared scan instead of their own query.
+     */
+    public synchronized int getDerivedCount() {
+        return derived;
+    }
+
+    private synchronized void register(Family family, Scope scope, int limit) {
+        requests.merge(family, 1, Integer::sum);
+        if (scope == Scope.WORLD && limit == Integer.MAX_VALUE) {
+            worldListing.put(family, true);
+        }
+    }
+
+    /**
+     * A family shares its base scan when the scan is needed anyway or saves at least one query.
+     */
+    private synchronized boolean derive(Family family) {
+        boolean shared = enabled
+                && (worldListing.getOrDefault(family, false) || requests.getOrDefault(family, 0) > 1);
+        if (shared) {
+            derived++;
+        }
+        return shared;
+    }
+
+    private <T> ArrayList<T> derived(ArrayList<T> base, Predicate<T> filter, int limit) {
+        if (base == null) {
+            return null;
+        }
+        ArrayList<T> rows = new ArrayList<>();
+        for (T row : base) {
+            if (rows.size() >= limit) {
+                break;
+            }
+            if (row != null && filter.test(row)) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private boolean cityMatches(City city, Scope scope, String key) {
+        switch (scope) {
+            case WORLD:
+                return true;
+            case DISTRICT:
+                return city.District != null && city.District.equalsIgnoreCase(key);
+            default:
+                return countryMatches(country(city), scope, key);
+        }
+    }
+
+    private static boolean countryMatches(Country country, Scope scope, String key) {
+        if (scope == Scope.WORLD) {
+            return true;
+        }
+        if (country == null) {
+            return false;
+        }
+        switch (scope) {
+            case CONTINENT:
+                return country.Continent != null && country.Continent.equalsIgnoreCase(key);
+            case REGION:
+                return country.Region != null && country.Region.equalsIgnoreCase(key);
+            case COUNTRY:
+                return country.Name != null && country.Name.equalsIgnoreCase(key);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Looks up the country of a city by name using the full country listing.
+     */
+    private synchronized Country country(City city) {
+        if (countriesByName == null) {
+            countriesByName = new HashMap<>();
+            ArrayList<Country> countries = allCountries.rows();
+            if (countries != null) {
+                for (Country country : countries) {
+                    if (country != null) {
+                        countriesByName.put(country.Name, country);
+                    }
+                }
+            }
+        }
+        return countriesByName.get(city.Country);
+    }
+
+    /**
+     * A query of one report.
+     */
+    private interface Query<T> {
+        ArrayList<T> apply(String key, int limit);
+    }
+
+    /**
+     * @return The CityReport method answering this request, or null if it has none.
+     */
+    private Query<City> directCities(Scope scope, int limit) {
+        boolean all = limit == Integer.MAX_VALUE;
+        switch (scope) {
+            case WORLD:
+                return all ? (k, n) -> cityReport.printAllCities() : (k, n) -> cityReport.getTopNCitiesInWorld(n);
+            case CONTINENT:
+                return all ? (k, n) -> cityReport.printCitiesByContinent(k) : cityReport::getTopNCitiesByContinent;
+            case REGION:
+                return all ? (k, n) -> cityReport.printCitiesByRegion(k) : cityReport::getTopNCitiesByRegion;
+            case DISTRICT:
+                return all ? (k, n) -> cityReport.printCitiesByDistrict(k) : cityReport::getTopNCitiesByDistrict;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return The CapitalCityReport method answering this request, or null if it has none.
+     */
+    private Query<City> directCapitals(Scope scope, int limit) {
+        boolean all = limit == Integer.MAX_VALUE;
+        switch (scope) {
+            case WORLD:
+                return all ? (k, n) -> capitalReport.getAllCapitalCities() : (k, n) -> capitalReport.getTopNCapitalCities(n);
+            case CONTINENT:
+                return all ? (k, n) -> capitalReport.getCapitalCitiesByContinent(k) : capitalReport::getTopNCapitalCitiesByContinent;
+            case REGION:
+                return all ? (k, n) -> capitalReport.getCapitalCitiesByRegion(k) : capitalReport::getTopNCapitalCitiesByRegion;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return The CountryReport method answering this request, or null if it has none.
+     */
+    private Query<Country> directCountries(Scope scope, int limit) {
+        boolean all = limit == Integer.MAX_VALUE;
+        switch (scope) {
+            case WORLD:
+                return all ? (k, n) -> countryReport.getCountriesByPopulation() : (k, n) -> countryReport.topNCountriesInTheWorld(n);
+            case CONTINENT:
+                return all ? (k, n) -> countryReport.getCountriesByContinent(k) : countryReport::topNCountriesByContinent;
+            case REGION:
+                return all ? (k, n) -> countryReport.getCountriesByRegion(k) : countryReport::topNCountriesByRegion;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Runs a base query the first time its rows are needed and keeps the result for the rest of the run.
+     */
+    private static class BaseScan<T> {
+        private final Supplier<ArrayList<T>> query;
+        private ArrayList<T> rows;
+        private boolean done;
+
+        BaseScan(Supplier<ArrayList<T>> query) {
+            this.query = query;
+        }
+
+        synchronized ArrayList<T> rows() {
+            if (!done) {
+                rows = query.get();
+                done = true;
+            }
+            return rows;
+        }
+    }
+}
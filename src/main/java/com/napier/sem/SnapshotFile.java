@@ -0,0 +1,355 @@
+package com.napier.sem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.zip.CRC32C;
+
+/**
+ * Saves a WorldSnapshot to a binary file and maps it back into memory,
+ * so reports can start without querying the database.
+ * <p>
+ * The file is a 64-byte header followed by the columns of the country, city and
+ * countrylanguage tables, each stored as the little-endian int, byte or double array
+ * the tables hold in memory, and the UTF-8 bytes and offsets of each StringPool.
+ * Reading bulk-copies every column out of the mapped file; strings stay as UTF-8
+ * and are only decoded when a report asks for them. The header holds a format
+ * version, a CRC-32C of the body, and the CHECKSUM TABLE values of the database
+ * the file was exported from, so a file can be checked against the database.
+ * </p>
+ */
+public final class SnapshotFile {
+
+    /**
+     * The file reports start from by default.
+     */
+    public static final Path DEFAULT = Path.of("./snapshot/world.bin");
+
+    /**
+     * The version of the layout written; files of other versions are rejected.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x504E5357; // "WSNP" in little-endian order
+    private static final int HEADER = 64;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot to a file, replacing it only once the whole file is written.
+     *
+     * @param snapshot  the snapshot to save
+     * @param file      the file to write
+     * @param checksums the CHECKSUM TABLE values of the city, country and countrylanguage
+     *                  tables it was loaded from, or null if it did not come from a database
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(WorldSnapshot snapshot, Path file, long[] checksums) throws IOException {
+        CountryTable countries = snapshot.countryTable;
+        CityTable cities = snapshot.cityTable;
+
+        // Languages are stored as codes into a pool, like the other string columns
+        StringPool languages = new StringPool();
+        int[] languageCode = new int[snapshot.language.length];
+        for (int i = 0; i < languageCode.length; i++) {
+            languageCode[i] = languages.add(snapshot.language[i]);
+        }
+        languages.trim();
+
+        int rows = snapshot.language.length;
+        long size = 12
+                + columns(countries.size(), 6) + pool(countries.codes) + pool(countries.names)
+                + pool(countries.continents) + pool(countries.regions)
+                + columns(cities.size(), 5) + pool(cities.names) + pool(cities.districts)
+                + columns(rows, 2) + pool(languages) + padded(rows) + 8L * rows;
+        if (size > Integer.MAX_VALUE - HEADER) {
+            throw new IOException("Snapshot is too large for a snapshot file");
+        }
+        ByteBuffer body = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+
+        body.putInt(countries.size()).putInt(cities.size()).putInt(rows);
+        putInts(body, countries.code);
+        putInts(body, countries.name);
+        putInts(body, countries.continent);
+        putInts(body, countries.region);
+        putInts(body, countries.population);
+        putInts(body, countries.capital);
+        putPool(body, countries.codes);
+        putPool(body, countries.names);
+        putPool(body, countries.continents);
+        putPool(body, countries.regions);
+
+        putInts(body, cities.id);
+        putInts(body, cities.name);
+        putInts(body, cities.country);
+        putInts(body, cities.district);
+        putInts(body, cities.population);
+        putPool(body, cities.names);
+        putPool(body, cities.districts);
+
+        putInts(body, snapshot.languageCountry);
+        putInts(body, languageCode);
+        putPool(body, languages);
+        for (boolean official : snapshot.official) {
+            body.put((byte) (official ? 1 : 0));
+        }
+        pad(body);
+        body.asDoubleBuffer().put(snapshot.percentage);
+        body.position(body.position() + 8 * rows);
+        body.flip();
+
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(body.limit()).putLong(crc.getValue());
+        for (int i = 0; i < 3; i++) {
+            header.putLong(checksums == null ? 0 : checksums[i]);
+        }
+        header.putLong(System.currentTimeMillis());
+        header.clear();
+
+        Path folder = Files.createDirectories(file.toAbsolutePath().getParent());
+        // A unique temporary file, so two exports of the same file cannot truncate each other's
+        Path temp = Files.createTempFile(folder, "." + file.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining() || body.hasRemaining()) {
+                    channel.write(new ByteBuffer[]{header, body});
+                }
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Maps a snapshot file into memory and rebuilds the snapshot's indexes from its columns.
+     *
+     * @param file the file to read
+     * @return The snapshot saved in the file.
+     * @throws IOException if the file cannot be read, is of another version or is corrupt
+     */
+    public static WorldSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer body = body(mapped, file, true);
+
+            int countryCount = body.getInt();
+            int cityCount = body.getInt();
+            int rows = body.getInt();
+            if (countryCount < 0 || cityCount < 0 || rows < 0
+                    || 24L * countryCount + 20L * cityCount + 17L * rows > body.remaining()) {
+                throw corrupt(file);
+            }
+
+            int[] code = getInts(body, countryCount);
+            int[] name = getInts(body, countryCount);
+            int[] continent = getInts(body, countryCount);
+            int[] region = getInts(body, countryCount);
+            int[] countryPopulation = getInts(body, countryCount);
+            int[] capital = getInts(body, countryCount);
+            CountryTable countries = new CountryTable(getPool(body), getPool(body), getPool(body), getPool(body),
+                    code, name, continent, region, countryPopulation, capital);
+
+            int[] id = getInts(body, cityCount);
+            int[] cityName = getInts(body, cityCount);
+            int[] country = getInts(body, cityCount);
+            int[] district = getInts(body, cityCount);
+            int[] cityPopulation = getInts(body, cityCount);
+            CityTable cities = new CityTable(countries, getPool(body), getPool(body),
+                    id, cityName, country, district, cityPopulation);
+
+            int[] languageCountry = getInts(body, rows);
+            int[] languageCode = getInts(body, rows);
+            StringPool languages = getPool(body);
+            String[] language = new String[rows];
+            boolean[] official = new boolean[rows];
+            for (int i = 0; i < rows; i++) {
+                language[i] = languages.get(languageCode[i]);
+                official[i] = body.get() != 0;
+            }
+            skipPadding(body);
+            double[] percentage = new double[rows];
+            body.asDoubleBuffer().get(percentage);
+
+            return new WorldSnapshot(countries, cities, languageCountry, language, official, percentage);
+        } catch (RuntimeException e) {
+            // Out of range codes and offsets surface as index or buffer exceptions
+            throw new IOException("Snapshot file " + file + " is corrupt: " + e, e);
+        }
+    }
+
+    /**
+     * Reads the CHECKSUM TABLE values a snapshot file was exported with.
+     *
+     * @param file the snapshot file
+     * @return The checksums of the city, country and countrylanguage tables; zeros if the file did not come from a database.
+     * @throws IOException if the file cannot be read or is not a snapshot file
+     */
+    public static long[] checksums(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            body(header, file, false);
+            return new long[]{header.getLong(24), header.getLong(32), header.getLong(40)};
+        }
+    }
+
+    /**
+     * Asks the database for the checksums of the tables a snapshot is loaded from.
+     *
+     * @param con the active database connection
+     * @return The CHECKSUM TABLE values of the city, country and countrylanguage tables.
+     * @throws SQLException if the checksums cannot be read
+     */
+    public static long[] tableChecksums(Connection con) throws SQLException {
+        long[] checksums = new long[3];
+        try (Statement stmt = con.createStatement();
+             ResultSet rset = stmt.executeQuery("CHECKSUM TABLE city, country, countrylanguage")) {
+            for (int i = 0; i < 3; i++) {
+                if (!rset.next()) {
+                    throw new SQLException("CHECKSUM TABLE returned " + i + " rows");
+                }
+                checksums[i] = rset.getLong("Checksum");
+            }
+        }
+        return checksums;
+    }
+
+    /**
+     * Checks whether a snapshot file no longer matches the database.
+     *
+     * @param file the snapshot file
+     * @param con  the active database connection
+     * @return True if any table changed since the file was exported, or the file was not exported from a database.
+     * @throws IOException  if the file cannot be read
+     * @throws SQLException if the database checksums cannot be read
+     */
+    public static boolean isStale(Path file, Connection con) throws IOException, SQLException {
+        long[] saved = checksums(file);
+        long[] current = tableChecksums(con);
+        for (int i = 0; i < 3; i++) {
+            if (saved[i] == 0 || saved[i] != current[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Loads a snapshot from the database and writes it with the database's checksums.
+     *
+     * @param con  the active database connection
+     * @param file the file to write
+     * @return The exported snapshot.
+     * @throws IOException  if the file cannot be written
+     * @throws SQLException if the tables cannot be read
+     */
+    public static WorldSnapshot export(Connection con, Path file) throws IOException, SQLException {
+        long[] checksums = tableChecksums(con);
+        WorldSnapshot snapshot = WorldSnapshot.load(con);
+        write(snapshot, file, checksums);
+        return snapshot;
+    }
+
+    /**
+     * Checks the header of a file and returns its body, verifying the body's checksum if asked.
+     */
+    private static ByteBuffer body(ByteBuffer file, Path path, boolean verify) throws IOException {
+        file.order(ByteOrder.LITTLE_ENDIAN);
+        if (file.limit() < HEADER || file.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a snapshot file");
+        }
+        int version = file.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Snapshot file " + path + " has version " + version + ", expected " + VERSION);
+        }
+        if (!verify) {
+            return null;
+        }
+        long length = file.getLong(8);
+        if (length != file.limit() - HEADER) {
+            throw corrupt(path);
+        }
+        ByteBuffer body = file.slice(HEADER, (int) length).order(ByteOrder.LITTLE_ENDIAN);
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        if (crc.getValue() != file.getLong(16)) {
+            throw corrupt(path);
+        }
+        return body;
+    }
+
+    private static IOException corrupt(Path file) {
+        return new IOException("Snapshot file " + file + " is corrupt");
+    }
+
+    private static long columns(int rows, int count) {
+        return 4L * rows * count;
+    }
+
+    private static long pool(StringPool pool) {
+        return 8 + 4L * (pool.size() + 1) + padded(pool.byteSize());
+    }
+
+    private static long padded(int bytes) {
+        return (bytes + 3) & ~3L;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + 4 * values.length);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * count);
+        return values;
+    }
+
+    private static void putPool(ByteBuffer buffer, StringPool pool) {
+        buffer.putInt(pool.size()).putInt(pool.byteSize());
+        putInts(buffer, pool.offsets());
+        buffer.put(pool.data());
+        pad(buffer);
+    }
+
+    private static StringPool getPool(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        int length = buffer.getInt();
+        int[] offsets = getInts(buffer, size + 1);
+        byte[] data = new byte[length];
+        buffer.get(data);
+        skipPadding(buffer);
+        return new StringPool(data, offsets);
+    }
+
+    // Keeps every column 4-byte aligned
+    private static void pad(ByteBuffer buffer) {
+        while ((buffer.position() & 3) != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static void skipPadding(ByteBuffer buffer) {
+        buffer.position((buffer.position() + 3) & ~3);
+    }
+}
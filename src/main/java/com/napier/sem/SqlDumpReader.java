@@ -0,0 +1,600 @@
+package com.napier.sem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads a WorldSnapshot straight from a mysqldump file such as db/world.sql,
+ * so every report can run without a database.
+ * <p>
+ * The dump is read once through a fixed buffer and tokenized byte by byte. Column
+ * orders are taken from each CREATE TABLE statement, and only the columns a snapshot
+ * keeps are decoded; other values are skipped without being copied. Statements
+ * other than CREATE TABLE and INSERT are skipped, so memory use depends on the size
+ * of the snapshot, not of the dump.
+ * </p>
+ */
+public final class SqlDumpReader {
+
+    private static final int EOF = -1;
+
+    // columns kept from each table, in the order they are passed to the builder
+    private static final Map<String, List<String>> KEPT = Map.of(
+            "city", List.of("ID", "Name", "CountryCode", "District", "Population"),
+            "country", List.of("Code", "Name", "Continent", "Region", "Population", "Capital"),
+            "countrylanguage", List.of("CountryCode", "Language", "IsOfficial", "Percentage"));
+
+    // column order of the world database, used for tables the dump does not create
+    private static final Map<String, List<String>> WORLD_COLUMNS = Map.of(
+            "city", List.of("ID", "Name", "CountryCode", "District", "Population"),
+            "country", List.of("Code", "Name", "Continent", "Region", "SurfaceArea", "IndepYear",
+                    "Population", "LifeExpectancy", "GNP", "GNPOld", "LocalName", "GovernmentForm",
+                    "HeadOfState", "Capital", "Code2"),
+            "countrylanguage", List.of("CountryCode", "Language", "IsOfficial", "Percentage"));
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int limit;
+    private long offset;
+
+    private final Map<String, List<String>> columns = new HashMap<>();
+    private final WorldSnapshot.Builder builder = new WorldSnapshot.Builder();
+
+    // bytes of the kept values of the current row
+    private byte[] row = new byte[256];
+    private int rowLength;
+    private final int[] valueStart = new int[8];
+    private final int[] valueEnd = new int[8];
+    private final boolean[] valueNull = new boolean[8];
+
+    private SqlDumpReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads a dump file.
+     *
+     * @param file the dump, for example db/world.sql
+     * @return A snapshot of the city, country and countrylanguage rows inserted by the dump.
+     * @throws IOException if the file cannot be read or is not a well-formed dump
+     */
+    public static WorldSnapshot read(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads a dump from a stream, which is not closed.
+     *
+     * @param in the UTF-8 dump
+     * @return A snapshot of the city, country and countrylanguage rows inserted by the dump.
+     * @throws IOException if the stream cannot be read or is not a well-formed dump
+     */
+    public static WorldSnapshot read(InputStream in) throws IOException {
+        SqlDumpReader reader = new SqlDumpReader(in);
+        reader.statements();
+        return reader.builder.build();
+    }
+
+    private void statements() throws IOException {
+        while (true) {
+            skipSpaceAndComments();
+            int c = peek();
+            if (c == EOF) {
+                return;
+            }
+            if (c == ';') {
+                next();
+                continue;
+            }
+            String keyword = Character.isLetter(c) ? word() : "";
+            if (keyword.equalsIgnoreCase("INSERT")) {
+                insert();
+            } else if (keyword.equalsIgnoreCase("CREATE")) {
+                create();
+            } else {
+                skipStatement();
+            }
+        }
+    }
+
+    /**
+     * Reads the column names of a CREATE TABLE statement, or skips any other CREATE statement.
+     */
+    private void create() throws IOException {
+        skipSpaceAndComments();
+        if (!Character.isLetter(peek()) || !word().equalsIgnoreCase("TABLE")) {
+            skipStatement();
+            return;
+        }
+        skipSpaceAndComments();
+        String table = identifier();
+        if (table.equalsIgnoreCase("IF")) {
+            // IF NOT EXISTS
+            skipSpaceAndComments();
+            word();
+            skipSpaceAndComments();
+            word();
+            skipSpaceAndComments();
+            table = identifier();
+        }
+        skipSpaceAndComments();
+        expect('(');
+        List<String> names = new ArrayList<>();
+        while (true) {
+            skipSpaceAndComments();
+            // Definitions starting with a quoted name are columns; keys and constraints start with a keyword
+            if (peek() == '`') {
+                names.add(identifier());
+            }
+            int end = skipDefinition();
+            if (end == ')') {
+                break;
+            }
+        }
+        columns.put(table.toLowerCase(), names);
+        skipStatement();
+    }
+
+    private void insert() throws IOException {
+        skipSpaceAndComments();
+        String into = word();
+        if (into.equalsIgnoreCase("IGNORE")) {
+            skipSpaceAndComments();
+            into = word();
+        }
+        if (!into.equalsIgnoreCase("INTO")) {
+            throw malformed("INTO");
+        }
+        skipSpaceAndComments();
+        String table = identifier().toLowerCase();
+        List<String> kept = KEPT.get(table);
+        if (kept == null) {
+            skipStatement();
+            return;
+        }
+        skipSpaceAndComments();
+        List<String> order;
+        if (peek() == '(') {
+            // INSERT INTO t (a, b) VALUES ...
+            next();
+            order = new ArrayList<>();
+            while (true) {
+                skipSpaceAndComments();
+                order.add(identifier());
+                skipSpaceAndComments();
+                int c = next();
+                if (c == ')') {
+                    break;
+                }
+                if (c != ',') {
+                    throw malformed("',' or ')'");
+                }
+            }
+            skipSpaceAndComments();
+        } else {
+            order = columns.getOrDefault(table, WORLD_COLUMNS.get(table));
+        }
+        // Position in kept of each column in the order values appear, or -1 to skip it
+        int[] slots = new int[order.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = indexIgnoreCase(kept, order.get(i));
+        }
+        for (int k = 0; k < kept.size(); k++) {
+            if (!containsIgnoreCase(order, kept.get(k))) {
+                throw new IOException("Table " + table + " in SQL dump has no " + kept.get(k) + " column");
+            }
+        }
+
+        if (!word().equalsIgnoreCase("VALUES")) {
+            throw malformed("VALUES");
+        }
+        while (true) {
+            skipSpaceAndComments();
+            expect('(');
+            tuple(slots);
+            addRow(table);
+            skipSpaceAndComments();
+            int c = next();
+            if (c == ';' || c == EOF) {
+                return;
+            }
+            if (c != ',') {
+                throw malformed("',' or ';'");
+            }
+        }
+    }
+
+    /**
+     * Reads the values of a row after its opening parenthesis, keeping those with a slot.
+     */
+    private void tuple(int[] slots) throws IOException {
+        rowLength = 0;
+        Arrays.fill(valueNull, false);
+        for (int i = 0; ; i++) {
+            skipSpaceAndComments();
+            int slot = i < slots.length ? slots[i] : -1;
+            value(slot);
+            skipSpaceAndComments();
+            int c = next();
+            if (c == ')') {
+                if (i + 1 != slots.length) {
+                    throw new IOException("Row at byte " + offset + " of SQL dump has " + (i + 1)
+                            + " values, expected " + slots.length);
+                }
+                return;
+            }
+            if (c != ',') {
+                throw malformed("',' or ')'");
+            }
+        }
+    }
+
+    /**
+     * Reads a quoted string, number or NULL, copying its bytes into the row if it has a slot.
+     */
+    private void value(int slot) throws IOException {
+        int c = peek();
+        if (slot >= 0) {
+            valueStart[slot] = rowLength;
+        }
+        if (c == '\'' || c == '"') {
+            quoted(slot >= 0);
+        } else {
+            // NULL, a number or another bare word
+            int length = 0;
+            while ((c = peek()) != EOF && c != ',' && c != ')' && !isSpace(c)) {
+                if (slot >= 0) {
+                    append(c);
+                }
+                next();
+                length++;
+            }
+            if (length == 0) {
+                throw malformed("a value");
+            }
+            if (slot >= 0 && rowLength - valueStart[slot] == 4
+                    && new String(row, valueStart[slot], 4, StandardCharsets.US_ASCII).equalsIgnoreCase("NULL")) {
+                valueNull[slot] = true;
+                rowLength = valueStart[slot];
+            }
+        }
+        if (slot >= 0) {
+            valueEnd[slot] = rowLength;
+        }
+    }
+
+    /**
+     * Reads a quoted string, unescaping it into the row if it is kept.
+     */
+    private void quoted(boolean keep) throws IOException {
+        int quote = next();
+        while (true) {
+            int c = next();
+            if (c == EOF) {
+                throw malformed("closing quote");
+            }
+            if (c == '\\') {
+                c = next();
+                switch (c) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case '0':
+                        c = 0;
+                        break;
+                    case 'Z':
+                        c = 26;
+                        break;
+                    case EOF:
+                        throw malformed("escaped character");
+                    default:
+                        break;
+                }
+            } else if (c == quote) {
+                if (peek() != quote) {
+                    return;
+                }
+                // A doubled quote stands for itself
+                next();
+            }
+            if (keep) {
+                append(c);
+            }
+        }
+    }
+
+    private void addRow(String table) throws IOException {
+        switch (table) {
+            case "city":
+                builder.addCity(intValue(0), text(1), text(2), text(3), intValue(4));
+                break;
+            case "country":
+                builder.addCountry(text(0), text(1), text(2), text(3), intValue(4), intValue(5));
+                break;
+            default:
+                builder.addLanguage(text(0), text(1), "T".equals(text(2)), decimalValue(3));
+                break;
+        }
+    }
+
+    private String text(int slot) {
+        return valueNull[slot] ? null
+                : new String(row, valueStart[slot], valueEnd[slot] - valueStart[slot], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The integer value of a slot, or 0 if it is NULL.
+     */
+    private int intValue(int slot) throws IOException {
+        if (valueNull[slot]) {
+            return 0;
+        }
+        int i = valueStart[slot];
+        int end = valueEnd[slot];
+        boolean negative = i < end && row[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end) {
+            throw new IOException("Expected an integer before byte " + offset + " of SQL dump");
+        }
+        // Checked after each digit, so the value fits a long and -2147483648 is accepted
+        long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = row[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Expected an integer before byte " + offset + " of SQL dump");
+            }
+            value = value * 10 + digit;
+            if (value > limit) {
+                throw new IOException("Expected an integer before byte " + offset + " of SQL dump");
+            }
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * @return The decimal value of a slot, such as 12.5, or 0 if it is NULL.
+     */
+    private double decimalValue(int slot) throws IOException {
+        if (valueNull[slot]) {
+            return 0;
+        }
+        int i = valueStart[slot];
+        int end = valueEnd[slot];
+        boolean negative = i < end && row[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            if (row[i] == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            int digit = row[i] - '0';
+            if (digit < 0 || digit > 9 || digits > Long.MAX_VALUE / 10) {
+                // Exponents and very long numbers are rare enough to parse the slow way
+                try {
+                    return Double.parseDouble(text(slot));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Expected a number before byte " + offset + " of SQL dump");
+                }
+            }
+            digits = digits * 10 + digit;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        double value = scale > 0 ? digits / Math.pow(10, scale) : digits;
+        return negative ? -value : value;
+    }
+
+    private void append(int c) {
+        if (rowLength == row.length) {
+            row = Arrays.copyOf(row, rowLength * 2);
+        }
+        row[rowLength++] = (byte) c;
+    }
+
+    /**
+     * Skips whitespace, -- and # line comments, and /* block comments, including
+     * MySQL's /*! conditional comments, which a dump uses for SET statements.
+     */
+    private void skipSpaceAndComments() throws IOException {
+        while (true) {
+            int c = peek();
+            if (isSpace(c)) {
+                next();
+            } else if (c == '#' || (c == '-' && peekAt(1) == '-')) {
+                while ((c = next()) != EOF && c != '\n') {
+                    // skip to end of line
+                }
+            } else if (c == '/' && peekAt(1) == '*') {
+                next();
+                next();
+                int previous = 0;
+                while ((c = next()) != EOF && !(previous == '*' && c == '/')) {
+                    previous = c;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips to the end of a statement, ignoring semicolons inside quotes and comments.
+     */
+    private void skipStatement() throws IOException {
+        while (true) {
+            skipSpaceAndComments();
+            int c = peek();
+            if (c == EOF) {
+                return;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                quoted(false);
+            } else {
+                next();
+                if (c == ';') {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Skips a column or key definition in a CREATE TABLE statement.
+     *
+     * @return ',' if another definition follows, or ')' at the end of the list.
+     */
+    private int skipDefinition() throws IOException {
+        int depth = 0;
+        while (true) {
+            skipSpaceAndComments();
+            int c = peek();
+            if (c == EOF) {
+                throw malformed("')'");
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                quoted(false);
+                continue;
+            }
+            next();
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (depth-- == 0) {
+                    return c;
+                }
+            } else if (c == ',' && depth == 0) {
+                return c;
+            }
+        }
+    }
+
+    /**
+     * @return A run of letters, digits and underscores.
+     */
+    private String word() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = peek()) != EOF && (Character.isLetterOrDigit(c) || c == '_')) {
+            sb.append((char) next());
+        }
+        if (sb.length() == 0) {
+            throw malformed("a keyword");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return A backquoted or bare identifier, without its quotes.
+     */
+    private String identifier() throws IOException {
+        if (peek() != '`') {
+            return word();
+        }
+        next();
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = next()) != '`') {
+            if (c == EOF) {
+                throw malformed("closing '`'");
+            }
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    private void expect(int expected) throws IOException {
+        if (next() != expected) {
+            throw malformed("'" + (char) expected + "'");
+        }
+    }
+
+    private IOException malformed(String expected) {
+        return new IOException("Expected " + expected + " at byte " + offset + " of SQL dump");
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        return buffer[position] & 0xFF;
+    }
+
+    /**
+     * @return The byte a number of bytes ahead, or EOF; the buffer is compacted if it holds too few.
+     */
+    private int peekAt(int ahead) throws IOException {
+        if (position + ahead >= limit) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+            while (limit <= ahead) {
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    return EOF;
+                }
+                limit += read;
+            }
+        }
+        return buffer[position + ahead] & 0xFF;
+    }
+
+    private int next() throws IOException {
+        if (position == limit && !fill()) {
+            return EOF;
+        }
+        offset++;
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static int indexIgnoreCase(List<String> names, String name) {
+        for (int i = 0; i < names.size(); i++) {
+            if (names.get(i).equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean containsIgnoreCase(List<String> names, String name) {
+        return indexIgnoreCase(names, name) >= 0;
+    }
+}
@@ -0,0 +1,248 @@
+package com.napier.sem;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The prepared statements of a connection, kept open between report queries.
+ * <p>
+ * A statement is prepared once for each SQL text and handed out again each time the same
+ * SQL is run on the same connection. Closing the statement handed out gives it back to the
+ * cache rather than closing it, so callers keep their try-with-resources blocks. A statement
+ * is handed to one caller at a time; a second caller running the same SQL meanwhile gets a
+ * statement of its own. Each connection keeps at most the capacity of idle statements, and
+ * the least recently used one is closed when another would go over it. The saving is in
+ * the server's parse, so the connection must prepare statements on the server, as the
+ * useServerPrepStmts=true of App's database url does.
+ * </p>
+ */
+public final class StatementCache {
+
+    /**
+     * The default number of idle statements kept for each connection.
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static volatile int capacity = DEFAULT_CAPACITY;
+    private static final Map<Connection, StatementCache> CACHES = new ConcurrentHashMap<>();
+
+    private final Connection con;
+    // Idle statements by SQL, least recently returned first
+    private final LinkedHashMap<String, PreparedStatement> idle = new LinkedHashMap<>();
+
+    private StatementCache(Connection con) {
+        this.con = con;
+    }
+
+    /**
+     * Sets how many idle statements are kept for each connection.
+     *
+     * @param statements the number of statements, or 0 to close every statement after use
+     */
+    public static void setCapacity(int statements) {
+        if (statements < 0) {
+            throw new IllegalArgumentException("Statement cache capacity must not be negative");
+        }
+        capacity = statements;
+    }
+
+    /**
+     * @return The number of idle statements kept for each connection.
+     */
+    public static int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Prepares a statement, or takes the one already prepared for the same SQL on the connection.
+     *
+     * @param con the active database connection
+     * @param sql the SQL of the statement
+     * @return A statement whose close() gives it back to the cache.
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public static PreparedStatement prepare(Connection con, String sql) throws SQLException {
+        if (capacity == 0) {
+            return con.prepareStatement(sql);
+        }
+        StatementCache cache = CACHES.get(con);
+        if (cache == null) {
+            pruneClosed();
+            cache = CACHES.computeIfAbsent(con, StatementCache::new);
+        }
+        return cache.borrow(sql);
+    }
+
+    /**
+     * Closes the idle statements of a connection and forgets them. Called before the
+     * connection is closed or given back to a pool.
+     *
+     * @param con the connection
+     */
+    public static void close(Connection con) {
+        if (con == null) {
+            return;
+        }
+        StatementCache cache = CACHES.remove(con);
+        if (cache != null) {
+            cache.closeIdle();
+        }
+    }
+
+    /**
+     * @param con the connection
+     * @return The number of idle statements kept for the connection.
+     */
+    public static int idleCount(Connection con) {
+        StatementCache cache = CACHES.get(con);
+        if (cache == null) {
+            return 0;
+        }
+        synchronized (cache) {
+            return cache.idle.size();
+        }
+    }
+
+    /**
+     * Forgets the caches of connections that were closed without close(Connection).
+     */
+    private static void pruneClosed() {
+        for (Iterator<Map.Entry<Connection, StatementCache>> it = CACHES.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, StatementCache> entry = it.next();
+            boolean closed;
+            try {
+                closed = entry.getKey().isClosed();
+            } catch (SQLException e) {
+                closed = true;
+            }
+            if (closed) {
+                it.remove();
+                entry.getValue().closeIdle();
+            }
+        }
+    }
+
+    private PreparedStatement borrow(String sql) throws SQLException {
+        PreparedStatement physical;
+        synchronized (this) {
+            physical = idle.remove(sql);
+        }
+        if (physical != null && physical.isClosed()) {
+            physical = null;
+        }
+        if (physical == null) {
+            physical = con.prepareStatement(sql);
+            if (physical == null) {
+                return null;
+            }
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, new Handle(sql, physical));
+    }
+
+    /**
+     * Keeps a statement that has been given back, closing it or the least recently used
+     * statement if there is no room.
+     */
+    private void giveBack(String sql, PreparedStatement physical) {
+        List<PreparedStatement> closing = new ArrayList<>(1);
+        try {
+            if (physical.isClosed()) {
+                return;
+            }
+        } catch (SQLException e) {
+            closing.add(physical);
+        }
+        if (closing.isEmpty()) {
+            synchronized (this) {
+                if (capacity == 0 || idle.containsKey(sql) || CACHES.get(con) != this) {
+                    closing.add(physical);
+                } else {
+                    idle.put(sql, physical);
+                    for (Iterator<PreparedStatement> it = idle.values().iterator(); idle.size() > capacity; ) {
+                        closing.add(it.next());
+                        it.remove();
+                    }
+                }
+            }
+        }
+        for (PreparedStatement stmt : closing) {
+            closeQuietly(stmt);
+        }
+    }
+
+    private void closeIdle() {
+        List<PreparedStatement> closing;
+        synchronized (this) {
+            closing = new ArrayList<>(idle.values());
+            idle.clear();
+        }
+        for (PreparedStatement stmt : closing) {
+            closeQuietly(stmt);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            System.out.println("Error closing cached statement");
+        }
+    }
+
+    /**
+     * The statement handed to a caller. close() gives the prepared statement back to the
+     * cache, after which the handle can no longer be used.
+     */
+    private class Handle implements InvocationHandler {
+        private final String sql;
+        private final PreparedStatement physical;
+        private boolean returned;
+
+        Handle(String sql, PreparedStatement physical) {
+            this.sql = sql;
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack(sql, physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + physical;
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Statement has already been closed");
+            }
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
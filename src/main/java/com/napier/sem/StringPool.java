@@ -0,0 +1,188 @@
+package com.napier.sem;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A dictionary of strings stored as UTF-8 bytes in a single array.
+ * <p>
+ * Each distinct string is stored once and identified by an int code, so a column
+ * of strings becomes an int[] of codes. Strings are only decoded when asked for.
+ * Case-insensitive lookups, as the world database's collation does them, build an
+ * index the first time they are used.
+ * </p>
+ */
+public class StringPool {
+
+    private byte[] data = new byte[1024];
+    private int[] offsets = new int[65];
+    private int size;
+    private int length;
+
+    // Used while strings are added; dropped by trim()
+    private Map<String, Integer> codes = new HashMap<>();
+
+    // Built on the first lookup
+    private volatile Map<String, int[]> folded;
+
+    /**
+     * Creates an empty pool.
+     */
+    public StringPool() {
+    }
+
+    /**
+     * Wraps strings already laid out as UTF-8 bytes; the pool is read-only.
+     *
+     * @param data    the bytes of every string, one after another
+     * @param offsets the start of each string in data, followed by the length of data
+     */
+    StringPool(byte[] data, int[] offsets) {
+        if (offsets.length == 0 || offsets[offsets.length - 1] != data.length) {
+            throw new IllegalArgumentException("Offsets do not match data");
+        }
+        this.data = data;
+        this.offsets = offsets;
+        size = offsets.length - 1;
+        length = data.length;
+        codes = null;
+    }
+
+    /**
+     * Adds a string if it is not already in the pool.
+     *
+     * @param s the string, which must not be null
+     * @return The code of the string.
+     */
+    int add(String s) {
+        if (codes == null) {
+            throw new IllegalStateException("Pool is read-only");
+        }
+        Integer code = codes.get(s);
+        if (code != null) {
+            return code;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (length + bytes.length > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + bytes.length));
+        }
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        System.arraycopy(bytes, 0, data, length, bytes.length);
+        length += bytes.length;
+        offsets[++size] = length;
+        codes.put(s, size - 1);
+        return size - 1;
+    }
+
+    /**
+     * Shrinks the pool to its contents and makes it read-only.
+     */
+    void trim() {
+        data = Arrays.copyOf(data, length);
+        offsets = Arrays.copyOf(offsets, size + 1);
+        codes = null;
+    }
+
+    /**
+     * @return The number of distinct strings.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of bytes used by the strings.
+     */
+    public int byteSize() {
+        return length;
+    }
+
+    /**
+     * @return The bytes of a read-only pool's strings, which must not be changed.
+     */
+    byte[] data() {
+        return data;
+    }
+
+    /**
+     * @return The offsets of a read-only pool's strings, which must not be changed.
+     */
+    int[] offsets() {
+        return offsets;
+    }
+
+    /**
+     * @param code the code of a string in the pool
+     * @return The decoded string.
+     */
+    public String get(int code) {
+        return new String(data, offsets[code], offsets[code + 1] - offsets[code], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds every string equal to a key ignoring case, as the world database compares text.
+     *
+     * @param key the string to look for
+     * @return A table indexed by code that is true for each matching string.
+     */
+    public boolean[] matchesIgnoreCase(String key) {
+        boolean[] matches = new boolean[size];
+        if (key != null) {
+            for (int code : index().getOrDefault(fold(key), new int[0])) {
+                matches[code] = true;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the first string equal to a key ignoring case.
+     *
+     * @param key the string to look for
+     * @return The lowest matching code, or -1 if none matches.
+     */
+    int firstIgnoreCase(String key) {
+        int[] codes = key == null ? null : index().get(fold(key));
+        return codes == null ? -1 : codes[0];
+    }
+
+    /**
+     * Groups strings that are equal ignoring case.
+     *
+     * @return A table indexed by code of the lowest code equal to it ignoring case.
+     */
+    int[] firstIgnoreCase() {
+        int[] first = new int[size];
+        for (int[] codes : index().values()) {
+            for (int code : codes) {
+                first[code] = codes[0];
+            }
+        }
+        return first;
+    }
+
+    private Map<String, int[]> index() {
+        Map<String, int[]> index = folded;
+        if (index == null) {
+            index = new HashMap<>();
+            for (int code = 0; code < size; code++) {
+                index.merge(fold(get(code)), new int[]{code}, (a, b) -> {
+                    int[] merged = Arrays.copyOf(a, a.length + 1);
+                    merged[a.length] = b[0];
+                    return merged;
+                });
+            }
+            folded = index;
+        }
+        return index;
+    }
+
+    private static String fold(String s) {
+        return s.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+    }
+}
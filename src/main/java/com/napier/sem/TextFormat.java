@@ -0,0 +1,240 @@
+package com.napier.sem;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Formats report cells straight into a StringBuilder, writing the same characters as the
+ * Formatter conversions and DecimalFormat patterns the reports used before, without
+ * creating a Formatter, a format string or an intermediate String for each value.
+ * <p>
+ * The methods keep no shared state, so any thread may call them. Separators are read from
+ * the default locale once, when the class loads; in a locale whose digits or grouping
+ * differ from "1,234.5", numbers are formatted by Formatter and DecimalFormat themselves.
+ * </p>
+ */
+public final class TextFormat {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L
+    };
+
+    // Scaled values below this are exact in a double, with room for one more digit
+    private static final double SCALED_LIMIT = 1e14;
+
+    private static final char GROUPING;
+    private static final char DECIMAL;
+    private static final boolean PLAIN;
+
+    static {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        GROUPING = symbols.getGroupingSeparator();
+        DECIMAL = symbols.getDecimalSeparator();
+        NumberFormat integers = NumberFormat.getIntegerInstance(locale);
+        PLAIN = symbols.getZeroDigit() == '0' && symbols.getMinusSign() == '-'
+                && integers instanceof DecimalFormat
+                && ((DecimalFormat) integers).getGroupingSize() == 3 && integers.isGroupingUsed();
+    }
+
+    // Used only when the locale is not PLAIN, or a value is too large or not a number
+    private static final ThreadLocal<DecimalFormat> WHOLE_NUMBER = ThreadLocal.withInitial(() -> new DecimalFormat("#,###"));
+    private static final ThreadLocal<DecimalFormat> PERCENTAGE = ThreadLocal.withInitial(() -> new DecimalFormat("#.##"));
+
+    private TextFormat() {
+    }
+
+    /**
+     * Appends text padded with spaces on the right to a width, as "%-<i>width</i>s" does.
+     *
+     * @param out   the buffer to append to
+     * @param s     the text, written as "null" when null
+     * @param width the least number of characters to write
+     * @return The buffer.
+     */
+    public static StringBuilder left(StringBuilder out, String s, int width) {
+        if (s == null) {
+            s = "null";
+        }
+        out.append(s);
+        return pad(out, width - s.length());
+    }
+
+    /**
+     * Appends text padded with spaces on the left to a width, as "%<i>width</i>s" does.
+     *
+     * @param out   the buffer to append to
+     * @param s     the text, written as "null" when null
+     * @param width the least number of characters to write
+     * @return The buffer.
+     */
+    public static StringBuilder right(StringBuilder out, String s, int width) {
+        if (s == null) {
+            s = "null";
+        }
+        return pad(out, width - s.length()).append(s);
+    }
+
+    /**
+     * Appends a whole number with its thousands grouped, right-aligned to a width, as "%,<i>width</i>d" does.
+     *
+     * @param out   the buffer to append to
+     * @param value the number
+     * @param width the least number of characters to write; 0 for no padding
+     * @return The buffer.
+     */
+    public static StringBuilder grouped(StringBuilder out, long value, int width) {
+        if (!PLAIN) {
+            return right(out, String.format("%,d", value), width);
+        }
+        // Count down from a negative value so that Long.MIN_VALUE needs no special case
+        return digits(out, value < 0 ? value : -value, value < 0, 0, true, width);
+    }
+
+    /**
+     * Appends a number rounded to a number of decimal places, right-aligned to a width,
+     * as "%<i>width</i>.<i>precision</i>f" does.
+     * <p>
+     * Like Formatter, this rounds half up the shortest decimal that Double.toString would
+     * write, so 1.005 is written as "1.01" even though the double is a little below it.
+     * </p>
+     *
+     * @param out       the buffer to append to
+     * @param value     the number
+     * @param precision the number of decimal places, from 0 to 13
+     * @param width     the least number of characters to write; 0 for no padding
+     * @return The buffer.
+     */
+    public static StringBuilder fixed(StringBuilder out, double value, int precision, int width) {
+        double magnitude = Math.abs(value);
+        if (!PLAIN || precision < 0 || precision + 1 >= POWERS_OF_TEN.length
+                || !(magnitude * POWERS_OF_TEN[precision + 1] < SCALED_LIMIT)) {
+            return right(out, String.format("%." + precision + "f", value), width);
+        }
+        long units = roundShortest(magnitude, precision);
+        return digits(out, -units, isNegative(value), precision, false, width);
+    }
+
+    /**
+     * Appends a number rounded half-even to a whole number with its thousands grouped,
+     * as DecimalFormat("#,###") does.
+     *
+     * @param out   the buffer to append to
+     * @param value the number
+     * @return The buffer.
+     */
+    public static StringBuilder wholeNumber(StringBuilder out, double value) {
+        double magnitude = Math.abs(value);
+        if (!PLAIN || !(magnitude < SCALED_LIMIT)) {
+            return out.append(WHOLE_NUMBER.get().format(value));
+        }
+        return digits(out, -roundExact(magnitude, 0, true), isNegative(value), 0, true, 0);
+    }
+
+    /**
+     * Appends a number rounded half-even to at most two decimal places, dropping trailing
+     * zeros, as DecimalFormat("#.##") does.
+     *
+     * @param out   the buffer to append to
+     * @param value the number
+     * @return The buffer.
+     */
+    public static StringBuilder percentage(StringBuilder out, double value) {
+        double magnitude = Math.abs(value);
+        if (!PLAIN || !(magnitude * 100 < SCALED_LIMIT)) {
+            return out.append(PERCENTAGE.get().format(value));
+        }
+        long units = roundExact(magnitude, 2, true);
+        if (units % 100 == 0) {
+            return digits(out, -(units / 100), isNegative(value), 0, false, 0);
+        }
+        if (units % 10 == 0) {
+            return digits(out, -(units / 10), isNegative(value), 1, false, 0);
+        }
+        return digits(out, -units, isNegative(value), 2, false, 0);
+    }
+
+    /**
+     * Writes a number given as its negated count of units of 10^-decimals, right-aligned.
+     */
+    private static StringBuilder digits(StringBuilder out, long negatedUnits, boolean negative,
+                                        int decimals, boolean group, int width) {
+        // Measure first so the padding can go in front without moving anything
+        long whole = negatedUnits / POWERS_OF_TEN[decimals];
+        int wholeDigits = 1;
+        for (long n = whole / 10; n != 0; n /= 10) {
+            wholeDigits++;
+        }
+        int length = wholeDigits + (group ? (wholeDigits - 1) / 3 : 0)
+                + (decimals > 0 ? decimals + 1 : 0) + (negative ? 1 : 0);
+        pad(out, width - length);
+
+        int pos = out.length() + length;
+        out.setLength(pos);
+        long n = negatedUnits;
+        for (int i = 0; i < decimals; i++) {
+            out.setCharAt(--pos, (char) ('0' - n % 10));
+            n /= 10;
+        }
+        if (decimals > 0) {
+            out.setCharAt(--pos, DECIMAL);
+        }
+        for (int i = 0; i < wholeDigits; i++) {
+            if (group && i > 0 && i % 3 == 0) {
+                out.setCharAt(--pos, GROUPING);
+            }
+            out.setCharAt(--pos, (char) ('0' - n % 10));
+            n /= 10;
+        }
+        if (negative) {
+            out.setCharAt(--pos, '-');
+        }
+        return out;
+    }
+
+    /**
+     * Rounds half up the shortest decimal form of a number to a count of units of 10^-precision.
+     */
+    private static long roundShortest(double magnitude, int precision) {
+        // A number that is exactly one more decimal place long is where the shortest decimal
+        // form and the double itself can round differently; there the decimal form decides
+        double scale = POWERS_OF_TEN[precision + 1];
+        double tenths = Math.rint(magnitude * scale);
+        if (tenths / scale == magnitude) {
+            return ((long) tenths + 5) / 10;
+        }
+        return roundExact(magnitude, precision, false);
+    }
+
+    /**
+     * Rounds the exact value of a number to a count of units of 10^-precision.
+     */
+    private static long roundExact(double magnitude, int precision, boolean halfEven) {
+        double scale = POWERS_OF_TEN[precision];
+        double product = magnitude * scale;
+        // The rounding error of the product, which decides the rare values that land on .5
+        double error = Math.fma(magnitude, scale, -product);
+        double floor = Math.floor(product);
+        double fraction = product - floor;
+        long units = (long) floor;
+        if (fraction > 0.5 || fraction == 0.5 && (error > 0 || error == 0 && (!halfEven || (units & 1) == 1))) {
+            units++;
+        }
+        return units;
+    }
+
+    private static boolean isNegative(double value) {
+        return Double.doubleToRawLongBits(value) < 0;
+    }
+
+    private static StringBuilder pad(StringBuilder out, int count) {
+        for (int i = 0; i < count; i++) {
+            out.append(' ');
+        }
+        return out;
+    }
+}
@@ -0,0 +1,114 @@
+package com.napier.sem;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs a top-N-per-group report for many continents, regions or districts in one query.
+ * <p>
+ * Rows are numbered within each group with ROW_NUMBER() OVER (PARTITION BY ...),
+ * which needs MySQL 8, and only the first n of each group are returned. The
+ * results are keyed by group name, ignoring case as the database does.
+ * </p>
+ */
+final class TopNPerGroup {
+
+    private TopNPerGroup() {
+    }
+
+    /**
+     * Builds the ranked query.
+     *
+     * @param columns the report columns selected by the single-group query
+     * @param from    the FROM and JOIN clauses
+     * @param group   the column to partition by
+     * @param order   the ORDER BY of each group
+     * @param keys    the number of group names to filter on, or 0 for every group
+     * @return SQL whose parameters are the group names followed by n.
+     */
+    static String sql(String columns, String from, String group, String order, int keys) {
+        StringBuilder where = new StringBuilder();
+        if (keys > 0) {
+            where.append("WHERE ").append(group).append(" IN (?");
+            for (int i = 1; i < keys; i++) {
+                where.append(", ?");
+            }
+            where.append(')');
+        }
+        return """
+                SELECT * FROM (
+                    SELECT %1$s, %3$s AS GroupKey,
+                           ROW_NUMBER() OVER (PARTITION BY %3$s ORDER BY %4$s) AS GroupRank
+                    %2$s
+                    %5$s
+                ) ranked
+                WHERE GroupRank <= ?
+                ORDER BY GroupKey, GroupRank
+                """.formatted(columns, from, group, order, where);
+    }
+
+    /**
+     * Runs a query built by {@link #sql} and groups its rows.
+     *
+     * @param con    the active database connection
+     * @param sql    the ranked query
+     * @param keys   the group names, or null for every group
+     * @param n      the maximum number of rows per group
+     * @param mapper maps each row to a report object
+     * @return The rows of each group in rank order, with an empty list for requested groups
+     * that have no rows, or null if the query fails.
+     */
+    static <T> Map<String, List<T>> run(Connection con, String sql, Collection<String> keys, int n,
+                                        RowMapper<T> mapper) {
+        Map<String, List<T>> groups = emptyGroups(keys);
+        if (con == null || n <= 0 || (keys != null && keys.isEmpty())) {
+            return groups;
+        }
+
+        Query query = Query.of(sql);
+        if (keys != null) {
+            for (String key : keys) {
+                query.string(key);
+            }
+        }
+        query.integer(n);
+
+        try (PreparedStatement pstmt = StatementCache.prepare(con, sql)) {
+            query.bind(pstmt);
+            try (ResultSet rset = pstmt.executeQuery()) {
+                RowMapper.Row<T> row = mapper.columns(rset);
+                int groupKey = rset.findColumn("GroupKey");
+                while (rset.next()) {
+                    groups.computeIfAbsent(rset.getString(groupKey), k -> new ArrayList<>())
+                            .add(row.map(rset));
+                }
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            System.out.println("Failed to execute top N per group query.");
+            return null;
+        }
+
+        return groups;
+    }
+
+    /**
+     * @param keys the group names, or null for every group
+     * @return A case-insensitive map with an empty list for each requested group.
+     */
+    static <T> Map<String, List<T>> emptyGroups(Collection<String> keys) {
+        Map<String, List<T>> groups = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (keys != null) {
+            for (String key : keys) {
+                groups.putIfAbsent(key, new ArrayList<>());
+            }
+        }
+        return groups;
+    }
+}
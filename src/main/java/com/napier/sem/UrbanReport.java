@@ -4,7 +4,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.ResultSet;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,8 +15,72 @@ public class UrbanReport {
     public double population;
     public double urbanPopulation;
     public double percentage;
-    DecimalFormat numberFormat = new DecimalFormat("#,###");
-    DecimalFormat percentageFormat = new DecimalFormat("#.##");
+
+    /**
+     * When true, reports are generated with one grouped query per level
+     * instead of two queries per continent, region and country.
+     */
+    public boolean batchMode;
+
+    /**
+     * Records query latency and report file sizes; null to record nothing.
+     */
+    private MetricsRegistry metrics;
+
+    /**
+     * Precomputed totals to answer from instead of querying; null to query the database.
+     */
+    private GeographyTree geography;
+
+    // Continents list hard coded for performance purposes to avoid unnecessary DB query
+    private static final String[] CONTINENTS = {
+            "Africa","Antarctica","Asia","Europe",
+            "North America","Oceania","South America"
+    };
+
+    // Urban population is summed per country first so the join does not fan out country rows
+    private static final String SUMMARY_SQL = """
+            SELECT %1$s AS Name, SUM(country.Population) AS Population,
+                   SUM(COALESCE(urban.UrbanPopulation, 0)) AS UrbanPopulation
+            FROM country
+            LEFT JOIN (SELECT CountryCode, SUM(Population) AS UrbanPopulation
+                       FROM city GROUP BY CountryCode) urban
+              ON urban.CountryCode = country.Code
+            GROUP BY %1$s
+            ORDER BY Name
+            """;
+
+    /**
+     * Creates an UrbanReport that queries each continent, region and country individually.
+     */
+    public UrbanReport() {
+        this(false);
+    }
+
+    /**
+     * @param batchMode true to generate reports from grouped queries
+     */
+    public UrbanReport(boolean batchMode) {
+        this.batchMode = batchMode;
+    }
+
+    /**
+     * Sets the registry that query latency and report file sizes are recorded in.
+     *
+     * @param metrics the metrics registry, or null to record nothing
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the geography tree that population figures are looked up in.
+     *
+     * @param geography the tree to answer from, or null to query the database
+     */
+    public void setGeography(GeographyTree geography) {
+        this.geography = geography;
+    }
 
     /**
      * Retrieves the total population of the world.
@@ -25,8 +88,12 @@ public class UrbanReport {
      * @param con the active database connection
      */
     public void getPopulationOfWorld(Connection con) {
+        if (geography != null) {
+            population = geography.world().population();
+            return;
+        }
         String sql = "SELECT SUM(population) FROM country";
-        try (PreparedStatement stmt = con.prepareStatement(sql);
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql);
              ResultSet rset = stmt.executeQuery()) {
             if (rset.next()) {
                 population = rset.getDouble(1);
@@ -44,8 +111,12 @@ public class UrbanReport {
      * @param con the active database connection
      */
     public void getUrbanPopulation(Connection con) {
+        if (geography != null) {
+            urbanPopulation = geography.world().urbanPopulation();
+            return;
+        }
         String sql = "SELECT SUM(population) FROM city";
-        try (PreparedStatement stmt = con.prepareStatement(sql);
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql);
              ResultSet rset = stmt.executeQuery()) {
             if (rset.next()) {
                 urbanPopulation = rset.getDouble(1);
@@ -64,8 +135,12 @@ public class UrbanReport {
      * @param region the region to query
      */
     public void getPopulationOfRegion(Connection con, String region) {
+        if (geography != null) {
+            population = geography.summary(Scope.REGION, region).Population;
+            return;
+        }
         String sql = "SELECT SUM(population) FROM country WHERE Region = ?";
-        try (PreparedStatement stmt = con.prepareStatement(sql)) {
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql)) {
             stmt.setString(1, region);
             try (ResultSet rset = stmt.executeQuery()) {
                 if (rset.next()) {
@@ -86,10 +161,14 @@ public class UrbanReport {
      * @param region the region to query
      */
     public void getUrbanPopulationOfRegion(Connection con, String region) {
+        if (geography != null) {
+            urbanPopulation = geography.summary(Scope.REGION, region).UrbanPopulation;
+            return;
+        }
         String sql = "SELECT SUM(city.population) FROM city " +
                 "JOIN country ON city.CountryCode = country.Code " +
                 "WHERE country.Region = ?";
-        try (PreparedStatement stmt = con.prepareStatement(sql)) {
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql)) {
             stmt.setString(1, region);
             try (ResultSet rset = stmt.executeQuery()) {
                 if (rset.next()) {
@@ -110,8 +189,12 @@ public class UrbanReport {
      * @param continent the continent to query
      */
     public void getPopulationOfContinent(Connection con, String continent) {
+        if (geography != null) {
+            population = geography.summary(Scope.CONTINENT, continent).Population;
+            return;
+        }
         String sql = "SELECT SUM(population) FROM country WHERE Continent = ?";
-        try (PreparedStatement stmt = con.prepareStatement(sql)) {
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql)) {
             stmt.setString(1, continent);
             try (ResultSet rset = stmt.executeQuery()) {
                 if (rset.next()) {
@@ -132,10 +215,14 @@ public class UrbanReport {
      * @param continent the continent to query
      */
     public void getUrbanPopulationOfContinent(Connection con, String continent) {
+        if (geography != null) {
+            urbanPopulation = geography.summary(Scope.CONTINENT, continent).UrbanPopulation;
+            return;
+        }
         String sql = "SELECT SUM(city.population) FROM city " +
                 "JOIN country ON city.CountryCode = country.Code " +
                 "WHERE country.Continent = ?";
-        try (PreparedStatement stmt = con.prepareStatement(sql)) {
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql)) {
             stmt.setString(1, continent);
             try (ResultSet rset = stmt.executeQuery()) {
                 if (rset.next()) {
@@ -156,8 +243,12 @@ public class UrbanReport {
      * @param country the country to query
      */
     public void getPopulationOfCountry(Connection con, String country) {
+        if (geography != null) {
+            population = geography.summary(Scope.COUNTRY, country).Population;
+            return;
+        }
         String sql = "SELECT population FROM country WHERE Name = ?";
-        try (PreparedStatement stmt = con.prepareStatement(sql)) {
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql)) {
             stmt.setString(1, country);
             try (ResultSet rset = stmt.executeQuery()) {
                 if (rset.next()) {
@@ -178,10 +269,14 @@ public class UrbanReport {
      * @param country the country to query
      */
     public void getUrbanPopulationOfCountry(Connection con, String country) {
+        if (geography != null) {
+            urbanPopulation = geography.summary(Scope.COUNTRY, country).UrbanPopulation;
+            return;
+        }
         String sql = "SELECT SUM(city.population) FROM city " +
                 "JOIN country ON city.CountryCode = country.Code " +
                 "WHERE country.Name = ?";
-        try (PreparedStatement stmt = con.prepareStatement(sql)) {
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql)) {
             stmt.setString(1, country);
             try (ResultSet rset = stmt.executeQuery()) {
                 if (rset.next()) {
@@ -202,8 +297,15 @@ public class UrbanReport {
      * @param city the city to query
      */
     public void getPopulationOfCity(Connection con, String city) {
+        if (geography != null) {
+            int row = geography.cityRow(city);
+            if (row >= 0) {
+                population = geography.cityPopulation(row);
+            }
+            return;
+        }
         String sql = "SELECT population FROM city WHERE Name = ?";
-        try (PreparedStatement stmt = con.prepareStatement(sql)) {
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql)) {
             stmt.setString(1, city);
             try (ResultSet rset = stmt.executeQuery()) {
                 if (rset.next()) {
@@ -217,21 +319,94 @@ public class UrbanReport {
         }
     }
 
+    /**
+     * Retrieves the total and urban population of every continent with a single grouped query.
+     *
+     * @param con the active database connection
+     * @return A list of continent summaries, or null on failure.
+     */
+    public ArrayList<PopulationSummary> getContinentSummaries(Connection con) {
+        if (geography != null) {
+            return geography.summaries(Scope.CONTINENT);
+        }
+        return executeSummaryQuery(con, String.format(SUMMARY_SQL, "country.Continent"), "getContinentSummaries");
+    }
+
+    /**
+     * Retrieves the total and urban population of every region with a single grouped query.
+     *
+     * @param con the active database connection
+     * @return A list of region summaries, or null on failure.
+     */
+    public ArrayList<PopulationSummary> getRegionSummaries(Connection con) {
+        if (geography != null) {
+            return geography.summaries(Scope.REGION);
+        }
+        return executeSummaryQuery(con, String.format(SUMMARY_SQL, "country.Region"), "getRegionSummaries");
+    }
+
+    /**
+     * Retrieves the total and urban population of every country with a single grouped query.
+     *
+     * @param con the active database connection
+     * @return A list of country summaries, or null on failure.
+     */
+    public ArrayList<PopulationSummary> getCountrySummaries(Connection con) {
+        if (geography != null) {
+            return geography.summaries(Scope.COUNTRY);
+        }
+        return executeSummaryQuery(con, String.format(SUMMARY_SQL, "country.Name"), "getCountrySummaries");
+    }
+
+    /**
+     * Executes a grouped population query and maps each group to a PopulationSummary.
+     *
+     * @param con the active database connection
+     * @param sql the grouped query to execute
+     * @param name the report method, used to name its metric
+     * @return A list of summaries ordered by name, or null on failure.
+     */
+    private ArrayList<PopulationSummary> executeSummaryQuery(Connection con, String sql, String name) {
+        long start = System.nanoTime();
+        ArrayList<PopulationSummary> summaries = querySummaries(con, sql);
+        if (metrics != null) {
+            metrics.record("query:UrbanReport." + name, System.nanoTime() - start,
+                    summaries == null ? 0 : summaries.size(), summaries == null);
+        }
+        return summaries;
+    }
+
+    private ArrayList<PopulationSummary> querySummaries(Connection con, String sql) {
+        ArrayList<PopulationSummary> summaries = new ArrayList<>();
+        try (PreparedStatement stmt = StatementCache.prepare(con, sql);
+             ResultSet rset = stmt.executeQuery()) {
+            while (rset.next()) {
+                summaries.add(summarise(rset.getString("Name"),
+                        rset.getDouble("Population"), rset.getDouble("UrbanPopulation")));
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            System.out.println("Failed to get population summaries");
+            return null;
+        }
+        return summaries;
+    }
+
     /**
      * Generates lists of regions and countries for later use in the generation of reports.
+     * In batch mode the three reports are produced from one grouped query per level instead,
+     * and with a geography tree they are produced from its totals without any query.
      *
      * @param con active database connection
      */
     public void generateReportLists(Connection con) {
-        // Continents list hard coded for performance purposes to avoid unnecessary DB query
-        String[] continents = {
-                "Africa","Antarctica","Asia","Europe",
-                "North America","Oceania","South America"
-        };
+        if (batchMode || geography != null) {
+            generateBatchReports(con);
+            return;
+        }
 
         List<String> regions = new ArrayList<>();
         List<String> countries = new ArrayList<>();
-        List<String> cities = new ArrayList<>();
         try {
             // 1. Regions
             try (Statement stmt = con.createStatement()) {
@@ -259,131 +434,149 @@ public class UrbanReport {
             System.out.println(e.getMessage());
         }
 
-        generateContinentReport(con, continents,"ContinentUrbanReport.md");
+        generateContinentReport(con, CONTINENTS,"ContinentUrbanReport.md");
         generateRegionReport(con, regions,"RegionalUrbanReport.md");
         generateCountryReport(con, countries,"CountryUrbanReport.md");
     }
 
-    public void generateContinentReport(Connection con, String[] continents, String filename){
-        StringBuilder sb = new StringBuilder();
-        // Markdown table header
-        sb.append("| Continent | Population | Urban Population | Urbanisation Percentage |\r\n");
-        sb.append("| --- | --- | --- | --- |\r\n");
+    /**
+     * Generates the continent, region and country urbanisation reports
+     * using three grouped queries in total, regardless of the number of countries.
+     *
+     * @param con active database connection
+     */
+    public void generateBatchReports(Connection con) {
+        ArrayList<PopulationSummary> continents = getContinentSummaries(con);
+        ArrayList<PopulationSummary> regions = getRegionSummaries(con);
+        ArrayList<PopulationSummary> countries = getCountrySummaries(con);
+
+        writeUrbanReport("Continent", inContinentOrder(continents), "ContinentUrbanReport.md", "Continental");
+        writeUrbanReport("Region", regions, "RegionalUrbanReport.md", "Regional");
+        writeUrbanReport("Country", countries, "CountryUrbanReport.md", "Country");
+    }
 
+    /**
+     * Orders continent summaries to match the hard coded continent list,
+     * filling in zero rows for continents missing from the query results.
+     */
+    private List<PopulationSummary> inContinentOrder(List<PopulationSummary> summaries) {
+        List<PopulationSummary> ordered = new ArrayList<>();
+        for (String continent : CONTINENTS) {
+            PopulationSummary match = null;
+            if (summaries != null) {
+                for (PopulationSummary summary : summaries) {
+                    if (continent.equals(summary.Name)) {
+                        match = summary;
+                        break;
+                    }
+                }
+            }
+            ordered.add(match != null ? match : summarise(continent, 0, 0));
+        }
+        return ordered;
+    }
+
+    public void generateContinentReport(Connection con, String[] continents, String filename){
+        long start = System.nanoTime();
+        List<PopulationSummary> rows = new ArrayList<>();
         // Loop through all continents and generate values
         for (String continent : continents){
             getPopulationOfContinent(con,continent);
             getUrbanPopulationOfContinent(con,continent);
-            if (population == 0) {
-                percentage = 0;
-            } else {
-                percentage = (urbanPopulation * 100.0) / population;
-            }
-
-            sb.append("| ")
-                    .append(continent).append(" | ")
-                    .append(numberFormat.format(population)).append(" | ")
-                    .append(numberFormat.format(urbanPopulation)).append(" | ")
-                    .append(percentageFormat.format(percentage))
-                    .append(" |\r\n");
-
-        }
-
-        try {
-            // Create reports folder if it does not exist
-            new java.io.File("./reports/").mkdirs();
-
-            // Write Markdown to file
-            java.io.BufferedWriter writer = new java.io.BufferedWriter(
-                    new java.io.FileWriter("./reports/" + filename));
-            writer.write(sb.toString());
-            writer.close();
-            System.out.println("Continental urbanisation report written to ./reports/" + filename);
-        } catch (java.io.IOException e) {
-            e.printStackTrace();
-            System.out.println("Failed to write continental urbanisation report.");
+            rows.add(summarise(continent, population, urbanPopulation));
         }
+        recordQueries("generateContinentReport", start, rows.size());
+        writeUrbanReport("Continent", rows, filename, "Continental");
     }
 
     public void generateRegionReport(Connection con, List<String> regions, String filename){
-        StringBuilder sb = new StringBuilder();
-        // Markdown table header
-        sb.append("| Region | Population | Urban Population | Urbanisation Percentage |\r\n");
-        sb.append("| --- | --- | --- | --- |\r\n");
-
-        // Loop through all continents and generate values
+        long start = System.nanoTime();
+        List<PopulationSummary> rows = new ArrayList<>();
+        // Loop through all regions and generate values
         for (String region : regions){
             getPopulationOfRegion(con,region);
             getUrbanPopulationOfRegion(con,region);
-            if (population == 0) {
-                percentage = 0;
-            } else {
-                percentage = (urbanPopulation * 100.0) / population;
-            }
-
-            sb.append("| ")
-                    .append(region).append(" | ")
-                    .append(numberFormat.format(population)).append(" | ")
-                    .append(numberFormat.format(urbanPopulation)).append(" | ")
-                    .append(percentageFormat.format(percentage))
-                    .append(" |\r\n");
-
-        }
-
-        try {
-            // Create reports folder if it does not exist
-            new java.io.File("./reports/").mkdirs();
-
-            // Write Markdown to file
-            java.io.BufferedWriter writer = new java.io.BufferedWriter(
-                    new java.io.FileWriter("./reports/" + filename));
-            writer.write(sb.toString());
-            writer.close();
-            System.out.println("Regional urbanisation report written to ./reports/" + filename);
-        } catch (java.io.IOException e) {
-            e.printStackTrace();
-            System.out.println("Failed to write regional urbanisation report.");
+            rows.add(summarise(region, population, urbanPopulation));
         }
+        recordQueries("generateRegionReport", start, rows.size());
+        writeUrbanReport("Region", rows, filename, "Regional");
     }
 
     public void generateCountryReport(Connection con, List<String> countries, String filename){
-        StringBuilder sb = new StringBuilder();
-        // Markdown table header
-        sb.append("| Country | Population | Urban Population | Urbanisation Percentage |\r\n");
-        sb.append("| --- | --- | --- | --- |\r\n");
-
-        // Loop through all continents and generate values
+        long start = System.nanoTime();
+        List<PopulationSummary> rows = new ArrayList<>();
+        // Loop through all countries and generate values
         for (String country : countries){
             getPopulationOfCountry(con,country);
             getUrbanPopulationOfCountry(con,country);
-            if (population == 0) {
-                percentage = 0;
-            } else {
-                percentage = (urbanPopulation * 100.0) / population;
-            }
+            rows.add(summarise(country, population, urbanPopulation));
+        }
+        recordQueries("generateCountryReport", start, rows.size());
+        writeUrbanReport("Country", rows, filename, "Country");
+    }
 
-            sb.append("| ")
-                    .append(country).append(" | ")
-                    .append(numberFormat.format(population)).append(" | ")
-                    .append(numberFormat.format(urbanPopulation)).append(" | ")
-                    .append(percentageFormat.format(percentage))
-                    .append(" |\r\n");
+    /**
+     * Records the time spent querying each name of a per-name report.
+     */
+    private void recordQueries(String name, long start, int rows) {
+        if (metrics != null) {
+            metrics.record("query:UrbanReport." + name, System.nanoTime() - start, rows, false);
+        }
+    }
 
+    /**
+     * Builds a summary row and updates the population, urbanPopulation and percentage fields.
+     */
+    private PopulationSummary summarise(String name, double total, double urban) {
+        population = total;
+        urbanPopulation = urban;
+        if (population == 0) {
+            percentage = 0;
+        } else {
+            percentage = (urbanPopulation * 100.0) / population;
         }
 
-        try {
-            // Create reports folder if it does not exist
-            new java.io.File("./reports/").mkdirs();
-
-            // Write Markdown to file
-            java.io.BufferedWriter writer = new java.io.BufferedWriter(
-                    new java.io.FileWriter("./reports/" + filename));
-            writer.write(sb.toString());
-            writer.close();
-            System.out.println("Country urbanisation report written to ./reports/" + filename);
+        PopulationSummary summary = new PopulationSummary();
+        summary.Name = name;
+        summary.Population = population;
+        summary.UrbanPopulation = urbanPopulation;
+        summary.Percentage = percentage;
+        return summary;
+    }
+
+    /**
+     * Writes an urbanisation report to a Markdown file.
+     *
+     * @param heading  the heading of the first column
+     * @param rows     the summaries to output
+     * @param filename the name of the Markdown file to create
+     * @param label    the name of the report used in console messages
+     */
+    private void writeUrbanReport(String heading, List<PopulationSummary> rows, String filename, String label) {
+        // Write Markdown straight to the file, creating the reports folder if it does not exist
+        try (ReportSink sink = ReportSink.open(filename)) {
+            // Markdown table header
+            sink.append("| ").append(heading).append(" | Population | Urban Population | Urbanisation Percentage |\r\n");
+            sink.append("| --- | --- | --- | --- |\r\n");
+
+            if (rows != null) {
+                for (PopulationSummary row : rows) {
+                    sink.append("| ")
+                            .append(row.Name).append(" | ")
+                            .appendWholeNumber(row.Population).append(" | ")
+                            .appendWholeNumber(row.UrbanPopulation).append(" | ")
+                            .appendPercentage(row.Percentage)
+                            .append(" |\r\n");
+                }
+            }
+            sink.commit();
+            if (metrics != null) {
+                metrics.recordFileWritten(filename);
+            }
+            System.out.println(label + " urbanisation report written to ./reports/" + filename);
         } catch (java.io.IOException e) {
             e.printStackTrace();
-            System.out.println("Failed to write country urbanisation report.");
+            System.out.println("Failed to write " + label.toLowerCase() + " urbanisation report.");
         }
     }
 }
@@ -0,0 +1,519 @@
+package com.napier.sem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory copy of the city, country and countrylanguage tables.
+ * <p>
+ * The tables are loaded once into a columnar CityTable and CountryTable and every
+ * report query is answered from rows pre-sorted by population, so report classes
+ * given a snapshot never go back to the database. Filtered queries merge the sorted
+ * runs of a PopulationIndex rather than scanning every row. Filters compare string
+ * pool codes, and City and Country objects are only created for rows returned.
+ * </p>
+ */
+public class WorldSnapshot {
+
+    final CountryTable countryTable;
+    final CityTable cityTable;
+
+    // countrylanguage columns, indexed by language row
+    final int[] languageCountry;
+    final String[] language;
+    final boolean[] official;
+    final double[] percentage;
+
+    // city row of each country's capital, or -1 if it has none
+    final int[] capitalRow;
+
+    // rows ordered by population descending; capitals are country rows ordered by capital population
+    final int[] citiesByPopulation;
+    final int[] capitalsByPopulation;
+    final int[] countriesByPopulation;
+
+    // rows sorted by population within each partition, for filtered top N queries
+    final PopulationIndex index;
+
+    private final long worldPopulation;
+
+    // rows laid out in page order, built the first time a page is asked for
+    private PageIndex pages;
+
+    /**
+     * Builds the indexes over read-only tables.
+     *
+     * @param languageCountry the country row of each countrylanguage row, or -1 if it is not known
+     */
+    WorldSnapshot(CountryTable countryTable, CityTable cityTable,
+                  int[] languageCountry, String[] language, boolean[] official, double[] percentage) {
+        this.countryTable = countryTable;
+        this.cityTable = cityTable;
+        this.languageCountry = languageCountry;
+        this.language = language;
+        this.official = official;
+        this.percentage = percentage;
+        int countries = countryTable.size();
+        int cities = cityTable.size();
+
+        citiesByPopulation = sortByPopulation(cityTable.population, cities);
+        countriesByPopulation = sortByPopulation(countryTable.population, countries);
+
+        // A capital is the city whose ID matches its country's Capital column
+        Map<Integer, Integer> rowById = new HashMap<>();
+        for (int i = 0; i < cities; i++) {
+            rowById.put(cityTable.id[i], i);
+        }
+        capitalRow = new int[countries];
+        int[] capitalPopulation = new int[countries];
+        long total = 0;
+        int capitals = 0;
+        for (int c = 0; c < countries; c++) {
+            Integer row = rowById.get(countryTable.capital[c]);
+            capitalRow[c] = row == null ? -1 : row;
+            if (row != null) {
+                capitalPopulation[c] = cityTable.population[row];
+                capitals++;
+            }
+            total += countryTable.population[c];
+        }
+        worldPopulation = total;
+
+        int[] capitalRows = new int[capitals];
+        for (int c = 0, n = 0; c < countries; c++) {
+            if (capitalRow[c] >= 0) {
+                capitalRows[n++] = capitalRow[c];
+            }
+        }
+        cityTable.capitals = RowBitmap.of(capitalRows);
+
+        index = new PopulationIndex(cityTable, countryTable, capitalRow);
+
+        int[] ordered = sortByPopulation(capitalPopulation, countries);
+        capitalsByPopulation = new int[capitals];
+        for (int i = 0, n = 0; i < countries; i++) {
+            if (capitalRow[ordered[i]] >= 0) {
+                capitalsByPopulation[n++] = ordered[i];
+            }
+        }
+    }
+
+    /**
+     * Loads the city, country and countrylanguage tables from the database.
+     *
+     * @param con the active database connection
+     * @return A snapshot of the world database.
+     * @throws SQLException if any of the tables cannot be read
+     */
+    public static WorldSnapshot load(Connection con) throws SQLException {
+        Builder builder = new Builder();
+
+        try (PreparedStatement pstmt = con.prepareStatement(
+                "SELECT Code, Name, Continent, Region, Population, Capital FROM country");
+             ResultSet rset = pstmt.executeQuery()) {
+            while (rset.next()) {
+                builder.addCountry(rset.getString(1), rset.getString(2), rset.getString(3),
+                        rset.getString(4), rset.getInt(5), rset.getInt(6));
+            }
+        }
+
+        try (PreparedStatement pstmt = con.prepareStatement(
+                "SELECT ID, Name, CountryCode, District, Population FROM city");
+             ResultSet rset = pstmt.executeQuery()) {
+            while (rset.next()) {
+                builder.addCity(rset.getInt(1), rset.getString(2), rset.getString(3),
+                        rset.getString(4), rset.getInt(5));
+            }
+        }
+
+        try (PreparedStatement pstmt = con.prepareStatement(
+                "SELECT CountryCode, Language, IsOfficial, Percentage FROM countrylanguage");
+             ResultSet rset = pstmt.executeQuery()) {
+            while (rset.next()) {
+                builder.addLanguage(rset.getString(1), rset.getString(2),
+                        "T".equals(rset.getString(3)), rset.getDouble(4));
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * @return The number of cities in the snapshot.
+     */
+    public int cityCount() {
+        return cityTable.size();
+    }
+
+    /**
+     * @return The number of countries in the snapshot.
+     */
+    public int countryCount() {
+        return countryTable.size();
+    }
+
+    /**
+     * @return The city table, with rows in the order they were loaded.
+     */
+    public CityTable cityTable() {
+        return cityTable;
+    }
+
+    /**
+     * @return The country table, with rows in the order they were loaded.
+     */
+    public CountryTable countryTable() {
+        return countryTable;
+    }
+
+    /**
+     * @return The index of rows sorted by population within each partition.
+     */
+    public PopulationIndex populationIndex() {
+        return index;
+    }
+
+    /**
+     * @return The index that pages of the city, capital city and country listings are read from.
+     */
+    public synchronized PageIndex pages() {
+        if (pages == null) {
+            pages = new PageIndex(this);
+        }
+        return pages;
+    }
+
+    /**
+     * Retrieves cities ordered by population descending, as CityReport does.
+     *
+     * @param scope the geographic level to filter by
+     * @param key   the continent, region, country or district name; ignored for WORLD
+     * @param limit the maximum number of cities to return
+     * @return A list of matching cities.
+     */
+    public ArrayList<City> cities(Scope scope, String key, int limit) {
+        int[] rows = scope == Scope.DISTRICT
+                ? index.citiesInDistricts(cityTable.districts.matchesIgnoreCase(key), limit)
+                : index.cities(countryFilter(scope, key), limit);
+        ArrayList<City> cities = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            cities.add(cityTable.city(row));
+        }
+        return cities;
+    }
+
+    /**
+     * Retrieves capital cities ordered by population descending, as CapitalCityReport does.
+     *
+     * @param scope the geographic level to filter by
+     * @param key   the continent, region or country name; ignored for WORLD
+     * @param limit the maximum number of capital cities to return
+     * @return A list of matching capital cities.
+     */
+    public ArrayList<City> capitalCities(Scope scope, String key, int limit) {
+        int[] rows = index.capitals(countryFilter(scope, key), limit);
+        ArrayList<City> capitals = new ArrayList<>(rows.length);
+        for (int country : rows) {
+            capitals.add(capital(country));
+        }
+        return capitals;
+    }
+
+    /**
+     * Retrieves countries ordered by population descending, as CountryReport does.
+     *
+     * @param scope the geographic level to filter by
+     * @param key   the continent or region name; ignored for WORLD
+     * @param limit the maximum number of countries to return
+     * @return A list of matching countries.
+     */
+    public ArrayList<Country> countries(Scope scope, String key, int limit) {
+        int[] rows = index.countries(countryFilter(scope, key), limit);
+        ArrayList<Country> countries = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            countries.add(countryTable.country(row));
+        }
+        return countries;
+    }
+
+    /**
+     * Retrieves the most populated cities of each continent, region, country or district,
+     * as the CityReport top N per group queries do.
+     *
+     * @param scope the geographic level to group by; WORLD is not a grouping
+     * @param keys  the group names to include, or null for every group
+     * @param limit the maximum number of cities in each group
+     * @return The cities of each group ordered by population descending, keyed by group name ignoring case.
+     */
+    public Map<String, List<City>> citiesPerGroup(Scope scope, Collection<String> keys, int limit) {
+        Map<String, List<City>> groups = TopNPerGroup.emptyGroups(keys);
+        for (int i = 0; i < citiesByPopulation.length && limit > 0; i++) {
+            int row = citiesByPopulation[i];
+            if (cityTable.country[row] < 0) {
+                continue;
+            }
+            String key = scope == Scope.DISTRICT ? cityTable.district(row) : groupName(cityTable.country[row], scope);
+            List<City> group = group(groups, keys, key, limit);
+            if (group != null) {
+                group.add(cityTable.city(row));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Retrieves the most populated capital cities of each continent or region,
+     * as the CapitalCityReport top N per group queries do.
+     *
+     * @param scope the geographic level to group by; WORLD is not a grouping
+     * @param keys  the group names to include, or null for every group
+     * @param limit the maximum number of capital cities in each group
+     * @return The capital cities of each group ordered by population descending, keyed by group name ignoring case.
+     */
+    public Map<String, List<City>> capitalCitiesPerGroup(Scope scope, Collection<String> keys, int limit) {
+        Map<String, List<City>> groups = TopNPerGroup.emptyGroups(keys);
+        for (int i = 0; i < capitalsByPopulation.length && limit > 0; i++) {
+            int country = capitalsByPopulation[i];
+            List<City> group = group(groups, keys, groupName(country, scope), limit);
+            if (group != null) {
+                group.add(capital(country));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Retrieves the most populated countries of each continent or region,
+     * as the CountryReport top N per group queries do.
+     *
+     * @param scope the geographic level to group by; WORLD is not a grouping
+     * @param keys  the group names to include, or null for every group
+     * @param limit the maximum number of countries in each group
+     * @return The countries of each group ordered by population descending, keyed by group name ignoring case.
+     */
+    public Map<String, List<Country>> countriesPerGroup(Scope scope, Collection<String> keys, int limit) {
+        Map<String, List<Country>> groups = TopNPerGroup.emptyGroups(keys);
+        for (int i = 0; i < countriesByPopulation.length && limit > 0; i++) {
+            int row = countriesByPopulation[i];
+            List<Country> group = group(groups, keys, groupName(row, scope), limit);
+            if (group != null) {
+                group.add(countryTable.country(row));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Calculates the number of speakers of each language and their share of the
+     * world population, ordered by number of speakers descending, as LanguageReport does.
+     *
+     * @param languages the languages to report on
+     * @return A list of language totals.
+     */
+    public ArrayList<CountryLanguage> languageSpeakers(String... languages) {
+        ArrayList<CountryLanguage> results = new ArrayList<>();
+        for (String name : languages) {
+            // Sum population * percentage in tenths of a percent to keep the arithmetic exact
+            long speakerTenths = 0;
+            boolean found = false;
+            for (int i = 0; i < language.length; i++) {
+                if (language[i].equalsIgnoreCase(name) && languageCountry[i] >= 0) {
+                    speakerTenths += countryTable.population[languageCountry[i]] * Math.round(percentage[i] * 10);
+                    found = true;
+                }
+            }
+            if (!found) {
+                continue;
+            }
+            BigDecimal speakers = BigDecimal.valueOf(speakerTenths, 3);
+            CountryLanguage lang = new CountryLanguage();
+            lang.Language = name;
+            lang.NumberOfSpeakers = speakers.longValue();
+            lang.WorldPercentage = worldPopulation == 0 ? 0 : speakers
+                    .divide(BigDecimal.valueOf(worldPopulation), 9, RoundingMode.HALF_UP)
+                    .multiply(BigDecimal.valueOf(100)).doubleValue();
+            results.add(lang);
+        }
+        results.sort((a, b) -> Long.compare(b.NumberOfSpeakers, a.NumberOfSpeakers));
+        return results;
+    }
+
+    private City capital(int country) {
+        int row = capitalRow[country];
+        City city = new City();
+        city.Name = cityTable.name(row);
+        city.Country = countryTable.name(country);
+        city.Population = cityTable.population[row];
+        city.isCapital = true;
+        return city;
+    }
+
+    private String groupName(int row, Scope scope) {
+        switch (scope) {
+            case CONTINENT:
+                return countryTable.continent(row);
+            case REGION:
+                return countryTable.region(row);
+            case COUNTRY:
+                return countryTable.name(row);
+            default:
+                throw new IllegalArgumentException("Cannot group countries by " + scope);
+        }
+    }
+
+    /**
+     * @return The list a row of the named group belongs in, or null if the group
+     * was not requested or is already full.
+     */
+    private static <T> List<T> group(Map<String, List<T>> groups, Collection<String> keys, String key, int limit) {
+        List<T> group = keys == null ? groups.computeIfAbsent(key, k -> new ArrayList<>()) : groups.get(key);
+        return group == null || group.size() >= limit ? null : group;
+    }
+
+    /**
+     * Matches each country row against a filter, comparing codes rather than strings.
+     *
+     * @return A table indexed by country row, or null if every country matches.
+     */
+    private boolean[] countryFilter(Scope scope, String key) {
+        int[] column;
+        StringPool pool;
+        switch (scope) {
+            case WORLD:
+                return null;
+            case CONTINENT:
+                column = countryTable.continent;
+                pool = countryTable.continents;
+                break;
+            case REGION:
+                column = countryTable.region;
+                pool = countryTable.regions;
+                break;
+            case COUNTRY:
+                column = countryTable.name;
+                pool = countryTable.names;
+                break;
+            default:
+                return new boolean[countryTable.size()];
+        }
+        boolean[] codes = pool.matchesIgnoreCase(key);
+        boolean[] rows = new boolean[countryTable.size()];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = codes[column[row]];
+        }
+        return rows;
+    }
+
+    /**
+     * Orders row numbers by population descending, breaking ties by row number.
+     */
+    private static int[] sortByPopulation(int[] population, int rows) {
+        long[] keys = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            keys[i] = ((long) (Integer.MAX_VALUE - population[i]) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Collects table rows before building an immutable WorldSnapshot.
+     */
+    public static class Builder {
+        private final CountryTable countries = new CountryTable();
+        private final CityTable cities = new CityTable(countries);
+        private final Map<String, Integer> countryRows = new HashMap<>();
+
+        // Country codes of the cities, resolved to rows when the snapshot is built
+        private final StringPool cityCountryCodes = new StringPool();
+        private int[] cityCountryCode = new int[4096];
+
+        private final ArrayList<String> languageCountryCodes = new ArrayList<>();
+        private final ArrayList<String> languages = new ArrayList<>();
+        private boolean[] officials = new boolean[1024];
+        private double[] percentages = new double[1024];
+
+        /**
+         * Adds a row of the country table.
+         *
+         * @param capital the ID of the capital city, or 0 if the country has none
+         */
+        public Builder addCountry(String code, String name, String continent, String region,
+                                  int population, int capital) {
+            countryRows.put(code, countries.add(code, name, continent, region, population, capital));
+            return this;
+        }
+
+        /**
+         * Adds a row of the city table.
+         */
+        public Builder addCity(int id, String name, String countryCode, String district, int population) {
+            int row = cities.add(id, name, -1, district, population);
+            if (row == cityCountryCode.length) {
+                cityCountryCode = Arrays.copyOf(cityCountryCode, row * 2);
+            }
+            cityCountryCode[row] = cityCountryCodes.add(countryCode);
+            return this;
+        }
+
+        /**
+         * Adds a row of the countrylanguage table.
+         */
+        public Builder addLanguage(String countryCode, String language, boolean official, double percentage) {
+            int row = languages.size();
+            if (row == officials.length) {
+                officials = Arrays.copyOf(officials, row * 2);
+                percentages = Arrays.copyOf(percentages, row * 2);
+            }
+            languageCountryCodes.add(countryCode);
+            languages.add(language);
+            officials[row] = official;
+            percentages[row] = percentage;
+            return this;
+        }
+
+        /**
+         * Builds the snapshot; no rows can be added afterwards.
+         *
+         * @return A snapshot of every row added.
+         */
+        public WorldSnapshot build() {
+            int[] rowOfCode = new int[cityCountryCodes.size()];
+            for (int code = 0; code < rowOfCode.length; code++) {
+                rowOfCode[code] = countryRow(cityCountryCodes.get(code));
+            }
+            for (int row = 0; row < cities.size(); row++) {
+                cities.country[row] = rowOfCode[cityCountryCode[row]];
+            }
+            countries.trim();
+            cities.trim();
+            int rows = languages.size();
+            int[] languageCountry = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                languageCountry[i] = countryRow(languageCountryCodes.get(i));
+            }
+            return new WorldSnapshot(countries, cities, languageCountry, languages.toArray(new String[0]),
+                    Arrays.copyOf(officials, rows), Arrays.copyOf(percentages, rows));
+        }
+
+        // Rows referencing an unknown country code are kept but match no country filter
+        private int countryRow(String code) {
+            Integer row = countryRows.get(code);
+            return row == null ? -1 : row;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.napier.devops;
+
+import com.napier.sem.BitmapIndex;
+import com.napier.sem.CapitalCityReport;
+import com.napier.sem.City;
+import com.napier.sem.RowBitmap;
+import com.napier.sem.Scope;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link BitmapIndex} and {@link RowBitmap}.
+ */
+class BitmapIndexTest {
+
+    private WorldSnapshot snapshot;
+    private BitmapIndex index;
+
+    /**
+     * Builds a world of four countries, two of them with Spanish as an official language.
+     */
+    @BeforeEach
+    void setUp() {
+        snapshot = new WorldSnapshot.Builder()
+                .addCountry("ESP", "Spain", "Europe", "Southern Europe", 39441700, 653)
+                .addCountry("FRA", "France", "Europe", "Western Europe", 59225700, 2974)
+                .addCountry("MEX", "Mexico", "North America", "Central America", 98881000, 2515)
+                .addCountry("AND", "Andorra", "Europe", "Southern Europe", 78000, 55)
+                .addCity(653, "Madrid", "ESP", "Madrid", 2879052)
+                .addCity(654, "Barcelona", "ESP", "Katalonia", 1503451)
+                .addCity(2974, "Paris", "FRA", "Île-de-France", 2125246)
+                .addCity(2515, "Ciudad de México", "MEX", "Distrito Federal", 8591309)
+                .addCity(55, "Andorra la Vella", "AND", "Andorra la Vella", 21189)
+                .addCity(9999, "Nowhere", "XXX", "Madrid", 5)
+                .addLanguage("ESP", "Spanish", true, 74.4)
+                .addLanguage("FRA", "French", true, 93.6)
+                .addLanguage("FRA", "Spanish", false, 0.4)
+                .addLanguage("MEX", "Spanish", true, 92.1)
+                .addLanguage("AND", "Catalan", true, 32.3)
+                .addLanguage("AND", "Spanish", false, 44.6)
+                .build();
+        index = new BitmapIndex(snapshot);
+    }
+
+    /**
+     * Tests AND, OR and AND NOT over rows spread across several words.
+     */
+    @Test
+    void testRowBitmapOperations() {
+        RowBitmap a = RowBitmap.of(1, 64, 65, 1000, 5000, 1000);
+        RowBitmap b = RowBitmap.of(5000, 2, 65, 130);
+
+        assertEquals(5, a.cardinality());
+        assertEquals(4, a.wordCount());
+        assertArrayEquals(new int[]{65, 5000}, a.and(b).rows());
+        assertArrayEquals(new int[]{1, 2, 64, 65, 130, 1000, 5000}, a.or(b).rows());
+        assertArrayEquals(new int[]{1, 64, 1000}, a.andNot(b).rows());
+        assertTrue(a.contains(1000));
+        assertFalse(a.contains(999));
+        assertFalse(a.contains(-1));
+        assertTrue(a.and(RowBitmap.of(2, 3)).isEmpty());
+        assertEquals(RowBitmap.EMPTY, RowBitmap.of(7).andNot(RowBitmap.of(7)));
+        assertEquals(a, RowBitmap.of(5000, 1000, 65, 64, 1));
+    }
+
+    /**
+     * Tests area bitmaps, which match names ignoring case and leave out cities of unknown countries.
+     */
+    @Test
+    void testAreaBitmaps() {
+        assertEquals(4, index.cities(Scope.CONTINENT, "europe").cardinality());
+        assertEquals(3, index.cities(Scope.REGION, "Southern Europe").cardinality());
+        assertEquals(2, index.cities(Scope.COUNTRY, "Spain").cardinality());
+        assertEquals(1, index.cities(Scope.DISTRICT, "MADRID").cardinality());
+        assertEquals(5, index.cities(Scope.WORLD, null).cardinality());
+        assertTrue(index.cities(Scope.CONTINENT, "Atlantis").isEmpty());
+    }
+
+    /**
+     * Tests a compound filter of capital cities in Europe whose country has Spanish as an official language.
+     */
+    @Test
+    void testCompoundFilter() {
+        RowBitmap rows = index.capitals()
+                .and(index.cities(Scope.CONTINENT, "Europe"))
+                .and(index.officialLanguage("spanish"));
+        ArrayList<City> cities = index.select(rows, 10);
+
+        assertEquals(1, cities.size());
+        assertEquals("Madrid", cities.get(0).Name);
+        assertTrue(cities.get(0).isCapital);
+
+        ArrayList<City> spanish = index.select(index.officialLanguage("Spanish"), 2);
+        assertEquals("Ciudad de México", spanish.get(0).Name);
+        assertEquals("Madrid", spanish.get(1).Name);
+        assertTrue(index.officialLanguage("Klingon").isEmpty());
+    }
+
+    /**
+     * Tests that snapshot cities report whether they are a capital.
+     */
+    @Test
+    void testIsCapitalIsSet() {
+        ArrayList<City> cities = snapshot.cities(Scope.COUNTRY, "Spain", 10);
+
+        assertTrue(cities.get(0).isCapital);
+        assertFalse(cities.get(1).isCapital);
+        assertTrue(snapshot.capitalCities(Scope.WORLD, null, 1).get(0).isCapital);
+    }
+
+    /**
+     * Tests that CapitalCityReport answers the compound filter from its snapshot.
+     */
+    @Test
+    void testCapitalCityReportUsesBitmaps() {
+        CapitalCityReport report = new CapitalCityReport(null, snapshot);
+
+        ArrayList<City> cities = report.getCapitalCitiesByContinentAndOfficialLanguage("Europe", "Catalan");
+        assertEquals(1, cities.size());
+        assertEquals("Andorra la Vella", cities.get(0).Name);
+        assertTrue(report.getCapitalCitiesByContinentAndOfficialLanguage("Asia", "Spanish").isEmpty());
+    }
+}
@@ -11,6 +11,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,6 +26,11 @@ import static org.mockito.Mockito.*;
 
 class CapitalCityReportTest {
 
+    /**
+     * The columns of the mocked result set, in order.
+     */
+    private static final List<String> COLUMNS = List.of("CapitalCity", "Country", "Population");
+
     private Connection mockConnection;
     private PreparedStatement mockPreparedStatement;
     private ResultSet mockResultSet;
@@ -48,6 +54,10 @@ class CapitalCityReportTest {
 
         when(mockConnection.prepareStatement(any(String.class))).thenReturn(mockPreparedStatement);
         when(mockPreparedStatement.executeQuery()).thenReturn(mockResultSet);
+        // Report queries look their columns up once, then read every row by index
+        for (String label : COLUMNS) {
+            when(mockResultSet.findColumn(label)).thenReturn(column(label));
+        }
 
         report = new CapitalCityReport(mockConnection);
     }
@@ -60,9 +70,9 @@ class CapitalCityReportTest {
     @Test
     void testGetAllCapitalCities_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CapitalCity")).thenReturn("Tokyo");
-        when(mockResultSet.getString("Country")).thenReturn("Japan");
-        when(mockResultSet.getInt("Population")).thenReturn(13929286);
+        when(mockResultSet.getString(column("CapitalCity"))).thenReturn("Tokyo");
+        when(mockResultSet.getString(column("Country"))).thenReturn("Japan");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(13929286);
 
         ArrayList<City> cities = report.getAllCapitalCities();
 
@@ -100,9 +110,9 @@ class CapitalCityReportTest {
     @Test
     void testGetCapitalCitiesByContinent_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CapitalCity")).thenReturn("Beijing");
-        when(mockResultSet.getString("Country")).thenReturn("China");
-        when(mockResultSet.getInt("Population")).thenReturn(69000);
+        when(mockResultSet.getString(column("CapitalCity"))).thenReturn("Beijing");
+        when(mockResultSet.getString(column("Country"))).thenReturn("China");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(69000);
 
         ArrayList<City> cities = report.getCapitalCitiesByContinent("Asia");
 
@@ -160,9 +170,9 @@ class CapitalCityReportTest {
     @Test
     void testGetCapitalCitiesByRegion_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CapitalCity")).thenReturn("Berlin");
-        when(mockResultSet.getString("Country")).thenReturn("Germany");
-        when(mockResultSet.getInt("Population")).thenReturn(3769000);
+        when(mockResultSet.getString(column("CapitalCity"))).thenReturn("Berlin");
+        when(mockResultSet.getString(column("Country"))).thenReturn("Germany");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(3769000);
 
         ArrayList<City> cities = report.getCapitalCitiesByRegion("Western Europe");
 
@@ -210,6 +220,28 @@ class CapitalCityReportTest {
         assertEquals(0, cities.size()); // should be empty
         verify(mockPreparedStatement).setString(1, null); // parameter should still be set
     }
+
+    /**
+     * Verifies that capital cities filtered by continent and official language bind both
+     * parameters and are marked as capitals.
+     *
+     * @throws Exception if a database error occurs during the test
+     */
+    @Test
+    void testGetCapitalCitiesByContinentAndOfficialLanguage_Valid() throws Exception {
+        when(mockResultSet.next()).thenReturn(true, false);
+        when(mockResultSet.getString(column("CapitalCity"))).thenReturn("Madrid");
+        when(mockResultSet.getString(column("Country"))).thenReturn("Spain");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(2879052);
+
+        ArrayList<City> cities = report.getCapitalCitiesByContinentAndOfficialLanguage("Europe", "Spanish");
+
+        assertEquals(1, cities.size());
+        assertEquals("Madrid", cities.get(0).Name);
+        assertTrue(cities.get(0).isCapital);
+        verify(mockPreparedStatement).setString(1, "Europe");
+        verify(mockPreparedStatement).setString(2, "Spanish");
+    }
     /** Test printCapitalCities handles null correctly */
     @Test
     void testPrintCapitalCities_Null() {
@@ -252,9 +284,9 @@ class CapitalCityReportTest {
     @Test
     void testGetTopNCapitalCities_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CapitalCity")).thenReturn("Tokyo");
-        when(mockResultSet.getString("Country")).thenReturn("Japan");
-        when(mockResultSet.getInt("Population")).thenReturn(13929286);
+        when(mockResultSet.getString(column("CapitalCity"))).thenReturn("Tokyo");
+        when(mockResultSet.getString(column("Country"))).thenReturn("Japan");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(13929286);
 
         ArrayList<City> cities = report.getTopNCapitalCities(1);
 
@@ -308,9 +340,9 @@ class CapitalCityReportTest {
     @Test
     void testGetTopNCapitalCitiesByContinent_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CapitalCity")).thenReturn("Beijing");
-        when(mockResultSet.getString("Country")).thenReturn("China");
-        when(mockResultSet.getInt("Population")).thenReturn(21540000);
+        when(mockResultSet.getString(column("CapitalCity"))).thenReturn("Beijing");
+        when(mockResultSet.getString(column("Country"))).thenReturn("China");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(21540000);
 
         ArrayList<City> cities = report.getTopNCapitalCitiesByContinent("Asia", 1);
 
@@ -365,9 +397,9 @@ class CapitalCityReportTest {
     @Test
     void testGetTopNCapitalCitiesByRegion_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CapitalCity")).thenReturn("Berlin");
-        when(mockResultSet.getString("Country")).thenReturn("Germany");
-        when(mockResultSet.getInt("Population")).thenReturn(3645000);
+        when(mockResultSet.getString(column("CapitalCity"))).thenReturn("Berlin");
+        when(mockResultSet.getString(column("Country"))).thenReturn("Germany");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(3645000);
 
         ArrayList<City> cities = report.getTopNCapitalCitiesByRegion("Western Europe", 1);
 
@@ -432,20 +464,7 @@ class CapitalCityReportTest {
         assertNull(cities);
     }
 
-
-
-
-
-
-
-
-
-
-
-
+    private static int column(String label) {
+        return COLUMNS.indexOf(label) + 1;
+    }
 }
-
-
-
-
-
@@ -0,0 +1,107 @@
+package com.napier.devops;
+
+import com.napier.sem.City;
+import com.napier.sem.CityRanking;
+import com.napier.sem.CityReport;
+import com.napier.sem.Scope;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CityRanking}.
+ */
+class CityRankingTest {
+
+    private WorldSnapshot snapshot;
+    private CityRanking ranking;
+
+    /**
+     * Builds a world of three countries and seven cities, two of them in a district
+     * name shared by two countries.
+     */
+    @BeforeEach
+    void setUp() {
+        snapshot = new WorldSnapshot.Builder()
+                .addCountry("GBR", "United Kingdom", "Europe", "British Islands", 59623400, 456)
+                .addCountry("FRA", "France", "Europe", "Western Europe", 59225700, 2974)
+                .addCountry("JPN", "Japan", "Asia", "Eastern Asia", 126714000, 1532)
+                .addCity(456, "London", "GBR", "England", 7285000)
+                .addCity(457, "Birmingham", "GBR", "England", 1013000)
+                .addCity(459, "Glasgow", "GBR", "Scotland", 619680)
+                .addCity(2974, "Paris", "FRA", "Île-de-France", 2125246)
+                .addCity(1532, "Tokyo", "JPN", "Tokyo-to", 7980230)
+                .addCity(1533, "Jokohama [Yokohama]", "JPN", "Kanagawa", 3339594)
+                .addCity(1600, "Newcastle", "JPN", "england", 1013000)
+                .build();
+        ranking = new CityRanking(snapshot);
+    }
+
+    /**
+     * Tests ranks at every level, with ties ordered as the reports order them.
+     */
+    @Test
+    void testRankOf() {
+        assertEquals(5, ranking.rankOf(457, Scope.WORLD));
+        assertEquals(6, ranking.rankOf(1600, Scope.WORLD));
+        assertEquals(3, ranking.rankOf(457, Scope.CONTINENT));
+        assertEquals(2, ranking.rankOf(457, Scope.REGION));
+        assertEquals(2, ranking.rankOf(457, Scope.COUNTRY));
+        assertEquals(2, ranking.rankOf(457, Scope.DISTRICT));
+        assertEquals(3, ranking.rankOf(1600, Scope.DISTRICT));
+        assertEquals(-1, ranking.rankOf(1, Scope.WORLD));
+    }
+
+    /**
+     * Tests that cityAtRank is the inverse of rankOf and reports the city ID.
+     */
+    @Test
+    void testCityAtRank() {
+        City city = ranking.cityAtRank(Scope.CONTINENT, "europe", 2);
+        assertEquals("Paris", city.Name);
+        assertEquals(2974, city.ID);
+
+        for (Scope scope : List.of(Scope.WORLD, Scope.CONTINENT, Scope.COUNTRY, Scope.DISTRICT)) {
+            assertEquals(ranking.rankOf(1600, scope),
+                    rankOfName(scope, scope == Scope.WORLD ? null : key(scope), "Newcastle"));
+        }
+        assertNull(ranking.cityAtRank(Scope.COUNTRY, "Japan", 4));
+        assertNull(ranking.cityAtRank(Scope.REGION, "Atlantis", 1));
+        assertEquals(3, ranking.size(Scope.DISTRICT, "ENGLAND"));
+    }
+
+    /**
+     * Tests that CityReport answers rank queries from its snapshot.
+     */
+    @Test
+    void testCityReportUsesRanking() {
+        CityReport report = new CityReport(null, snapshot);
+
+        assertEquals(1, report.rankOf(1532, Scope.WORLD));
+        assertEquals("London", report.cityAtRank(Scope.WORLD, null, 2).Name);
+    }
+
+    private static String key(Scope scope) {
+        switch (scope) {
+            case CONTINENT:
+                return "Asia";
+            case COUNTRY:
+                return "Japan";
+            default:
+                return "England";
+        }
+    }
+
+    private int rankOfName(Scope scope, String key, String name) {
+        for (int k = 1; k <= ranking.size(scope, key); k++) {
+            if (ranking.cityAtRank(scope, key, k).Name.equals(name)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+}
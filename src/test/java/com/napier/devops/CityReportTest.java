@@ -3,14 +3,22 @@ package com.napier.devops;
 import com.napier.sem.City;
 import com.napier.sem.CityReport;
 import com.napier.sem.App;
+import com.napier.sem.Page;
+import com.napier.sem.Scope;
+import com.napier.sem.WorldSnapshot;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -24,6 +32,11 @@ import static org.mockito.Mockito.*;
  */
 class CityReportTest {
 
+    /**
+     * The columns of the mocked result set, in order.
+     */
+    private static final List<String> COLUMNS = List.of("CityName", "Country", "District", "Population", "CapitalCity", "GroupKey", "ID");
+
     private Connection mockConnection;
     private PreparedStatement mockPreparedStatement;
     private ResultSet mockResultSet;
@@ -45,6 +58,10 @@ class CityReportTest {
 
         when(mockConnection.prepareStatement(any(String.class))).thenReturn(mockPreparedStatement);
         when(mockPreparedStatement.executeQuery()).thenReturn(mockResultSet);
+        // Report queries look their columns up once, then read every row by index
+        for (String label : COLUMNS) {
+            when(mockResultSet.findColumn(label)).thenReturn(column(label));
+        }
 
         report = new CityReport(mockConnection);
     }
@@ -60,10 +77,10 @@ class CityReportTest {
     @Test
     void testPrintAllCities_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CityName")).thenReturn("Tokyo");
-        when(mockResultSet.getString("Country")).thenReturn("Japan");
-        when(mockResultSet.getString("District")).thenReturn("Tokyo-to");
-        when(mockResultSet.getInt("Population")).thenReturn(13929286);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Tokyo");
+        when(mockResultSet.getString(column("Country"))).thenReturn("Japan");
+        when(mockResultSet.getString(column("District"))).thenReturn("Tokyo-to");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(13929286);
 
         ArrayList<City> cities = report.printAllCities();
 
@@ -75,6 +92,28 @@ class CityReportTest {
         assertEquals(13929286, cities.get(0).Population);
     }
 
+    /**
+     * Verifies that the columns of a query are looked up once, and every row is read by index.
+     *
+     * @throws Exception if SQL operations fail
+     */
+    @Test
+    void testColumnsAreLookedUpOncePerQuery() throws Exception {
+        when(mockResultSet.next()).thenReturn(true, true, true, false);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Tokyo", "Jakarta", "Karachi");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(7980230, 9604900, 9269265);
+
+        ArrayList<City> cities = report.getTopNCitiesInWorld(3);
+
+        assertEquals(3, cities.size());
+        assertEquals("Karachi", cities.get(2).Name);
+        assertEquals(9604900, cities.get(1).Population);
+        verify(mockPreparedStatement).setInt(1, 3);
+        verify(mockResultSet, times(1)).findColumn("CityName");
+        verify(mockResultSet, times(1)).findColumn("Population");
+        verify(mockResultSet, never()).getString("CityName");
+    }
+
     /**
      * Verifies that {@link CityReport#printAllCities()} handles SQL exceptions
      * correctly and returns null when an error occurs.
@@ -102,10 +141,10 @@ class CityReportTest {
     @Test
     void testPrintCitiesByContinent_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CityName")).thenReturn("Cairo");
-        when(mockResultSet.getString("Country")).thenReturn("Egypt");
-        when(mockResultSet.getString("District")).thenReturn("Cairo");
-        when(mockResultSet.getInt("Population")).thenReturn(9500000);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Cairo");
+        when(mockResultSet.getString(column("Country"))).thenReturn("Egypt");
+        when(mockResultSet.getString(column("District"))).thenReturn("Cairo");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(9500000);
 
         ArrayList<City> cities = report.printCitiesByContinent("Africa");
 
@@ -163,10 +202,10 @@ class CityReportTest {
     @Test
     void testPrintCitiesByRegion_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CityName")).thenReturn("Berlin");
-        when(mockResultSet.getString("Country")).thenReturn("Germany");
-        when(mockResultSet.getString("District")).thenReturn("Berlin");
-        when(mockResultSet.getInt("Population")).thenReturn(3769000);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Berlin");
+        when(mockResultSet.getString(column("Country"))).thenReturn("Germany");
+        when(mockResultSet.getString(column("District"))).thenReturn("Berlin");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(3769000);
 
         ArrayList<City> cities = report.printCitiesByRegion("Western Europe");
 
@@ -224,10 +263,10 @@ class CityReportTest {
     @Test
     void testPrintCitiesByDistrict_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CityName")).thenReturn("Manchester");
-        when(mockResultSet.getString("Country")).thenReturn("United Kingdom");
-        when(mockResultSet.getString("District")).thenReturn("England");
-        when(mockResultSet.getInt("Population")).thenReturn(553230);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Manchester");
+        when(mockResultSet.getString(column("Country"))).thenReturn("United Kingdom");
+        when(mockResultSet.getString(column("District"))).thenReturn("England");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(553230);
 
         ArrayList<City> cities = report.printCitiesByDistrict("England");
 
@@ -330,9 +369,9 @@ class CityReportTest {
     void testGetTopNCities_Valid() throws Exception {
         // Mock 1 row
         when(mockResultSet.next()).thenReturn(true, false); // only one city
-        when(mockResultSet.getString("CityName")).thenReturn("Tokyo"); // match query column
-        when(mockResultSet.getString("Country")).thenReturn("Japan");
-        when(mockResultSet.getInt("Population")).thenReturn(13929286);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Tokyo"); // match query column
+        when(mockResultSet.getString(column("Country"))).thenReturn("Japan");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(13929286);
 
         ArrayList<City> cities = report.getTopNCitiesInWorld(1);
 
@@ -388,9 +427,9 @@ class CityReportTest {
     @Test
     void testGetTopNCitiesByContinent_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CapitalCity")).thenReturn("Beijing");
-        when(mockResultSet.getString("Country")).thenReturn("China");
-        when(mockResultSet.getInt("Population")).thenReturn(21540000);
+        when(mockResultSet.getString(column("CapitalCity"))).thenReturn("Beijing");
+        when(mockResultSet.getString(column("Country"))).thenReturn("China");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(21540000);
 
         ArrayList<City> cities = report.getTopNCitiesByContinent("Asia", 1);
 
@@ -445,9 +484,9 @@ class CityReportTest {
     @Test
     void testGetTopNCitiesByRegion_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("CapitalCity")).thenReturn("Berlin");
-        when(mockResultSet.getString("Country")).thenReturn("Germany");
-        when(mockResultSet.getInt("Population")).thenReturn(3645000);
+        when(mockResultSet.getString(column("CapitalCity"))).thenReturn("Berlin");
+        when(mockResultSet.getString(column("Country"))).thenReturn("Germany");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(3645000);
 
         ArrayList<City> cities = report.getTopNCitiesByRegion("Western Europe", 1);
 
@@ -522,10 +561,10 @@ class CityReportTest {
     void testGetTopNCitiesByDistrict_ValidTwoCities() throws Exception {
         // Mock 2 cities in the "Greater London" district
         when(mockResultSet.next()).thenReturn(true, true, false); // two cities
-        when(mockResultSet.getString("CityName")).thenReturn("London", "Croydon");
-        when(mockResultSet.getString("Country")).thenReturn("United Kingdom", "United Kingdom");
-        when(mockResultSet.getString("District")).thenReturn("Greater London", "Greater London");
-        when(mockResultSet.getInt("Population")).thenReturn(8982000, 385000);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("London", "Croydon");
+        when(mockResultSet.getString(column("Country"))).thenReturn("United Kingdom", "United Kingdom");
+        when(mockResultSet.getString(column("District"))).thenReturn("Greater London", "Greater London");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(8982000, 385000);
 
         ArrayList<City> cities = report.getTopNCitiesByDistrict("Greater London", 2);
 
@@ -591,5 +630,173 @@ class CityReportTest {
 
         assertNull(cities);
     }
-}
 
+    /**
+     * Tests that a page fetches one row more than it shows, and that the next page seeks past
+     * the cursor on population and ID rather than skipping rows, even for a cursor from a snapshot.
+     *
+     * @throws Exception if mocking fails
+     */
+    @Test
+    void testCitiesPage_SeeksPastCursor() throws Exception {
+        when(mockResultSet.next()).thenReturn(true, true, true, false);
+        when(mockResultSet.getInt(column("ID"))).thenReturn(1532, 1890, 1024);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Tokyo", "Shanghai", "Mumbai (Bombay)");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(7980230, 9696300, 10500000);
+
+        Page<City> page = report.citiesPage(Scope.CONTINENT, "Asia", null, 2);
+
+        assertEquals(2, page.Items.size());
+        assertNotNull(page.Next);
+        verify(mockPreparedStatement).setString(1, "Asia");
+        verify(mockPreparedStatement).setInt(2, 3);
+
+        WorldSnapshot snapshot = new WorldSnapshot.Builder()
+                .addCountry("JPN", "Japan", "Asia", "Eastern Asia", 126714000, 1532)
+                .addCity(1532, "Tokyo", "JPN", "Tokyo-to", 7980230)
+                .addCity(1533, "Jokohama [Yokohama]", "JPN", "Kanagawa", 3339594)
+                .build();
+        String cursor = new CityReport(null, snapshot).citiesPage(Scope.CONTINENT, "Asia", null, 1).Next;
+        reset(mockPreparedStatement);
+        when(mockPreparedStatement.executeQuery()).thenReturn(mockResultSet);
+        when(mockResultSet.next()).thenReturn(false);
+
+        assertTrue(report.citiesPage(Scope.CONTINENT, "Asia", cursor, 2).Items.isEmpty());
+        verify(mockConnection).prepareStatement(contains("(city.Population < ? OR (city.Population = ? AND city.ID > ?))"));
+        verify(mockPreparedStatement).setString(1, "Asia");
+        verify(mockPreparedStatement, times(2)).setInt(anyInt(), eq(7980230));
+        verify(mockPreparedStatement).setInt(4, 1532);
+        verify(mockPreparedStatement).setInt(5, 3);
+    }
+
+    /**
+     * Tests that getTopNCitiesPerContinent groups the rows of one ranked query by continent,
+     * and keeps an empty list for a requested continent without cities.
+     *
+     * @throws Exception if mocking fails
+     */
+    @Test
+    void testGetTopNCitiesPerContinent_Valid() throws Exception {
+        when(mockResultSet.next()).thenReturn(true, true, true, false);
+        when(mockResultSet.getString(column("GroupKey"))).thenReturn("Asia", "Asia", "Europe");
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Mumbai (Bombay)", "Seoul", "Moscow");
+        when(mockResultSet.getString(column("Country"))).thenReturn("India", "South Korea", "Russian Federation");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(10500000, 9981619, 8389200);
+
+        Map<String, List<City>> cities = report.getTopNCitiesPerContinent(List.of("Asia", "Europe", "Antarctica"), 2);
+
+        assertNotNull(cities);
+        assertEquals(3, cities.size());
+        assertEquals(2, cities.get("asia").size());
+        assertEquals("Seoul", cities.get("Asia").get(1).Name);
+        assertEquals("Moscow", cities.get("Europe").get(0).Name);
+        assertTrue(cities.get("Antarctica").isEmpty());
+        verify(mockConnection, times(1)).prepareStatement(anyString());
+        verify(mockPreparedStatement).setString(3, "Antarctica");
+        verify(mockPreparedStatement).setInt(4, 2);
+    }
+
+    /**
+     * Tests that getTopNCitiesPerRegion returns null when the query fails.
+     *
+     * @throws Exception if mocking fails
+     */
+    @Test
+    void testGetTopNCitiesPerRegion_Exception() throws Exception {
+        when(mockConnection.prepareStatement(any(String.class)))
+                .thenThrow(new SQLException("DB error"));
+
+        assertNull(report.getTopNCitiesPerRegion(null, 3));
+    }
+
+    /**
+     * Tests that streaming a report prints and writes exactly what printCities
+     * and outputCapitalCities produce for the same rows.
+     *
+     * @throws Exception if mocking fails
+     */
+    @Test
+    void testStreamCities_MatchesListOutput() throws Exception {
+        when(mockConnection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(mockPreparedStatement);
+        String filename = "StreamedCitiesTest.md";
+        java.io.File file = new java.io.File("./reports/" + filename);
+
+        stubTwoCities();
+        ByteArrayOutputStream listed = new ByteArrayOutputStream();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(listed));
+        try {
+            ArrayList<City> cities = report.printCitiesByContinent("Asia");
+            report.printCities(cities);
+            report.outputCapitalCities(cities, filename);
+        } finally {
+            System.setOut(console);
+        }
+        byte[] listedFile = Files.readAllBytes(file.toPath());
+
+        stubTwoCities();
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(streamed));
+        long rows;
+        try {
+            rows = report.streamCities(Scope.CONTINENT, "Asia", 500, filename);
+        } finally {
+            System.setOut(console);
+        }
+        byte[] streamedFile = Files.readAllBytes(file.toPath());
+        file.delete();
+
+        assertEquals(2, rows);
+        assertEquals(listed.toString(), streamed.toString());
+        assertArrayEquals(listedFile, streamedFile);
+        verify(mockPreparedStatement).setFetchSize(500);
+    }
+
+    /**
+     * Tests that rankOf reads the rank of the city from a ranked query.
+     *
+     * @throws Exception if mocking fails
+     */
+    @Test
+    void testRankOf_Sql() throws Exception {
+        when(mockResultSet.next()).thenReturn(true);
+        when(mockResultSet.getInt("CityRank")).thenReturn(3);
+
+        assertEquals(3, report.rankOf(1024, Scope.REGION));
+        verify(mockPreparedStatement).setInt(1, 1024);
+        verify(mockConnection).prepareStatement(contains("PARTITION BY country.Region"));
+    }
+
+    /**
+     * Tests that cityAtRank binds the area and offset and maps the city with its ID.
+     *
+     * @throws Exception if mocking fails
+     */
+    @Test
+    void testCityAtRank_Sql() throws Exception {
+        when(mockResultSet.next()).thenReturn(true);
+        when(mockResultSet.getInt(column("ID"))).thenReturn(1024);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Mumbai (Bombay)");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(10500000);
+
+        City city = report.cityAtRank(Scope.DISTRICT, "Maharashtra", 1);
+
+        assertEquals(1024, city.ID);
+        assertEquals("Mumbai (Bombay)", city.Name);
+        verify(mockPreparedStatement).setString(1, "Maharashtra");
+        verify(mockPreparedStatement).setInt(2, 0);
+        assertNull(report.cityAtRank(Scope.WORLD, null, 0));
+    }
+
+    private void stubTwoCities() throws SQLException {
+        when(mockResultSet.next()).thenReturn(true, true, false);
+        when(mockResultSet.getString(column("CityName"))).thenReturn("Mumbai (Bombay)", "Seoul");
+        when(mockResultSet.getString(column("Country"))).thenReturn("India", "South Korea");
+        when(mockResultSet.getString(column("District"))).thenReturn("Maharashtra", "Seoul");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(10500000, 9981619);
+    }
+
+    private static int column(String label) {
+        return COLUMNS.indexOf(label) + 1;
+    }
+}
@@ -0,0 +1,115 @@
+package com.napier.devops;
+
+import com.napier.sem.City;
+import com.napier.sem.CityTable;
+import com.napier.sem.Country;
+import com.napier.sem.CountryTable;
+import com.napier.sem.Scope;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CityTable} and {@link CountryTable}, built through a {@link WorldSnapshot}.
+ */
+class CityTableTest {
+
+    private WorldSnapshot snapshot;
+
+    /**
+     * Builds a world of two countries and four cities, two of them sharing a district.
+     */
+    @BeforeEach
+    void setUp() {
+        snapshot = new WorldSnapshot.Builder()
+                .addCity(2974, "Paris", "FRA", "Île-de-France", 2125246)
+                .addCity(456, "London", "GBR", "England", 7285000)
+                .addCity(457, "Birmingham", "GBR", "England", 1013000)
+                .addCity(9999, "Nowhere", "XXX", "Nowhere", 10)
+                .addCountry("GBR", "United Kingdom", "Europe", "British Islands", 59623400, 456)
+                .addCountry("FRA", "France", "Europe", "Western Europe", 59225700, 2974)
+                .build();
+    }
+
+    /**
+     * Tests that columns decode to the strings added, with countries resolved after cities.
+     */
+    @Test
+    void testColumns() {
+        CityTable cities = snapshot.cityTable();
+        CountryTable countries = snapshot.countryTable();
+
+        assertEquals(4, cities.size());
+        assertEquals(2, countries.size());
+        assertEquals("Île-de-France", cities.district(0));
+        assertEquals("France", countries.name(cities.country(0)));
+        assertEquals("United Kingdom", countries.name(cities.country(2)));
+        assertEquals(-1, cities.country(3));
+        assertEquals(1013000, cities.population(2));
+        assertEquals(457, cities.id(2));
+        assertEquals("Europe", countries.continent(1));
+        assertEquals(456, countries.capital(0));
+    }
+
+    /**
+     * Tests that City and Country objects are created as the reports map them.
+     */
+    @Test
+    void testRowsAsObjects() {
+        City london = snapshot.cityTable().city(1);
+        assertEquals(456, london.ID);
+        assertEquals("London", london.Name);
+        assertEquals("United Kingdom", london.Country);
+        assertEquals("England", london.District);
+
+        Country france = snapshot.countryTable().country(1);
+        assertEquals("FRA", france.Code);
+        assertEquals("Western Europe", france.Region);
+        assertEquals("2974", france.Capital);
+    }
+
+    /**
+     * Tests that a view creates objects only when read, in the order of the rows given.
+     */
+    @Test
+    void testView() {
+        List<City> view = snapshot.cityTable().view(new int[]{2, 1});
+
+        assertEquals(2, view.size());
+        assertEquals("Birmingham", view.get(0).Name);
+        assertEquals("London", view.get(1).Name);
+        assertNotSame(view.get(0), view.get(0));
+        assertThrows(UnsupportedOperationException.class, () -> view.add(new City()));
+    }
+
+    /**
+     * Tests that filters match pooled strings ignoring case and skip cities of unknown countries.
+     */
+    @Test
+    void testFiltersIgnoreCase() {
+        assertEquals(2, snapshot.cities(Scope.DISTRICT, "ENGLAND", Integer.MAX_VALUE).size());
+        assertEquals(1, snapshot.cities(Scope.DISTRICT, "île-de-france", Integer.MAX_VALUE).size());
+        assertEquals(3, snapshot.cities(Scope.WORLD, null, Integer.MAX_VALUE).size());
+        assertTrue(snapshot.cities(Scope.DISTRICT, "Nowhere", Integer.MAX_VALUE).isEmpty());
+    }
+
+    /**
+     * Tests that repeated strings are stored once.
+     */
+    @Test
+    void testStringsStoredOnce() {
+        CityTable cities = snapshot.cityTable();
+        long withOneMoreDistrict = new WorldSnapshot.Builder()
+                .addCity(2974, "Paris", "FRA", "Île-de-France", 2125246)
+                .addCity(456, "London", "GBR", "England", 7285000)
+                .addCity(457, "Birmingham", "GBR", "Midlands", 1013000)
+                .addCity(9999, "Nowhere", "XXX", "Nowhere", 10)
+                .build().cityTable().byteSize();
+
+        assertTrue(cities.byteSize() < withOneMoreDistrict);
+    }
+}
@@ -0,0 +1,120 @@
+package com.napier.devops;
+
+import com.napier.sem.ConnectionPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link ConnectionPool}.
+ * <p>
+ * Physical connections are Mockito mocks so the pool can be tested without a database.
+ */
+class ConnectionPoolTest {
+
+    private List<Connection> opened;
+    private ConnectionPool pool;
+
+    /**
+     * Creates a pool of two connections that records every connection it opens.
+     */
+    @BeforeEach
+    void setUp() {
+        opened = new ArrayList<>();
+        pool = new ConnectionPool("jdbc:test", "user", "password", 2, 0) {
+            @Override
+            protected Connection openConnection() throws SQLException {
+                Connection con = mock(Connection.class);
+                when(con.isValid(anyInt())).thenReturn(true);
+                when(con.getAutoCommit()).thenReturn(true);
+                opened.add(con);
+                return con;
+            }
+        };
+        pool.setBorrowTimeout(50);
+    }
+
+    /**
+     * Tests that a returned connection is reused rather than a new one opened.
+     */
+    @Test
+    void testConnectionIsReused() throws Exception {
+        Connection first = pool.getConnection();
+        first.close();
+        Connection second = pool.getConnection();
+        second.close();
+
+        assertEquals(1, opened.size());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+        verify(opened.get(0), never()).close();
+    }
+
+    /**
+     * Tests that the pool never opens more than its maximum size.
+     */
+    @Test
+    void testPoolIsBounded() throws Exception {
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+
+        assertThrows(SQLException.class, () -> pool.getConnection());
+        assertEquals(2, opened.size());
+
+        a.close();
+        Connection c = pool.getConnection();
+        assertNotNull(c);
+        assertEquals(2, opened.size());
+        b.close();
+        c.close();
+    }
+
+    /**
+     * Tests that a connection failing validation is closed and replaced.
+     */
+    @Test
+    void testInvalidConnectionIsReplaced() throws Exception {
+        Connection first = pool.getConnection();
+        first.close();
+        when(opened.get(0).isValid(anyInt())).thenReturn(false);
+
+        Connection second = pool.getConnection();
+
+        assertEquals(2, opened.size());
+        verify(opened.get(0)).close();
+        second.close();
+    }
+
+    /**
+     * Tests that a handle cannot be used after it has been returned.
+     */
+    @Test
+    void testClosedHandleIsRejected() throws Exception {
+        Connection con = pool.getConnection();
+        con.close();
+        con.close();
+
+        assertTrue(con.isClosed());
+        assertThrows(SQLException.class, () -> con.prepareStatement("SELECT 1"));
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    /**
+     * Tests that closing the pool closes idle connections and refuses new borrowers.
+     */
+    @Test
+    void testClosePool() throws Exception {
+        pool.getConnection().close();
+        pool.close();
+
+        verify(opened.get(0)).close();
+        assertThrows(SQLException.class, () -> pool.getConnection());
+    }
+}
@@ -0,0 +1,144 @@
+package com.napier.devops;
+
+import com.napier.sem.City;
+import com.napier.sem.CityReport;
+import com.napier.sem.ConsoleTable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ConsoleTable}.
+ */
+class ConsoleTableTest {
+
+    private PrintStream console;
+    private ByteArrayOutputStream captured;
+
+    /**
+     * Captures System.out.
+     */
+    @BeforeEach
+    void setUp() {
+        console = System.out;
+        captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Restores System.out and the row limit.
+     */
+    @AfterEach
+    void tearDown() {
+        System.setOut(console);
+        ConsoleTable.setRowLimit(ConsoleTable.UNLIMITED);
+    }
+
+    /**
+     * Tests that a table is printed as the rows of printf would print it.
+     */
+    @Test
+    void testPrintsLikePrintf() {
+        new CityReport(null).printCities(cities(3));
+
+        String n = System.lineSeparator();
+        String expected = String.format("%-30s %-25s %-20s %15s%n", "Capital City", "Country", "District", "Population")
+                + "-".repeat(90) + n
+                + String.format("%-30s %-25s %-20s %,15d%n", "City 0", "Country", null, 3000000)
+                + String.format("%-30s %-25s %-20s %,15d%n", "City 1", "Country", null, 2000000)
+                + String.format("%-30s %-25s %-20s %,15d%n", "City 2", "Country", null, 1000000);
+        assertEquals(expected, output());
+    }
+
+    /**
+     * Tests that rows beyond the limit are counted rather than printed, and that a limit of 0 prints only the count.
+     */
+    @Test
+    void testRowLimit() {
+        ConsoleTable.setRowLimit(2);
+        new CityReport(null).printCities(cities(1500));
+        String[] lines = output().split(System.lineSeparator());
+        assertEquals(5, lines.length);
+        assertTrue(lines[2].startsWith("City 0 "));
+        assertEquals("... 1,498 more rows not shown (1,500 in total)", lines[4]);
+
+        captured.reset();
+        ConsoleTable.setRowLimit(0);
+        new CityReport(null).printCities(cities(4));
+        lines = output().split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertEquals("... 4 rows not shown", lines[2]);
+
+        assertThrows(IllegalArgumentException.class, () -> ConsoleTable.setRowLimit(-1));
+    }
+
+    /**
+     * Tests that tables printed from several threads at once come out whole.
+     *
+     * @throws InterruptedException if a thread is interrupted
+     */
+    @Test
+    void testConcurrentTablesDoNotInterleave() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String marker = "T" + t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 20; i++) {
+                    ConsoleTable table = ConsoleTable.open();
+                    table.text().append("begin ").append(marker).append('\n');
+                    for (int row = 0; row < 500; row++) {
+                        if (!table.skipRow()) {
+                            table.text().append(marker).append(' ').append(row).append('\n');
+                        }
+                    }
+                    table.text().append("end ").append(marker).append('\n');
+                    table.print();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        String current = null;
+        int tables = 0;
+        for (String line : output().split("\n")) {
+            if (line.startsWith("begin ")) {
+                assertNull(current, "a table started inside another");
+                current = line.substring(6);
+            } else if (line.startsWith("end ")) {
+                assertEquals(current, line.substring(4));
+                current = null;
+                tables++;
+            } else {
+                assertTrue(line.startsWith(current + " "), "row of another table: " + line);
+            }
+        }
+        assertEquals(80, tables);
+    }
+
+    private String output() {
+        return captured.toString(StandardCharsets.UTF_8);
+    }
+
+    private static ArrayList<City> cities(int count) {
+        ArrayList<City> cities = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            City city = new City();
+            city.Name = "City " + i;
+            city.Country = "Country";
+            city.Population = (count - i) * 1000000;
+            cities.add(city);
+        }
+        return cities;
+    }
+}
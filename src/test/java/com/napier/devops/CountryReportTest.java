@@ -11,6 +11,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -22,6 +23,11 @@ import static org.mockito.Mockito.*;
  */
 class CountryReportTest {
 
+    /**
+     * The columns of the mocked result set, in order.
+     */
+    private static final List<String> COLUMNS = List.of("Code", "Name", "Continent", "Region", "Population", "Capital");
+
     private Connection mockConnection;
     private PreparedStatement mockPreparedStatement;
     private ResultSet mockResultSet;
@@ -42,6 +48,10 @@ class CountryReportTest {
 
         when(mockConnection.prepareStatement(any(String.class))).thenReturn(mockPreparedStatement);
         when(mockPreparedStatement.executeQuery()).thenReturn(mockResultSet);
+        // Report queries look their columns up once, then read every row by index
+        for (String label : COLUMNS) {
+            when(mockResultSet.findColumn(label)).thenReturn(column(label));
+        }
 
         report = new CountryReport(mockConnection);
     }
@@ -52,12 +62,12 @@ class CountryReportTest {
     @Test
     void testGetCountriesByPopulation_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("Code")).thenReturn("JPN");
-        when(mockResultSet.getString("Name")).thenReturn("Japan");
-        when(mockResultSet.getString("Continent")).thenReturn("Asia");
-        when(mockResultSet.getString("Region")).thenReturn("Eastern Asia");
-        when(mockResultSet.getInt("Population")).thenReturn(125800000);
-        when(mockResultSet.getString("Capital")).thenReturn("Tokyo");
+        when(mockResultSet.getString(column("Code"))).thenReturn("JPN");
+        when(mockResultSet.getString(column("Name"))).thenReturn("Japan");
+        when(mockResultSet.getString(column("Continent"))).thenReturn("Asia");
+        when(mockResultSet.getString(column("Region"))).thenReturn("Eastern Asia");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(125800000);
+        when(mockResultSet.getString(column("Capital"))).thenReturn("Tokyo");
 
         ArrayList<Country> countries = report.getCountriesByPopulation();
 
@@ -91,12 +101,12 @@ class CountryReportTest {
     @Test
     void testGetCountriesByContinent_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("Code")).thenReturn("CHN");
-        when(mockResultSet.getString("Name")).thenReturn("China");
-        when(mockResultSet.getString("Continent")).thenReturn("Asia");
-        when(mockResultSet.getString("Region")).thenReturn("Eastern Asia");
-        when(mockResultSet.getInt("Population")).thenReturn(1400000000);
-        when(mockResultSet.getString("Capital")).thenReturn("Beijing");
+        when(mockResultSet.getString(column("Code"))).thenReturn("CHN");
+        when(mockResultSet.getString(column("Name"))).thenReturn("China");
+        when(mockResultSet.getString(column("Continent"))).thenReturn("Asia");
+        when(mockResultSet.getString(column("Region"))).thenReturn("Eastern Asia");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(1400000000);
+        when(mockResultSet.getString(column("Capital"))).thenReturn("Beijing");
 
         ArrayList<Country> countries = report.getCountriesByContinent("Asia");
 
@@ -147,12 +157,12 @@ class CountryReportTest {
     @Test
     void testGetCountriesByRegion_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("Code")).thenReturn("DEU");
-        when(mockResultSet.getString("Name")).thenReturn("Germany");
-        when(mockResultSet.getString("Continent")).thenReturn("Europe");
-        when(mockResultSet.getString("Region")).thenReturn("Western Europe");
-        when(mockResultSet.getInt("Population")).thenReturn(83000000);
-        when(mockResultSet.getString("Capital")).thenReturn("Berlin");
+        when(mockResultSet.getString(column("Code"))).thenReturn("DEU");
+        when(mockResultSet.getString(column("Name"))).thenReturn("Germany");
+        when(mockResultSet.getString(column("Continent"))).thenReturn("Europe");
+        when(mockResultSet.getString(column("Region"))).thenReturn("Western Europe");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(83000000);
+        when(mockResultSet.getString(column("Capital"))).thenReturn("Berlin");
 
         ArrayList<Country> countries = report.getCountriesByRegion("Western Europe");
 
@@ -217,12 +227,12 @@ class CountryReportTest {
     void testTopNCountriesByRegion_Valid() throws Exception {
         // Arrange: Simulate one country being found
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("Code")).thenReturn("JAM");
-        when(mockResultSet.getString("Name")).thenReturn("Jamaica");
-        when(mockResultSet.getString("Continent")).thenReturn("North America");
-        when(mockResultSet.getString("Region")).thenReturn("Caribbean");
-        when(mockResultSet.getInt("Population")).thenReturn(2700000);
-        when(mockResultSet.getString("Capital")).thenReturn("Kingston");
+        when(mockResultSet.getString(column("Code"))).thenReturn("JAM");
+        when(mockResultSet.getString(column("Name"))).thenReturn("Jamaica");
+        when(mockResultSet.getString(column("Continent"))).thenReturn("North America");
+        when(mockResultSet.getString(column("Region"))).thenReturn("Caribbean");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(2700000);
+        when(mockResultSet.getString(column("Capital"))).thenReturn("Kingston");
 
         // Act: Call the method
         ArrayList<Country> countries = report.topNCountriesByRegion("Caribbean", 5);
@@ -284,12 +294,12 @@ class CountryReportTest {
     void testTopNCountriesByContinent_Valid() throws Exception {
         // Arrange: Simulate one country being found
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("Code")).thenReturn("BRA");
-        when(mockResultSet.getString("Name")).thenReturn("Brazil");
-        when(mockResultSet.getString("Continent")).thenReturn("South America");
-        when(mockResultSet.getString("Region")).thenReturn("South America");
-        when(mockResultSet.getInt("Population")).thenReturn(210000000);
-        when(mockResultSet.getString("Capital")).thenReturn("Brasília");
+        when(mockResultSet.getString(column("Code"))).thenReturn("BRA");
+        when(mockResultSet.getString(column("Name"))).thenReturn("Brazil");
+        when(mockResultSet.getString(column("Continent"))).thenReturn("South America");
+        when(mockResultSet.getString(column("Region"))).thenReturn("South America");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(210000000);
+        when(mockResultSet.getString(column("Capital"))).thenReturn("Brasília");
 
         // Act
         ArrayList<Country> countries = report.topNCountriesByContinent("South America", 3);
@@ -314,12 +324,12 @@ class CountryReportTest {
     void testTopNCountriesInTheWorld_Valid() throws Exception {
         // Arrange: Simulate one country being found
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("Code")).thenReturn("CHN");
-        when(mockResultSet.getString("Name")).thenReturn("China");
-        when(mockResultSet.getString("Continent")).thenReturn("Asia");
-        when(mockResultSet.getString("Region")).thenReturn("Eastern Asia");
-        when(mockResultSet.getInt("Population")).thenReturn(1400000000);
-        when(mockResultSet.getString("Capital")).thenReturn("Beijing");
+        when(mockResultSet.getString(column("Code"))).thenReturn("CHN");
+        when(mockResultSet.getString(column("Name"))).thenReturn("China");
+        when(mockResultSet.getString(column("Continent"))).thenReturn("Asia");
+        when(mockResultSet.getString(column("Region"))).thenReturn("Eastern Asia");
+        when(mockResultSet.getInt(column("Population"))).thenReturn(1400000000);
+        when(mockResultSet.getString(column("Capital"))).thenReturn("Beijing");
 
         // Act
         ArrayList<Country> countries = report.topNCountriesInTheWorld(10);
@@ -395,7 +405,8 @@ class CountryReportTest {
 
         report.printCountries(countries);
     }
-}
-
-
 
+    private static int column(String label) {
+        return COLUMNS.indexOf(label) + 1;
+    }
+}
@@ -0,0 +1,146 @@
+package com.napier.devops;
+
+import com.napier.sem.City;
+import com.napier.sem.GeographyTree;
+import com.napier.sem.PopulationSummary;
+import com.napier.sem.Scope;
+import com.napier.sem.UrbanReport;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link GeographyTree}.
+ */
+class GeographyTreeTest {
+
+    private WorldSnapshot snapshot;
+    private GeographyTree tree;
+
+    /**
+     * Builds a world of three countries in two continents and six cities.
+     */
+    @BeforeEach
+    void setUp() {
+        snapshot = new WorldSnapshot.Builder()
+                .addCountry("GBR", "United Kingdom", "Europe", "British Islands", 59623400, 456)
+                .addCountry("FRA", "France", "Europe", "Western Europe", 59225700, 2974)
+                .addCountry("JPN", "Japan", "Asia", "Eastern Asia", 126714000, 1532)
+                .addCity(456, "London", "GBR", "England", 7285000)
+                .addCity(457, "Birmingham", "GBR", "England", 1013000)
+                .addCity(459, "Glasgow", "GBR", "Scotland", 619680)
+                .addCity(2974, "Paris", "FRA", "Île-de-France", 2125246)
+                .addCity(1532, "Tokyo", "JPN", "Tokyo-to", 7980230)
+                .addCity(1533, "Jokohama [Yokohama]", "JPN", "Kanagawa", 3339594)
+                .build();
+        tree = new GeographyTree(snapshot);
+    }
+
+    /**
+     * Tests that every level carries the totals of the nodes below it.
+     */
+    @Test
+    void testAggregates() {
+        GeographyTree.Node world = tree.world();
+        assertEquals(245563100, world.population());
+        assertEquals(22362750, world.urbanPopulation());
+        assertEquals(6, world.cityCount());
+
+        GeographyTree.Node europe = tree.nodes(Scope.CONTINENT, "europe").get(0);
+        assertEquals(118849100, europe.population());
+        assertEquals(11042926, europe.urbanPopulation());
+        assertEquals(4, europe.cityCount());
+
+        GeographyTree.Node uk = tree.nodes(Scope.COUNTRY, "United Kingdom").get(0);
+        assertEquals(0, uk.capital());
+        assertEquals(2, uk.children().size());
+        assertEquals("England", uk.children().get(0).name());
+        assertEquals(8298000, uk.children().get(0).population());
+    }
+
+    /**
+     * Tests summaries by name and for every name of a level.
+     */
+    @Test
+    void testSummaries() {
+        PopulationSummary asia = tree.summary(Scope.CONTINENT, "Asia");
+        assertEquals(126714000, asia.Population);
+        assertEquals(11319824, asia.UrbanPopulation);
+        assertEquals(8.93, asia.Percentage, 0.01);
+
+        assertEquals(0, tree.summary(Scope.REGION, "Atlantis").Population);
+
+        ArrayList<PopulationSummary> regions = tree.summaries(Scope.REGION);
+        assertEquals(3, regions.size());
+        assertEquals("British Islands", regions.get(0).Name);
+        assertEquals("Western Europe", regions.get(2).Name);
+    }
+
+    /**
+     * Tests that a listing merges the districts below a node by population.
+     */
+    @Test
+    void testCities() {
+        List<City> cities = tree.cities(tree.nodes(Scope.COUNTRY, "United Kingdom").get(0));
+
+        assertEquals(3, cities.size());
+        assertEquals("London", cities.get(0).Name);
+        assertEquals("Birmingham", cities.get(1).Name);
+        assertEquals("Glasgow", cities.get(2).Name);
+    }
+
+    /**
+     * Tests that area listings walked from the tree match the snapshot's own listings.
+     */
+    @Test
+    void testAreaListingsMatchSnapshot() {
+        for (Scope scope : new Scope[]{Scope.CONTINENT, Scope.REGION, Scope.COUNTRY, Scope.DISTRICT}) {
+            for (String key : new String[]{"Europe", "asia", "British Islands", "United Kingdom", "england", "Atlantis"}) {
+                for (int limit : new int[]{1, 2, Integer.MAX_VALUE}) {
+                    List<Integer> expected = new ArrayList<>();
+                    snapshot.cities(scope, key, limit).forEach(city -> expected.add(city.ID));
+                    List<Integer> actual = new ArrayList<>();
+                    tree.cities(scope, key, limit).forEach(city -> actual.add(city.ID));
+                    assertEquals(expected, actual, scope + " " + key + " " + limit);
+                }
+            }
+        }
+        assertEquals(List.of("London", "Paris", "Birmingham", "Glasgow"),
+                tree.cities(Scope.CONTINENT, "Europe", Integer.MAX_VALUE).stream().map(city -> city.Name).toList());
+    }
+
+    /**
+     * Tests that population updates reach every ancestor and reorder the district.
+     */
+    @Test
+    void testUpdates() {
+        tree.updateCityPopulation(1, 8000000);
+        assertEquals(22362750 - 1013000 + 8000000, tree.world().urbanPopulation());
+        assertEquals("Birmingham", tree.cities(tree.nodes(Scope.DISTRICT, "England").get(0)).get(0).Name);
+        assertEquals(8000000, tree.cityPopulation(1));
+
+        tree.updateCountryPopulation(2, 126714001);
+        assertEquals(126714001, tree.summary(Scope.REGION, "Eastern Asia").Population);
+        assertEquals(245563101, tree.world().population());
+    }
+
+    /**
+     * Tests that UrbanReport answers from the tree without a connection.
+     */
+    @Test
+    void testUrbanReportUsesTree() {
+        UrbanReport report = new UrbanReport();
+        report.setGeography(tree);
+
+        report.getPopulationOfContinent(null, "Europe");
+        report.getUrbanPopulationOfCountry(null, "Japan");
+        assertEquals(118849100, report.population);
+        assertEquals(11319824, report.urbanPopulation);
+        assertEquals(3, report.getCountrySummaries(null).size());
+    }
+}
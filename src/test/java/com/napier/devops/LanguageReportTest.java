@@ -14,6 +14,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,6 +26,11 @@ import static org.mockito.Mockito.*;
  */
 class LanguageReportTest {
 
+    /**
+     * The columns of the mocked result set, in order.
+     */
+    private static final List<String> COLUMNS = List.of("Language", "NumberOfSpeakers", "WorldPercentage");
+
     private Connection mockConnection;
     private PreparedStatement mockPreparedStatement;
     private ResultSet mockResultSet;
@@ -40,6 +46,10 @@ class LanguageReportTest {
 
         when(mockConnection.prepareStatement(any(String.class))).thenReturn(mockPreparedStatement);
         when(mockPreparedStatement.executeQuery()).thenReturn(mockResultSet);
+        // Report queries look their columns up once, then read every row by index
+        for (String label : COLUMNS) {
+            when(mockResultSet.findColumn(label)).thenReturn(column(label));
+        }
 
         report = new LanguageReport(mockConnection);
     }
@@ -58,9 +68,9 @@ class LanguageReportTest {
     @Test
     void testRetrieveLanguageSpeakers_Valid() throws Exception {
         when(mockResultSet.next()).thenReturn(true, false);
-        when(mockResultSet.getString("Language")).thenReturn("English");
-        when(mockResultSet.getLong("NumberOfSpeakers")).thenReturn(1450000000L);
-        when(mockResultSet.getDouble("WorldPercentage")).thenReturn(17.6);
+        when(mockResultSet.getString(column("Language"))).thenReturn("English");
+        when(mockResultSet.getLong(column("NumberOfSpeakers"))).thenReturn(1450000000L);
+        when(mockResultSet.getDouble(column("WorldPercentage"))).thenReturn(17.6);
 
         ArrayList<CountryLanguage> languages = report.retrieveLanguageSpeakers();
 
@@ -163,5 +173,8 @@ class LanguageReportTest {
     void testOutputLanguages_NullList() {
         report.outputLanguages(null, testFileName);
     }
-}
 
+    private static int column(String label) {
+        return COLUMNS.indexOf(label) + 1;
+    }
+}
@@ -0,0 +1,77 @@
+package com.napier.devops;
+
+import com.napier.sem.MetricsRegistry;
+import com.napier.sem.ReportGraph;
+import com.napier.sem.ReportScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link MetricsRegistry}.
+ */
+class MetricsRegistryTest {
+
+    /**
+     * Tests that latency percentiles are within the histogram's 12.5% accuracy.
+     */
+    @Test
+    void testLatencyPercentiles() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record("fetch:Cities", i * 1_000_000L, 10, i == 100);
+        }
+
+        assertEquals(100, metrics.getCount("fetch:Cities"));
+        assertEquals(1, metrics.getErrors("fetch:Cities"));
+        assertEquals(1000, metrics.getRows("fetch:Cities"));
+        assertEquals(50_000_000L, metrics.getLatencyNanos("fetch:Cities", 0.50), 50_000_000L * 0.125);
+        assertEquals(95_000_000L, metrics.getLatencyNanos("fetch:Cities", 0.95), 95_000_000L * 0.125);
+        assertEquals(99_000_000L, metrics.getLatencyNanos("fetch:Cities", 0.99), 99_000_000L * 0.125);
+        assertEquals(0, metrics.getLatencyNanos("fetch:Unknown", 0.5));
+    }
+
+    /**
+     * Tests the JSON document of a registry.
+     */
+    @Test
+    void testJson() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.record("fetch:\"Quoted\" report", 2_000_000L, 3, false);
+        metrics.recordBytes("file:Report.md", 120);
+
+        String json = metrics.toJson();
+
+        assertTrue(json.startsWith("{\"metrics\":["));
+        assertTrue(json.contains("\"name\":\"fetch:\\\"Quoted\\\" report\",\"count\":1,\"errors\":0,\"rows\":3"));
+        assertTrue(json.contains("\"name\":\"file:Report.md\",\"count\":0,\"errors\":0,\"rows\":0,\"bytes\":120"));
+        assertTrue(json.contains("\"max\":2.000"));
+    }
+
+    /**
+     * Tests that the scheduler records every stage, counting a null fetch as an error.
+     */
+    @Test
+    void testSchedulerRecordsStages() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        ReportGraph graph = new ReportGraph();
+        List<String> written = new ArrayList<>();
+        graph.report("Cities", () -> List.of("Tokyo", "Delhi"), rows -> { }, rows -> written.addAll(rows));
+        graph.report("Broken", () -> null, rows -> { }, rows -> { });
+
+        ReportScheduler scheduler = ReportScheduler.sequential();
+        scheduler.setMetrics(metrics);
+        scheduler.run(graph);
+
+        assertEquals(1, metrics.getCount("fetch:Cities"));
+        assertEquals(2, metrics.getRows("fetch:Cities"));
+        assertEquals(0, metrics.getErrors("fetch:Cities"));
+        assertEquals(1, metrics.getCount("render:Cities"));
+        assertEquals(1, metrics.getCount("write:Cities"));
+        assertEquals(1, metrics.getErrors("fetch:Broken"));
+        assertEquals(List.of("Tokyo", "Delhi"), written);
+    }
+}
@@ -0,0 +1,123 @@
+package com.napier.devops;
+
+import com.napier.sem.CapitalCityReport;
+import com.napier.sem.City;
+import com.napier.sem.CityReport;
+import com.napier.sem.Country;
+import com.napier.sem.CountryReport;
+import com.napier.sem.Page;
+import com.napier.sem.PageIndex;
+import com.napier.sem.Scope;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PageIndex} and the page methods of the reports answered from a snapshot.
+ */
+class PageIndexTest {
+
+    private WorldSnapshot snapshot;
+    private CityReport cityReport;
+
+    /**
+     * Builds a world of three countries and eight cities, three of them tied on population
+     * and added out of ID order.
+     */
+    @BeforeEach
+    void setUp() {
+        snapshot = new WorldSnapshot.Builder()
+                .addCountry("GBR", "United Kingdom", "Europe", "British Islands", 59623400, 456)
+                .addCountry("FRA", "France", "Europe", "Western Europe", 59225700, 2974)
+                .addCountry("JPN", "Japan", "Asia", "Eastern Asia", 126714000, 1532)
+                .addCity(456, "London", "GBR", "England", 7285000)
+                .addCity(457, "Birmingham", "GBR", "England", 1013000)
+                .addCity(459, "Glasgow", "GBR", "Scotland", 619680)
+                .addCity(2974, "Paris", "FRA", "Île-de-France", 2125246)
+                .addCity(1532, "Tokyo", "JPN", "Tokyo-to", 7980230)
+                .addCity(1533, "Jokohama [Yokohama]", "JPN", "Kanagawa", 3339594)
+                .addCity(1600, "Newcastle", "JPN", "england", 1013000)
+                .addCity(458, "Leeds", "GBR", "England", 1013000)
+                .build();
+        cityReport = new CityReport(null, snapshot);
+    }
+
+    /**
+     * Tests that following the cursors visits every city once, by population and then ID.
+     */
+    @Test
+    void testPagesCoverTheListingInOrder() {
+        List<Integer> ids = new ArrayList<>();
+        int pages = 0;
+        String cursor = null;
+        do {
+            Page<City> page = cityReport.citiesPage(Scope.WORLD, null, cursor, 3);
+            assertTrue(page.Items.size() <= 3);
+            page.Items.forEach(city -> ids.add(city.ID));
+            cursor = page.Next;
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(List.of(1532, 456, 1533, 2974, 457, 458, 1600, 459), ids);
+        assertEquals(3, pages);
+    }
+
+    /**
+     * Tests pages of a district, matched ignoring case, and of an area with no cities.
+     */
+    @Test
+    void testFilteredPages() {
+        Page<City> first = cityReport.citiesPage(Scope.DISTRICT, "ENGLAND", null, 2);
+        assertEquals("London", first.Items.get(0).Name);
+        assertEquals("Birmingham", first.Items.get(1).Name);
+        assertNotNull(first.Next);
+
+        Page<City> second = cityReport.citiesPage(Scope.DISTRICT, "ENGLAND", first.Next, 2);
+        assertEquals(List.of(458, 1600), List.of(second.Items.get(0).ID, second.Items.get(1).ID));
+        assertNull(second.Next);
+
+        Page<City> none = cityReport.citiesPage(Scope.CONTINENT, "Atlantis", null, 2);
+        assertTrue(none.Items.isEmpty());
+        assertNull(none.Next);
+    }
+
+    /**
+     * Tests pages of capital cities and of countries.
+     */
+    @Test
+    void testCapitalAndCountryPages() {
+        CapitalCityReport capitalReport = new CapitalCityReport(null, snapshot);
+        Page<City> capitals = capitalReport.capitalCitiesPage(Scope.WORLD, null, null, 2);
+        assertEquals("Tokyo", capitals.Items.get(0).Name);
+        assertEquals(456, capitals.Items.get(1).ID);
+        assertTrue(capitals.Items.get(1).isCapital);
+        Page<City> last = capitalReport.capitalCitiesPage(Scope.WORLD, null, capitals.Next, 2);
+        assertEquals("Paris", last.Items.get(0).Name);
+        assertEquals("France", last.Items.get(0).Country);
+        assertNull(last.Next);
+
+        CountryReport countryReport = new CountryReport(null, snapshot);
+        Page<Country> europe = countryReport.countriesPage(Scope.CONTINENT, "europe", null, 1);
+        assertEquals("GBR", europe.Items.get(0).Code);
+        assertEquals("FRA", countryReport.countriesPage(Scope.CONTINENT, "europe", europe.Next, 1).Items.get(0).Code);
+    }
+
+    /**
+     * Tests that malformed cursors, cursors of another listing and bad page sizes are refused.
+     */
+    @Test
+    void testInvalidRequestsAreRefused() {
+        String cityCursor = cityReport.citiesPage(Scope.WORLD, null, null, 1).Next;
+        CountryReport countryReport = new CountryReport(null, snapshot);
+
+        assertThrows(IllegalArgumentException.class, () -> cityReport.citiesPage(Scope.WORLD, null, "not a cursor", 1));
+        assertThrows(IllegalArgumentException.class, () -> countryReport.countriesPage(Scope.WORLD, null, cityCursor, 1));
+        assertThrows(IllegalArgumentException.class, () -> cityReport.citiesPage(Scope.WORLD, null, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> countryReport.countriesPage(Scope.DISTRICT, "England", null, 1));
+    }
+}
@@ -0,0 +1,114 @@
+package com.napier.devops;
+
+import com.napier.sem.City;
+import com.napier.sem.Country;
+import com.napier.sem.PopulationIndex;
+import com.napier.sem.Scope;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PopulationIndex}.
+ * <p>
+ * A random world is checked against a full sort of its rows, so every merge must
+ * return exactly what a scan ordered by population would.
+ */
+class PopulationIndexTest {
+
+    private static final String[] CONTINENTS = {"Asia", "Europe", "Africa"};
+
+    private WorldSnapshot snapshot;
+    private final List<int[]> cities = new ArrayList<>();
+
+    /**
+     * Builds 30 countries in 6 regions with 600 cities, many with equal populations.
+     */
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(42);
+        WorldSnapshot.Builder builder = new WorldSnapshot.Builder();
+        for (int c = 0; c < 30; c++) {
+            builder.addCountry("C" + c, "Country " + c, CONTINENTS[c % 3], "Region " + c % 6,
+                    random.nextInt(1000), 1000 + c);
+        }
+        for (int i = 0; i < 600; i++) {
+            int country = random.nextInt(30);
+            int population = random.nextInt(50);
+            int district = random.nextInt(20);
+            builder.addCity(1000 + i, "City " + i, "C" + country, "District " + district, population);
+            cities.add(new int[]{i, country, district, population});
+        }
+        snapshot = builder.build();
+    }
+
+    /**
+     * Tests top N cities at every level against a full sort.
+     */
+    @Test
+    void testCitiesMatchFullSort() {
+        for (int n : new int[]{1, 7, 100, Integer.MAX_VALUE}) {
+            assertRows(expected(c -> true, n), snapshot.cities(Scope.WORLD, null, n));
+            assertRows(expected(c -> c[1] % 3 == 1, n), snapshot.cities(Scope.CONTINENT, "europe", n));
+            assertRows(expected(c -> c[1] % 6 == 4, n), snapshot.cities(Scope.REGION, "Region 4", n));
+            assertRows(expected(c -> c[1] == 12, n), snapshot.cities(Scope.COUNTRY, "Country 12", n));
+            assertRows(expected(c -> c[2] == 3, n), snapshot.cities(Scope.DISTRICT, "District 3", n));
+        }
+    }
+
+    /**
+     * Tests that countries and capitals come back in population order within a continent.
+     */
+    @Test
+    void testCountriesAndCapitalsOrdered() {
+        List<Country> countries = snapshot.countries(Scope.CONTINENT, "Asia", Integer.MAX_VALUE);
+        assertEquals(10, countries.size());
+        for (int i = 1; i < countries.size(); i++) {
+            assertTrue(countries.get(i - 1).Population >= countries.get(i).Population);
+            assertEquals("Asia", countries.get(i).Continent);
+        }
+
+        List<City> capitals = snapshot.capitalCities(Scope.WORLD, null, Integer.MAX_VALUE);
+        for (int i = 1; i < capitals.size(); i++) {
+            assertTrue(capitals.get(i - 1).Population >= capitals.get(i).Population);
+        }
+        assertEquals(1, snapshot.countries(Scope.COUNTRY, "Country 0", 5).size());
+        assertTrue(snapshot.countries(Scope.DISTRICT, "District 0", 5).isEmpty());
+    }
+
+    /**
+     * Tests merging runs directly, including skipped rows and a limit.
+     */
+    @Test
+    void testMerge() {
+        int[] population = {50, 40, 30, 40, 10, 50};
+        int[][] runs = {{0, 2, 4}, {5, 1}, {3}};
+
+        assertArrayEquals(new int[]{0, 5, 1, 3, 2, 4}, PopulationIndex.merge(runs, population, null, 10));
+        assertArrayEquals(new int[]{0, 5}, PopulationIndex.merge(runs, population, null, 2));
+        boolean[] keep = {false, true, true, true, true, true};
+        assertArrayEquals(new int[]{5, 1, 3}, PopulationIndex.merge(runs, population, keep, 3));
+        assertEquals(0, PopulationIndex.merge(new int[0][], population, null, 3).length);
+    }
+
+    private List<int[]> expected(java.util.function.Predicate<int[]> filter, int n) {
+        return cities.stream().filter(filter)
+                .sorted(Comparator.<int[]>comparingInt(c -> -c[3]).thenComparingInt(c -> c[0]))
+                .limit(n)
+                .toList();
+    }
+
+    private static void assertRows(List<int[]> expected, List<City> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("City " + expected.get(i)[0], actual.get(i).Name);
+        }
+    }
+}
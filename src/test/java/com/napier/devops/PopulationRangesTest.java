@@ -0,0 +1,154 @@
+package com.napier.devops;
+
+import com.napier.sem.City;
+import com.napier.sem.PopulationBand;
+import com.napier.sem.PopulationRangeReport;
+import com.napier.sem.PopulationRanges;
+import com.napier.sem.Scope;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PopulationRanges} and {@link PopulationRangeReport}.
+ * <p>
+ * A random world is checked against counting its rows directly.
+ */
+class PopulationRangesTest {
+
+    private static final String[] CONTINENTS = {"Asia", "Europe", "Africa"};
+
+    private WorldSnapshot snapshot;
+    private PopulationRanges ranges;
+    private final List<int[]> cities = new ArrayList<>();
+
+    /**
+     * Builds 12 countries with 400 cities of populations up to 1000.
+     */
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(7);
+        WorldSnapshot.Builder builder = new WorldSnapshot.Builder();
+        for (int c = 0; c < 12; c++) {
+            builder.addCountry("C" + c, "Country " + c, CONTINENTS[c % 3], "Region " + c % 4, 1000 * (c + 1), 0);
+        }
+        for (int i = 0; i < 400; i++) {
+            int country = random.nextInt(12);
+            int population = random.nextInt(1001);
+            builder.addCity(i, "City " + i, "C" + country, "District " + i % 9, population);
+            cities.add(new int[]{i, country, i % 9, population});
+        }
+        snapshot = builder.build();
+        ranges = new PopulationRanges(snapshot);
+    }
+
+    /**
+     * Tests counts and totals of bands against a direct count.
+     */
+    @Test
+    void testCityBands() {
+        int[][] bands = {{0, 1000}, {250, 500}, {500, 500}, {1001, 2000}, {600, 100}};
+        for (int[] band : bands) {
+            assertBand(band, c -> true, ranges.cityBand(Scope.WORLD, null, band[0], band[1]));
+            assertBand(band, c -> c[1] % 3 == 0, ranges.cityBand(Scope.CONTINENT, "ASIA", band[0], band[1]));
+            assertBand(band, c -> c[1] == 5, ranges.cityBand(Scope.COUNTRY, "Country 5", band[0], band[1]));
+            assertBand(band, c -> c[2] == 4, ranges.cityBand(Scope.DISTRICT, "District 4", band[0], band[1]));
+        }
+        assertEquals(0, ranges.cityBand(Scope.REGION, "Atlantis", 0, 1000).Count);
+    }
+
+    /**
+     * Tests that listings hold exactly the band's cities, most populated first.
+     */
+    @Test
+    void testCitiesInBand() {
+        List<City> listed = ranges.cities(Scope.REGION, "Region 2", 100, 300);
+
+        assertEquals(count(c -> c[1] % 4 == 2 && c[3] >= 100 && c[3] <= 300), listed.size());
+        for (int i = 0; i < listed.size(); i++) {
+            assertTrue(listed.get(i).Population >= 100 && listed.get(i).Population <= 300);
+            if (i > 0) {
+                assertTrue(listed.get(i - 1).Population >= listed.get(i).Population);
+            }
+        }
+    }
+
+    /**
+     * Tests that country bands and listings use the country population.
+     */
+    @Test
+    void testCountryBands() {
+        PopulationBand band = ranges.countryBand(Scope.CONTINENT, "Europe", 2000, 8000);
+        assertEquals(3, band.Count);
+        assertEquals(2000 + 5000 + 8000, band.Population);
+        assertEquals("C7", ranges.countries(Scope.CONTINENT, "Europe", 2000, 8000).get(0).Code);
+        assertEquals(0, ranges.countryBand(Scope.DISTRICT, "District 1", 0, 10000).Count);
+    }
+
+    /**
+     * Tests that equal depth bands split the cities evenly and equal width bands cover the range.
+     */
+    @Test
+    void testHistograms() {
+        ArrayList<PopulationBand> deciles = ranges.cityHistogram(Scope.WORLD, null, 10, true);
+        assertEquals(10, deciles.size());
+        long total = 0;
+        for (int i = 0; i < deciles.size(); i++) {
+            assertEquals(40, deciles.get(i).Count);
+            assertTrue(deciles.get(i).Low <= deciles.get(i).High);
+            if (i > 0) {
+                assertTrue(deciles.get(i - 1).High <= deciles.get(i).Low);
+            }
+            total += deciles.get(i).Population;
+        }
+        assertEquals(ranges.cityBand(Scope.WORLD, null, 0, Integer.MAX_VALUE).Population, total);
+
+        ArrayList<PopulationBand> widths = ranges.cityHistogram(Scope.WORLD, null, 4, false);
+        int counted = 0;
+        for (PopulationBand band : widths) {
+            counted += band.Count;
+        }
+        assertTrue(widths.size() <= 4);
+        assertEquals(400, counted);
+        assertEquals(3, ranges.countryHistogram(Scope.REGION, "Region 1", 5, true).size());
+    }
+
+    /**
+     * Tests that bands are written to a Markdown table.
+     *
+     * @throws Exception if the file cannot be read
+     */
+    @Test
+    void testOutputBands() throws Exception {
+        PopulationRangeReport report = new PopulationRangeReport(snapshot);
+        ArrayList<PopulationBand> bands = report.getCityBands(Scope.WORLD, null, 0, 500);
+        String filename = "PopulationBandsTest.md";
+
+        report.outputBands(bands, filename);
+        java.io.File file = new java.io.File("./reports/" + filename);
+        List<String> lines = Files.readAllLines(file.toPath());
+        file.delete();
+
+        assertEquals(2, bands.size());
+        assertEquals(Integer.MAX_VALUE, bands.get(1).High);
+        assertEquals("| Low | High | Count | Population |", lines.get(0));
+        assertTrue(lines.get(2).startsWith("| 0 | 499 | " + bands.get(0).Count + " | "));
+    }
+
+    private int count(java.util.function.Predicate<int[]> filter) {
+        return (int) cities.stream().filter(filter).count();
+    }
+
+    private void assertBand(int[] band, java.util.function.Predicate<int[]> filter, PopulationBand actual) {
+        java.util.function.Predicate<int[]> inBand = c -> c[3] >= band[0] && c[3] <= band[1];
+        assertEquals(count(filter.and(inBand)), actual.Count);
+        assertEquals(cities.stream().filter(filter.and(inBand)).mapToLong(c -> c[3]).sum(), actual.Population);
+    }
+}
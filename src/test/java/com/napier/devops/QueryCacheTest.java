@@ -0,0 +1,197 @@
+package com.napier.devops;
+
+import com.napier.sem.City;
+import com.napier.sem.CityReport;
+import com.napier.sem.QueryCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link QueryCache}.
+ * <p>
+ * The clock is controlled by the test so expiry can be checked without waiting.
+ */
+class QueryCacheTest {
+
+    private long nanos;
+    private AtomicInteger queries;
+
+    /**
+     * Resets the clock and the query counter.
+     */
+    @BeforeEach
+    void setUp() {
+        nanos = 0;
+        queries = new AtomicInteger();
+    }
+
+    private QueryCache cache(long ttlMillis, int maxEntries, long maxBytes) {
+        return new QueryCache(ttlMillis, maxEntries, maxBytes) {
+            @Override
+            protected long now() {
+                return nanos;
+            }
+        };
+    }
+
+    private ArrayList<City> query(String name) {
+        queries.incrementAndGet();
+        City city = new City();
+        city.Name = name;
+        ArrayList<City> cities = new ArrayList<>();
+        cities.add(city);
+        return cities;
+    }
+
+    /**
+     * Tests that a repeated query with the same parameters is served from the cache,
+     * and that different parameters are cached separately.
+     */
+    @Test
+    void testHitAndMiss() {
+        QueryCache cache = cache(1000, 10, 1_000_000);
+
+        ArrayList<City> first = cache.lookup(() -> query("Tokyo"), "SELECT ?", "Asia", 5);
+        ArrayList<City> second = cache.lookup(() -> query("Tokyo"), "SELECT ?", "Asia", 5);
+        cache.lookup(() -> query("Paris"), "SELECT ?", "Europe", 5);
+
+        assertEquals(2, queries.get());
+        assertEquals("Tokyo", second.get(0).Name);
+        assertNotSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    /**
+     * Tests that callers cannot change a cached result through their copy.
+     */
+    @Test
+    void testCallersGetCopies() {
+        QueryCache cache = cache(1000, 10, 1_000_000);
+        cache.lookup(() -> query("Tokyo"), "SELECT 1").clear();
+
+        assertEquals(1, cache.lookup(() -> query("Tokyo"), "SELECT 1").size());
+        assertEquals(1, queries.get());
+    }
+
+    /**
+     * Tests that changing a row, whether from the query that filled the cache or from a hit,
+     * does not change the rows later callers receive.
+     */
+    @Test
+    void testCallersGetCopiesOfRows() {
+        QueryCache cache = cache(1000, 10, 1_000_000);
+        City filled = cache.lookup(() -> query("Tokyo"), "SELECT 1").get(0);
+        filled.Name = "Changed";
+        filled.Population = 1;
+        City hit = cache.lookup(() -> query("Tokyo"), "SELECT 1").get(0);
+        hit.isCapital = true;
+
+        City later = cache.lookup(() -> query("Tokyo"), "SELECT 1").get(0);
+        assertEquals("Tokyo", later.Name);
+        assertEquals(0, later.Population);
+        assertFalse(later.isCapital);
+        assertNotSame(hit, later);
+        assertEquals(1, queries.get());
+    }
+
+    /**
+     * Tests that a result is fetched again once its time to live has passed.
+     */
+    @Test
+    void testExpiry() {
+        QueryCache cache = cache(1000, 10, 1_000_000);
+        cache.lookup(() -> query("Tokyo"), "SELECT 1");
+        nanos = 999_000_000L;
+        cache.lookup(() -> query("Tokyo"), "SELECT 1");
+        nanos = 1_000_000_000L;
+        cache.lookup(() -> query("Tokyo"), "SELECT 1");
+
+        assertEquals(2, queries.get());
+    }
+
+    /**
+     * Tests that the least recently used result is evicted when the entry budget is exceeded.
+     */
+    @Test
+    void testLeastRecentlyUsedEviction() {
+        QueryCache cache = cache(1000, 2, 1_000_000);
+        cache.lookup(() -> query("a"), "A");
+        cache.lookup(() -> query("b"), "B");
+        cache.lookup(() -> query("a"), "A");
+        cache.lookup(() -> query("c"), "C");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        cache.lookup(() -> query("a"), "A");
+        assertEquals(3, queries.get());
+        cache.lookup(() -> query("b"), "B");
+        assertEquals(4, queries.get());
+    }
+
+    /**
+     * Tests that the byte budget is respected and failed queries are not cached.
+     */
+    @Test
+    void testByteBudgetAndFailures() {
+        QueryCache cache = cache(1000, 100, 400);
+        for (int i = 0; i < 10; i++) {
+            cache.lookup(() -> query("City with a fairly long name"), "SELECT " + i);
+        }
+        assertTrue(cache.getEstimatedBytes() <= 400);
+        assertTrue(cache.getEvictionCount() > 0);
+
+        assertNull(cache.lookup(() -> null, "FAIL"));
+        assertNull(cache.lookup(() -> null, "FAIL"));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    /**
+     * Tests that invalidation removes one result or all results.
+     */
+    @Test
+    void testInvalidate() {
+        QueryCache cache = cache(1000, 10, 1_000_000);
+        cache.lookup(() -> query("a"), "A", 1);
+        cache.lookup(() -> query("b"), "B");
+
+        cache.invalidate("A", 1);
+        assertEquals(1, cache.size());
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getEstimatedBytes());
+    }
+
+    /**
+     * Tests that a report with a cache only queries the database once for a repeated report.
+     *
+     * @throws Exception if mocking fails
+     */
+    @Test
+    void testReportUsesCache() throws Exception {
+        Connection con = mock(Connection.class);
+        PreparedStatement pstmt = mock(PreparedStatement.class);
+        ResultSet rset = mock(ResultSet.class);
+        when(con.prepareStatement(anyString())).thenReturn(pstmt);
+        when(pstmt.executeQuery()).thenReturn(rset);
+        when(rset.next()).thenReturn(true, false);
+        when(rset.findColumn("CityName")).thenReturn(2);
+        when(rset.getString(2)).thenReturn("Tokyo");
+
+        CityReport report = new CityReport(con);
+        report.setCache(cache(1000, 10, 1_000_000));
+
+        assertEquals("Tokyo", report.getTopNCitiesByContinent("Asia", 1).get(0).Name);
+        assertEquals("Tokyo", report.getTopNCitiesByContinent("Asia", 1).get(0).Name);
+        verify(con, times(1)).prepareStatement(anyString());
+    }
+}
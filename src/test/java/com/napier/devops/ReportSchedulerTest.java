@@ -0,0 +1,161 @@
+package com.napier.devops;
+
+import com.napier.sem.ReportGraph;
+import com.napier.sem.ReportScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ReportGraph} and {@link ReportScheduler}.
+ */
+class ReportSchedulerTest {
+
+    /**
+     * Tests that a sequential scheduler runs stages in the order they were declared.
+     */
+    @Test
+    void testSequentialRunKeepsDeclaredOrder() {
+        List<String> events = new ArrayList<>();
+        ReportGraph graph = new ReportGraph();
+        for (String name : new String[]{"a", "b"}) {
+            ReportGraph.Stage<String> rows = graph.fetch(name, () -> {
+                events.add("fetch " + name);
+                return name;
+            });
+            graph.render(name, rows, value -> events.add("render " + value));
+            graph.write(name, rows, value -> events.add("write " + value));
+        }
+
+        assertTrue(ReportScheduler.sequential().run(graph));
+        assertEquals(List.of("fetch a", "render a", "write a", "fetch b", "render b", "write b"), events);
+    }
+
+    /**
+     * Tests that a sequential run of a large graph does not grow the stack with every stage.
+     */
+    @Test
+    void testSequentialRunOfLargeGraph() {
+        AtomicInteger rendered = new AtomicInteger();
+        ReportGraph graph = new ReportGraph();
+        for (int i = 0; i < 50000; i++) {
+            graph.render("report " + i, graph.fetch("report " + i, () -> 1), rendered::addAndGet);
+        }
+
+        assertTrue(ReportScheduler.sequential().run(graph));
+        assertEquals(50000, rendered.get());
+    }
+
+    /**
+     * Tests that stages depending on a failed stage are skipped while other reports still run.
+     */
+    @Test
+    void testFailedFetchSkipsDependents() {
+        List<String> written = new ArrayList<>();
+        ReportGraph graph = new ReportGraph();
+        ReportGraph.Stage<String> broken = graph.fetch("broken", () -> {
+            throw new IllegalStateException("DB error");
+        });
+        ReportGraph.Stage<Void> brokenWrite = graph.write("broken", broken, written::add);
+        ReportGraph.Stage<String> working = graph.fetch("working", () -> "ok");
+        graph.write("working", working, written::add);
+
+        assertFalse(ReportScheduler.sequential().run(graph));
+        assertEquals(ReportGraph.Status.FAILED, broken.getStatus());
+        assertEquals(ReportGraph.Status.SKIPPED, brokenWrite.getStatus());
+        assertEquals(List.of("ok"), written);
+    }
+
+    /**
+     * Tests that a failed render does not skip the renders after it, and that a stage
+     * throwing an Error still lets the run finish.
+     */
+    @Test
+    void testFailedRenderKeepsLaterRenders() {
+        List<String> rendered = new ArrayList<>();
+        ReportGraph graph = new ReportGraph();
+        ReportGraph.Stage<String> first = graph.fetch("first", () -> "first");
+        ReportGraph.Stage<Void> brokenRender = graph.render("first", first, value -> {
+            throw new IllegalStateException("console closed");
+        });
+        ReportGraph.Stage<String> second = graph.fetch("second", () -> {
+            throw new AssertionError("out of memory");
+        });
+        ReportGraph.Stage<Void> skippedRender = graph.render("second", second, rendered::add);
+        ReportGraph.Stage<String> third = graph.fetch("third", () -> "third");
+        graph.render("third", third, rendered::add);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        boolean completed = new ReportScheduler(executor, 2).run(graph);
+        executor.shutdown();
+
+        assertFalse(completed);
+        assertEquals(ReportGraph.Status.FAILED, brokenRender.getStatus());
+        assertEquals(ReportGraph.Status.FAILED, second.getStatus());
+        assertEquals(ReportGraph.Status.SKIPPED, skippedRender.getStatus());
+        assertEquals(List.of("third"), rendered);
+    }
+
+    /**
+     * Tests that cancelling a run stops stages that have not started.
+     */
+    @Test
+    void testCancelSkipsRemainingStages() {
+        ReportScheduler scheduler = ReportScheduler.sequential();
+        ReportGraph graph = new ReportGraph();
+        ReportGraph.Stage<String> first = graph.fetch("first", () -> {
+            scheduler.cancel();
+            return "done";
+        });
+        ReportGraph.Stage<String> second = graph.fetch("second", () -> "never");
+
+        assertFalse(scheduler.run(graph));
+        assertEquals(ReportGraph.Status.DONE, first.getStatus());
+        assertEquals(ReportGraph.Status.CANCELLED, second.getStatus());
+        assertNull(second.getResult());
+    }
+
+    /**
+     * Tests that no more than the concurrency limit of stages run at once on a thread pool,
+     * and that render stages still run in declared order.
+     */
+    @Test
+    void testConcurrencyIsBounded() {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Integer> rendered = Collections.synchronizedList(new ArrayList<>());
+        ReportGraph graph = new ReportGraph();
+        for (int i = 0; i < 20; i++) {
+            int report = i;
+            ReportGraph.Stage<Integer> rows = graph.fetch("report " + i, () -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return report;
+            });
+            graph.render("report " + i, rows, rendered::add);
+        }
+
+        boolean completed = new ReportScheduler(executor, 3).run(graph);
+        executor.shutdown();
+
+        assertTrue(completed);
+        assertTrue(peak.get() <= 3, "At most three stages should run at once");
+        assertEquals(20, rendered.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.valueOf(i), rendered.get(i));
+        }
+    }
+}
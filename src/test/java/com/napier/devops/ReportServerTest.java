@@ -0,0 +1,181 @@
+package com.napier.devops;
+
+import com.napier.sem.CapitalCityReport;
+import com.napier.sem.CityReport;
+import com.napier.sem.CountryReport;
+import com.napier.sem.GeographyTree;
+import com.napier.sem.LanguageReport;
+import com.napier.sem.MetricsRegistry;
+import com.napier.sem.ReportServer;
+import com.napier.sem.UrbanReport;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ReportServer}, answering from a snapshot on a free loopback port.
+ */
+class ReportServerTest {
+
+    private ReportServer server;
+    private String base;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    /**
+     * Serves a world of two countries and four cities.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        WorldSnapshot snapshot = new WorldSnapshot.Builder()
+                .addCountry("GBR", "United Kingdom", "Europe", "British Islands", 59623400, 456)
+                .addCountry("JPN", "Japan", "Asia", "Eastern Asia", 126714000, 1532)
+                .addCity(456, "London", "GBR", "England", 7285000)
+                .addCity(457, "Birmingham", "GBR", "England", 1013000)
+                .addCity(1532, "Tokyo", "JPN", "Tokyo-to", 7980230)
+                .addCity(1533, "Jokohama [Yokohama]", "JPN", "Kanagawa", 3339594)
+                .build();
+        UrbanReport urbanReport = new UrbanReport(true);
+        urbanReport.setGeography(new GeographyTree(snapshot));
+        server = new ReportServer(new CityReport(null, snapshot), new CapitalCityReport(null, snapshot),
+                new CountryReport(null, snapshot), new LanguageReport(null, snapshot), urbanReport, null);
+        InetSocketAddress address = server.start(0);
+        base = "http://127.0.0.1:" + address.getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private HttpResponse<String> get(String pathAndQuery, String... headers) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + pathAndQuery));
+        if (headers.length > 0) {
+            request.headers(headers);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Tests the same answer rendered as Markdown, CSV and JSON.
+     */
+    @Test
+    void testFormats() throws Exception {
+        HttpResponse<String> markdown = get("/cities?scope=continent&key=Europe");
+        assertEquals(200, markdown.statusCode());
+        assertTrue(markdown.headers().firstValue("Content-Type").orElse("").startsWith("text/markdown"));
+        assertEquals("| Name | Country | District | Population |\r\n| --- | --- | --- | --- |\r\n"
+                + "| London | United Kingdom | England | 7285000 |\r\n"
+                + "| Birmingham | United Kingdom | England | 1013000 |\r\n", markdown.body());
+
+        HttpResponse<String> csv = get("/cities?scope=continent&key=Europe&n=1&format=csv");
+        assertEquals("Name,Country,District,Population\r\nLondon,United Kingdom,England,7285000\r\n", csv.body());
+
+        HttpResponse<String> json = get("/countries?n=1", "Accept", "application/json");
+        assertTrue(json.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+        assertTrue(json.body().contains("\"Code\":\"JPN\""));
+        assertFalse(json.body().contains("GBR"));
+    }
+
+    /**
+     * Tests that a request naming the current ETag or a later date is answered 304 with no body.
+     */
+    @Test
+    void testConditionalGet() throws Exception {
+        HttpResponse<String> first = get("/capitals?format=json");
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+        String lastModified = first.headers().firstValue("Last-Modified").orElseThrow();
+
+        HttpResponse<String> again = get("/capitals?format=json");
+        assertEquals(etag, again.headers().firstValue("ETag").orElseThrow());
+
+        HttpResponse<String> byTag = get("/capitals?format=json", "If-None-Match", etag);
+        assertEquals(304, byTag.statusCode());
+        assertEquals("", byTag.body());
+
+        HttpResponse<String> byDate = get("/capitals?format=json", "If-Modified-Since", lastModified);
+        assertEquals(304, byDate.statusCode());
+
+        HttpResponse<String> otherTag = get("/capitals?format=json", "If-None-Match", "\"0\"");
+        assertEquals(200, otherTag.statusCode());
+        assertEquals(first.body(), otherTag.body());
+    }
+
+    /**
+     * Tests that the Link header of a page leads to the next page.
+     */
+    @Test
+    void testPageLink() throws Exception {
+        HttpResponse<String> first = get("/cities/page?size=3&format=csv");
+        assertEquals(4, first.body().split("\r\n").length);
+        String link = first.headers().firstValue("Link").orElseThrow();
+        String next = link.substring(1, link.indexOf('>'));
+
+        HttpResponse<String> second = get(next);
+        assertEquals("Name,Country,District,Population\r\nBirmingham,United Kingdom,England,1013000\r\n",
+                second.body());
+        assertTrue(second.headers().firstValue("Link").isEmpty());
+    }
+
+    /**
+     * Tests that GET / lists every endpoint and that the urbanisation endpoints answer.
+     */
+    @Test
+    void testIndexAndUrban() throws Exception {
+        String index = get("/").body();
+        for (String path : new String[]{"/cities", "/capitals/top", "/countries/page", "/languages", "/urban/city",
+                "/metrics"}) {
+            assertTrue(index.contains("| " + path + " |"), path);
+        }
+        assertEquals("Name,Population,UrbanPopulation,UrbanPercentage\r\nUnited Kingdom,59623400,8298000,13.92\r\n",
+                get("/urban/population?scope=country&key=United%20Kingdom&format=csv").body());
+        assertEquals("Name,Population\r\nbirmingham,1013000\r\n", get("/urban/city?name=birmingham&format=csv").body());
+    }
+
+    /**
+     * Tests that GET /metrics returns the requests recorded so far, uncached and without an ETag.
+     */
+    @Test
+    void testMetrics() throws Exception {
+        server.setMetrics(new MetricsRegistry());
+        get("/cities?scope=continent&key=Europe");
+
+        HttpResponse<String> first = get("/metrics");
+        assertEquals(200, first.statusCode());
+        assertTrue(first.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+        assertEquals("no-store", first.headers().firstValue("Cache-Control").orElse(""));
+        assertTrue(first.headers().firstValue("ETag").isEmpty());
+        assertTrue(first.body().contains("\"name\":\"http:/cities\",\"count\":1,"));
+
+        HttpResponse<String> second = get("/metrics");
+        assertTrue(second.body().contains("\"name\":\"http:/metrics\",\"count\":1,"));
+    }
+
+    /**
+     * Tests the statuses of unknown paths, bad parameters, unknown cities and other methods.
+     */
+    @Test
+    void testErrors() throws Exception {
+        assertEquals(404, get("/nothing").statusCode());
+        assertEquals(400, get("/cities?scope=planet").statusCode());
+        assertEquals(400, get("/cities?scope=region").statusCode());
+        assertEquals(400, get("/cities?n=none").statusCode());
+        assertEquals(400, get("/cities/page?cursor=garbage").statusCode());
+        assertEquals(404, get("/cities/rank?id=99").statusCode());
+        assertEquals("ID,Scope,Rank\r\n457,world,4\r\n", get("/cities/rank?id=457&format=csv").body());
+
+        HttpResponse<String> post = client.send(HttpRequest.newBuilder(URI.create(base + "/cities"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(405, post.statusCode());
+        assertEquals("GET, HEAD", post.headers().firstValue("Allow").orElse(""));
+    }
+}
@@ -0,0 +1,131 @@
+package com.napier.devops;
+
+import com.napier.sem.ReportSink;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ReportSink}.
+ */
+class ReportSinkTest {
+
+    private Path dir;
+
+    /**
+     * Creates an empty folder for the reports of a test.
+     *
+     * @throws IOException if the folder cannot be created
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("reports");
+    }
+
+    /**
+     * Deletes the folder and everything written to it.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Tests that text and numbers are encoded as StringBuilder and UTF-8 would encode them.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Test
+    void testEncoding() throws IOException {
+        Path file = dir.resolve("reports/test.md");
+        String text = "São Tomé | Côte d’Ivoire | 東京 | 🌍 | ";
+        try (ReportSink sink = ReportSink.open(file)) {
+            sink.append(text).append(0).append(' ').append(-42).append(' ')
+                    .append(Long.MIN_VALUE).append(' ').append(Integer.MAX_VALUE).append(' ')
+                    .append(12.5).append(' ').append((String) null).append("\r\n");
+            assertEquals(sink.size(), sink.commit());
+        }
+
+        String expected = new StringBuilder(text).append(0).append(' ').append(-42).append(' ')
+                .append(Long.MIN_VALUE).append(' ').append(Integer.MAX_VALUE).append(' ')
+                .append(12.5).append(' ').append((String) null).append("\r\n").toString();
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file));
+    }
+
+    /**
+     * Tests that a report larger than the buffer is written whole, and only once committed.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Test
+    void testLargeReportIsReplacedAtomically() throws IOException {
+        Path file = dir.resolve("large.md");
+        Files.writeString(file, "old report");
+
+        StringBuilder expected = new StringBuilder();
+        try (ReportSink sink = ReportSink.open(file)) {
+            for (int i = 0; i < 20000; i++) {
+                sink.append("| City ").append(i).append(" | Zürich |\r\n");
+                expected.append("| City ").append(i).append(" | Zürich |\r\n");
+            }
+            assertEquals("old report", Files.readString(file));
+            sink.commit();
+        }
+
+        assertEquals(expected.toString(), Files.readString(file, StandardCharsets.UTF_8));
+        assertEquals(1, countFiles());
+    }
+
+    /**
+     * Tests that a sink closed without being committed leaves no file behind.
+     *
+     * @throws IOException if the folder cannot be listed
+     */
+    @Test
+    void testUncommittedSinkIsDiscarded() throws IOException {
+        try (ReportSink sink = ReportSink.open(dir.resolve("partial.md"))) {
+            sink.append("| half a row");
+        }
+
+        assertFalse(Files.exists(dir.resolve("partial.md")));
+        assertEquals(0, countFiles());
+    }
+
+    /**
+     * Tests that temporary files left by a killed run do not stop the report being written.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Test
+    void testLeftoverTemporaryFilesAreIgnored() throws IOException {
+        Files.writeString(dir.resolve(".report.md.1.tmp"), "| killed");
+        Files.writeString(dir.resolve(".report.md.2.tmp"), "| killed");
+        try (ReportSink sink = ReportSink.open(dir.resolve("report.md"))) {
+            sink.append("| done |");
+            sink.commit();
+        }
+
+        assertEquals("| done |", Files.readString(dir.resolve("report.md")));
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.napier.devops;
+
+import com.napier.sem.CapitalCityReport;
+import com.napier.sem.City;
+import com.napier.sem.CityReport;
+import com.napier.sem.Country;
+import com.napier.sem.CountryReport;
+import com.napier.sem.Scope;
+import com.napier.sem.SharedScanPlanner;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SharedScanPlanner}.
+ * <p>
+ * The reports answer from a small snapshot and count the queries they are asked to run,
+ * so derived results can be compared with the reports' own results.
+ */
+class SharedScanPlannerTest {
+
+    private WorldSnapshot snapshot;
+    private List<String> queries;
+    private CityReport cityReport;
+    private CapitalCityReport capitalReport;
+    private CountryReport countryReport;
+
+    /**
+     * Builds a world of four countries and records every query the reports run.
+     */
+    @BeforeEach
+    void setUp() {
+        snapshot = new WorldSnapshot.Builder()
+                .addCountry("GBR", "United Kingdom", "Europe", "British Islands", 59623400, 456)
+                .addCountry("FRA", "France", "Europe", "Western Europe", 59225700, 2974)
+                .addCountry("JPN", "Japan", "Asia", "Eastern Asia", 126714000, 1532)
+                .addCountry("USA", "United States", "North America", "North America", 278357000, 3813)
+                .addCity(456, "London", "GBR", "England", 7285000)
+                .addCity(457, "Birmingham", "GBR", "England", 1013000)
+                .addCity(2974, "Paris", "FRA", "Île-de-France", 2125246)
+                .addCity(1532, "Tokyo", "JPN", "Tokyo-to", 7980230)
+                .addCity(1533, "Jokohama [Yokohama]", "JPN", "Kanagawa", 3339594)
+                .addCity(3793, "New York", "USA", "New York", 8008278)
+                .addCity(3813, "Washington", "USA", "District of Columbia", 572059)
+                .build();
+        queries = new ArrayList<>();
+        cityReport = new CityReport(null, snapshot) {
+            @Override
+            public ArrayList<City> printAllCities() {
+                queries.add("all cities");
+                return super.printAllCities();
+            }
+
+            @Override
+            public ArrayList<City> printCitiesByContinent(String continent) {
+                queries.add("cities in " + continent);
+                return super.printCitiesByContinent(continent);
+            }
+        };
+        capitalReport = new CapitalCityReport(null, snapshot) {
+            @Override
+            public ArrayList<City> getAllCapitalCities() {
+                queries.add("all capitals");
+                return super.getAllCapitalCities();
+            }
+        };
+        countryReport = new CountryReport(null, snapshot) {
+            @Override
+            public ArrayList<Country> getCountriesByPopulation() {
+                queries.add("all countries");
+                return super.getCountriesByPopulation();
+            }
+        };
+    }
+
+    /**
+     * Tests that a family of city reports runs one base query and matches the separate queries.
+     */
+    @Test
+    void testCityReportsShareOneScan() {
+        SharedScanPlanner planner = new SharedScanPlanner(cityReport, capitalReport, countryReport, true);
+        Supplier<ArrayList<City>> all = planner.cities(Scope.WORLD, null, Integer.MAX_VALUE);
+        Supplier<ArrayList<City>> europe = planner.cities(Scope.CONTINENT, "Europe", Integer.MAX_VALUE);
+        Supplier<ArrayList<City>> topAsia = planner.cities(Scope.CONTINENT, "asia", 1);
+        Supplier<ArrayList<City>> england = planner.cities(Scope.DISTRICT, "England", 5);
+        Supplier<ArrayList<City>> topWorld = planner.cities(Scope.WORLD, null, 3);
+
+        assertEquals(names(snapshot.cities(Scope.WORLD, null, Integer.MAX_VALUE)), names(all.get()));
+        assertEquals(List.of("London", "Paris", "Birmingham"), names(europe.get()));
+        assertEquals(List.of("Tokyo"), names(topAsia.get()));
+        assertEquals(List.of("London", "Birmingham"), names(england.get()));
+        assertEquals(List.of("New York", "Tokyo", "London"), names(topWorld.get()));
+
+        assertEquals(List.of("all cities", "all countries"), queries);
+        assertEquals(5, planner.getDerivedCount());
+    }
+
+    /**
+     * Tests that capital cities are filtered by the continent of their country.
+     */
+    @Test
+    void testCapitalCitiesByRegion() {
+        SharedScanPlanner planner = new SharedScanPlanner(cityReport, capitalReport, countryReport, true);
+        Supplier<ArrayList<City>> all = planner.capitalCities(Scope.WORLD, null, Integer.MAX_VALUE);
+        Supplier<ArrayList<City>> europe = planner.capitalCities(Scope.CONTINENT, "Europe", 1);
+        Supplier<ArrayList<Country>> countries = planner.countries(Scope.REGION, "Western Europe", 10);
+
+        assertEquals(4, all.get().size());
+        assertEquals(List.of("London"), names(europe.get()));
+        assertEquals("France", countries.get().get(0).Name);
+        assertEquals(List.of("all capitals", "all countries"), queries);
+    }
+
+    /**
+     * Tests that a single report in a family runs its own query rather than a full scan.
+     */
+    @Test
+    void testSingleReportRunsOwnQuery() {
+        SharedScanPlanner planner = new SharedScanPlanner(cityReport, capitalReport, countryReport, true);
+        Supplier<ArrayList<City>> asia = planner.cities(Scope.CONTINENT, "Asia", Integer.MAX_VALUE);
+
+        assertEquals(List.of("Tokyo", "Jokohama [Yokohama]"), names(asia.get()));
+        assertEquals(List.of("cities in Asia"), queries);
+        assertEquals(0, planner.getDerivedCount());
+    }
+
+    /**
+     * Tests that a disabled planner runs every report's own query.
+     */
+    @Test
+    void testDisabledPlannerRunsEveryQuery() {
+        SharedScanPlanner planner = new SharedScanPlanner(cityReport, capitalReport, countryReport, false);
+        Supplier<ArrayList<City>> all = planner.cities(Scope.WORLD, null, Integer.MAX_VALUE);
+        Supplier<ArrayList<City>> asia = planner.cities(Scope.CONTINENT, "Asia", Integer.MAX_VALUE);
+
+        all.get();
+        asia.get();
+
+        assertEquals(List.of("all cities", "cities in Asia"), queries);
+    }
+
+    private static List<String> names(ArrayList<City> cities) {
+        List<String> names = new ArrayList<>();
+        for (City city : cities) {
+            names.add(city.Name);
+        }
+        return names;
+    }
+}
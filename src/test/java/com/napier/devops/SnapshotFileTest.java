@@ -0,0 +1,173 @@
+package com.napier.devops;
+
+import com.napier.sem.City;
+import com.napier.sem.Country;
+import com.napier.sem.CountryLanguage;
+import com.napier.sem.Scope;
+import com.napier.sem.SnapshotFile;
+import com.napier.sem.SqlDumpReader;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link SnapshotFile}.
+ */
+class SnapshotFileTest {
+
+    private Path dir;
+
+    private WorldSnapshot snapshot;
+    private Path file;
+
+    /**
+     * Reads the world database from db/world.sql and saves it to a snapshot file.
+     *
+     * @throws IOException if the dump cannot be read or the file written
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("snapshot");
+        snapshot = SqlDumpReader.read(Path.of("db/world.sql"));
+        file = dir.resolve("snapshot/world.bin");
+        SnapshotFile.write(snapshot, file, new long[]{11, 22, 33});
+    }
+
+    /**
+     * Deletes the snapshot file and its folder.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Tests that a snapshot read back from its file answers queries as the original does.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    @Test
+    void testRoundTrip() throws IOException {
+        WorldSnapshot read = SnapshotFile.read(file);
+
+        assertEquals(snapshot.cityCount(), read.cityCount());
+        assertEquals(snapshot.countryCount(), read.countryCount());
+        assertCitiesEqual(snapshot.cities(Scope.WORLD, null, 50), read.cities(Scope.WORLD, null, 50));
+        assertCitiesEqual(snapshot.cities(Scope.DISTRICT, "São Paulo", 10),
+                read.cities(Scope.DISTRICT, "São Paulo", 10));
+        assertCitiesEqual(snapshot.capitalCities(Scope.REGION, "Caribbean", 100),
+                read.capitalCities(Scope.REGION, "Caribbean", 100));
+
+        List<Country> expected = snapshot.countries(Scope.CONTINENT, "Europe", 100);
+        List<Country> actual = read.countries(Scope.CONTINENT, "Europe", 100);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).Code, actual.get(i).Code);
+            assertEquals(expected.get(i).Capital, actual.get(i).Capital);
+            assertEquals(expected.get(i).Population, actual.get(i).Population);
+        }
+
+        CountryLanguage english = snapshot.languageSpeakers("English").get(0);
+        assertEquals(english.NumberOfSpeakers, read.languageSpeakers("English").get(0).NumberOfSpeakers);
+        assertArrayEquals(new long[]{11, 22, 33}, SnapshotFile.checksums(file));
+    }
+
+    /**
+     * Tests that a file with a changed byte, or of another version, is rejected.
+     *
+     * @throws IOException if the file cannot be rewritten
+     */
+    @Test
+    void testCorruptFile() throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        IOException e = assertThrows(IOException.class, () -> SnapshotFile.read(file));
+        assertTrue(e.getMessage().contains("corrupt"));
+
+        bytes[bytes.length / 2] ^= 1;
+        bytes[4] = 99;
+        Files.write(file, bytes);
+        e = assertThrows(IOException.class, () -> SnapshotFile.read(file));
+        assertTrue(e.getMessage().contains("version"));
+
+        Files.write(file, new byte[10]);
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+    }
+
+    /**
+     * Tests that two exports of the same file at once leave one whole file and no temporary files.
+     *
+     * @throws Exception if a write fails
+     */
+    @Test
+    void testConcurrentWrites() throws Exception {
+        Thread other = new Thread(() -> {
+            try {
+                SnapshotFile.write(snapshot, file, new long[]{44, 55, 66});
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        other.start();
+        SnapshotFile.write(snapshot, file, new long[]{44, 55, 66});
+        other.join();
+
+        assertEquals(snapshot.cityCount(), SnapshotFile.read(file).cityCount());
+        assertArrayEquals(new long[]{44, 55, 66}, SnapshotFile.checksums(file));
+        try (Stream<Path> files = Files.list(file.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    /**
+     * Tests that a file is stale once a table checksum in the database differs.
+     *
+     * @throws Exception if mocking fails
+     */
+    @Test
+    void testIsStale() throws Exception {
+        Connection con = mock(Connection.class);
+        Statement stmt = mock(Statement.class);
+        ResultSet rset = mock(ResultSet.class);
+        when(con.createStatement()).thenReturn(stmt);
+        when(stmt.executeQuery(anyString())).thenReturn(rset);
+        when(rset.next()).thenReturn(true, true, true, true, true, true);
+        when(rset.getLong("Checksum")).thenReturn(11L, 22L, 33L, 11L, 22L, 34L);
+
+        assertFalse(SnapshotFile.isStale(file, con));
+        assertTrue(SnapshotFile.isStale(file, con));
+    }
+
+    private static void assertCitiesEqual(List<City> expected, List<City> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).Name, actual.get(i).Name);
+            assertEquals(expected.get(i).Country, actual.get(i).Country);
+            assertEquals(expected.get(i).District, actual.get(i).District);
+            assertEquals(expected.get(i).Population, actual.get(i).Population);
+            assertEquals(expected.get(i).isCapital, actual.get(i).isCapital);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.napier.devops;
+
+import com.napier.sem.City;
+import com.napier.sem.CityReport;
+import com.napier.sem.Country;
+import com.napier.sem.Scope;
+import com.napier.sem.SqlDumpReader;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SqlDumpReader}.
+ */
+class SqlDumpReaderTest {
+
+    private static final String DUMP = String.join("\n",
+            "-- MySQL dump",
+            "/*!40101 SET NAMES utf8mb4 */;",
+            "CREATE DATABASE `world` DEFAULT CHARACTER SET utf8mb4;",
+            "DROP TABLE IF EXISTS `country`;",
+            "CREATE TABLE `country` (",
+            "  `Code` char(3) NOT NULL DEFAULT '',",
+            "  `Name` char(52) NOT NULL DEFAULT '',",
+            "  `Continent` enum('Asia','Europe','North America') NOT NULL DEFAULT 'Asia',",
+            "  `Region` char(26) NOT NULL DEFAULT '',",
+            "  `SurfaceArea` decimal(10,2) NOT NULL DEFAULT '0.00',",
+            "  `Population` int NOT NULL DEFAULT '0',",
+            "  `HeadOfState` char(60) DEFAULT NULL,",
+            "  `Capital` int DEFAULT NULL,",
+            "  PRIMARY KEY (`Code`)",
+            ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;",
+            "INSERT INTO `country` VALUES ('TON','Tonga','Oceania','Polynesia',650.00,99000,'Taufa\\'ahau Tupou IV',3334),",
+            "  ('ATA','Antarctica','Antarctica','Antarctica',13120000.00,0,NULL,NULL);",
+            "INSERT INTO `city` VALUES (3334,'Nuku‘alofa','TON','Tongatapu',22400);",
+            "INSERT INTO `city` (`Population`, `ID`, `Name`, `CountryCode`, `District`) VALUES (5,1,'It''s; here','TON','Vava''u');",
+            "INSERT INTO `other` VALUES ('ignored;', 1);",
+            "# a comment",
+            "INSERT INTO countrylanguage VALUES ('TON','Tongan','T',98.3), ('TON','English','T',0.0);",
+            "");
+
+    /**
+     * Tests that rows are read whatever the column order, with quotes, escapes and NULLs decoded.
+     *
+     * @throws IOException if the dump cannot be read
+     */
+    @Test
+    void testReadDump() throws IOException {
+        WorldSnapshot snapshot = SqlDumpReader.read(
+                new ByteArrayInputStream(DUMP.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, snapshot.cityCount());
+        assertEquals(2, snapshot.countryCount());
+
+        ArrayList<City> cities = snapshot.cities(Scope.COUNTRY, "Tonga", 10);
+        assertEquals("Nuku‘alofa", cities.get(0).Name);
+        assertTrue(cities.get(0).isCapital);
+        assertEquals("It's; here", cities.get(1).Name);
+        assertEquals("Vava'u", cities.get(1).District);
+        assertEquals(5, cities.get(1).Population);
+        assertEquals(1, cities.get(1).ID);
+
+        Country tonga = snapshot.countries(Scope.REGION, "Polynesia", 1).get(0);
+        assertEquals(99000, tonga.Population);
+        // Antarctica's NULL capital means it has none
+        assertEquals(1, snapshot.capitalCities(Scope.WORLD, null, 10).size());
+        assertEquals(97317, snapshot.languageSpeakers("Tongan").get(0).NumberOfSpeakers);
+    }
+
+    /**
+     * Tests that a truncated dump is reported rather than read in part.
+     */
+    @Test
+    void testMalformedDump() {
+        String truncated = "INSERT INTO `city` VALUES (1,'Kabul','AFG','Kabol',17";
+        assertThrows(IOException.class, () -> SqlDumpReader.read(
+                new ByteArrayInputStream(truncated.getBytes(StandardCharsets.UTF_8))));
+        String text = "INSERT INTO `city` VALUES (1,'Kabul','AFG','Kabol','many');";
+        assertThrows(IOException.class, () -> SqlDumpReader.read(
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))));
+        String overflow = "INSERT INTO `city` VALUES (1,'Kabul','AFG','Kabol',4294967296);";
+        assertThrows(IOException.class, () -> SqlDumpReader.read(
+                new ByteArrayInputStream(overflow.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Tests that the smallest and largest integers are read without overflow.
+     *
+     * @throws IOException if the dump cannot be read
+     */
+    @Test
+    void testIntegerBounds() throws IOException {
+        String bounds = "INSERT INTO `city` VALUES (-2147483648,'Kabul','AFG','Kabol',2147483647);";
+        WorldSnapshot snapshot = SqlDumpReader.read(
+                new ByteArrayInputStream(bounds.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, snapshot.cityCount());
+    }
+
+    /**
+     * Tests that the dump shipped for the database container answers the reports.
+     *
+     * @throws IOException if db/world.sql cannot be read
+     */
+    @Test
+    void testReadWorldDump() throws IOException {
+        WorldSnapshot snapshot = SqlDumpReader.read(Path.of("db/world.sql"));
+
+        assertEquals(4079, snapshot.cityCount());
+        assertEquals(239, snapshot.countryCount());
+
+        CityReport report = new CityReport(null, snapshot);
+        City top = report.getTopNCitiesInWorld(1).get(0);
+        assertEquals("Mumbai (Bombay)", top.Name);
+        assertEquals(10500000, top.Population);
+        assertEquals("Seoul", snapshot.capitalCities(Scope.WORLD, null, 1).get(0).Name);
+    }
+}
@@ -0,0 +1,131 @@
+package com.napier.devops;
+
+import com.napier.sem.StatementCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link StatementCache}.
+ */
+class StatementCacheTest {
+
+    private Connection con;
+    private PreparedStatement first;
+    private PreparedStatement second;
+    private PreparedStatement third;
+
+    /**
+     * Creates a connection that prepares a new mock statement each time.
+     *
+     * @throws SQLException if mocking fails
+     */
+    @BeforeEach
+    void setUp() throws SQLException {
+        con = mock(Connection.class);
+        first = mock(PreparedStatement.class);
+        second = mock(PreparedStatement.class);
+        third = mock(PreparedStatement.class);
+        when(con.prepareStatement(anyString())).thenReturn(first, second, third);
+    }
+
+    /**
+     * Forgets the connection and restores the capacity.
+     */
+    @AfterEach
+    void tearDown() {
+        StatementCache.close(con);
+        StatementCache.setCapacity(StatementCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Tests that running the same SQL again reuses the statement instead of preparing it again.
+     *
+     * @throws SQLException if mocking fails
+     */
+    @Test
+    void testStatementIsReused() throws SQLException {
+        try (PreparedStatement pstmt = StatementCache.prepare(con, "SELECT ?")) {
+            pstmt.setInt(1, 1);
+        }
+        try (PreparedStatement pstmt = StatementCache.prepare(con, "SELECT ?")) {
+            pstmt.setInt(1, 2);
+        }
+
+        verify(con, times(1)).prepareStatement(anyString());
+        verify(first).setInt(1, 1);
+        verify(first).setInt(1, 2);
+        verify(first, never()).close();
+        assertEquals(1, StatementCache.idleCount(con));
+    }
+
+    /**
+     * Tests that a statement in use is not handed out twice, and that only one of the two is kept.
+     *
+     * @throws SQLException if mocking fails
+     */
+    @Test
+    void testStatementInUseIsNotShared() throws SQLException {
+        PreparedStatement a = StatementCache.prepare(con, "SELECT 1");
+        PreparedStatement b = StatementCache.prepare(con, "SELECT 1");
+        a.executeQuery();
+        b.executeQuery();
+        a.close();
+        b.close();
+
+        verify(first).executeQuery();
+        verify(second).executeQuery();
+        verify(first, never()).close();
+        verify(second).close();
+        assertEquals(1, StatementCache.idleCount(con));
+        assertTrue(a.isClosed());
+        assertThrows(SQLException.class, a::executeQuery);
+    }
+
+    /**
+     * Tests that the least recently used statement is closed when the cache is full.
+     *
+     * @throws SQLException if mocking fails
+     */
+    @Test
+    void testLeastRecentlyUsedIsEvicted() throws SQLException {
+        StatementCache.setCapacity(2);
+        StatementCache.prepare(con, "SELECT 1").close();
+        StatementCache.prepare(con, "SELECT 2").close();
+        StatementCache.prepare(con, "SELECT 1").close();
+        StatementCache.prepare(con, "SELECT 3").close();
+
+        verify(first, never()).close();
+        verify(second).close();
+        assertEquals(2, StatementCache.idleCount(con));
+
+        StatementCache.close(con);
+        verify(first).close();
+        verify(third).close();
+        assertEquals(0, StatementCache.idleCount(con));
+    }
+
+    /**
+     * Tests that a capacity of 0 closes every statement after use, and that a negative one is refused.
+     *
+     * @throws SQLException if mocking fails
+     */
+    @Test
+    void testZeroCapacityClosesStatements() throws SQLException {
+        StatementCache.setCapacity(0);
+        StatementCache.prepare(con, "SELECT 1").close();
+        StatementCache.prepare(con, "SELECT 1").close();
+
+        verify(first).close();
+        verify(second).close();
+        assertEquals(0, StatementCache.idleCount(con));
+        assertThrows(IllegalArgumentException.class, () -> StatementCache.setCapacity(-1));
+    }
+}
@@ -0,0 +1,87 @@
+package com.napier.devops;
+
+import com.napier.sem.TextFormat;
+import org.junit.jupiter.api.Test;
+
+import java.text.DecimalFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link TextFormat}, checked against the Formatter conversions and
+ * DecimalFormat patterns it stands in for.
+ */
+class TextFormatTest {
+
+    private static final double[] EDGE_CASES = {
+            0.0, -0.0, 0.5, -0.5, 0.005, 0.004, 0.125, 0.135, 1.005, 2.675, 12.345, 99.995, 99.999, 100,
+            -0.001, 1234567.5, 1234568.5, 6078749450.0, 1e20, -1e300,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE
+    };
+
+    /**
+     * Tests that text is padded as "%-Ns" and "%Ns" pad it, including null.
+     */
+    @Test
+    void testPadding() {
+        assertEquals(String.format("%-10s|", "Tokyo"), TextFormat.left(new StringBuilder(), "Tokyo", 10).append('|').toString());
+        assertEquals(String.format("%10s|", "Tokyo"), TextFormat.right(new StringBuilder(), "Tokyo", 10).append('|').toString());
+        assertEquals(String.format("%-6s|", (Object) null), TextFormat.left(new StringBuilder(), null, 6).append('|').toString());
+        assertEquals(String.format("%-3s", "Mumbai (Bombay)"), TextFormat.left(new StringBuilder(), "Mumbai (Bombay)", 3).toString());
+    }
+
+    /**
+     * Tests that whole numbers are grouped and aligned as "%,15d" writes them.
+     */
+    @Test
+    void testGrouped() {
+        long[] values = {0, 7, -7, 999, 1000, -1000, 10500000, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            assertEquals(String.format("%,15d", value), TextFormat.grouped(new StringBuilder(), value, 15).toString());
+            assertEquals(String.format("%,d", value), TextFormat.grouped(new StringBuilder(), value, 0).toString());
+        }
+        Random random = new Random(20);
+        for (int i = 0; i < 10000; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            assertEquals(String.format("%,20d", value), TextFormat.grouped(new StringBuilder(), value, 20).toString());
+        }
+    }
+
+    /**
+     * Tests that numbers are rounded to fixed decimal places as "%19.2f" rounds them,
+     * including values whose shortest decimal form ends in 5.
+     */
+    @Test
+    void testFixed() {
+        for (double value : EDGE_CASES) {
+            assertEquals(String.format("%19.2f", value), TextFormat.fixed(new StringBuilder(), value, 2, 19).toString());
+            assertEquals(String.format("%.0f", value), TextFormat.fixed(new StringBuilder(), value, 0, 0).toString());
+        }
+        Random random = new Random(21);
+        for (int i = 0; i < 10000; i++) {
+            double value = i % 2 == 0 ? random.nextDouble() * 100 : random.nextInt(2000000) / 1000.0 - 1000;
+            assertEquals(String.format("%12.2f", value), TextFormat.fixed(new StringBuilder(), value, 2, 12).toString());
+            assertEquals(String.format("%.3f", value), TextFormat.fixed(new StringBuilder(), value, 3, 0).toString());
+        }
+    }
+
+    /**
+     * Tests that numbers are written as DecimalFormat("#,###") and DecimalFormat("#.##") write them.
+     */
+    @Test
+    void testDecimalFormatPatterns() {
+        DecimalFormat wholeNumber = new DecimalFormat("#,###");
+        DecimalFormat percentage = new DecimalFormat("#.##");
+        for (double value : EDGE_CASES) {
+            assertEquals(wholeNumber.format(value), TextFormat.wholeNumber(new StringBuilder(), value).toString());
+            assertEquals(percentage.format(value), TextFormat.percentage(new StringBuilder(), value).toString());
+        }
+        Random random = new Random(22);
+        for (int i = 0; i < 10000; i++) {
+            double value = i % 2 == 0 ? random.nextDouble() * 100 : random.nextInt(2000000) / 200.0;
+            assertEquals(wholeNumber.format(value * 1e6), TextFormat.wholeNumber(new StringBuilder(), value * 1e6).toString());
+            assertEquals(percentage.format(value), TextFormat.percentage(new StringBuilder(), value).toString());
+        }
+    }
+}
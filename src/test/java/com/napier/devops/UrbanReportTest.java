@@ -1,10 +1,12 @@
 package com.napier.devops;
 
+import com.napier.sem.PopulationSummary;
 import com.napier.sem.UrbanReport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.sql.*;
+import java.util.ArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -160,6 +162,60 @@ class UrbanReportTest {
         verify(mockPreparedStatement, atLeast(1)).executeQuery();
     }
 
+    /**
+     * Tests that {@link UrbanReport#getContinentSummaries(Connection)}
+     * maps every grouped row and calculates the urbanisation percentage.
+     */
+    @Test
+    void testGetContinentSummaries() throws Exception {
+        when(mockConnection.prepareStatement(anyString())).thenReturn(mockPreparedStatement);
+        when(mockPreparedStatement.executeQuery()).thenReturn(mockResultSet);
+        when(mockResultSet.next()).thenReturn(true, true, false);
+        when(mockResultSet.getString("Name")).thenReturn("Europe", "Antarctica");
+        when(mockResultSet.getDouble("Population")).thenReturn(730074600.0, 0.0);
+        when(mockResultSet.getDouble("UrbanPopulation")).thenReturn(241942813.0, 0.0);
+
+        ArrayList<PopulationSummary> summaries = report.getContinentSummaries(mockConnection);
+
+        assertNotNull(summaries);
+        assertEquals(2, summaries.size());
+        assertEquals("Europe", summaries.get(0).Name);
+        assertEquals(33.14, summaries.get(0).Percentage, 0.01);
+        assertEquals("Antarctica", summaries.get(1).Name);
+        assertEquals(0.0, summaries.get(1).Percentage, 0.001);
+    }
+
+    /**
+     * Tests that grouped summary queries return null when the database fails.
+     */
+    @Test
+    void testGetRegionSummaries_Exception() throws Exception {
+        when(mockConnection.prepareStatement(anyString())).thenThrow(new SQLException("DB error"));
+
+        assertNull(report.getRegionSummaries(mockConnection));
+        assertNull(report.getCountrySummaries(mockConnection));
+    }
+
+    /**
+     * Tests that batch mode produces all three reports with one query per level
+     * rather than one query per continent, region and country.
+     */
+    @Test
+    void testGenerateReportLists_BatchMode() throws Exception {
+        report = new UrbanReport(true);
+        when(mockConnection.prepareStatement(anyString())).thenReturn(mockPreparedStatement);
+        when(mockPreparedStatement.executeQuery()).thenReturn(mockResultSet);
+        when(mockResultSet.next()).thenReturn(true, false, true, false, true, false);
+        when(mockResultSet.getString("Name")).thenReturn("Asia", "Eastern Asia", "China");
+        when(mockResultSet.getDouble("Population")).thenReturn(100.0);
+        when(mockResultSet.getDouble("UrbanPopulation")).thenReturn(25.0);
+
+        report.generateReportLists(mockConnection);
+
+        verify(mockPreparedStatement, times(3)).executeQuery();
+        verify(mockConnection, never()).createStatement();
+    }
+
     /**
      * Tests exception handling for population queries: ensures that when
      * a SQLException occurs, the population is set to 0.
@@ -0,0 +1,177 @@
+package com.napier.devops;
+
+import com.napier.sem.CapitalCityReport;
+import com.napier.sem.City;
+import com.napier.sem.CityReport;
+import com.napier.sem.Country;
+import com.napier.sem.CountryLanguage;
+import com.napier.sem.CountryReport;
+import com.napier.sem.LanguageReport;
+import com.napier.sem.Scope;
+import com.napier.sem.WorldSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link WorldSnapshot}.
+ * <p>
+ * A small hand-built world is used so results can be checked exactly,
+ * both directly and through the report classes without a database connection.
+ */
+class WorldSnapshotTest {
+
+    private WorldSnapshot snapshot;
+
+    /**
+     * Builds a world of three countries, six cities and a few languages.
+     */
+    @BeforeEach
+    void setUp() {
+        snapshot = new WorldSnapshot.Builder()
+                .addCountry("GBR", "United Kingdom", "Europe", "British Islands", 59623400, 456)
+                .addCountry("FRA", "France", "Europe", "Western Europe", 59225700, 2974)
+                .addCountry("JPN", "Japan", "Asia", "Eastern Asia", 126714000, 1532)
+                .addCity(456, "London", "GBR", "England", 7285000)
+                .addCity(457, "Birmingham", "GBR", "England", 1013000)
+                .addCity(459, "Glasgow", "GBR", "Scotland", 619680)
+                .addCity(2974, "Paris", "FRA", "Île-de-France", 2125246)
+                .addCity(1532, "Tokyo", "JPN", "Tokyo-to", 7980230)
+                .addCity(1533, "Jokohama [Yokohama]", "JPN", "Kanagawa", 3339594)
+                .addLanguage("GBR", "English", true, 97.3)
+                .addLanguage("FRA", "French", true, 93.6)
+                .addLanguage("JPN", "Japanese", true, 99.1)
+                .addLanguage("JPN", "English", false, 0.1)
+                .build();
+    }
+
+    /**
+     * Tests that all cities are returned in descending population order.
+     */
+    @Test
+    void testCitiesInWorld() {
+        ArrayList<City> cities = snapshot.cities(Scope.WORLD, null, Integer.MAX_VALUE);
+
+        assertEquals(6, cities.size());
+        assertEquals("Tokyo", cities.get(0).Name);
+        assertEquals("Japan", cities.get(0).Country);
+        assertEquals("Tokyo-to", cities.get(0).District);
+        assertEquals(1532, cities.get(0).ID);
+        assertEquals("Glasgow", cities.get(5).Name);
+    }
+
+    /**
+     * Tests continent, region and district filters and the limit.
+     */
+    @Test
+    void testCitiesFilteredAndLimited() {
+        assertEquals(4, snapshot.cities(Scope.CONTINENT, "Europe", Integer.MAX_VALUE).size());
+        assertEquals(3, snapshot.cities(Scope.REGION, "British Islands", Integer.MAX_VALUE).size());
+        assertEquals(2, snapshot.cities(Scope.DISTRICT, "England", Integer.MAX_VALUE).size());
+
+        ArrayList<City> top = snapshot.cities(Scope.CONTINENT, "Europe", 2);
+        assertEquals(2, top.size());
+        assertEquals("London", top.get(0).Name);
+        assertEquals("Paris", top.get(1).Name);
+    }
+
+    /**
+     * Tests that unknown or null filters give empty lists rather than null.
+     */
+    @Test
+    void testCitiesUnknownFilter() {
+        assertTrue(snapshot.cities(Scope.CONTINENT, "Atlantis", 10).isEmpty());
+        assertTrue(snapshot.cities(Scope.REGION, null, 10).isEmpty());
+    }
+
+    /**
+     * Tests that only capital cities are returned and only the report columns are set.
+     */
+    @Test
+    void testCapitalCities() {
+        ArrayList<City> capitals = snapshot.capitalCities(Scope.WORLD, null, Integer.MAX_VALUE);
+
+        assertEquals(3, capitals.size());
+        assertEquals("Tokyo", capitals.get(0).Name);
+        assertEquals("London", capitals.get(1).Name);
+        assertEquals("Paris", capitals.get(2).Name);
+        assertNull(capitals.get(0).District);
+
+        assertEquals(1, snapshot.capitalCities(Scope.REGION, "Western Europe", 5).size());
+    }
+
+    /**
+     * Tests country ordering and that the capital is reported by city ID.
+     */
+    @Test
+    void testCountries() {
+        ArrayList<Country> countries = snapshot.countries(Scope.CONTINENT, "Europe", Integer.MAX_VALUE);
+
+        assertEquals(2, countries.size());
+        assertEquals("GBR", countries.get(0).Code);
+        assertEquals("British Islands", countries.get(0).Region);
+        assertEquals("456", countries.get(0).Capital);
+        assertEquals("FRA", countries.get(1).Code);
+    }
+
+    /**
+     * Tests the number of speakers and world share of each language.
+     */
+    @Test
+    void testLanguageSpeakers() {
+        ArrayList<CountryLanguage> languages = snapshot.languageSpeakers("English", "Klingon", "Japanese");
+
+        assertEquals(2, languages.size());
+        assertEquals("Japanese", languages.get(0).Language);
+        assertEquals(125573574, languages.get(0).NumberOfSpeakers);
+        assertEquals("English", languages.get(1).Language);
+        assertEquals(58140282, languages.get(1).NumberOfSpeakers);
+        assertEquals(23.6763, languages.get(1).WorldPercentage, 0.0001);
+    }
+
+    /**
+     * Tests that report classes answer from the snapshot without a connection.
+     */
+    @Test
+    void testReportsUseSnapshot() {
+        CityReport cityReport = new CityReport(null, snapshot);
+        CapitalCityReport capitalReport = new CapitalCityReport(null, snapshot);
+        CountryReport countryReport = new CountryReport(null, snapshot);
+        LanguageReport languageReport = new LanguageReport(null, snapshot);
+
+        assertEquals(6, cityReport.printAllCities().size());
+        assertEquals("Tokyo", cityReport.getTopNCitiesByContinent("Asia", 1).get(0).Name);
+        assertEquals(2, capitalReport.getCapitalCitiesByContinent("Europe").size());
+        assertEquals("JPN", countryReport.topNCountriesInTheWorld(1).get(0).Code);
+        assertEquals(1, languageReport.retrieveLanguageSpeakers().size());
+    }
+
+    /**
+     * Tests the top N per group queries for every group and for chosen groups.
+     */
+    @Test
+    void testTopNPerGroup() {
+        Map<String, List<City>> cities = snapshot.citiesPerGroup(Scope.CONTINENT, null, 2);
+        assertEquals(List.of("Asia", "Europe"), new ArrayList<>(cities.keySet()));
+        assertEquals("Jokohama [Yokohama]", cities.get("Asia").get(1).Name);
+        assertEquals("Paris", cities.get("Europe").get(1).Name);
+
+        Map<String, List<City>> england = new CityReport(null, snapshot)
+                .getTopNCitiesPerDistrict(List.of("england", "Atlantis"), 5);
+        assertEquals(2, england.get("England").size());
+        assertTrue(england.get("Atlantis").isEmpty());
+
+        Map<String, List<City>> capitals = snapshot.capitalCitiesPerGroup(Scope.REGION, List.of("Western Europe"), 3);
+        assertEquals(1, capitals.size());
+        assertEquals("Paris", capitals.get("Western Europe").get(0).Name);
+
+        Map<String, List<Country>> countries = new CountryReport(null, snapshot).topNCountriesPerContinent(null, 1);
+        assertEquals("GBR", countries.get("Europe").get(0).Code);
+        assertEquals("JPN", countries.get("Asia").get(0).Code);
+    }
+}